@@ -10,7 +10,7 @@ import java.util.Arrays;
 import util.Util;
 import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
+import circuit.operations.WitnessComputation;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.ConstantWire;
 import circuit.structure.Wire;
@@ -187,8 +187,8 @@ public class LongElement {
 		}
 
 		int length = Math.max(array.length, o.array.length);
-		Wire[] w1 = new WireArray(array).adjustLength(length).asArray();
-		Wire[] w2 = new WireArray(o.array).adjustLength(length).asArray();
+		Wire[] w1 = new WireArray(array, generator).adjustLength(length).asArray();
+		Wire[] w2 = new WireArray(o.array, generator).adjustLength(length).asArray();
 		Wire[] result = new Wire[length];
 		BigInteger[] newMaxValues = new BigInteger[length];
 		for (int i = 0; i < length; i++) {
@@ -240,19 +240,12 @@ public class LongElement {
 			// for safety
 			final Wire[] array1 = this.array;
 			final Wire[] array2 = o.array;
-			generator.specifyProverWitnessComputation(new Instruction() {
-				@Override
-				public void evaluate(CircuitEvaluator evaluator) {
-					BigInteger[] a = evaluator.getWiresValues(array1);
-					BigInteger[] b = evaluator.getWiresValues(array2);
-					BigInteger[] resultVals = multiplyPolys(a, b);
-					evaluator.setWireValue(result, resultVals);
-				}
-			});
+			generator.specifyProverWitnessComputation(MulComputation.class.getName(), Util.concat(array1, array2),
+					result, BigInteger.valueOf(array1.length));
 
 			Wire zeroWire = generator.getZeroWire();
 			for (int k = 0; k < length; k++) {
-				BigInteger constant = new BigInteger((k + 1) + "");
+				BigInteger constant = BigInteger.valueOf(k + 1);
 				Wire v1 = zeroWire;
 				Wire v2 = zeroWire;
 				Wire v3 = zeroWire;
@@ -282,9 +275,9 @@ public class LongElement {
 				// v3 = v3.mul(constant).add(result[i]);
 				// }
 
-				v1 = new WireArray(vector1).sumAllElements();
-				v2 = new WireArray(vector2).sumAllElements();
-				v3 = new WireArray(vector3).sumAllElements();
+				v1 = new WireArray(vector1, generator).sumAllElements();
+				v2 = new WireArray(vector2, generator).sumAllElements();
+				v3 = new WireArray(vector3, generator).sumAllElements();
 				generator.addAssertion(v1, v2, v3);
 			}
 		}
@@ -422,7 +415,7 @@ public class LongElement {
 					chunkIndex++;
 					idx += alignedChunkBits.length;
 				}
-				WireArray out = new WireArray(bitWires);
+				WireArray out = new WireArray(bitWires, generator);
 				if(limit >= maxVal.bitLength()){
 					bits = out.adjustLength(maxVal.bitLength());
 				} 
@@ -437,7 +430,7 @@ public class LongElement {
 		return Util.group(currentMaxValues, bitwidth);
 	}
 
-	private BigInteger[] multiplyPolys(BigInteger[] aiVals, BigInteger[] biVals) {
+	private static BigInteger[] multiplyPolys(BigInteger[] aiVals, BigInteger[] biVals) {
 
 		BigInteger[] solution = new BigInteger[aiVals.length + biVals.length
 				- 1];
@@ -570,14 +563,14 @@ public class LongElement {
 
 		// padding
 		if (e.array.length != limit) {
-			a2 = new WireArray(a2).adjustLength(limit).asArray();
+			a2 = new WireArray(a2, generator).adjustLength(limit).asArray();
 			bounds2 = new BigInteger[limit];
 			Arrays.fill(bounds2, BigInteger.ZERO);
 			System.arraycopy(e.currentMaxValues, 0, bounds2, 0,
 					e.currentMaxValues.length);
 		}
 		if (array.length != limit) {
-			a1 = new WireArray(a1).adjustLength(limit).asArray();
+			a1 = new WireArray(a1, generator).adjustLength(limit).asArray();
 			bounds1 = new BigInteger[limit];
 			Arrays.fill(bounds1, BigInteger.ZERO);
 			System.arraycopy(currentMaxValues, 0, bounds1, 0,
@@ -715,26 +708,19 @@ public class LongElement {
 			}
 		}
 
-		// specify how the values of carries are obtained during runtime
-		generator.specifyProverWitnessComputation(new Instruction() {
-
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-
-				BigInteger prevCarry = BigInteger.ZERO;
-				for (int i = 0; i < carries.length; i++) {
-					BigInteger a = evaluator.getWireValue(group1.get(i));
-					BigInteger b = evaluator.getWireValue(group2.get(i));
-					BigInteger carryValue = auxConstantChunks[i].add(a)
-							.subtract(b).subtract(alignedAuxConstantChunks[i])
-							.add(prevCarry);
-					carryValue = carryValue.shiftRight(steps.get(i)
-							* CHUNK_BITWIDTH);
-					evaluator.setWireValue(carries[i], carryValue);
-					prevCarry = carryValue;
-				}
-			}
-		});
+		// specify how the values of carries are obtained during runtime. The
+		// parameters are the size of group1, the chunk bitwidth, and the
+		// auxConstantChunks, alignedAuxConstantChunks and steps of each carry
+		BigInteger[] parameters = new BigInteger[2 + 3 * carries.length];
+		parameters[0] = BigInteger.valueOf(group1.size());
+		parameters[1] = BigInteger.valueOf(CHUNK_BITWIDTH);
+		for (int j = 0; j < carries.length; j++) {
+			parameters[2 + j] = auxConstantChunks[j];
+			parameters[2 + carries.length + j] = alignedAuxConstantChunks[j];
+			parameters[2 + 2 * carries.length + j] = BigInteger.valueOf(steps.get(j));
+		}
+		generator.specifyProverWitnessComputation(CarriesComputation.class.getName(),
+				Util.concat(group1.toArray(new Wire[0]), group2.toArray(new Wire[0])), carries, parameters);
 
 		// We must make sure that the carries values are bounded.
 
@@ -817,30 +803,15 @@ public class LongElement {
 		Wire[] helperBits = generator.createProverWitnessWireArray(length);
 		// set the value of the helperBits outside the circuits
 
-		generator.specifyProverWitnessComputation(new Instruction() {
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-
-				boolean found = false;
-				for (int i = length - 1; i >= 0; i--) {
-					BigInteger v1 = evaluator.getWireValue(paddedA1[i]);
-					BigInteger v2 = evaluator.getWireValue(paddedA2[i]);
-
-					boolean check = v2.compareTo(v1) > 0 && !found;
-					evaluator.setWireValue(helperBits[i],
-							check ? BigInteger.ONE : BigInteger.ZERO);
-					if (check)
-						found = true;
-				}
-			}
-		});
+		generator.specifyProverWitnessComputation(LessThanComputation.class.getName(),
+				Util.concat(paddedA1, paddedA2), helperBits);
 
 		// verify constraints about helper bits.
 		for (Wire w : helperBits) {
 			generator.addBinaryAssertion(w);
 		}
 		// Only one bit should be set.
-		generator.addOneAssertion(new WireArray(helperBits).sumAllElements());
+		generator.addOneAssertion(new WireArray(helperBits, generator).sumAllElements());
 
 		// verify "the greater than condition" for the specified chunk
 		Wire chunk1 = generator.getZeroWire();
@@ -866,4 +837,66 @@ public class LongElement {
 		// no checks needed for the less significant chunks
 	}
 
+
+	// computes the coefficients of the product of two polynomials, whose
+	// coefficients are the used wires. The parameter is the number of
+	// coefficients of the first one.
+	public static class MulComputation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			int length1 = parameters[0].intValue();
+			BigInteger[] a = evaluator.getWiresValues(Arrays.copyOfRange(usedWires, 0, length1));
+			BigInteger[] b = evaluator.getWiresValues(Arrays.copyOfRange(usedWires, length1, usedWires.length));
+			BigInteger[] resultVals = multiplyPolys(a, b);
+			evaluator.setWireValue(assignedWires, resultVals);
+		}
+	}
+
+	// computes the carries of the equality check of two grouped elements
+	public static class CarriesComputation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			int group1Size = parameters[0].intValue();
+			int chunkBitwidth = parameters[1].intValue();
+			int numOfCarries = assignedWires.length;
+			BigInteger prevCarry = BigInteger.ZERO;
+			for (int i = 0; i < numOfCarries; i++) {
+				BigInteger a = evaluator.getWireValue(usedWires[i]);
+				BigInteger b = evaluator.getWireValue(usedWires[group1Size + i]);
+				BigInteger carryValue = parameters[2 + i].add(a)
+						.subtract(b).subtract(parameters[2 + numOfCarries + i])
+						.add(prevCarry);
+				carryValue = carryValue.shiftRight(parameters[2 + 2 * numOfCarries + i].intValue()
+						* chunkBitwidth);
+				evaluator.setWireValue(assignedWires[i], carryValue);
+				prevCarry = carryValue;
+			}
+		}
+	}
+
+	// finds the first chunk (from the most significant one) in the second
+	// element that is greater than the corresponding chunk of the first one
+	public static class LessThanComputation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			int length = assignedWires.length;
+			boolean found = false;
+			for (int i = length - 1; i >= 0; i--) {
+				BigInteger v1 = evaluator.getWireValue(usedWires[i]);
+				BigInteger v2 = evaluator.getWireValue(usedWires[length + i]);
+
+				boolean check = v2.compareTo(v1) > 0 && !found;
+				evaluator.setWireValue(assignedWires[i],
+						check ? BigInteger.ONE : BigInteger.ZERO);
+				if (check)
+					found = true;
+			}
+		}
+	}
 }
@@ -32,10 +32,29 @@ public class Config {
 	public static final int LOG2_FIELD_PRIME = FIELD_PRIME.toString(2).length();
 	public static final String LIBSNARK_EXEC = properties.getProperty("PATH_TO_LIBSNARK_EXEC");
 	
-	public static boolean runningMultiGenerators = properties.getProperty("RUNNING_GENERATORS_IN_PARALLEL").equals("1");	
+	/** @deprecated not used, as the active generator is always tracked per thread */
+	@Deprecated
+	public static boolean runningMultiGenerators = "1".equals(properties.getProperty("RUNNING_GENERATORS_IN_PARALLEL"));
 	public static boolean hexOutputEnabled = properties.getProperty("PRINT_HEX").equals("1");
 	public static boolean outputVerbose = properties.getProperty("OUTPUT_VERBOSE").equals("1");
 	public static boolean debugVerbose = properties.getProperty("DEBUG_VERBOSE").equals("1");
 
+	// in the production mode, the descriptions of the wires created by the
+	// array methods of CircuitGenerator (e.g. "x 0", "x 1", ...) are not
+	// built when the wires are created, but only when they are printed or
+	// written to the circuit file. This saves a string per wire in large
+	// circuits. The multiplication gates that make output array elements
+	// variables are then annotated with the array description only.
+	public static boolean productionMode = "1".equals(properties.getProperty("PRODUCTION_MODE"));
+
+	// the directory where expensive precomputations (e.g. the coefficients of
+	// the AES S-box gadgets) are cached across runs. Not cached on the disk
+	// if empty.
+	public static String precomputationCacheDir = emptyToNull(properties.getProperty("PRECOMPUTATION_CACHE_DIR"));
+
 	public static boolean printStackTraceAtWarnings = false;
+
+	private static String emptyToNull(String s) {
+		return s == null || s.trim().isEmpty() ? null : s.trim();
+	}
 }
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+
+/**
+ * Keeps the wire values in memory, in a BigInteger array (the storage of the
+ * default CircuitEvaluator).
+ */
+public class ArrayValueStore implements WireValueStore {
+
+	private final BigInteger[] values;
+
+	public ArrayValueStore(int numWires) {
+		this(new BigInteger[numWires]);
+	}
+
+	/**
+	 * Wraps the given array, without copying it.
+	 */
+	public ArrayValueStore(BigInteger[] values) {
+		this.values = values;
+	}
+
+	@Override
+	public BigInteger get(int wireId) {
+		return values[wireId];
+	}
+
+	@Override
+	public void set(int wireId, BigInteger value) {
+		values[wireId] = value;
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	public BigInteger[] getValues() {
+		return values;
+	}
+}
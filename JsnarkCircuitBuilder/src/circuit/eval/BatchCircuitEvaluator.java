@@ -0,0 +1,675 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import circuit.config.Config;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Evaluates the same circuit for many input assignments. The circuit is
+ * compiled once (see CompiledCircuit), and each batch of instances is
+ * evaluated in a single pass over the tape: the values of every wire are
+ * stored for all the instances of the batch consecutively (one lane per
+ * instance), and every operation is applied to all the lanes before moving to
+ * the next one.
+ *
+ * The inputs of each instance are assigned by a Consumer<CircuitEvaluator>,
+ * similar to CircuitGenerator.generateSampleInput(). The witness of each
+ * instance is returned as a CircuitEvaluator, which can be used as usual
+ * (getWireValue(), getAssignment(), writeInputFile(), ..). If any instance
+ * fails, the evaluation of the whole batch fails.
+ *
+ * When the field prime is not supported by MontgomeryField, the instances are
+ * evaluated one after the other using the same compiled circuit.
+ *
+ * In the bit-sliced mode (see setBitSliced()), the boolean parts of the
+ * circuit (e.g. the xor operations of hash functions and ciphers) are
+ * evaluated on 64 instances at once: the values of a wire that is binary by
+ * construction are kept in one long per 64 lanes, so that an XOR, OR or AND
+ * gate costs a single long operation for all of them. The field values of
+ * the binary wires are written back at the end of each boolean region, i.e.
+ * each run of consecutive tape records that can be evaluated on the bits.
+ */
+public class BatchCircuitEvaluator {
+
+	private static final int LIMBS = MontgomeryField.LIMBS;
+
+	private CircuitGenerator circuitGenerator;
+	private CompiledCircuit compiledCircuit;
+	private int batchSize;
+	private boolean packed;
+
+	// the constants of the tape in Montgomery form
+	private long[] constants;
+	private long[] tmp = new long[2 * LIMBS];
+
+	// the bit-sliced mode, and its plan, computed when first needed: the
+	// binary wires, the tape positions of the records evaluated on the bits,
+	// and the binary wires to write back after the last record of every
+	// boolean region
+	private boolean bitSliced;
+	private BitSet bitWires;
+	private BitSet slicedRecords;
+	private HashMap<Integer, int[]> writeBacks;
+
+	// throughput metrics
+	private int lastBatchSize;
+	private long lastBatchTime;
+	private long numWitnesses;
+	private long totalTime;
+
+	public BatchCircuitEvaluator(CircuitGenerator circuitGenerator, int batchSize) {
+		this(new CompiledCircuit(circuitGenerator), batchSize);
+	}
+
+	public BatchCircuitEvaluator(CompiledCircuit compiledCircuit, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("The batch size must be positive");
+		}
+		if ((long) compiledCircuit.getNumWires() * batchSize * LIMBS > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The batch is too large for this circuit");
+		}
+		this.circuitGenerator = compiledCircuit.getCircuitGenerator();
+		this.compiledCircuit = compiledCircuit;
+		this.batchSize = batchSize;
+		this.packed = MontgomeryField.isSupported();
+		if (packed) {
+			BigInteger[] constantValues = compiledCircuit.getConstants();
+			constants = new long[constantValues.length * LIMBS];
+			for (int i = 0; i < constantValues.length; i++) {
+				MontgomeryField.toMontgomery(constantValues[i].mod(Config.FIELD_PRIME), constants, i * LIMBS);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the given instances. When their number exceeds the batch
+	 * size, they are evaluated in batches of the batch size, each with its
+	 * own storage, so all the returned evaluators remain valid.
+	 *
+	 * @param inputs
+	 *            assign the input (and prover witness) values of each instance
+	 * @return the evaluators of the instances, in the order of the inputs
+	 */
+	public CircuitEvaluator[] evaluate(List<? extends Consumer<CircuitEvaluator>> inputs) {
+		CircuitEvaluator[] evaluators = new CircuitEvaluator[inputs.size()];
+		for (int from = 0; from < inputs.size(); from += batchSize) {
+			List<? extends Consumer<CircuitEvaluator>> batch = inputs.subList(from,
+					Math.min(from + batchSize, inputs.size()));
+			long[] values = packed ? allocateValues(batch.size()) : null;
+			System.arraycopy(evaluateBatch(batch, values), 0, evaluators, from, batch.size());
+		}
+		return evaluators;
+	}
+
+	/**
+	 * Evaluates all the instances provided by the iterator, in batches. The
+	 * witness of each instance is passed to the handler, and is only valid
+	 * until the handler returns, as its storage is reused for the next batch.
+	 */
+	public void evaluate(Iterator<? extends Consumer<CircuitEvaluator>> inputs, Consumer<CircuitEvaluator> handler) {
+		long[] values = null;
+		ArrayList<Consumer<CircuitEvaluator>> batch = new ArrayList<Consumer<CircuitEvaluator>>(batchSize);
+		while (inputs.hasNext()) {
+			batch.clear();
+			while (inputs.hasNext() && batch.size() < batchSize) {
+				batch.add(inputs.next());
+			}
+			if (packed && values == null) {
+				// stale values from the previous batch are never read, as
+				// the assigned wires are tracked per batch
+				values = allocateValues(batchSize);
+			}
+			for (CircuitEvaluator evaluator : evaluateBatch(batch, values)) {
+				handler.accept(evaluator);
+			}
+		}
+	}
+
+	private long[] allocateValues(int lanes) {
+		long size = (long) compiledCircuit.getNumWires() * lanes * LIMBS;
+		if (lanes > batchSize || size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The batch is too large for this circuit");
+		}
+		return new long[(int) size];
+	}
+
+	private CircuitEvaluator[] evaluateBatch(List<? extends Consumer<CircuitEvaluator>> inputs, long[] values) {
+
+		int n = inputs.size();
+		System.out.println("Running Batch Circuit Evaluator for < " + circuitGenerator.getName() + " > (" + n
+				+ " instances)");
+		long startTime = System.nanoTime();
+
+		CircuitEvaluator[] evaluators = new CircuitEvaluator[n];
+		if (!packed) {
+			for (int i = 0; i < n; i++) {
+				evaluators[i] = new CircuitEvaluator(circuitGenerator);
+				inputs.get(i).accept(evaluators[i]);
+				compiledCircuit.evaluate(evaluators[i]);
+				checkAssignment(evaluators[i].getAssignment(), i);
+			}
+		} else {
+			// the lanes may be fewer than the allocated ones in the last batch
+			int lanes = values.length / (compiledCircuit.getNumWires() * LIMBS);
+			BitSet sharedAssigned = new BitSet(compiledCircuit.getNumWires());
+			int oneId = circuitGenerator.getOneWire().getWireId();
+			for (int l = 0; l < lanes; l++) {
+				MontgomeryField.setOne(values, (oneId * lanes + l) * LIMBS);
+			}
+			sharedAssigned.set(oneId);
+
+			PackedCircuitEvaluator[] lanesEvaluators = new PackedCircuitEvaluator[n];
+			for (int i = 0; i < n; i++) {
+				lanesEvaluators[i] = new PackedCircuitEvaluator(circuitGenerator, values, sharedAssigned, lanes, i);
+				inputs.get(i).accept(lanesEvaluators[i]);
+				for (int id : compiledCircuit.getInputWireIds()) {
+					if (!lanesEvaluators[i].isAssigned(id)) {
+						throw new RuntimeException("Input wire#" + id + " has not been assigned in instance #" + i);
+					}
+				}
+			}
+			run(values, lanes, sharedAssigned, lanesEvaluators);
+			for (int i = 0; i < n; i++) {
+				for (int id = 0; id < compiledCircuit.getNumWires(); id++) {
+					if (!lanesEvaluators[i].isAssigned(id)) {
+						throw new RuntimeException("Wire#" + id + "is without value in instance #" + i);
+					}
+				}
+				evaluators[i] = lanesEvaluators[i];
+			}
+		}
+
+		lastBatchSize = n;
+		lastBatchTime = System.nanoTime() - startTime;
+		numWitnesses += n;
+		totalTime += lastBatchTime;
+		System.out.println("Batch Circuit Evaluation Done for < " + circuitGenerator.getName() + " > :: " + n
+				+ " instances in " + lastBatchTime / 1000000 + " ms (" + String.format("%.1f", getLastThroughput())
+				+ " instances/s)\n\n");
+		return evaluators;
+	}
+
+	private void checkAssignment(BigInteger[] assignment, int instance) {
+		for (int i = 0; i < assignment.length; i++) {
+			if (assignment[i] == null) {
+				throw new RuntimeException("Wire#" + i + "is without value in instance #" + instance);
+			}
+		}
+	}
+
+	private void run(long[] v, int lanes, BitSet sharedAssigned, PackedCircuitEvaluator[] evaluators) {
+
+		final int[] t = compiledCircuit.getTape();
+		final int length = compiledCircuit.getTapeLength();
+		final Instruction[] instructions = compiledCircuit.getInstructions();
+		final int n = evaluators.length;
+		final int stride = lanes * LIMBS;
+		// the bits of the binary wires, in groups of 64 lanes
+		final int groups = (n + 63) >>> 6;
+		final long[] slices = bitSliced ? new long[compiledCircuit.getNumWires() * groups] : null;
+		int check = 0;
+		int pc = 0;
+		while (pc < length) {
+			int start = pc;
+			check = checkInputs(check, pc, sharedAssigned, evaluators);
+			if (slices != null && slicedRecords.get(pc)) {
+				pc = runSliced(pc, v, slices, groups, lanes, n, sharedAssigned);
+				int[] wires = writeBacks.get(start);
+				if (wires != null) {
+					writeBack(wires, v, slices, groups, stride, n);
+				}
+				continue;
+			}
+			switch (t[pc]) {
+			case CompiledCircuit.MUL: {
+				int in1 = t[pc + 1] * stride, in2 = t[pc + 2] * stride, out = t[pc + 3] * stride;
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					MontgomeryField.mul(v, out + o, v, in1 + o, v, in2 + o);
+				}
+				sharedAssigned.set(t[pc + 3]);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.ADD: {
+				int k = t[pc + 1];
+				int out = t[pc + 2 + k];
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					MontgomeryField.copy(v, t[pc + 2] * stride + o, tmp, 0);
+					for (int i = 1; i < k; i++) {
+						MontgomeryField.add(tmp, 0, tmp, 0, v, t[pc + 2 + i] * stride + o);
+					}
+					MontgomeryField.copy(tmp, 0, v, out * stride + o);
+				}
+				sharedAssigned.set(out);
+				pc += k + 3;
+				break;
+			}
+			case CompiledCircuit.CONST_MUL: {
+				int in = t[pc + 1] * stride, out = t[pc + 2] * stride, c = t[pc + 3] * LIMBS;
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					MontgomeryField.mul(v, out + o, v, in + o, constants, c);
+				}
+				sharedAssigned.set(t[pc + 2]);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.XOR:
+			case CompiledCircuit.OR: {
+				boolean xor = t[pc] == CompiledCircuit.XOR;
+				int in1 = t[pc + 1] * stride, in2 = t[pc + 2] * stride, out = t[pc + 3] * stride;
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					if (!MontgomeryField.isBinary(v, in1 + o) || !MontgomeryField.isBinary(v, in2 + o)) {
+						throw compiledCircuit.evaluationError(start, "Input(s) to " + (xor ? "XOR" : "OR")
+								+ " are not binary in instance #" + l + ".");
+					}
+					boolean result = xor ? !MontgomeryField.equals(v, in1 + o, v, in2 + o) : MontgomeryField.isOne(
+							v, in1 + o) || MontgomeryField.isOne(v, in2 + o);
+					setBit(v, out + o, result);
+				}
+				sharedAssigned.set(t[pc + 3]);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.SPLIT: {
+				int k = t[pc + 2];
+				int in = t[pc + 1] * stride;
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					MontgomeryField.fromMontgomery(tmp, 0, v, in + o);
+					if (k < MontgomeryField.bitLength(tmp, 0)) {
+						throw compiledCircuit.evaluationError(start, "The number of bits does not fit in instance #"
+								+ l + " -- Input: " + MontgomeryField.fromLimbs(tmp, 0).toString(16));
+					}
+					for (int i = 0; i < k; i++) {
+						setBit(v, t[pc + 3 + i] * stride + o, MontgomeryField.testBit(tmp, 0, i));
+					}
+				}
+				for (int i = 0; i < k; i++) {
+					sharedAssigned.set(t[pc + 3 + i]);
+				}
+				pc += k + 3;
+				break;
+			}
+			case CompiledCircuit.PACK: {
+				int k = t[pc + 1];
+				int out = t[pc + 2 + k];
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					if (!pack(v, stride, o, t, pc + 2, k, out * stride + o)) {
+						throw compiledCircuit.evaluationError(start, "Input(s) to Pack are not binary in instance #"
+								+ l + ".");
+					}
+				}
+				sharedAssigned.set(out);
+				pc += k + 3;
+				break;
+			}
+			case CompiledCircuit.ZEROP: {
+				int in = t[pc + 1] * stride, out1 = t[pc + 2] * stride, out2 = t[pc + 3] * stride;
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					setBit(v, out2 + o, !MontgomeryField.isZero(v, in + o));
+					setBit(v, out1 + o, false); // a dummy value
+				}
+				sharedAssigned.set(t[pc + 2]);
+				sharedAssigned.set(t[pc + 3]);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.ASSERT: {
+				int in1 = t[pc + 1] * stride, in2 = t[pc + 2] * stride, out = t[pc + 3] * stride;
+				for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+					MontgomeryField.mul(tmp, 0, v, in1 + o, v, in2 + o);
+					if (!MontgomeryField.equals(tmp, 0, v, out + o)) {
+						System.out.println(MontgomeryField.fromMontgomery(v, in1 + o) + "*"
+								+ MontgomeryField.fromMontgomery(v, in2 + o) + "!="
+								+ MontgomeryField.fromMontgomery(v, out + o));
+						throw compiledCircuit.evaluationError(start, "Assertion Failed in instance #" + l);
+					}
+				}
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.EXTERNAL: {
+				Instruction e = instructions[t[pc + 1]];
+				for (PackedCircuitEvaluator evaluator : evaluators) {
+					e.evaluate(evaluator);
+					e.emit(evaluator);
+				}
+				pc += 2;
+				break;
+			}
+			default:
+				throw new IllegalStateException("Corrupted tape at " + pc);
+			}
+		}
+		checkInputs(check, length, sharedAssigned, evaluators);
+	}
+
+	// checks that the input and prover witness wires read by the records up
+	// to the given position are assigned in all the instances, as an
+	// unassigned value would be read as zero. The records of a bit-sliced
+	// region are checked after the region runs.
+	private int checkInputs(int check, int pc, BitSet sharedAssigned, PackedCircuitEvaluator[] evaluators) {
+		int[] checkPositions = compiledCircuit.getInputCheckPositions();
+		int[] checkWires = compiledCircuit.getInputCheckWires();
+		for (; check < checkPositions.length && checkPositions[check] <= pc; check++) {
+			int id = checkWires[check];
+			if (sharedAssigned.get(id)) {
+				continue;
+			}
+			for (int l = 0; l < evaluators.length; l++) {
+				if (!evaluators[l].isAssigned(id)) {
+					throw compiledCircuit.evaluationError(checkPositions[check],
+							"One of the inWires has not been assigned in instance #" + l);
+				}
+			}
+		}
+		return check;
+	}
+
+	/**
+	 * Enables or disables the bit-sliced evaluation of the boolean regions of
+	 * the circuit (see the class description). This has no effect when the
+	 * field prime is not supported by MontgomeryField.
+	 */
+	public void setBitSliced(boolean bitSliced) {
+		if (bitSliced && bitWires == null) {
+			planBitSlicing();
+		}
+		this.bitSliced = bitSliced && packed;
+	}
+
+	public boolean isBitSliced() {
+		return bitSliced;
+	}
+
+	/**
+	 * Returns the number of records of the tape that are evaluated on the bits
+	 * in the bit-sliced mode.
+	 */
+	public int getNumBitSlicedRecords() {
+		if (bitWires == null) {
+			planBitSlicing();
+		}
+		return slicedRecords.cardinality();
+	}
+
+	// finds the wires that are binary by construction (the outputs of splits,
+	// and of the boolean gates on binary wires), and the records that can be
+	// evaluated on their bits
+	private void planBitSlicing() {
+		final int[] t = compiledCircuit.getTape();
+		final int length = compiledCircuit.getTapeLength();
+		bitWires = new BitSet(compiledCircuit.getNumWires());
+		slicedRecords = new BitSet(length);
+		writeBacks = new HashMap<Integer, int[]>();
+		// the binary wires of the current region, whose field values are not
+		// written yet
+		ArrayList<Integer> region = new ArrayList<Integer>();
+		BitSet pending = new BitSet(compiledCircuit.getNumWires());
+		int last = -1;
+		int pc = 0;
+		while (pc < length) {
+			boolean sliced;
+			// a split of a binary wire of the current region needs its field
+			// value, so it starts a new region
+			boolean newRegion = false;
+			int firstOutput = 0;
+			int numOutputs = 0;
+			switch (t[pc]) {
+			case CompiledCircuit.SPLIT:
+				sliced = true;
+				newRegion = pending.get(t[pc + 1]);
+				firstOutput = pc + 3;
+				numOutputs = t[pc + 2];
+				break;
+			case CompiledCircuit.XOR:
+			case CompiledCircuit.OR:
+			case CompiledCircuit.MUL:
+				sliced = bitWires.get(t[pc + 1]) && bitWires.get(t[pc + 2]);
+				firstOutput = pc + 3;
+				numOutputs = 1;
+				break;
+			case CompiledCircuit.ZEROP:
+				// the first output is a dummy value, written directly
+				sliced = true;
+				newRegion = pending.get(t[pc + 1]);
+				firstOutput = pc + 3;
+				numOutputs = 1;
+				break;
+			case CompiledCircuit.PACK:
+				sliced = true;
+				for (int i = 0; i < t[pc + 1]; i++) {
+					sliced &= bitWires.get(t[pc + 2 + i]);
+				}
+				break;
+			default:
+				sliced = false;
+			}
+			if ((!sliced || newRegion) && last >= 0) {
+				writeBacks.put(last, toArray(region));
+				region.clear();
+				pending.clear();
+				last = -1;
+			}
+			if (sliced) {
+				for (int i = 0; i < numOutputs; i++) {
+					int id = t[firstOutput + i];
+					bitWires.set(id);
+					pending.set(id);
+					region.add(id);
+				}
+				slicedRecords.set(pc);
+				last = pc;
+			}
+			pc += compiledCircuit.getRecordLength(pc);
+		}
+		if (last >= 0) {
+			writeBacks.put(last, toArray(region));
+		}
+	}
+
+	private static int[] toArray(ArrayList<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	// evaluates a record on the bits of the lanes. Binary outputs are only
+	// written to the slices, and other outputs are written to the values.
+	// Returns the position of the next record.
+	private int runSliced(int pc, long[] v, long[] s, int groups, int lanes, int n, BitSet sharedAssigned) {
+		final int[] t = compiledCircuit.getTape();
+		final int stride = lanes * LIMBS;
+		switch (t[pc]) {
+		case CompiledCircuit.XOR:
+		case CompiledCircuit.OR:
+		case CompiledCircuit.MUL: {
+			int in1 = t[pc + 1] * groups, in2 = t[pc + 2] * groups, out = t[pc + 3] * groups;
+			if (t[pc] == CompiledCircuit.XOR) {
+				for (int g = 0; g < groups; g++) {
+					s[out + g] = s[in1 + g] ^ s[in2 + g];
+				}
+			} else if (t[pc] == CompiledCircuit.OR) {
+				for (int g = 0; g < groups; g++) {
+					s[out + g] = s[in1 + g] | s[in2 + g];
+				}
+			} else {
+				for (int g = 0; g < groups; g++) {
+					s[out + g] = s[in1 + g] & s[in2 + g];
+				}
+			}
+			sharedAssigned.set(t[pc + 3]);
+			return pc + 4;
+		}
+		case CompiledCircuit.SPLIT: {
+			int k = t[pc + 2];
+			int in = t[pc + 1] * stride;
+			for (int i = 0; i < k; i++) {
+				int out = t[pc + 3 + i] * groups;
+				for (int g = 0; g < groups; g++) {
+					s[out + g] = 0;
+				}
+			}
+			for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+				MontgomeryField.fromMontgomery(tmp, 0, v, in + o);
+				if (k < MontgomeryField.bitLength(tmp, 0)) {
+					throw compiledCircuit.evaluationError(pc, "The number of bits does not fit in instance #" + l
+							+ " -- Input: " + MontgomeryField.fromLimbs(tmp, 0).toString(16));
+				}
+				long laneBit = 1L << (l & 63);
+				int g = l >>> 6;
+				for (int i = 0; i < k && i < 64 * LIMBS; i++) {
+					if ((tmp[i >>> 6] >>> (i & 63) & 1) != 0) {
+						s[t[pc + 3 + i] * groups + g] |= laneBit;
+					}
+				}
+			}
+			for (int i = 0; i < k; i++) {
+				sharedAssigned.set(t[pc + 3 + i]);
+			}
+			return pc + k + 3;
+		}
+		case CompiledCircuit.ZEROP: {
+			int in = t[pc + 1] * stride, out1 = t[pc + 2] * stride, out2 = t[pc + 3] * groups;
+			for (int g = 0; g < groups; g++) {
+				s[out2 + g] = 0;
+			}
+			for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+				if (!MontgomeryField.isZero(v, in + o)) {
+					s[out2 + (l >>> 6)] |= 1L << (l & 63);
+				}
+				MontgomeryField.setZero(v, out1 + o); // a dummy value
+			}
+			sharedAssigned.set(t[pc + 2]);
+			sharedAssigned.set(t[pc + 3]);
+			return pc + 4;
+		}
+		case CompiledCircuit.PACK: {
+			int k = t[pc + 1];
+			int out = t[pc + 2 + k] * stride;
+			for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+				int g = l >>> 6;
+				int shift = l & 63;
+				if (k > 64 * LIMBS) {
+					// rare: more bits than the limbs can hold before reduction
+					BigInteger sum = BigInteger.ZERO;
+					for (int i = 0; i < k; i++) {
+						if ((s[t[pc + 2 + i] * groups + g] >>> shift & 1) != 0) {
+							sum = sum.setBit(i);
+						}
+					}
+					MontgomeryField.toMontgomery(sum.mod(Config.FIELD_PRIME), v, out + o);
+				} else {
+					MontgomeryField.setZero(tmp, 0);
+					for (int i = 0; i < k; i++) {
+						tmp[i >>> 6] |= (s[t[pc + 2 + i] * groups + g] >>> shift & 1) << (i & 63);
+					}
+					MontgomeryField.reduce(tmp, 0);
+					MontgomeryField.toMontgomery(v, out + o, tmp, 0);
+				}
+			}
+			sharedAssigned.set(t[pc + 2 + k]);
+			return pc + k + 3;
+		}
+		default:
+			throw new IllegalStateException("Corrupted tape at " + pc);
+		}
+	}
+
+	// writes the field values of binary wires from their slices
+	private static void writeBack(int[] wires, long[] v, long[] s, int groups, int stride, int n) {
+		for (int id : wires) {
+			int offset = id * stride;
+			int slice = id * groups;
+			for (int l = 0, o = 0; l < n; l++, o += LIMBS) {
+				setBit(v, offset + o, (s[slice + (l >>> 6)] >>> (l & 63) & 1) != 0);
+			}
+		}
+	}
+
+	// returns false if one of the inputs is not binary
+	private boolean pack(long[] v, int stride, int o, int[] t, int from, int k, int out) {
+		for (int i = 0; i < k; i++) {
+			if (!MontgomeryField.isBinary(v, t[from + i] * stride + o)) {
+				return false;
+			}
+		}
+		if (k > 64 * LIMBS) {
+			// rare: more bits than the limbs can hold before reduction
+			BigInteger sum = BigInteger.ZERO;
+			for (int i = 0; i < k; i++) {
+				if (MontgomeryField.isOne(v, t[from + i] * stride + o)) {
+					sum = sum.setBit(i);
+				}
+			}
+			MontgomeryField.toMontgomery(sum.mod(Config.FIELD_PRIME), v, out);
+		} else {
+			MontgomeryField.setZero(tmp, 0);
+			for (int i = 0; i < k; i++) {
+				if (MontgomeryField.isOne(v, t[from + i] * stride + o)) {
+					tmp[i >>> 6] |= 1L << (i & 63);
+				}
+			}
+			MontgomeryField.reduce(tmp, 0);
+			MontgomeryField.toMontgomery(v, out, tmp, 0);
+		}
+		return true;
+	}
+
+	private static void setBit(long[] v, int offset, boolean bit) {
+		if (bit) {
+			MontgomeryField.setOne(v, offset);
+		} else {
+			MontgomeryField.setZero(v, offset);
+		}
+	}
+
+	public CompiledCircuit getCompiledCircuit() {
+		return compiledCircuit;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getLastBatchSize() {
+		return lastBatchSize;
+	}
+
+	/**
+	 * Returns the evaluation time of the last batch, in nanoseconds.
+	 */
+	public long getLastBatchTime() {
+		return lastBatchTime;
+	}
+
+	/**
+	 * Returns the number of instances evaluated per second in the last batch.
+	 */
+	public double getLastThroughput() {
+		return lastBatchTime == 0 ? 0 : lastBatchSize * 1e9 / lastBatchTime;
+	}
+
+	public long getNumWitnesses() {
+		return numWitnesses;
+	}
+
+	/**
+	 * Returns the number of instances evaluated per second in all the batches
+	 * so far.
+	 */
+	public double getThroughput() {
+		return totalTime == 0 ? 0 : numWitnesses * 1e9 / totalTime;
+	}
+}
@@ -9,34 +9,77 @@ import java.io.FileInputStream;
 import java.io.PrintWriter;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Scanner;
 
 import util.Util;
 import circuit.auxiliary.LongElement;
 import circuit.config.Config;
+import circuit.io.BinaryInputWriter;
 import circuit.operations.WireLabelInstruction;
 import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 import circuit.structure.WireArray;
 
 public class CircuitEvaluator {
 
+	/**
+	 * How evaluate() handles the native hints of the gadgets (see NativeHint).
+	 */
+	public enum NativeHintMode {
+		// the hints are not used
+		IGNORE,
+		// the gates whose outputs are all hinted are skipped
+		USE,
+		// all the gates are evaluated, and the hinted values are checked
+		// against them. Used for testing the hints.
+		VERIFY
+	}
+
 	private CircuitGenerator circuitGenerator;
 	private BigInteger[] valueAssignment;
 
+	private NativeHintMode nativeHintMode = NativeHintMode.USE;
+	private int numSkippedInstructions;
+
+	private boolean witnessOnly;
+	// the wires released by the last evaluate() in the witness-only mode, and
+	// the largest number of values kept at once
+	private BitSet released;
+	private int maxLiveValues;
+
+	// the wires whose values changed during reevaluate(), and the number of
+	// instructions it evaluated
+	private BitSet changedWires;
+	private int numReevaluatedInstructions;
+
 	public CircuitEvaluator(CircuitGenerator circuitGenerator) {
-		this.circuitGenerator = circuitGenerator;
-		valueAssignment = new BigInteger[circuitGenerator.getNumWires()];
+		this(circuitGenerator, new BigInteger[circuitGenerator.getNumWires()]);
 		valueAssignment[circuitGenerator.getOneWire().getWireId()] = BigInteger.ONE;
 	}
 
+	/**
+	 * Used by subclasses that keep the wire values in their own storage. These
+	 * pass null, and override the value accessors and evaluate().
+	 */
+	protected CircuitEvaluator(CircuitGenerator circuitGenerator, BigInteger[] valueAssignment) {
+		this.circuitGenerator = circuitGenerator;
+		this.valueAssignment = valueAssignment;
+	}
+
 	public void setWireValue(Wire w, BigInteger v) {
 		if(v.signum() < 0 || v.compareTo(Config.FIELD_PRIME) >=0){
 			throw new IllegalArgumentException("Only positive values that are less than the modulus are allowed for this method.");
 		}
+		if (changedWires != null && !v.equals(valueAssignment[w.getWireId()])) {
+			changedWires.set(w.getWireId());
+		}
 		valueAssignment[w.getWireId()] = v;
 	}
 
@@ -94,14 +137,361 @@ public class CircuitEvaluator {
 
 		System.out.println("Running Circuit Evaluator for < "
 				+ circuitGenerator.getName() + " >");
-		LinkedHashMap<Instruction, Instruction> evalSequence = circuitGenerator
+		List<Instruction> evalSequence = circuitGenerator
 				.getEvaluationQueue();
 
-		for (Instruction e : evalSequence.keySet()) {
-			e.evaluate(this);
-			e.emit(this);
+		// the wires assigned by the hints (in the USE mode), or the hinted
+		// values to be checked (in the VERIFY mode). A hinted wire may be
+		// assigned by a gate after the end of its gadget, e.g. when packing
+		// the bits of an output.
+		final BitSet hintedWires = new BitSet();
+		final ArrayList<Wire> expectedWires = new ArrayList<Wire>();
+		final ArrayList<BigInteger> expectedValues = new ArrayList<BigInteger>();
+		Instruction hintEnd = null;
+		boolean hintActive = false;
+		numSkippedInstructions = 0;
+
+		// in the witness-only mode, the wires whose values are released after
+		// each instruction
+		int[] releaseStart = null;
+		int[] releasedWires = null;
+		released = null;
+		maxLiveValues = 0;
+		if (witnessOnly) {
+			if (nativeHintMode == NativeHintMode.VERIFY) {
+				throw new IllegalStateException("The native hints cannot be verified in the witness-only mode");
+			}
+			int[][] releases = planReleases(evalSequence);
+			releaseStart = releases[0];
+			releasedWires = releases[1];
+		}
+		int position = 0;
+
+		for (Instruction e : evalSequence) {
+			if (releaseStart != null && position > 0) {
+				release(releaseStart, releasedWires, position - 1);
+			}
+			position++;
+			if (e instanceof NativeHint) {
+				if (nativeHintMode == NativeHintMode.USE) {
+					((NativeHint) e).computeValues(this, (w, v) -> {
+						valueAssignment[w.getWireId()] = v;
+						hintedWires.set(w.getWireId());
+					});
+				} else if (nativeHintMode == NativeHintMode.VERIFY) {
+					((NativeHint) e).computeValues(this, (w, v) -> {
+						expectedWires.add(w);
+						expectedValues.add(v);
+					});
+				}
+				// a hint within the gadget of another one is checked at the
+				// end of the outer one
+				if (!hintActive) {
+					hintEnd = ((NativeHint) e).getLastInstruction();
+					hintActive = hintEnd != null;
+				}
+				continue;
+			}
+			if (!hintedWires.isEmpty() && skipIfHinted(e, hintedWires)) {
+				numSkippedInstructions++;
+			} else {
+				e.evaluate(this);
+				e.emit(this);
+			}
+			if (hintActive && e == hintEnd) {
+				hintActive = false;
+				checkHintedValues(expectedWires, expectedValues, false);
+			}
+		}
+		if (releaseStart != null && position > 0) {
+			release(releaseStart, releasedWires, position - 1);
+		}
+		checkHintedValues(expectedWires, expectedValues, true);
+		// check that each wire has been assigned a value. The released ones
+		// have been checked before being released.
+		for (int i = 0; i < valueAssignment.length; i++) {
+			if (valueAssignment[i] == null && (releaseStart == null || !released.get(i))) {
+				throw new RuntimeException("Wire#" + i + "is without value");
+			}
+		}
+		System.out.println("Circuit Evaluation Done for < "
+				+ circuitGenerator.getName() + " >\n\n");
+
+	}
+
+	// returns the positions in the evaluation queue after which the values of
+	// the wires are no longer needed, as { start, wires }: the wires released
+	// after the instruction at position i are wires[start[i] .. start[i + 1]).
+	// The values of the inputs, the prover witnesses and the outputs are kept.
+	private int[][] planReleases(List<Instruction> evalSequence) {
+		int numWires = valueAssignment.length;
+		int[] assignedAt = new int[numWires];
+		int[] lastUse = new int[numWires];
+		Arrays.fill(assignedAt, -1);
+		Arrays.fill(lastUse, -1);
+		BitSet kept = new BitSet(numWires);
+		kept.set(circuitGenerator.getOneWire().getWireId());
+		// an instruction that does not declare the wires it reads may read
+		// any wire assigned before it
+		int lastUnknown = -1;
+		int position = 0;
+		for (Instruction e : evalSequence) {
+			if (e instanceof WireLabelInstruction) {
+				LabelType type = ((WireLabelInstruction) e).getType();
+				if (type != LabelType.debug) {
+					kept.set(((WireLabelInstruction) e).getWire().getWireId());
+				}
+			}
+			Wire[] used = e.getUsedWires();
+			Wire[] assigned = e instanceof BasicOp && !(e instanceof AssertBasicOp) ? ((BasicOp) e).getOutputs() : e
+					.getAssignedWires();
+			if (used == null) {
+				lastUnknown = position;
+			} else {
+				for (Wire w : used) {
+					markUsed(w, position, lastUse);
+				}
+			}
+			if (assigned != null) {
+				for (Wire w : assigned) {
+					if (w.getWireId() != -1 && assignedAt[w.getWireId()] == -1) {
+						assignedAt[w.getWireId()] = position;
+					}
+				}
+			}
+			position++;
+		}
+
+		int numPositions = position;
+		int[] releaseAt = new int[numWires];
+		int[] start = new int[numPositions + 1];
+		int[] numAssigned = new int[numPositions];
+		int numLive = 0;
+		for (int i = 0; i < numWires; i++) {
+			if (assignedAt[i] == -1) {
+				numLive++;
+			} else {
+				numAssigned[assignedAt[i]]++;
+			}
+			int last = Math.max(assignedAt[i], lastUse[i]);
+			if (lastUnknown > assignedAt[i]) {
+				last = Math.max(last, lastUnknown);
+			}
+			if (kept.get(i) || last == -1) {
+				releaseAt[i] = -1;
+			} else {
+				releaseAt[i] = last;
+				start[last + 1]++;
+			}
+		}
+		for (int i = 0; i < numPositions; i++) {
+			start[i + 1] += start[i];
+		}
+		maxLiveValues = numLive;
+		for (int i = 0; i < numPositions; i++) {
+			numLive += numAssigned[i];
+			maxLiveValues = Math.max(maxLiveValues, numLive);
+			numLive -= start[i + 1] - start[i];
+		}
+		int[] wires = new int[start[numPositions]];
+		int[] next = Arrays.copyOf(start, numPositions);
+		for (int i = 0; i < numWires; i++) {
+			if (releaseAt[i] != -1) {
+				wires[next[releaseAt[i]]++] = i;
+			}
+		}
+		released = new BitSet(numWires);
+		return new int[][] { start, wires };
+	}
+
+	// the evaluator may obtain the value of a wire from its bits (see
+	// getWireValue()), so the bits are used as well
+	private static void markUsed(Wire w, int position, int[] lastUse) {
+		if (w.getWireId() != -1) {
+			lastUse[w.getWireId()] = position;
+		}
+		WireArray bits = w.getBitWiresIfExistAlready();
+		if (bits != null) {
+			for (int i = 0; i < bits.size(); i++) {
+				if (bits.get(i).getWireId() != -1) {
+					lastUse[bits.get(i).getWireId()] = position;
+				}
+			}
+		}
+	}
+
+	private void release(int[] start, int[] wires, int position) {
+		for (int i = start[position]; i < start[position + 1]; i++) {
+			int id = wires[i];
+			if (valueAssignment[id] == null) {
+				throw new RuntimeException("Wire#" + id + "is without value");
+			}
+			valueAssignment[id] = null;
+			released.set(id);
+		}
+	}
+
+	// returns true if all the wires assigned by the instruction are hinted.
+	// Otherwise, the hinted values of its outputs are removed, so that the
+	// instruction assigns them. Assertions and labels are never skipped.
+	private boolean skipIfHinted(Instruction e, BitSet hintedWires) {
+		Wire[] outputs;
+		if (e instanceof AssertBasicOp || e instanceof WireLabelInstruction) {
+			return false;
+		} else if (e instanceof BasicOp) {
+			outputs = ((BasicOp) e).getOutputs();
+		} else {
+			outputs = e.getAssignedWires();
+		}
+		if (outputs == null || outputs.length == 0) {
+			return false;
+		}
+		boolean allHinted = true;
+		for (Wire w : outputs) {
+			allHinted &= hintedWires.get(w.getWireId());
+		}
+		if (!allHinted) {
+			for (Wire w : outputs) {
+				if (hintedWires.get(w.getWireId())) {
+					valueAssignment[w.getWireId()] = null;
+				}
+			}
+		}
+		return allHinted;
+	}
+
+	// checks the hinted values of the wires that have been evaluated, and
+	// removes them from the lists
+	private void checkHintedValues(ArrayList<Wire> wires, ArrayList<BigInteger> values, boolean all) {
+		int remaining = 0;
+		for (int i = 0; i < wires.size(); i++) {
+			Wire w = wires.get(i);
+			BigInteger actual = valueAssignment[w.getWireId()];
+			if (actual == null && !all) {
+				wires.set(remaining, w);
+				values.set(remaining++, values.get(i));
+			} else if (actual == null || !actual.equals(values.get(i))) {
+				System.err.println("Error - A native hint does not match the gates at wire #" + w.getWireId()
+						+ ": " + values.get(i) + " != " + actual);
+				throw new RuntimeException("Error During Evaluation");
+			}
+		}
+		wires.subList(remaining, wires.size()).clear();
+		values.subList(remaining, values.size()).clear();
+	}
+
+	/**
+	 * In the witness-only mode, evaluate() releases the value of every wire
+	 * after its last use, except for the inputs, the prover witnesses and the
+	 * outputs, which are enough for writeInputFile(). The values kept in
+	 * memory are then bounded by the wires that are live at each point of the
+	 * evaluation, instead of all the wires of the circuit. getWireValue()
+	 * returns null for the released wires.
+	 */
+	public void setWitnessOnly(boolean witnessOnly) {
+		this.witnessOnly = witnessOnly;
+	}
+
+	public boolean isWitnessOnly() {
+		return witnessOnly;
+	}
+
+	/**
+	 * Returns the number of wire values released by the last evaluate() in
+	 * the witness-only mode.
+	 */
+	public int getNumReleasedValues() {
+		return released == null ? 0 : released.cardinality();
+	}
+
+	/**
+	 * Returns the largest number of wire values kept at once by the last
+	 * evaluate() in the witness-only mode.
+	 */
+	public int getMaxLiveValues() {
+		return maxLiveValues;
+	}
+
+	public void setNativeHintMode(NativeHintMode nativeHintMode) {
+		this.nativeHintMode = nativeHintMode;
+	}
+
+	public NativeHintMode getNativeHintMode() {
+		return nativeHintMode;
+	}
+
+	/**
+	 * Returns the number of instructions that were not evaluated by the last
+	 * evaluate(), as their outputs were assigned by native hints.
+	 */
+	public int getNumSkippedInstructions() {
+		return numSkippedInstructions;
+	}
+
+	/**
+	 * Re-evaluates the circuit after the values of some wires (typically
+	 * inputs) changed, starting from the assignment of the last evaluation.
+	 * The new values of the changed wires are expected to be set before this
+	 * call. Only the instructions that read a wire whose value changed are
+	 * evaluated again, and the change propagates further only through the
+	 * outputs whose values actually changed. Instructions that do not declare
+	 * the wires they read are evaluated again after any change.
+	 * 
+	 * The native hints are not used, and the values released in the
+	 * witness-only mode cannot be recovered, so this is not supported after a
+	 * witness-only evaluation.
+	 */
+	public void reevaluate(Wire... changed) {
+
+		if (valueAssignment == null) {
+			throw new UnsupportedOperationException("This evaluator does not support the incremental evaluation");
+		}
+		if (getNumReleasedValues() > 0) {
+			throw new IllegalStateException("Some values were released by the witness-only evaluation");
+		}
+		System.out.println("Running Incremental Circuit Evaluator for < "
+				+ circuitGenerator.getName() + " >");
+		changedWires = new BitSet(valueAssignment.length);
+		numReevaluatedInstructions = 0;
+		for (Wire w : changed) {
+			changedWires.set(w.getWireId());
+		}
+		try {
+			for (Instruction e : circuitGenerator.getEvaluationQueue()) {
+				if (changedWires.isEmpty()) {
+					break;
+				}
+				if (e instanceof NativeHint) {
+					continue;
+				}
+				Wire[] used = e.getUsedWires();
+				if (used != null && !readsChangedWire(used)) {
+					continue;
+				}
+				if (e instanceof BasicOp && !(e instanceof AssertBasicOp)) {
+					// the operations write to the assignment directly, and
+					// expect their outputs to be unassigned
+					Wire[] outputs = ((BasicOp) e).getOutputs();
+					BigInteger[] previous = new BigInteger[outputs.length];
+					for (int i = 0; i < outputs.length; i++) {
+						previous[i] = valueAssignment[outputs[i].getWireId()];
+						valueAssignment[outputs[i].getWireId()] = null;
+					}
+					e.evaluate(this);
+					for (int i = 0; i < outputs.length; i++) {
+						if (!valueAssignment[outputs[i].getWireId()].equals(previous[i])) {
+							changedWires.set(outputs[i].getWireId());
+						}
+					}
+				} else {
+					e.evaluate(this);
+				}
+				e.emit(this);
+				numReevaluatedInstructions++;
+			}
+		} finally {
+			changedWires = null;
 		}
-		// check that each wire has been assigned a value
 		for (int i = 0; i < valueAssignment.length; i++) {
 			if (valueAssignment[i] == null) {
 				throw new RuntimeException("Wire#" + i + "is without value");
@@ -109,23 +499,60 @@ public class CircuitEvaluator {
 		}
 		System.out.println("Circuit Evaluation Done for < "
 				+ circuitGenerator.getName() + " >\n\n");
+	}
 
+	private boolean readsChangedWire(Wire[] used) {
+		for (Wire w : used) {
+			if (w.getWireId() != -1 && changedWires.get(w.getWireId())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of instructions evaluated by the last reevaluate().
+	 */
+	public int getNumReevaluatedInstructions() {
+		return numReevaluatedInstructions;
+	}
+
+	/**
+	 * Evaluates a circuit compiled in advance. This is faster than evaluate()
+	 * when the same circuit is evaluated many times with different inputs.
+	 */
+	public void evaluate(CompiledCircuit compiledCircuit) {
+
+		if (compiledCircuit.getNumWires() != valueAssignment.length) {
+			throw new IllegalArgumentException("The compiled circuit does not match the evaluator");
+		}
+		System.out.println("Running Circuit Evaluator for < "
+				+ circuitGenerator.getName() + " >");
+		compiledCircuit.evaluate(this);
+		// check that each wire has been assigned a value
+		for (int i = 0; i < valueAssignment.length; i++) {
+			if (valueAssignment[i] == null) {
+				throw new RuntimeException("Wire#" + i + "is without value");
+			}
+		}
+		System.out.println("Circuit Evaluation Done for < "
+				+ circuitGenerator.getName() + " >\n\n");
 	}
 
 	public void writeInputFile() {
 		try {
-			LinkedHashMap<Instruction, Instruction> evalSequence = circuitGenerator
+			List<Instruction> evalSequence = circuitGenerator
 					.getEvaluationQueue();
 
 			PrintWriter printWriter = new PrintWriter(
 					circuitGenerator.getName() + ".in");
-			for (Instruction e : evalSequence.keySet()) {
+			for (Instruction e : evalSequence) {
 				if (e instanceof WireLabelInstruction
 						&& (((WireLabelInstruction) e).getType() == LabelType.input || ((WireLabelInstruction) e)
 								.getType() == LabelType.nizkinput)) {
-					int id = ((WireLabelInstruction) e).getWire().getWireId();
-					printWriter.println(id + " "
-							+ valueAssignment[id].toString(16));
+					Wire w = ((WireLabelInstruction) e).getWire();
+					printWriter.println(w.getWireId() + " "
+							+ getWireValue(w).toString(16));
 				}
 			}
 			printWriter.close();
@@ -135,6 +562,32 @@ public class CircuitEvaluator {
 		}
 	}
 
+	/**
+	 * Same as writeInputFile(), but in the binary format (see
+	 * circuit.io.BinaryFormat).
+	 */
+	public void writeBinaryInputFile() {
+		try {
+			List<Instruction> evalSequence = circuitGenerator
+					.getEvaluationQueue();
+
+			BinaryInputWriter writer = new BinaryInputWriter(
+					circuitGenerator.getName() + ".in.bin");
+			for (Instruction e : evalSequence) {
+				if (e instanceof WireLabelInstruction
+						&& (((WireLabelInstruction) e).getType() == LabelType.input || ((WireLabelInstruction) e)
+								.getType() == LabelType.nizkinput)) {
+					Wire w = ((WireLabelInstruction) e).getWire();
+					writer.write(w.getWireId(), getWireValue(w));
+				}
+			}
+			writer.close();
+
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * An independent old method for testing.
 	 * 
@@ -321,4 +774,8 @@ public class CircuitEvaluator {
 		return valueAssignment;
 	}
 
+	public CircuitGenerator getCircuitGenerator() {
+		return circuitGenerator;
+	}
+
 }
@@ -0,0 +1,459 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+import circuit.config.Config;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.NonZeroCheckBasicOp;
+import circuit.operations.primitive.ORBasicOp;
+import circuit.operations.primitive.PackBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.operations.primitive.XorBasicOp;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * The evaluation queue of a circuit generator lowered into a flat int[] tape of
+ * opcodes and wire ids, with side tables for the constants of const-mul gates
+ * and for the instructions that cannot be lowered (e.g. the ones specified via
+ * specifyProverWitnessComputation, or output labels).
+ *
+ * The check done by BasicOp.evaluate() on every run that each output is
+ * assigned once is done here at compile time, while inputs that were not
+ * assigned are only detected when they are used. A compiled circuit can then
+ * be evaluated any number of times, with different inputs, through
+ * CircuitEvaluator.evaluate(CompiledCircuit).
+ *
+ * Tape layout (one record per instruction):
+ *
+ * <pre>
+ * MUL, XOR, OR, ASSERT : op in1 in2 out
+ * CONST_MUL            : op in out constIndex
+ * ADD, PACK            : op n in_1 .. in_n out
+ * SPLIT                : op in n out_1 .. out_n
+ * ZEROP                : op in out1 out2
+ * EXTERNAL             : op instructionIndex
+ * </pre>
+ */
+public class CompiledCircuit {
+
+	public static final int MUL = 0;
+	public static final int ADD = 1;
+	public static final int CONST_MUL = 2;
+	public static final int XOR = 3;
+	public static final int OR = 4;
+	public static final int SPLIT = 5;
+	public static final int PACK = 6;
+	public static final int ZEROP = 7;
+	public static final int ASSERT = 8;
+	public static final int EXTERNAL = 9;
+
+	private final CircuitGenerator circuitGenerator;
+	private final int numWires;
+	private int[] tape;
+	private int tapeLength;
+	private BigInteger[] constants;
+	private Instruction[] instructions;
+	private int[] inputWireIds;
+	// the input and prover witness wires read by the tape, with the position
+	// of the first record reading each, by increasing position
+	private int[] inputCheckPositions;
+	private int[] inputCheckWires;
+
+	public CompiledCircuit(CircuitGenerator circuitGenerator) {
+		this.circuitGenerator = circuitGenerator;
+		this.numWires = circuitGenerator.getNumWires();
+		compile();
+	}
+
+	private void compile() {
+
+		tape = new int[1024];
+		ArrayList<BigInteger> constantList = new ArrayList<BigInteger>();
+		HashMap<BigInteger, Integer> constantIndices = new HashMap<BigInteger, Integer>();
+		ArrayList<Instruction> instructionList = new ArrayList<Instruction>();
+		ArrayList<Integer> inputList = new ArrayList<Integer>();
+
+		// tracks the wires assigned by the gates and the input labels so far.
+		// Inputs that are not assigned are detected when the tape runs, as
+		// external instructions may assign any wire.
+		BitSet assigned = new BitSet(numWires);
+		assigned.set(circuitGenerator.getOneWire().getWireId());
+		// the input and prover witness wires that were not read yet
+		BitSet unchecked = new BitSet(numWires);
+		ArrayList<Integer> checkPositions = new ArrayList<Integer>();
+		ArrayList<Integer> checkWires = new ArrayList<Integer>();
+
+		for (Instruction e : circuitGenerator.getEvaluationQueue()) {
+			if (e instanceof BasicOp) {
+				BasicOp op = (BasicOp) e;
+				int start = tapeLength;
+				checkOutputs(op, assigned);
+				Wire[] in = op.getInputs();
+				Wire[] out = op.getOutputs();
+				if (op instanceof MulBasicOp || op instanceof XorBasicOp || op instanceof ORBasicOp
+						|| op instanceof AssertBasicOp) {
+					int code = op instanceof MulBasicOp ? MUL
+							: op instanceof XorBasicOp ? XOR : op instanceof ORBasicOp ? OR : ASSERT;
+					append(code, in[0].getWireId(), in[1].getWireId(), out[0].getWireId());
+				} else if (op instanceof ConstMulBasicOp) {
+					BigInteger c = ((ConstMulBasicOp) op).getConstInteger();
+					Integer idx = constantIndices.get(c);
+					if (idx == null) {
+						idx = constantList.size();
+						constantIndices.put(c, idx);
+						constantList.add(c);
+					}
+					append(CONST_MUL, in[0].getWireId(), out[0].getWireId(), idx);
+				} else if (op instanceof AddBasicOp || op instanceof PackBasicOp) {
+					append(op instanceof AddBasicOp ? ADD : PACK, in.length);
+					append(in);
+					append(out[0].getWireId());
+				} else if (op instanceof SplitBasicOp) {
+					append(SPLIT, in[0].getWireId(), out.length);
+					append(out);
+				} else if (op instanceof NonZeroCheckBasicOp) {
+					append(ZEROP, in[0].getWireId(), out[0].getWireId(), out[1].getWireId());
+				} else {
+					// an unknown operation type: evaluate it through its own
+					// implementation
+					append(EXTERNAL, instructionList.size());
+					instructionList.add(op);
+				}
+				if (!unchecked.isEmpty() && tape[start] != EXTERNAL) {
+					for (Wire w : op.getUsedWires()) {
+						if (unchecked.get(w.getWireId())) {
+							unchecked.clear(w.getWireId());
+							checkPositions.add(start);
+							checkWires.add(w.getWireId());
+						}
+					}
+				}
+			} else if (e instanceof WireLabelInstruction) {
+				WireLabelInstruction label = (WireLabelInstruction) e;
+				if (label.getType() == LabelType.input || label.getType() == LabelType.nizkinput) {
+					// values are provided from outside the circuit
+					assigned.set(label.getWire().getWireId());
+					unchecked.set(label.getWire().getWireId());
+					if (label.getType() == LabelType.input) {
+						inputList.add(label.getWire().getWireId());
+					}
+				} else {
+					// output and debug labels only have an effect in emit()
+					append(EXTERNAL, instructionList.size());
+					instructionList.add(label);
+				}
+			} else if (e instanceof NativeHint) {
+				// hints are only used by CircuitEvaluator.evaluate()
+				continue;
+			} else {
+				append(EXTERNAL, instructionList.size());
+				instructionList.add(e);
+			}
+		}
+
+		constants = constantList.toArray(new BigInteger[constantList.size()]);
+		instructions = instructionList.toArray(new Instruction[instructionList.size()]);
+		inputWireIds = new int[inputList.size()];
+		for (int i = 0; i < inputWireIds.length; i++) {
+			inputWireIds[i] = inputList.get(i);
+		}
+		inputCheckPositions = new int[checkPositions.size()];
+		inputCheckWires = new int[checkWires.size()];
+		for (int i = 0; i < inputCheckPositions.length; i++) {
+			inputCheckPositions[i] = checkPositions.get(i);
+			inputCheckWires[i] = checkWires.get(i);
+		}
+		if (tape.length != tapeLength) {
+			int[] trimmed = new int[tapeLength];
+			System.arraycopy(tape, 0, trimmed, 0, tapeLength);
+			tape = trimmed;
+		}
+	}
+
+	private void checkOutputs(BasicOp op, BitSet assigned) {
+		if (op instanceof AssertBasicOp) {
+			return;
+		}
+		for (Wire w : op.getOutputs()) {
+			if (assigned.get(w.getWireId())) {
+				System.err.println("Error - The outWire " + w + " is assigned more than once\n" + op);
+				throw new RuntimeException("Error During Compilation");
+			}
+			assigned.set(w.getWireId());
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		if (tapeLength + n > tape.length) {
+			int[] newTape = new int[Math.max(tape.length * 2, tapeLength + n)];
+			System.arraycopy(tape, 0, newTape, 0, tapeLength);
+			tape = newTape;
+		}
+	}
+
+	private void append(int... values) {
+		ensureCapacity(values.length);
+		for (int v : values) {
+			tape[tapeLength++] = v;
+		}
+	}
+
+	private void append(Wire[] wires) {
+		ensureCapacity(wires.length);
+		for (Wire w : wires) {
+			tape[tapeLength++] = w.getWireId();
+		}
+	}
+
+	/**
+	 * Runs the tape on the BigInteger assignment of the given evaluator. The
+	 * inputs are expected to be already set.
+	 */
+	void evaluate(CircuitEvaluator evaluator) {
+		evaluate(evaluator, new ArrayValueStore(evaluator.getAssignment()));
+	}
+
+	/**
+	 * Runs the tape on the given value store. The external instructions are
+	 * evaluated through the evaluator, which is expected to be backed by the
+	 * same store.
+	 */
+	void evaluate(CircuitEvaluator evaluator, WireValueStore a) {
+
+		final BigInteger prime = Config.FIELD_PRIME;
+		final int log2Prime = Config.LOG2_FIELD_PRIME;
+		final int[] t = tape;
+		final int length = tapeLength;
+		int pc = 0;
+		int start = 0;
+		try {
+			while (pc < length) {
+				start = pc;
+				switch (t[pc]) {
+				case MUL: {
+					BigInteger r = a.get(t[pc + 1]).multiply(a.get(t[pc + 2]));
+					if (r.compareTo(prime) > 0) {
+						r = r.mod(prime);
+					}
+					a.set(t[pc + 3], r);
+					pc += 4;
+					break;
+				}
+				case ADD: {
+					int n = t[pc + 1];
+					BigInteger s = a.get(t[pc + 2]);
+					for (int i = 1; i < n; i++) {
+						s = s.add(a.get(t[pc + 2 + i]));
+					}
+					a.set(t[pc + 2 + n], s.mod(prime));
+					pc += n + 3;
+					break;
+				}
+				case CONST_MUL: {
+					BigInteger r = a.get(t[pc + 1]).multiply(constants[t[pc + 3]]);
+					if (r.bitLength() >= log2Prime) {
+						r = r.mod(prime);
+					}
+					a.set(t[pc + 2], r);
+					pc += 4;
+					break;
+				}
+				case XOR:
+				case OR: {
+					BigInteger x = a.get(t[pc + 1]);
+					BigInteger y = a.get(t[pc + 2]);
+					if (!isBinary(x) || !isBinary(y)) {
+						throw evaluationError(start, "Input(s) to " + (t[pc] == XOR ? "XOR" : "OR")
+								+ " are not binary.");
+					}
+					a.set(t[pc + 3], t[pc] == XOR ? x.xor(y) : x.or(y));
+					pc += 4;
+					break;
+				}
+				case SPLIT: {
+					BigInteger v = a.get(t[pc + 1]);
+					int n = t[pc + 2];
+					if (n < v.bitLength()) {
+						throw evaluationError(start, "The number of bits does not fit -- Input: " + v.toString(16));
+					}
+					if (v.compareTo(prime) > 0) {
+						v = v.mod(prime);
+					}
+					for (int i = 0; i < n; i++) {
+						a.set(t[pc + 3 + i], v.testBit(i) ? BigInteger.ONE : BigInteger.ZERO);
+					}
+					pc += n + 3;
+					break;
+				}
+				case PACK: {
+					int n = t[pc + 1];
+					byte[] bytes = new byte[(n + 7) / 8 + 1];
+					for (int i = 0; i < n; i++) {
+						BigInteger bit = a.get(t[pc + 2 + i]);
+						if (!isBinary(bit)) {
+							throw evaluationError(start, "Input(s) to Pack are not binary.");
+						}
+						if (bit.signum() != 0) {
+							bytes[bytes.length - 1 - (i >>> 3)] |= 1 << (i & 7);
+						}
+					}
+					BigInteger sum = new BigInteger(bytes);
+					if (n >= log2Prime) {
+						sum = sum.mod(prime);
+					}
+					a.set(t[pc + 2 + n], sum);
+					pc += n + 3;
+					break;
+				}
+				case ZEROP: {
+					a.set(t[pc + 3], a.get(t[pc + 1]).signum() == 0 ? BigInteger.ZERO : BigInteger.ONE);
+					a.set(t[pc + 2], BigInteger.ZERO); // a dummy value
+					pc += 4;
+					break;
+				}
+				case ASSERT: {
+					BigInteger left = a.get(t[pc + 1]).multiply(a.get(t[pc + 2])).mod(prime);
+					if (!left.equals(a.get(t[pc + 3]))) {
+						System.out.println(a.get(t[pc + 1]) + "*" + a.get(t[pc + 2]) + "!=" + a.get(t[pc + 3]));
+						throw evaluationError(start, "Assertion Failed");
+					}
+					pc += 4;
+					break;
+				}
+				case EXTERNAL: {
+					Instruction e = instructions[t[pc + 1]];
+					e.evaluate(evaluator);
+					e.emit(evaluator);
+					pc += 2;
+					break;
+				}
+				default:
+					throw new IllegalStateException("Corrupted tape at " + pc);
+				}
+			}
+		} catch (NullPointerException e) {
+			if (t[start] == EXTERNAL) {
+				throw e;
+			}
+			// a wire that was supposed to be set from outside the circuit was
+			// not set
+			throw evaluationError(start, "One of the inWires has not been assigned");
+		}
+	}
+
+	private static boolean isBinary(BigInteger v) {
+		return v.signum() == 0 || v.equals(BigInteger.ONE);
+	}
+
+	/**
+	 * Returns the instruction of the evaluation queue that was compiled into
+	 * the tape record starting at the given position, for error reporting.
+	 */
+	Instruction getSourceInstruction(int position) {
+		int pc = 0;
+		int record = 0;
+		while (pc < position) {
+			pc += getRecordLength(pc);
+			record++;
+		}
+		for (Instruction e : circuitGenerator.getEvaluationQueue()) {
+			if (e instanceof WireLabelInstruction) {
+				LabelType type = ((WireLabelInstruction) e).getType();
+				if (type == LabelType.input || type == LabelType.nizkinput) {
+					continue;
+				}
+			}
+			if (e instanceof NativeHint) {
+				continue;
+			}
+			if (record-- == 0) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of tape entries used by the record starting at pc.
+	 */
+	public int getRecordLength(int pc) {
+		switch (tape[pc]) {
+		case ADD:
+		case PACK:
+		case SPLIT:
+			return 3 + (tape[pc] == SPLIT ? tape[pc + 2] : tape[pc + 1]);
+		case EXTERNAL:
+			return 2;
+		default:
+			return 4;
+		}
+	}
+
+	public int[] getTape() {
+		return tape;
+	}
+
+	public int getTapeLength() {
+		return tapeLength;
+	}
+
+	public BigInteger[] getConstants() {
+		return constants;
+	}
+
+	public Instruction[] getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Returns the ids of the wires labeled as inputs (excluding the prover
+	 * witness wires).
+	 */
+	public int[] getInputWireIds() {
+		return inputWireIds;
+	}
+
+	/**
+	 * Returns the tape positions of the first records that read input or
+	 * prover witness wires, in increasing order. Used with
+	 * getInputCheckWires() by the evaluators that cannot detect an unassigned
+	 * value when reading it.
+	 */
+	int[] getInputCheckPositions() {
+		return inputCheckPositions;
+	}
+
+	int[] getInputCheckWires() {
+		return inputCheckWires;
+	}
+
+	public int getNumWires() {
+		return numWires;
+	}
+
+	public CircuitGenerator getCircuitGenerator() {
+		return circuitGenerator;
+	}
+
+	/**
+	 * Reports an error in the evaluation of a tape record in the same way
+	 * BasicOp does, i.e. with the failing instruction printed.
+	 */
+	RuntimeException evaluationError(int position, String message) {
+		System.err.println("Error - " + message + " " + getSourceInstruction(position));
+		return new RuntimeException("Error During Evaluation");
+	}
+}
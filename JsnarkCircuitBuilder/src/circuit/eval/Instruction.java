@@ -3,6 +3,8 @@
  *******************************************************************************/
 package circuit.eval;
 
+import circuit.structure.Wire;
+
 public interface Instruction {
 
 	public void evaluate(CircuitEvaluator evaluator);
@@ -13,4 +15,21 @@ public interface Instruction {
 	public default boolean doneWithinCircuit() {
 		return false;
 	}
+
+	/**
+	 * Returns the wires whose values are read by this instruction, or null if
+	 * they are not known. Instructions that do not declare the wires they read
+	 * and assign are assumed to depend on all the instructions before them.
+	 */
+	public default Wire[] getUsedWires() {
+		return null;
+	}
+
+	/**
+	 * Returns the wires assigned by this instruction, or null if they are not
+	 * known. See getUsedWires().
+	 */
+	public default Wire[] getAssignedWires() {
+		return null;
+	}
 }
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+/**
+ * Groups the instructions of the evaluation queue into dependency levels: an
+ * instruction is placed one level after the latest instruction that assigns
+ * one of the wires it uses, so the instructions of the same level do not
+ * depend on each other and can be evaluated in any order. The dependencies are
+ * obtained from Instruction.getUsedWires() and getAssignedWires().
+ *
+ * An instruction that does not declare its wires (e.g. a prover witness
+ * computation specified without them) acts as a barrier: it is placed alone
+ * in a level after all the previous instructions, and all the instructions
+ * that follow it in the queue are placed after it. As a barrier may assign any
+ * wire, the wires that are not known to be assigned by then are considered
+ * available after its level.
+ *
+ * The output and debug labels are not part of the levels. They are kept
+ * separately in their original order (see getLabels()).
+ *
+ * Like CompiledCircuit, this only depends on the structure of the circuit, and
+ * can be reused for evaluating the circuit many times.
+ */
+public class LevelizedCircuit {
+
+	private CircuitGenerator circuitGenerator;
+	private int numWires;
+
+	// the instructions sorted by level, and the start of each level
+	private Instruction[] instructions;
+	private int[] levelStart;
+
+	private Instruction[] labels;
+	private int numBarriers;
+
+	public LevelizedCircuit(CircuitGenerator circuitGenerator) {
+		this.circuitGenerator = circuitGenerator;
+		this.numWires = circuitGenerator.getNumWires();
+		levelize();
+	}
+
+	private void levelize() {
+
+		// the level after which the value of each wire is available, or -1
+		// if it is not known yet
+		int[] availableAt = new int[numWires];
+		Arrays.fill(availableAt, -1);
+
+		ArrayList<Instruction> queue = new ArrayList<Instruction>();
+		ArrayList<Instruction> labelList = new ArrayList<Instruction>();
+		int[] levels = new int[circuitGenerator.getEvaluationQueue().size()];
+		int floor = 0;
+		int numLevels = 0;
+
+		for (Instruction e : circuitGenerator.getEvaluationQueue()) {
+			if (e instanceof WireLabelInstruction) {
+				WireLabelInstruction label = (WireLabelInstruction) e;
+				LabelType type = label.getType();
+				if (type == LabelType.input || type == LabelType.nizkinput) {
+					// prover witness values may also be assigned before the
+					// evaluation, in which case no instruction assigns them
+					int id = label.getWire().getWireId();
+					if (availableAt[id] == -1) {
+						availableAt[id] = 0;
+					}
+				} else {
+					labelList.add(e);
+				}
+				continue;
+			}
+			int level = getLevel(e, availableAt, floor);
+			if (level == -1) {
+				numBarriers++;
+				level = numLevels + 1;
+				floor = level;
+				Wire[] assigned = e.getAssignedWires();
+				if (assigned != null) {
+					for (Wire w : assigned) {
+						if (w.getWireId() != -1) {
+							availableAt[w.getWireId()] = level;
+						}
+					}
+				}
+			} else {
+				for (Wire w : e.getAssignedWires()) {
+					availableAt[w.getWireId()] = level;
+				}
+			}
+			numLevels = Math.max(numLevels, level);
+			levels[queue.size()] = level;
+			queue.add(e);
+		}
+
+		// sort the instructions by level, keeping the queue order within each
+		// level
+		levelStart = new int[numLevels + 1];
+		// (levels are counted from 1 above, and from 0 below)
+		for (int i = 0; i < queue.size(); i++) {
+			levelStart[levels[i]]++;
+		}
+		for (int l = 1; l <= numLevels; l++) {
+			levelStart[l] += levelStart[l - 1];
+		}
+		int[] next = Arrays.copyOf(levelStart, numLevels);
+		instructions = new Instruction[queue.size()];
+		for (int i = 0; i < queue.size(); i++) {
+			instructions[next[levels[i] - 1]++] = queue.get(i);
+		}
+		labels = labelList.toArray(new Instruction[0]);
+	}
+
+	// returns -1 if the dependencies of the instruction are not known. floor is
+	// the level of the last barrier, or 0.
+	private static int getLevel(Instruction e, int[] availableAt, int floor) {
+		Wire[] used = e.getUsedWires();
+		Wire[] assigned = e.getAssignedWires();
+		if (used == null || assigned == null) {
+			return -1;
+		}
+		int level = floor;
+		for (Wire w : used) {
+			int id = w.getWireId();
+			if (id == -1) {
+				return -1;
+			}
+			if (availableAt[id] != -1) {
+				level = Math.max(level, availableAt[id]);
+				continue;
+			}
+			// the value is not assigned yet, but the evaluator may obtain it
+			// from the bits of the wire (see CircuitEvaluator.getWireValue()),
+			// or it may have been assigned by the last barrier
+			WireArray bits = w.getBitWiresIfExistAlready();
+			if (bits == null) {
+				if (floor == 0) {
+					return -1;
+				}
+				continue;
+			}
+			for (int i = 0; i < bits.size(); i++) {
+				int bitId = bits.get(i).getWireId();
+				if (bitId == -1 || availableAt[bitId] == -1 && floor == 0) {
+					return -1;
+				}
+				level = Math.max(level, availableAt[bitId]);
+			}
+		}
+		for (Wire w : assigned) {
+			if (w.getWireId() == -1) {
+				return -1;
+			}
+		}
+		return level + 1;
+	}
+
+	public CircuitGenerator getCircuitGenerator() {
+		return circuitGenerator;
+	}
+
+	public int getNumWires() {
+		return numWires;
+	}
+
+	public int getNumLevels() {
+		return levelStart.length - 1;
+	}
+
+	/**
+	 * Returns the instructions sorted by level. The instructions of level l
+	 * are in the range [getLevelStart(l), getLevelStart(l + 1)).
+	 */
+	public Instruction[] getInstructions() {
+		return instructions;
+	}
+
+	public int getLevelStart(int level) {
+		return levelStart[level];
+	}
+
+	public int getLevelSize(int level) {
+		return levelStart[level + 1] - levelStart[level];
+	}
+
+	public int getMaxLevelSize() {
+		int max = 0;
+		for (int l = 0; l < getNumLevels(); l++) {
+			max = Math.max(max, getLevelSize(l));
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of instructions whose dependencies are unknown.
+	 */
+	public int getNumBarriers() {
+		return numBarriers;
+	}
+
+	/**
+	 * Returns the output and debug labels, in the order of the evaluation
+	 * queue.
+	 */
+	public Instruction[] getLabels() {
+		return labels;
+	}
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import circuit.config.Config;
+
+/**
+ * Keeps the wire values in a file, for circuits whose values do not fit in
+ * the heap. Each value takes a fixed number of bytes (the bytes of the field
+ * prime, rounded up so that the top bit is free and marks the assigned
+ * values), and the file is accessed through memory-mapped pages. Only the
+ * most recently used pages are kept mapped, so the evaluation slows down to
+ * the speed of the disk when the working set of the circuit exceeds them,
+ * instead of running out of memory.
+ *
+ * This store is not thread-safe.
+ */
+public class MappedValueStore implements WireValueStore {
+
+	public static final int DEFAULT_PAGE_SIZE = 1 << 22;
+	public static final int DEFAULT_MAX_PAGES = 64;
+
+	private final int numWires;
+	private final int width;
+	private final int valuesPerPage;
+	private final File file;
+	private final boolean temporary;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+
+	// the mapped pages, in access order
+	private final LinkedHashMap<Integer, MappedByteBuffer> pages;
+	private int lastPageIndex = -1;
+	private MappedByteBuffer lastPage;
+	private long numPageLoads;
+
+	private final byte[] buffer;
+
+	/**
+	 * Creates a store in a temporary file, which is deleted when the store is
+	 * closed.
+	 */
+	public MappedValueStore(int numWires) {
+		this(createTempFile(), numWires, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, true);
+	}
+
+	/**
+	 * @param file
+	 *            the file of the values. Its previous content is discarded.
+	 * @param pageSize
+	 *            the number of bytes of a page
+	 * @param maxPages
+	 *            the number of pages kept mapped
+	 */
+	public MappedValueStore(File file, int numWires, int pageSize, int maxPages) {
+		this(file, numWires, pageSize, maxPages, false);
+	}
+
+	private MappedValueStore(File file, int numWires, int pageSize, int maxPages, boolean temporary) {
+		this.numWires = numWires;
+		this.width = Config.FIELD_PRIME.bitLength() / 8 + 1;
+		if (pageSize < width || maxPages < 1) {
+			throw new IllegalArgumentException("Invalid page parameters");
+		}
+		this.valuesPerPage = pageSize / width;
+		this.file = file;
+		this.temporary = temporary;
+		this.buffer = new byte[width];
+		final int capacity = maxPages;
+		this.pages = new LinkedHashMap<Integer, MappedByteBuffer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest) {
+				// the mapping is released when the buffer is collected
+				return size() > capacity;
+			}
+		};
+		try {
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			randomAccessFile.setLength(0);
+			randomAccessFile.setLength((long) numWires * width);
+			channel = randomAccessFile.getChannel();
+		} catch (IOException e) {
+			close();
+			throw new RuntimeException("Could not create the value store " + file, e);
+		}
+	}
+
+	private static File createTempFile() {
+		try {
+			return File.createTempFile("wire_values", ".bin");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private MappedByteBuffer getPage(int pageIndex) {
+		if (pageIndex == lastPageIndex) {
+			return lastPage;
+		}
+		MappedByteBuffer page = pages.get(pageIndex);
+		if (page == null) {
+			long start = (long) pageIndex * valuesPerPage * width;
+			long size = Math.min((long) valuesPerPage * width, (long) numWires * width - start);
+			try {
+				page = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not map a page of the value store " + file, e);
+			}
+			pages.put(pageIndex, page);
+			numPageLoads++;
+		}
+		lastPageIndex = pageIndex;
+		lastPage = page;
+		return page;
+	}
+
+	@Override
+	public BigInteger get(int wireId) {
+		MappedByteBuffer page = getPage(wireId / valuesPerPage);
+		int offset = (wireId % valuesPerPage) * width;
+		if ((page.get(offset) & 0x80) == 0) {
+			return null;
+		}
+		page.position(offset);
+		page.get(buffer);
+		buffer[0] &= 0x7f;
+		return new BigInteger(1, buffer);
+	}
+
+	@Override
+	public boolean isAssigned(int wireId) {
+		MappedByteBuffer page = getPage(wireId / valuesPerPage);
+		return (page.get((wireId % valuesPerPage) * width) & 0x80) != 0;
+	}
+
+	@Override
+	public void set(int wireId, BigInteger value) {
+		MappedByteBuffer page = getPage(wireId / valuesPerPage);
+		int offset = (wireId % valuesPerPage) * width;
+		Arrays.fill(buffer, (byte) 0);
+		if (value != null) {
+			// the value is less than the prime, so it fits in width bytes with
+			// the top bit free. toByteArray() may add a leading zero byte.
+			byte[] bytes = value.toByteArray();
+			int length = Math.min(bytes.length, width);
+			System.arraycopy(bytes, bytes.length - length, buffer, width - length, length);
+			buffer[0] |= 0x80;
+		}
+		page.position(offset);
+		page.put(buffer);
+	}
+
+	@Override
+	public int size() {
+		return numWires;
+	}
+
+	/**
+	 * Returns the number of times a page was mapped, including the pages that
+	 * were mapped again after being evicted.
+	 */
+	public long getNumPageLoads() {
+		return numPageLoads;
+	}
+
+	@Override
+	public void close() {
+		pages.clear();
+		lastPageIndex = -1;
+		lastPage = null;
+		try {
+			if (randomAccessFile != null) {
+				randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Warning - Could not close the value store " + file + ": " + e);
+		}
+		if (temporary && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+}
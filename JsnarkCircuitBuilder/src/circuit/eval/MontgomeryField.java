@@ -0,0 +1,394 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+
+/**
+ * Montgomery arithmetic on field elements stored as four little-endian 64-bit
+ * limbs inside flat long[] arrays. An element occupies the LIMBS consecutive
+ * entries starting at the given offset. The constants are derived from
+ * Config.FIELD_PRIME, which must fit in 255 bits (the default BN254 prime has
+ * 254 bits).
+ *
+ * All methods are static and allocation-free, except the conversions from and
+ * to BigInteger.
+ */
+public final class MontgomeryField {
+
+	public static final int LIMBS = 4;
+
+	private static final long MASK32 = 0xffffffffL;
+
+	private static final boolean SUPPORTED;
+
+	// the prime
+	private static final long P0, P1, P2, P3;
+	// -p^(-1) mod 2^64
+	private static final long INV;
+	// R^2 mod p, where R = 2^256
+	private static final long[] R2 = new long[LIMBS];
+	// R mod p, i.e. the Montgomery form of one
+	private static final long[] ONE = new long[LIMBS];
+	// the raw limbs of one, used to leave the Montgomery domain
+	private static final long[] RAW_ONE = { 1, 0, 0, 0 };
+
+	static {
+		BigInteger p = Config.FIELD_PRIME;
+		SUPPORTED = p.testBit(0) && p.bitLength() <= 255;
+		long[] pLimbs = new long[LIMBS];
+		if (SUPPORTED) {
+			BigInteger r = BigInteger.ONE.shiftLeft(64 * LIMBS);
+			toLimbs(p, pLimbs, 0);
+			toLimbs(r.mod(p), ONE, 0);
+			toLimbs(r.multiply(r).mod(p), R2, 0);
+		}
+		P0 = pLimbs[0];
+		P1 = pLimbs[1];
+		P2 = pLimbs[2];
+		P3 = pLimbs[3];
+		// Newton iteration for the inverse of p0 modulo 2^64
+		long inv = 1;
+		for (int i = 0; i < 6; i++) {
+			inv *= 2 - P0 * inv;
+		}
+		INV = -inv;
+	}
+
+	private MontgomeryField() {
+	}
+
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	/**
+	 * r = a * b * R^(-1) mod p (CIOS method). The output may alias any of the
+	 * inputs.
+	 */
+	public static void mul(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+
+		long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0;
+
+		for (int i = 0; i < LIMBS; i++) {
+			long bw = b[bi + i];
+			long lo, hi, c;
+
+			// t += a * b[i]
+			lo = a0 * bw;
+			hi = mulHigh(a0, bw);
+			lo += t0;
+			hi += carry(lo, t0);
+			t0 = lo;
+			c = hi;
+
+			lo = a1 * bw;
+			hi = mulHigh(a1, bw);
+			lo += t1;
+			hi += carry(lo, t1);
+			lo += c;
+			hi += carry(lo, c);
+			t1 = lo;
+			c = hi;
+
+			lo = a2 * bw;
+			hi = mulHigh(a2, bw);
+			lo += t2;
+			hi += carry(lo, t2);
+			lo += c;
+			hi += carry(lo, c);
+			t2 = lo;
+			c = hi;
+
+			lo = a3 * bw;
+			hi = mulHigh(a3, bw);
+			lo += t3;
+			hi += carry(lo, t3);
+			lo += c;
+			hi += carry(lo, c);
+			t3 = lo;
+			c = hi;
+
+			t4 += c;
+			long t5 = carry(t4, c);
+
+			// t = (t + m * p) / 2^64
+			long m = t0 * INV;
+
+			lo = m * P0;
+			hi = mulHigh(m, P0);
+			lo += t0;
+			hi += carry(lo, t0);
+			c = hi;
+
+			lo = m * P1;
+			hi = mulHigh(m, P1);
+			lo += t1;
+			hi += carry(lo, t1);
+			lo += c;
+			hi += carry(lo, c);
+			t0 = lo;
+			c = hi;
+
+			lo = m * P2;
+			hi = mulHigh(m, P2);
+			lo += t2;
+			hi += carry(lo, t2);
+			lo += c;
+			hi += carry(lo, c);
+			t1 = lo;
+			c = hi;
+
+			lo = m * P3;
+			hi = mulHigh(m, P3);
+			lo += t3;
+			hi += carry(lo, t3);
+			lo += c;
+			hi += carry(lo, c);
+			t2 = lo;
+			c = hi;
+
+			t3 = t4 + c;
+			t4 = t5 + carry(t3, c);
+		}
+
+		r[ri] = t0;
+		r[ri + 1] = t1;
+		r[ri + 2] = t2;
+		r[ri + 3] = t3;
+		if (t4 != 0 || geqPrime(r, ri)) {
+			subtractPrime(r, ri);
+		}
+	}
+
+	/**
+	 * r = a + b mod p. The output may alias any of the inputs.
+	 */
+	public static void add(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+		long s0 = a[ai] + b[bi];
+		long c = carry(s0, b[bi]);
+		long s1 = a[ai + 1] + b[bi + 1];
+		long c1 = carry(s1, b[bi + 1]);
+		s1 += c;
+		c = c1 + carry(s1, c);
+		long s2 = a[ai + 2] + b[bi + 2];
+		long c2 = carry(s2, b[bi + 2]);
+		s2 += c;
+		c = c2 + carry(s2, c);
+		long s3 = a[ai + 3] + b[bi + 3];
+		long c3 = carry(s3, b[bi + 3]);
+		s3 += c;
+		c = c3 + carry(s3, c);
+
+		r[ri] = s0;
+		r[ri + 1] = s1;
+		r[ri + 2] = s2;
+		r[ri + 3] = s3;
+		if (c != 0 || geqPrime(r, ri)) {
+			subtractPrime(r, ri);
+		}
+	}
+
+	/**
+	 * r = a - b mod p. The output may alias any of the inputs.
+	 */
+	public static void sub(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+		long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+		long b0 = b[bi], b1 = b[bi + 1], b2 = b[bi + 2], b3 = b[bi + 3];
+		long d0 = a0 - b0;
+		long w = borrow(a0, b0);
+		long d1 = a1 - b1;
+		long w1 = borrow(a1, b1) | borrow(d1, w);
+		d1 -= w;
+		long d2 = a2 - b2;
+		long w2 = borrow(a2, b2) | borrow(d2, w1);
+		d2 -= w1;
+		long d3 = a3 - b3;
+		long w3 = borrow(a3, b3) | borrow(d3, w2);
+		d3 -= w2;
+		r[ri] = d0;
+		r[ri + 1] = d1;
+		r[ri + 2] = d2;
+		r[ri + 3] = d3;
+		if (w3 != 0) {
+			addPrime(r, ri);
+		}
+	}
+
+	public static void setZero(long[] r, int ri) {
+		r[ri] = 0;
+		r[ri + 1] = 0;
+		r[ri + 2] = 0;
+		r[ri + 3] = 0;
+	}
+
+	public static void setOne(long[] r, int ri) {
+		copy(ONE, 0, r, ri);
+	}
+
+	public static void copy(long[] a, int ai, long[] r, int ri) {
+		r[ri] = a[ai];
+		r[ri + 1] = a[ai + 1];
+		r[ri + 2] = a[ai + 2];
+		r[ri + 3] = a[ai + 3];
+	}
+
+	public static boolean isZero(long[] a, int ai) {
+		return (a[ai] | a[ai + 1] | a[ai + 2] | a[ai + 3]) == 0;
+	}
+
+	public static boolean isOne(long[] a, int ai) {
+		return equals(a, ai, ONE, 0);
+	}
+
+	public static boolean isBinary(long[] a, int ai) {
+		return isZero(a, ai) || isOne(a, ai);
+	}
+
+	public static boolean equals(long[] a, int ai, long[] b, int bi) {
+		return a[ai] == b[bi] && a[ai + 1] == b[bi + 1] && a[ai + 2] == b[bi + 2] && a[ai + 3] == b[bi + 3];
+	}
+
+	/**
+	 * Converts a Montgomery element to its canonical (standard)
+	 * representation.
+	 */
+	public static void fromMontgomery(long[] r, int ri, long[] a, int ai) {
+		mul(r, ri, a, ai, RAW_ONE, 0);
+	}
+
+	/**
+	 * Converts canonical limbs (a value less than p) to the Montgomery form.
+	 */
+	public static void toMontgomery(long[] r, int ri, long[] a, int ai) {
+		mul(r, ri, a, ai, R2, 0);
+	}
+
+	/**
+	 * Reduces canonical limbs holding any value less than 2^256 modulo p.
+	 */
+	public static void reduce(long[] a, int ai) {
+		while (geqPrime(a, ai)) {
+			subtractPrime(a, ai);
+		}
+	}
+
+	public static void toMontgomery(BigInteger v, long[] r, int ri) {
+		toLimbs(v, r, ri);
+		toMontgomery(r, ri, r, ri);
+	}
+
+	public static BigInteger fromMontgomery(long[] a, int ai) {
+		long[] tmp = new long[LIMBS];
+		fromMontgomery(tmp, 0, a, ai);
+		return fromLimbs(tmp, 0);
+	}
+
+	/**
+	 * Writes the (non-negative, 256-bit at most) value v as raw limbs.
+	 */
+	public static void toLimbs(BigInteger v, long[] r, int ri) {
+		for (int i = 0; i < LIMBS; i++) {
+			r[ri + i] = v.shiftRight(64 * i).longValue();
+		}
+	}
+
+	public static BigInteger fromLimbs(long[] a, int ai) {
+		byte[] bytes = new byte[8 * LIMBS + 1];
+		for (int i = 0; i < LIMBS; i++) {
+			long limb = a[ai + i];
+			for (int j = 0; j < 8; j++) {
+				bytes[bytes.length - 1 - 8 * i - j] = (byte) (limb >>> (8 * j));
+			}
+		}
+		return new BigInteger(bytes);
+	}
+
+	/**
+	 * Returns the bit length of raw (canonical) limbs.
+	 */
+	public static int bitLength(long[] a, int ai) {
+		for (int i = LIMBS - 1; i >= 0; i--) {
+			if (a[ai + i] != 0) {
+				return 64 * i + 64 - Long.numberOfLeadingZeros(a[ai + i]);
+			}
+		}
+		return 0;
+	}
+
+	public static boolean testBit(long[] a, int ai, int i) {
+		return i < 64 * LIMBS && ((a[ai + (i >>> 6)] >>> (i & 63)) & 1) != 0;
+	}
+
+	private static boolean geqPrime(long[] a, int ai) {
+		if (a[ai + 3] != P3)
+			return Long.compareUnsigned(a[ai + 3], P3) > 0;
+		if (a[ai + 2] != P2)
+			return Long.compareUnsigned(a[ai + 2], P2) > 0;
+		if (a[ai + 1] != P1)
+			return Long.compareUnsigned(a[ai + 1], P1) > 0;
+		return Long.compareUnsigned(a[ai], P0) >= 0;
+	}
+
+	private static void subtractPrime(long[] a, int ai) {
+		long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+		long d0 = a0 - P0;
+		long w = borrow(a0, P0);
+		long d1 = a1 - P1;
+		long w1 = borrow(a1, P1) | borrow(d1, w);
+		d1 -= w;
+		long d2 = a2 - P2;
+		long w2 = borrow(a2, P2) | borrow(d2, w1);
+		d2 -= w1;
+		long d3 = a3 - P3 - w2;
+		a[ai] = d0;
+		a[ai + 1] = d1;
+		a[ai + 2] = d2;
+		a[ai + 3] = d3;
+	}
+
+	private static void addPrime(long[] a, int ai) {
+		long s0 = a[ai] + P0;
+		long c = carry(s0, P0);
+		long s1 = a[ai + 1] + P1;
+		long c1 = carry(s1, P1);
+		s1 += c;
+		c = c1 + carry(s1, c);
+		long s2 = a[ai + 2] + P2;
+		long c2 = carry(s2, P2);
+		s2 += c;
+		c = c2 + carry(s2, c);
+		long s3 = a[ai + 3] + P3 + c;
+		a[ai] = s0;
+		a[ai + 1] = s1;
+		a[ai + 2] = s2;
+		a[ai + 3] = s3;
+	}
+
+	// returns 1 if the unsigned addition that produced sum (from addend y)
+	// overflowed
+	private static long carry(long sum, long y) {
+		return Long.compareUnsigned(sum, y) < 0 ? 1 : 0;
+	}
+
+	// returns 1 if x - y borrows
+	private static long borrow(long x, long y) {
+		return Long.compareUnsigned(x, y) < 0 ? 1 : 0;
+	}
+
+	// the upper 64 bits of the unsigned 128-bit product
+	private static long mulHigh(long x, long y) {
+		long x0 = x & MASK32, x1 = x >>> 32;
+		long y0 = y & MASK32, y1 = y >>> 32;
+		long p00 = x0 * y0;
+		long p01 = x0 * y1;
+		long p10 = x1 * y0;
+		long p11 = x1 * y1;
+		long mid = (p00 >>> 32) + (p01 & MASK32) + (p10 & MASK32);
+		return p11 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+
+import circuit.structure.ConstantWire;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+/**
+ * A native implementation of the computation of a gadget, used by the
+ * CircuitEvaluator to assign the internal wires of the gadget at once instead
+ * of evaluating its gates one by one (see
+ * CircuitGenerator.beginNativeHint()). The function maps the values of the
+ * inputs of the gadget to the values of the hinted wires, as unsigned words
+ * of up to 64 bits. A hinted wire that was split (or is made of bits) also
+ * gets the values of its bits, so the hint of an xorBitwise() result covers
+ * all of its xor gates.
+ *
+ * The evaluator skips the gates of the gadget whose outputs are all hinted,
+ * and evaluates the other ones as usual. In the verification mode of the
+ * evaluator, all the gates are evaluated, and the hinted values are checked
+ * against them (see CircuitEvaluator.setNativeHintMode()).
+ */
+public class NativeHint implements Instruction {
+
+	public interface Function {
+
+		/**
+		 * Returns the values of the hinted wires, in the order in which they
+		 * are given to CircuitGenerator.endNativeHint().
+		 */
+		public long[] compute(long[] inputs);
+	}
+
+	private final Function function;
+	private final Wire[] inputs;
+	private Wire[] hintedWires;
+	private Instruction lastInstruction;
+
+	public NativeHint(Function function, Wire[] inputs) {
+		this.function = function;
+		this.inputs = inputs;
+	}
+
+	/**
+	 * Sets the hinted wires, and the last instruction of the gadget. Called
+	 * by CircuitGenerator.endNativeHint().
+	 */
+	public void close(Wire[] hintedWires, Instruction lastInstruction) {
+		this.hintedWires = hintedWires;
+		this.lastInstruction = lastInstruction;
+	}
+
+	public Instruction getLastInstruction() {
+		return lastInstruction;
+	}
+
+	// passes the hinted values of the wires to the given consumer
+	interface ValueConsumer {
+		void accept(Wire w, BigInteger value);
+	}
+
+	void computeValues(CircuitEvaluator evaluator, ValueConsumer consumer) {
+		if (hintedWires == null) {
+			return;
+		}
+		long[] inputValues = new long[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			inputValues[i] = readWord(evaluator, inputs[i]);
+		}
+		long[] values = function.compute(inputValues);
+		if (values.length != hintedWires.length) {
+			throw new RuntimeException("The native hint returned " + values.length + " values for "
+					+ hintedWires.length + " wires");
+		}
+		for (int i = 0; i < hintedWires.length; i++) {
+			Wire w = hintedWires[i];
+			long v = values[i];
+			if (w instanceof ConstantWire) {
+				continue;
+			}
+			if (w.getWireId() != -1) {
+				consumer.accept(w, toUnsigned(v));
+			}
+			WireArray bits = w.getBitWiresIfExistAlready();
+			if (bits != null) {
+				for (int j = 0; j < bits.size(); j++) {
+					Wire bit = bits.get(j);
+					if (!(bit instanceof ConstantWire) && bit.getWireId() != -1) {
+						consumer.accept(bit, j < 64 && ((v >>> j) & 1) == 1 ? BigInteger.ONE : BigInteger.ZERO);
+					}
+				}
+			}
+		}
+	}
+
+	// reads the value of an input, which may be only available as bits at
+	// this point
+	private static long readWord(CircuitEvaluator evaluator, Wire w) {
+		if (w instanceof ConstantWire) {
+			return ((ConstantWire) w).getConstant().longValue();
+		}
+		if (w.getWireId() != -1) {
+			BigInteger v = evaluator.getWireValue(w);
+			if (v != null) {
+				return v.longValue();
+			}
+		}
+		WireArray bits = w.getBitWiresIfExistAlready();
+		if (bits == null) {
+			throw new RuntimeException("The value of an input of a native hint is not known: " + w);
+		}
+		long v = 0;
+		for (int j = 0; j < bits.size() && j < 64; j++) {
+			if (readWord(evaluator, bits.get(j)) != 0) {
+				v |= 1L << j;
+			}
+		}
+		return v;
+	}
+
+	private static BigInteger toUnsigned(long v) {
+		BigInteger b = BigInteger.valueOf(v);
+		return v >= 0 ? b : b.add(BigInteger.ONE.shiftLeft(64));
+	}
+
+	// hints are applied by CircuitEvaluator.evaluate() only. Other ways of
+	// evaluating the circuit just evaluate the gates.
+	@Override
+	public void evaluate(CircuitEvaluator evaluator) {
+	}
+
+	@Override
+	public Wire[] getUsedWires() {
+		return inputs;
+	}
+
+	// the hinted wires are assigned by the gates as well
+	@Override
+	public Wire[] getAssignedWires() {
+		return new Wire[0];
+	}
+
+	@Override
+	public String toString() {
+		return "native hint " + function.getClass().getSimpleName();
+	}
+}
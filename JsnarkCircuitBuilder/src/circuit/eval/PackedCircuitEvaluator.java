@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+
+import circuit.auxiliary.LongElement;
+import circuit.config.Config;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+/**
+ * A circuit evaluator that stores the wire values as Montgomery field elements
+ * packed in a single long[] (four limbs per wire), instead of a BigInteger per
+ * wire. The circuit is evaluated from its CompiledCircuit tape, and the
+ * primitive operations are computed directly on the limbs, so no objects are
+ * allocated during the evaluation of the basic operations.
+ *
+ * The BigInteger methods inherited from CircuitEvaluator (getWireValue,
+ * setWireValue, ..) remain available as a facade, and are used by the
+ * instructions specified through specifyProverWitnessComputation().
+ *
+ * This evaluator requires a field prime of 255 bits or less. See
+ * MontgomeryField.
+ */
+public class PackedCircuitEvaluator extends CircuitEvaluator {
+
+	private static final int LIMBS = MontgomeryField.LIMBS;
+
+	private long[] values;
+	private BitSet assigned;
+	private int numWires;
+
+	// When this evaluator is one instance of a batch (see
+	// BatchCircuitEvaluator), the values array is shared by all the instances,
+	// and the values of each wire are stored consecutively, one per lane.
+	// sharedAssigned then marks the wires assigned in all the lanes at once.
+	private int lanes = 1;
+	private int lane = 0;
+	private BitSet sharedAssigned;
+
+	private long[] tmp = new long[2 * LIMBS];
+
+	public PackedCircuitEvaluator(CircuitGenerator circuitGenerator) {
+		super(circuitGenerator, null);
+		if (!MontgomeryField.isSupported()) {
+			throw new UnsupportedOperationException(
+					"The packed evaluator does not support the configured field prime.");
+		}
+		numWires = circuitGenerator.getNumWires();
+		values = new long[numWires * LIMBS];
+		assigned = new BitSet(numWires);
+		int oneId = circuitGenerator.getOneWire().getWireId();
+		MontgomeryField.setOne(values, oneId * LIMBS);
+		assigned.set(oneId);
+	}
+
+	/**
+	 * Creates the view of one lane of a batch. The values are managed by the
+	 * batch evaluator.
+	 */
+	PackedCircuitEvaluator(CircuitGenerator circuitGenerator, long[] values, BitSet sharedAssigned, int lanes,
+			int lane) {
+		super(circuitGenerator, null);
+		this.numWires = circuitGenerator.getNumWires();
+		this.values = values;
+		this.assigned = new BitSet(numWires);
+		this.sharedAssigned = sharedAssigned;
+		this.lanes = lanes;
+		this.lane = lane;
+	}
+
+	private int offset(int wireId) {
+		return (wireId * lanes + lane) * LIMBS;
+	}
+
+	boolean isAssigned(int wireId) {
+		return assigned.get(wireId) || sharedAssigned != null && sharedAssigned.get(wireId);
+	}
+
+	@Override
+	public void setWireValue(Wire w, BigInteger v) {
+		if (v.signum() < 0 || v.compareTo(Config.FIELD_PRIME) >= 0) {
+			throw new IllegalArgumentException(
+					"Only positive values that are less than the modulus are allowed for this method.");
+		}
+		int id = w.getWireId();
+		MontgomeryField.toMontgomery(v, values, offset(id));
+		assigned.set(id);
+	}
+
+	@Override
+	public BigInteger getWireValue(Wire w) {
+		int id = w.getWireId();
+		if (isAssigned(id)) {
+			return MontgomeryField.fromMontgomery(values, offset(id));
+		}
+		WireArray bits = w.getBitWiresIfExistAlready();
+		if (bits == null) {
+			return null;
+		}
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < bits.size(); i++) {
+			sum = sum.add(getWireValue(bits.get(i)).shiftLeft(i));
+		}
+		return sum;
+	}
+
+	@Override
+	public BigInteger getWireValue(LongElement e, int bitwidthPerChunk) {
+		Wire[] array = e.getArray();
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < array.length; i++) {
+			if (!isAssigned(array[i].getWireId())) {
+				continue;
+			}
+			sum = sum.add(getWireValue(array[i]).shiftLeft(bitwidthPerChunk * i));
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns a snapshot of the current assignment as BigIntegers. Unlike the
+	 * default evaluator, changes to the returned array are not reflected in
+	 * this evaluator.
+	 */
+	@Override
+	public BigInteger[] getAssignment() {
+		BigInteger[] assignment = new BigInteger[numWires];
+		for (int i = 0; i < numWires; i++) {
+			if (isAssigned(i)) {
+				assignment[i] = MontgomeryField.fromMontgomery(values, offset(i));
+			}
+		}
+		return assignment;
+	}
+
+	@Override
+	public void evaluate() {
+		evaluate(new CompiledCircuit(getCircuitGenerator()));
+	}
+
+	@Override
+	public void evaluate(CompiledCircuit compiledCircuit) {
+
+		CircuitGenerator circuitGenerator = getCircuitGenerator();
+		if (lanes != 1) {
+			throw new UnsupportedOperationException("The instances of a batch are evaluated by the batch evaluator");
+		}
+		if (compiledCircuit.getNumWires() != numWires) {
+			throw new IllegalArgumentException("The compiled circuit does not match the evaluator");
+		}
+		System.out.println("Running Circuit Evaluator for < " + circuitGenerator.getName() + " >");
+		for (int id : compiledCircuit.getInputWireIds()) {
+			if (!assigned.get(id)) {
+				throw new RuntimeException("Input wire#" + id + " has not been assigned");
+			}
+		}
+		BigInteger[] constantValues = compiledCircuit.getConstants();
+		long[] constants = new long[constantValues.length * LIMBS];
+		for (int i = 0; i < constantValues.length; i++) {
+			MontgomeryField.toMontgomery(constantValues[i].mod(Config.FIELD_PRIME), constants, i * LIMBS);
+		}
+		run(compiledCircuit, constants);
+
+		// check that each wire has been assigned a value
+		int unassigned = assigned.nextClearBit(0);
+		if (unassigned < numWires) {
+			throw new RuntimeException("Wire#" + unassigned + "is without value");
+		}
+		System.out.println("Circuit Evaluation Done for < " + circuitGenerator.getName() + " >\n\n");
+	}
+
+	private void run(CompiledCircuit compiledCircuit, long[] constants) {
+
+		final long[] v = values;
+		final int[] t = compiledCircuit.getTape();
+		final int length = compiledCircuit.getTapeLength();
+		final Instruction[] instructions = compiledCircuit.getInstructions();
+		final int[] checkPositions = compiledCircuit.getInputCheckPositions();
+		final int[] checkWires = compiledCircuit.getInputCheckWires();
+		int check = 0;
+		int pc = 0;
+		while (pc < length) {
+			int start = pc;
+			// an unassigned value would be read as zero
+			for (; check < checkPositions.length && checkPositions[check] == pc; check++) {
+				if (!isAssigned(checkWires[check])) {
+					throw compiledCircuit.evaluationError(pc, "One of the inWires has not been assigned");
+				}
+			}
+			switch (t[pc]) {
+			case CompiledCircuit.MUL: {
+				int out = t[pc + 3];
+				MontgomeryField.mul(v, out * LIMBS, v, t[pc + 1] * LIMBS, v, t[pc + 2] * LIMBS);
+				assigned.set(out);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.ADD: {
+				int n = t[pc + 1];
+				MontgomeryField.copy(v, t[pc + 2] * LIMBS, tmp, 0);
+				for (int i = 1; i < n; i++) {
+					MontgomeryField.add(tmp, 0, tmp, 0, v, t[pc + 2 + i] * LIMBS);
+				}
+				int out = t[pc + 2 + n];
+				MontgomeryField.copy(tmp, 0, v, out * LIMBS);
+				assigned.set(out);
+				pc += n + 3;
+				break;
+			}
+			case CompiledCircuit.CONST_MUL: {
+				int out = t[pc + 2];
+				MontgomeryField.mul(v, out * LIMBS, v, t[pc + 1] * LIMBS, constants, t[pc + 3] * LIMBS);
+				assigned.set(out);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.XOR:
+			case CompiledCircuit.OR: {
+				int in1 = t[pc + 1] * LIMBS;
+				int in2 = t[pc + 2] * LIMBS;
+				if (!MontgomeryField.isBinary(v, in1) || !MontgomeryField.isBinary(v, in2)) {
+					throw compiledCircuit.evaluationError(start, "Input(s) to "
+							+ (t[pc] == CompiledCircuit.XOR ? "XOR" : "OR") + " are not binary.");
+				}
+				boolean result;
+				if (t[pc] == CompiledCircuit.XOR) {
+					result = !MontgomeryField.equals(v, in1, v, in2);
+				} else {
+					result = MontgomeryField.isOne(v, in1) || MontgomeryField.isOne(v, in2);
+				}
+				setBit(t[pc + 3], result);
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.SPLIT: {
+				int n = t[pc + 2];
+				MontgomeryField.fromMontgomery(tmp, 0, v, t[pc + 1] * LIMBS);
+				if (n < MontgomeryField.bitLength(tmp, 0)) {
+					throw compiledCircuit.evaluationError(start, "The number of bits does not fit -- Input: "
+							+ MontgomeryField.fromLimbs(tmp, 0).toString(16));
+				}
+				for (int i = 0; i < n; i++) {
+					setBit(t[pc + 3 + i], MontgomeryField.testBit(tmp, 0, i));
+				}
+				pc += n + 3;
+				break;
+			}
+			case CompiledCircuit.PACK: {
+				int n = t[pc + 1];
+				if (!pack(t, pc + 2, n, t[pc + 2 + n])) {
+					throw compiledCircuit.evaluationError(start, "Input(s) to Pack are not binary.");
+				}
+				pc += n + 3;
+				break;
+			}
+			case CompiledCircuit.ZEROP: {
+				setBit(t[pc + 3], !MontgomeryField.isZero(v, t[pc + 1] * LIMBS));
+				setBit(t[pc + 2], false); // a dummy value
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.ASSERT: {
+				MontgomeryField.mul(tmp, 0, v, t[pc + 1] * LIMBS, v, t[pc + 2] * LIMBS);
+				if (!MontgomeryField.equals(tmp, 0, v, t[pc + 3] * LIMBS)) {
+					System.out.println(MontgomeryField.fromMontgomery(v, t[pc + 1] * LIMBS) + "*"
+							+ MontgomeryField.fromMontgomery(v, t[pc + 2] * LIMBS) + "!="
+							+ MontgomeryField.fromMontgomery(v, t[pc + 3] * LIMBS));
+					throw compiledCircuit.evaluationError(start, "Assertion Failed");
+				}
+				pc += 4;
+				break;
+			}
+			case CompiledCircuit.EXTERNAL: {
+				Instruction e = instructions[t[pc + 1]];
+				e.evaluate(this);
+				e.emit(this);
+				pc += 2;
+				break;
+			}
+			default:
+				throw new IllegalStateException("Corrupted tape at " + pc);
+			}
+		}
+	}
+
+	// returns false if one of the inputs is not binary
+	private boolean pack(int[] t, int from, int n, int out) {
+		for (int i = 0; i < n; i++) {
+			if (!MontgomeryField.isBinary(values, t[from + i] * LIMBS)) {
+				return false;
+			}
+		}
+		if (n > 64 * LIMBS) {
+			// rare: more bits than the limbs can hold before reduction
+			BigInteger sum = BigInteger.ZERO;
+			for (int i = 0; i < n; i++) {
+				if (MontgomeryField.isOne(values, t[from + i] * LIMBS)) {
+					sum = sum.setBit(i);
+				}
+			}
+			MontgomeryField.toMontgomery(sum.mod(Config.FIELD_PRIME), values, out * LIMBS);
+		} else {
+			MontgomeryField.setZero(tmp, 0);
+			for (int i = 0; i < n; i++) {
+				if (MontgomeryField.isOne(values, t[from + i] * LIMBS)) {
+					tmp[i >>> 6] |= 1L << (i & 63);
+				}
+			}
+			MontgomeryField.reduce(tmp, 0);
+			MontgomeryField.toMontgomery(values, out * LIMBS, tmp, 0);
+		}
+		assigned.set(out);
+		return true;
+	}
+
+	private void setBit(int wireId, boolean bit) {
+		if (bit) {
+			MontgomeryField.setOne(values, wireId * LIMBS);
+		} else {
+			MontgomeryField.setZero(values, wireId * LIMBS);
+		}
+		assigned.set(wireId);
+	}
+
+}
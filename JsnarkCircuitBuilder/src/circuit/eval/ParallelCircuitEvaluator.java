@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import circuit.structure.CircuitGenerator;
+
+/**
+ * A circuit evaluator that evaluates the independent instructions of the
+ * circuit in parallel. The instructions are grouped into dependency levels
+ * (see LevelizedCircuit), and the levels are evaluated one after the other,
+ * each on a ForkJoinPool. Small levels are evaluated in the calling thread.
+ *
+ * The prover witness computations are evaluated in parallel only if they
+ * declare the wires they read and assign (see
+ * CircuitGenerator.specifyProverWitnessComputation()); otherwise they
+ * serialize the evaluation around them. The values of the output and debug
+ * wires are printed after the evaluation, in their usual order.
+ */
+public class ParallelCircuitEvaluator extends CircuitEvaluator {
+
+	// levels smaller than this are not worth the synchronization
+	private static final int PARALLEL_THRESHOLD = 256;
+	private static final int GRAIN_SIZE = 64;
+
+	private ForkJoinPool pool;
+
+	public ParallelCircuitEvaluator(CircuitGenerator circuitGenerator) {
+		this(circuitGenerator, ForkJoinPool.commonPool());
+	}
+
+	public ParallelCircuitEvaluator(CircuitGenerator circuitGenerator, ForkJoinPool pool) {
+		super(circuitGenerator);
+		this.pool = pool;
+	}
+
+	@Override
+	public void evaluate() {
+		evaluate(new LevelizedCircuit(getCircuitGenerator()));
+	}
+
+	public void evaluate(LevelizedCircuit levelizedCircuit) {
+
+		CircuitGenerator circuitGenerator = getCircuitGenerator();
+		BigInteger[] assignment = getAssignment();
+		if (levelizedCircuit.getNumWires() != assignment.length) {
+			throw new IllegalArgumentException("The levelized circuit does not match the evaluator");
+		}
+		System.out.println("Running Circuit Evaluator for < " + circuitGenerator.getName() + " >");
+
+		Instruction[] instructions = levelizedCircuit.getInstructions();
+		AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		for (int l = 0; l < levelizedCircuit.getNumLevels(); l++) {
+			int start = levelizedCircuit.getLevelStart(l);
+			int end = levelizedCircuit.getLevelStart(l + 1);
+			if (end - start < PARALLEL_THRESHOLD) {
+				for (int i = start; i < end; i++) {
+					instructions[i].evaluate(this);
+					instructions[i].emit(this);
+				}
+			} else {
+				pool.invoke(new LevelTask(instructions, start, end, failure));
+				if (failure.get() != null) {
+					// rethrown here, as the pool would wrap it otherwise
+					throw failure.get();
+				}
+			}
+		}
+		for (Instruction label : levelizedCircuit.getLabels()) {
+			label.emit(this);
+		}
+
+		// check that each wire has been assigned a value
+		for (int i = 0; i < assignment.length; i++) {
+			if (assignment[i] == null) {
+				throw new RuntimeException("Wire#" + i + "is without value");
+			}
+		}
+		System.out.println("Circuit Evaluation Done for < " + circuitGenerator.getName() + " >\n\n");
+	}
+
+	private class LevelTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private Instruction[] instructions;
+		private int start;
+		private int end;
+		private AtomicReference<RuntimeException> failure;
+
+		LevelTask(Instruction[] instructions, int start, int end, AtomicReference<RuntimeException> failure) {
+			this.instructions = instructions;
+			this.start = start;
+			this.end = end;
+			this.failure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > GRAIN_SIZE) {
+				int mid = (start + end) >>> 1;
+				invokeAll(new LevelTask(instructions, start, mid, failure), new LevelTask(instructions, mid, end,
+						failure));
+				return;
+			}
+			for (int i = start; i < end && failure.get() == null; i++) {
+				try {
+					instructions[i].evaluate(ParallelCircuitEvaluator.this);
+					instructions[i].emit(ParallelCircuitEvaluator.this);
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+
+import circuit.auxiliary.LongElement;
+import circuit.config.Config;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+/**
+ * A circuit evaluator that keeps the wire values in a WireValueStore, instead
+ * of a BigInteger array. With a MappedValueStore, this allows evaluating
+ * circuits whose values do not fit in the heap. The circuit is evaluated from
+ * its CompiledCircuit tape.
+ *
+ * The store is not closed by this evaluator.
+ */
+public class StoredCircuitEvaluator extends CircuitEvaluator {
+
+	private final WireValueStore store;
+
+	public StoredCircuitEvaluator(CircuitGenerator circuitGenerator, WireValueStore store) {
+		super(circuitGenerator, null);
+		if (store.size() != circuitGenerator.getNumWires()) {
+			throw new IllegalArgumentException("The size of the store does not match the circuit");
+		}
+		this.store = store;
+		store.set(circuitGenerator.getOneWire().getWireId(), BigInteger.ONE);
+	}
+
+	@Override
+	public void setWireValue(Wire w, BigInteger v) {
+		if (v.signum() < 0 || v.compareTo(Config.FIELD_PRIME) >= 0) {
+			throw new IllegalArgumentException(
+					"Only positive values that are less than the modulus are allowed for this method.");
+		}
+		store.set(w.getWireId(), v);
+	}
+
+	@Override
+	public BigInteger getWireValue(Wire w) {
+		BigInteger v = store.get(w.getWireId());
+		if (v == null) {
+			WireArray bits = w.getBitWiresIfExistAlready();
+			if (bits != null) {
+				BigInteger sum = BigInteger.ZERO;
+				for (int i = 0; i < bits.size(); i++) {
+					sum = sum.add(store.get(bits.get(i).getWireId()).shiftLeft(i));
+				}
+				v = sum;
+			}
+		}
+		return v;
+	}
+
+	@Override
+	public BigInteger getWireValue(LongElement e, int bitwidthPerChunk) {
+		Wire[] array = e.getArray();
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < array.length; i++) {
+			BigInteger v = store.get(array[i].getWireId());
+			if (v != null) {
+				sum = sum.add(v.shiftLeft(bitwidthPerChunk * i));
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns a snapshot of the current assignment. This loads all the values
+	 * in memory, and is meant for small circuits only.
+	 */
+	@Override
+	public BigInteger[] getAssignment() {
+		BigInteger[] assignment = new BigInteger[store.size()];
+		for (int i = 0; i < assignment.length; i++) {
+			assignment[i] = store.get(i);
+		}
+		return assignment;
+	}
+
+	public WireValueStore getStore() {
+		return store;
+	}
+
+	@Override
+	public void evaluate() {
+		evaluate(new CompiledCircuit(getCircuitGenerator()));
+	}
+
+	@Override
+	public void evaluate(CompiledCircuit compiledCircuit) {
+
+		CircuitGenerator circuitGenerator = getCircuitGenerator();
+		if (compiledCircuit.getNumWires() != store.size()) {
+			throw new IllegalArgumentException("The compiled circuit does not match the evaluator");
+		}
+		System.out.println("Running Circuit Evaluator for < " + circuitGenerator.getName() + " >");
+		compiledCircuit.evaluate(this, store);
+		// check that each wire has been assigned a value
+		for (int i = 0; i < store.size(); i++) {
+			if (!store.isAssigned(i)) {
+				throw new RuntimeException("Wire#" + i + "is without value");
+			}
+		}
+		System.out.println("Circuit Evaluation Done for < " + circuitGenerator.getName() + " >\n\n");
+	}
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.eval;
+
+import java.math.BigInteger;
+
+/**
+ * The storage of the wire values of a circuit evaluation, indexed by the wire
+ * ids. A value is either null (not assigned yet) or a field element in
+ * [0, FIELD_PRIME). See StoredCircuitEvaluator.
+ */
+public interface WireValueStore {
+
+	public BigInteger get(int wireId);
+
+	/**
+	 * Sets the value of a wire. A null value removes the assignment.
+	 */
+	public void set(int wireId, BigInteger value);
+
+	public default boolean isAssigned(int wireId) {
+		return get(wireId) != null;
+	}
+
+	/**
+	 * Returns the number of wires.
+	 */
+	public int size();
+
+	/**
+	 * Releases the resources of the store. The store cannot be used after
+	 * this call.
+	 */
+	public default void close() {
+	}
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Reads a binary circuit file (see BinaryFormat) through a memory mapping.
+ * The reader is a cursor: next() decodes the next instruction into reusable
+ * buffers, which are accessed through the getters below, so no objects are
+ * created per instruction (except for comments).
+ *
+ * <pre>
+ * BinaryCircuitReader reader = new BinaryCircuitReader("circuit.arith.bin");
+ * while (reader.next()) {
+ * 	if (reader.getOpcodeName().equals("mul")) {
+ * 		int out = reader.getOutput(0);
+ * 		..
+ * </pre>
+ */
+public class BinaryCircuitReader implements Closeable {
+
+	private MappedInput in;
+	private long numWires;
+
+	private ArrayList<BigInteger> constants = new ArrayList<BigInteger>();
+
+	// the current instruction
+	private int opcode = -1;
+	private int[] inputs = new int[16];
+	private int numInputs;
+	private int[] outputs = new int[16];
+	private int numOutputs;
+	private int constantIndex;
+	private String comment;
+
+	public BinaryCircuitReader(String fileName) throws IOException {
+		in = new MappedInput(fileName, BinaryFormat.CIRCUIT_MAGIC);
+		in.readByte();
+		in.readByte();
+		in.readByte();
+		numWires = in.readLong();
+	}
+
+	public long getNumWires() {
+		return numWires;
+	}
+
+	/**
+	 * Moves to the next instruction. Returns false at the end of the file.
+	 */
+	public boolean next() throws IOException {
+		comment = null;
+		while (true) {
+			if (!in.hasRemaining()) {
+				opcode = -1;
+				return false;
+			}
+			opcode = in.readVarint();
+			if (opcode == BinaryFormat.CONSTANT) {
+				constants.add(new BigInteger(1, readBytes()));
+			} else if (opcode == BinaryFormat.COMMENT) {
+				comment = new String(readBytes(), StandardCharsets.UTF_8);
+			} else {
+				break;
+			}
+		}
+		switch (opcode) {
+		case BinaryFormat.INPUT:
+		case BinaryFormat.NIZKINPUT:
+		case BinaryFormat.OUTPUT:
+			numInputs = 0;
+			readOutputs(1);
+			break;
+		case BinaryFormat.MUL:
+		case BinaryFormat.XOR:
+		case BinaryFormat.OR:
+		case BinaryFormat.ASSERT:
+			readInputs(2);
+			readOutputs(1);
+			break;
+		case BinaryFormat.CONST_MUL:
+		case BinaryFormat.CONST_MUL_NEG:
+			constantIndex = in.readVarint();
+			if (constantIndex >= constants.size()) {
+				throw new IOException("Undefined constant #" + constantIndex);
+			}
+			readInputs(1);
+			readOutputs(1);
+			break;
+		case BinaryFormat.ZEROP:
+			readInputs(1);
+			readOutputs(2);
+			break;
+		case BinaryFormat.SPLIT:
+			readInputs(1);
+			readOutputs(in.readVarint());
+			break;
+		case BinaryFormat.ADD:
+		case BinaryFormat.PACK:
+			readInputs(in.readVarint());
+			readOutputs(1);
+			break;
+		default:
+			throw new IOException("Unknown opcode: " + opcode);
+		}
+		return true;
+	}
+
+	private byte[] readBytes() throws IOException {
+		byte[] bytes = new byte[in.readVarint()];
+		in.readBytes(bytes);
+		return bytes;
+	}
+
+	private void readInputs(int n) throws IOException {
+		if (inputs.length < n) {
+			inputs = new int[n * 2];
+		}
+		for (int i = 0; i < n; i++) {
+			inputs[i] = in.readVarint();
+		}
+		numInputs = n;
+	}
+
+	private void readOutputs(int n) throws IOException {
+		if (outputs.length < n) {
+			outputs = new int[n * 2];
+		}
+		for (int i = 0; i < n; i++) {
+			outputs[i] = in.readVarint();
+		}
+		numOutputs = n;
+	}
+
+	/**
+	 * Returns true if the current instruction is an input, nizkinput or output
+	 * label. The labeled wire is getWireId().
+	 */
+	public boolean isLabel() {
+		return BinaryFormat.isLabel(opcode);
+	}
+
+	/**
+	 * Returns the text opcode of the current instruction, without the constant
+	 * in the case of const-mul- and const-mul-neg-.
+	 */
+	public String getOpcodeName() {
+		return BinaryFormat.NAMES[opcode];
+	}
+
+	public int getWireId() {
+		return outputs[0];
+	}
+
+	public int getNumInputs() {
+		return numInputs;
+	}
+
+	public int getInput(int i) {
+		return inputs[i];
+	}
+
+	public int getNumOutputs() {
+		return numOutputs;
+	}
+
+	public int getOutput(int i) {
+		return outputs[i];
+	}
+
+	/**
+	 * Returns the constant of a const-mul- or const-mul-neg- instruction (the
+	 * magnitude in the latter case).
+	 */
+	public BigInteger getConstant() {
+		return constants.get(constantIndex);
+	}
+
+	/**
+	 * Returns the text following the instruction in the text format, or null.
+	 */
+	public String getComment() {
+		return comment;
+	}
+
+	/**
+	 * Returns the current instruction in the text format.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(getOpcodeName());
+		if (isLabel()) {
+			sb.append(' ').append(outputs[0]);
+		} else {
+			if (opcode == BinaryFormat.CONST_MUL || opcode == BinaryFormat.CONST_MUL_NEG) {
+				sb.append(getConstant().toString(16));
+			}
+			sb.append(" in ").append(numInputs).append(" <");
+			for (int i = 0; i < numInputs; i++) {
+				sb.append(i == 0 ? "" : " ").append(inputs[i]);
+			}
+			sb.append("> out ").append(numOutputs).append(" <");
+			for (int i = 0; i < numOutputs; i++) {
+				sb.append(i == 0 ? "" : " ").append(outputs[i]);
+			}
+			sb.append('>');
+		}
+		if (comment != null) {
+			sb.append(comment);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
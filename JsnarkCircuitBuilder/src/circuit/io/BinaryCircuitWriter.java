@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import circuit.config.Config;
+import circuit.eval.Instruction;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.structure.Wire;
+
+/**
+ * Writes a circuit in the binary format (see BinaryFormat), one instruction at
+ * a time. The total number of wires can be set at any point before the writer
+ * is closed.
+ */
+public class BinaryCircuitWriter implements CircuitWriter {
+
+	private FileOutputStream fileStream;
+	private OutputStream out;
+	private boolean writeComments;
+	private long numWires;
+
+	private HashMap<BigInteger, Integer> constants = new HashMap<BigInteger, Integer>();
+	private int[] inputIds = new int[16];
+	private int[] outputIds = new int[16];
+
+	/**
+	 * @param fileName
+	 * @param writeComments
+	 *            whether the descriptions of the instructions are kept. These
+	 *            are not needed by libsnark, and make the file larger.
+	 */
+	public BinaryCircuitWriter(String fileName, boolean writeComments) throws IOException {
+		this.fileStream = new FileOutputStream(fileName);
+		this.out = new BufferedOutputStream(fileStream, 1 << 16);
+		this.writeComments = writeComments;
+		// the header is written when closing
+		out.write(new byte[BinaryFormat.HEADER_SIZE]);
+	}
+
+	@Override
+	public void setNumWires(long numWires) {
+		this.numWires = numWires;
+	}
+
+	@Override
+	public void writeInstruction(Instruction e) throws IOException {
+		if (!e.doneWithinCircuit()) {
+			return;
+		}
+		if (e instanceof WireLabelInstruction) {
+			WireLabelInstruction label = (WireLabelInstruction) e;
+			int opcode = label.getType() == LabelType.input ? BinaryFormat.INPUT
+					: label.getType() == LabelType.nizkinput ? BinaryFormat.NIZKINPUT : BinaryFormat.OUTPUT;
+			outputIds[0] = label.getWire().getWireId();
+			write(opcode, null, 0, outputIds, 1, null, getComment(e, true));
+		} else if (e instanceof BasicOp) {
+			BasicOp op = (BasicOp) e;
+			int opcode;
+			BigInteger constant = null;
+			if (op instanceof ConstMulBasicOp) {
+				ConstMulBasicOp constMul = (ConstMulBasicOp) op;
+				if (constMul.isNegative()) {
+					opcode = BinaryFormat.CONST_MUL_NEG;
+					constant = Config.FIELD_PRIME.subtract(constMul.getConstInteger());
+				} else {
+					opcode = BinaryFormat.CONST_MUL;
+					constant = constMul.getConstInteger();
+				}
+			} else {
+				opcode = BinaryFormat.getOpcode(op.getOpcode());
+			}
+			inputIds = getIds(op.getInputs(), inputIds);
+			outputIds = getIds(op.getOutputs(), outputIds);
+			write(opcode, inputIds, op.getInputs().length, outputIds, op.getOutputs().length, constant,
+					getComment(e, false));
+		} else {
+			throw new IllegalArgumentException("Unsupported instruction: " + e);
+		}
+	}
+
+	private static int[] getIds(Wire[] wires, int[] ids) {
+		if (ids.length < wires.length) {
+			ids = new int[wires.length * 2];
+		}
+		for (int i = 0; i < wires.length; i++) {
+			ids[i] = wires[i].getWireId();
+		}
+		return ids;
+	}
+
+	// returns the text that follows the instruction in the text format
+	private String getComment(Instruction e, boolean isLabel) {
+		if (!writeComments) {
+			return null;
+		}
+		String line = e.toString();
+		int end;
+		if (isLabel) {
+			WireLabelInstruction label = (WireLabelInstruction) e;
+			end = label.getType().name().length() + 1 + Integer.toString(label.getWire().getWireId()).length();
+		} else {
+			end = line.indexOf('>', line.indexOf("> out ") + 1) + 1;
+		}
+		return end < line.length() ? line.substring(end) : null;
+	}
+
+	/**
+	 * Writes a record. Used by writeInstruction() and the format conversion.
+	 */
+	void write(int opcode, int[] ins, int numIns, int[] outs, int numOuts, BigInteger constant, String comment)
+			throws IOException {
+
+		if (comment != null) {
+			writeBytes(BinaryFormat.COMMENT, comment.getBytes(StandardCharsets.UTF_8));
+		}
+		int constantIndex = 0;
+		if (constant != null) {
+			Integer index = constants.get(constant);
+			if (index == null) {
+				index = constants.size();
+				constants.put(constant, index);
+				writeBytes(BinaryFormat.CONSTANT, toUnsignedBytes(constant));
+			}
+			constantIndex = index;
+		}
+		BinaryFormat.writeVarint(out, opcode);
+		switch (opcode) {
+		case BinaryFormat.INPUT:
+		case BinaryFormat.NIZKINPUT:
+		case BinaryFormat.OUTPUT:
+			checkArity(opcode, numOuts == 1);
+			BinaryFormat.writeVarint(out, outs[0]);
+			break;
+		case BinaryFormat.MUL:
+		case BinaryFormat.XOR:
+		case BinaryFormat.OR:
+		case BinaryFormat.ASSERT:
+			checkArity(opcode, numIns == 2 && numOuts == 1);
+			BinaryFormat.writeVarint(out, ins[0]);
+			BinaryFormat.writeVarint(out, ins[1]);
+			BinaryFormat.writeVarint(out, outs[0]);
+			break;
+		case BinaryFormat.CONST_MUL:
+		case BinaryFormat.CONST_MUL_NEG:
+			checkArity(opcode, numIns == 1 && numOuts == 1);
+			BinaryFormat.writeVarint(out, constantIndex);
+			BinaryFormat.writeVarint(out, ins[0]);
+			BinaryFormat.writeVarint(out, outs[0]);
+			break;
+		case BinaryFormat.ZEROP:
+			checkArity(opcode, numIns == 1 && numOuts == 2);
+			BinaryFormat.writeVarint(out, ins[0]);
+			BinaryFormat.writeVarint(out, outs[0]);
+			BinaryFormat.writeVarint(out, outs[1]);
+			break;
+		case BinaryFormat.SPLIT:
+			checkArity(opcode, numIns == 1);
+			BinaryFormat.writeVarint(out, ins[0]);
+			BinaryFormat.writeVarint(out, numOuts);
+			for (int i = 0; i < numOuts; i++) {
+				BinaryFormat.writeVarint(out, outs[i]);
+			}
+			break;
+		case BinaryFormat.ADD:
+		case BinaryFormat.PACK:
+			checkArity(opcode, numOuts == 1);
+			BinaryFormat.writeVarint(out, numIns);
+			for (int i = 0; i < numIns; i++) {
+				BinaryFormat.writeVarint(out, ins[i]);
+			}
+			BinaryFormat.writeVarint(out, outs[0]);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown opcode: " + opcode);
+		}
+	}
+
+	private static void checkArity(int opcode, boolean check) {
+		if (!check) {
+			throw new IllegalArgumentException("Unexpected number of wires for " + BinaryFormat.NAMES[opcode]);
+		}
+	}
+
+	private void writeBytes(int opcode, byte[] bytes) throws IOException {
+		BinaryFormat.writeVarint(out, opcode);
+		BinaryFormat.writeVarint(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] toUnsignedBytes(BigInteger v) {
+		byte[] bytes = v.toByteArray();
+		if (bytes.length > 1 && bytes[0] == 0) {
+			byte[] trimmed = new byte[bytes.length - 1];
+			System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+			return trimmed;
+		}
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.flush();
+		byte[] header = BinaryFormat.header(BinaryFormat.CIRCUIT_MAGIC, 0, 0, 0, numWires);
+		fileStream.getChannel().write(ByteBuffer.wrap(header), 0);
+		out.close();
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Constants of the binary circuit (.arith.bin) and input (.in.bin) formats.
+ *
+ * Both files start with a 16-byte header: a 4-byte magic, a version byte, three
+ * bytes of flags/parameters, and an 8-byte big-endian count (the total number
+ * of wires for circuits, and the number of values for inputs). The header is
+ * written last, so that the files can be produced in a streaming way.
+ *
+ * The circuit records start with a varint opcode, followed by varint wire ids:
+ *
+ * <pre>
+ * input/nizkinput/output    id
+ * mul/xor/or/assert         in1 in2 out
+ * const-mul(-neg)           constantIndex in out
+ * zerop                     in out1 out2
+ * split                     in n out1 .. outn
+ * add/pack                  n in1 .. inn out
+ * constant                  length bytes   (defines the next constant index)
+ * comment                   length bytes   (attached to the next record)
+ * </pre>
+ *
+ * Constants are stored once, by their unsigned big-endian magnitude, before
+ * their first use. Comments keep the exact text that follows the instruction
+ * in the text format, which makes the conversion lossless.
+ *
+ * The input records are a varint wire id followed by a fixed-width big-endian
+ * field element (32 bytes for a 254-bit prime). The width is stored in the
+ * header.
+ */
+final class BinaryFormat {
+
+	static final byte[] CIRCUIT_MAGIC = { 'J', 'S', 'N', 'C' };
+	static final byte[] INPUT_MAGIC = { 'J', 'S', 'N', 'I' };
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	static final int INPUT = 0;
+	static final int NIZKINPUT = 1;
+	static final int OUTPUT = 2;
+	static final int ADD = 3;
+	static final int MUL = 4;
+	static final int CONST_MUL = 5;
+	static final int CONST_MUL_NEG = 6;
+	static final int XOR = 7;
+	static final int OR = 8;
+	static final int ASSERT = 9;
+	static final int ZEROP = 10;
+	static final int SPLIT = 11;
+	static final int PACK = 12;
+	static final int CONSTANT = 13;
+	static final int COMMENT = 14;
+
+	static final String[] NAMES = { "input", "nizkinput", "output", "add", "mul", "const-mul-", "const-mul-neg-",
+			"xor", "or", "assert", "zerop", "split", "pack" };
+
+	private BinaryFormat() {
+	}
+
+	static boolean isLabel(int opcode) {
+		return opcode <= OUTPUT;
+	}
+
+	/**
+	 * Returns the opcode of a text opcode (e.g. "mul", or "const-mul-a1"), or
+	 * -1 if it is not known.
+	 */
+	static int getOpcode(String name) {
+		if (name.startsWith("const-mul-neg-")) {
+			return CONST_MUL_NEG;
+		} else if (name.startsWith("const-mul-")) {
+			return CONST_MUL;
+		}
+		for (int i = 0; i < NAMES.length; i++) {
+			if (NAMES[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static void writeVarint(OutputStream out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	static byte[] header(byte[] magic, int b5, int b6, int b7, long count) {
+		byte[] header = new byte[HEADER_SIZE];
+		System.arraycopy(magic, 0, header, 0, 4);
+		header[4] = (byte) VERSION;
+		header[5] = (byte) b5;
+		header[6] = (byte) b6;
+		header[7] = (byte) b7;
+		for (int i = 0; i < 8; i++) {
+			header[8 + i] = (byte) (count >>> (56 - 8 * i));
+		}
+		return header;
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * Reads a binary input file (see BinaryFormat) through a memory mapping. Like
+ * BinaryCircuitReader, the reader is a cursor over the (wire id, value)
+ * entries.
+ */
+public class BinaryInputReader implements Closeable {
+
+	private MappedInput in;
+	private int elementSize;
+	private long count;
+	private long remaining;
+
+	private int wireId;
+	private byte[] element;
+
+	public BinaryInputReader(String fileName) throws IOException {
+		in = new MappedInput(fileName, BinaryFormat.INPUT_MAGIC);
+		elementSize = in.readByte();
+		in.readByte();
+		in.readByte();
+		count = in.readLong();
+		remaining = count;
+		element = new byte[elementSize];
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public int getElementSize() {
+		return elementSize;
+	}
+
+	/**
+	 * Moves to the next entry. Returns false at the end of the file.
+	 */
+	public boolean next() throws IOException {
+		if (remaining == 0) {
+			return false;
+		}
+		wireId = in.readVarint();
+		in.readBytes(element);
+		remaining--;
+		return true;
+	}
+
+	public int getWireId() {
+		return wireId;
+	}
+
+	public BigInteger getValue() {
+		return new BigInteger(1, element);
+	}
+
+	/**
+	 * Returns the big-endian bytes of the current value. The array is reused
+	 * for the next entries.
+	 */
+	public byte[] getValueBytes() {
+		return element;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import circuit.config.Config;
+
+/**
+ * Writes the values of the input and prover witness wires in the binary
+ * format (see BinaryFormat). Each value is written as a fixed-width field
+ * element.
+ */
+public class BinaryInputWriter implements Closeable {
+
+	private FileOutputStream fileStream;
+	private OutputStream out;
+	private int elementSize;
+	private byte[] element;
+	private long count;
+
+	public BinaryInputWriter(String fileName) throws IOException {
+		this.fileStream = new FileOutputStream(fileName);
+		this.out = new BufferedOutputStream(fileStream, 1 << 16);
+		this.elementSize = getElementSize();
+		this.element = new byte[elementSize];
+		// the header is written when closing
+		out.write(new byte[BinaryFormat.HEADER_SIZE]);
+	}
+
+	/**
+	 * Returns the number of bytes of a field element (32 for a 254-bit prime).
+	 */
+	public static int getElementSize() {
+		return (Config.FIELD_PRIME.bitLength() + 7) / 8;
+	}
+
+	public void write(int wireId, BigInteger value) throws IOException {
+		if (value.signum() < 0 || value.bitLength() > elementSize * 8) {
+			throw new IllegalArgumentException("The value of wire#" + wireId + " is not a field element");
+		}
+		byte[] bytes = value.toByteArray();
+		// toByteArray() may add a sign byte, or have fewer bytes
+		int length = Math.min(bytes.length, elementSize);
+		Arrays.fill(element, 0, elementSize - length, (byte) 0);
+		System.arraycopy(bytes, bytes.length - length, element, elementSize - length, length);
+		BinaryFormat.writeVarint(out, wireId);
+		out.write(element);
+		count++;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.flush();
+		byte[] header = BinaryFormat.header(BinaryFormat.INPUT_MAGIC, elementSize, 0, 0, count);
+		fileStream.getChannel().write(ByteBuffer.wrap(header), 0);
+		out.close();
+	}
+}
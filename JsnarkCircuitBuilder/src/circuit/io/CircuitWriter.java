@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import circuit.eval.Instruction;
+
+/**
+ * A destination for the instructions of a circuit, written one at a time (see
+ * CircuitGenerator.setStreamingMode()). The total number of wires is only
+ * known at the end, so it can be set at any point before closing.
+ */
+public interface CircuitWriter extends Closeable {
+
+	/**
+	 * Writes an instruction of the circuit. Instructions that are not part of
+	 * the circuit file (e.g. prover witness computations) are skipped.
+	 */
+	public void writeInstruction(Instruction e) throws IOException;
+
+	public void setNumWires(long numWires);
+
+}
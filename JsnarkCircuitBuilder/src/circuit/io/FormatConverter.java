@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+
+/**
+ * Converts circuit (.arith) and input (.in) files between the text format and
+ * the binary format (see BinaryFormat). The conversion is lossless: converting
+ * a text file to binary and back reproduces the same file, including the
+ * comments.
+ *
+ * Usage: java circuit.io.FormatConverter inputFile outputFile
+ *
+ * The type of the file and the direction of the conversion are detected from
+ * the content of the input file.
+ */
+public class FormatConverter {
+
+	public static void textToBinaryCircuit(String textFile, String binaryFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(textFile), 1 << 16);
+		BinaryCircuitWriter writer = new BinaryCircuitWriter(binaryFile, true);
+		try {
+			String line = reader.readLine();
+			if (line == null || !line.startsWith("total ")) {
+				throw new IOException("Missing total number of wires: " + textFile);
+			}
+			writer.setNumWires(Long.parseLong(line.substring("total ".length()).trim()));
+			TextLineParser parser = new TextLineParser();
+			while ((line = reader.readLine()) != null) {
+				parser.parse(line);
+				writer.write(parser.opcode, parser.inputs, parser.numInputs, parser.outputs, parser.numOutputs,
+						parser.constant, parser.comment);
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	public static void binaryToTextCircuit(String binaryFile, String textFile) throws IOException {
+		BinaryCircuitReader reader = new BinaryCircuitReader(binaryFile);
+		PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(textFile), 1 << 16));
+		try {
+			// same layout as CircuitGenerator.writeCircuitFile()
+			printWriter.println("total " + reader.getNumWires());
+			while (reader.next()) {
+				printWriter.print(reader + "\n");
+			}
+		} finally {
+			reader.close();
+			printWriter.close();
+		}
+	}
+
+	public static void textToBinaryInput(String textFile, String binaryFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(textFile), 1 << 16);
+		BinaryInputWriter writer = new BinaryInputWriter(binaryFile);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int sp = line.indexOf(' ');
+				if (sp == -1) {
+					throw new IOException("Malformed line: " + line);
+				}
+				writer.write(Integer.parseInt(line.substring(0, sp)), new BigInteger(line.substring(sp + 1), 16));
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+
+	public static void binaryToTextInput(String binaryFile, String textFile) throws IOException {
+		BinaryInputReader reader = new BinaryInputReader(binaryFile);
+		PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(textFile), 1 << 16));
+		try {
+			// same layout as CircuitEvaluator.writeInputFile()
+			while (reader.next()) {
+				printWriter.println(reader.getWireId() + " " + reader.getValue().toString(16));
+			}
+		} finally {
+			reader.close();
+			printWriter.close();
+		}
+	}
+
+	/**
+	 * Parses a line of the text circuit format into the arguments of
+	 * BinaryCircuitWriter.write().
+	 */
+	private static class TextLineParser {
+
+		private String line;
+		private int pos;
+
+		int opcode;
+		int[] inputs = new int[16];
+		int numInputs;
+		int[] outputs = new int[16];
+		int numOutputs;
+		BigInteger constant;
+		String comment;
+
+		void parse(String line) throws IOException {
+			this.line = line;
+			int sp = line.indexOf(' ');
+			if (sp == -1) {
+				throw malformed();
+			}
+			String name = line.substring(0, sp);
+			opcode = BinaryFormat.getOpcode(name);
+			if (opcode == -1) {
+				throw new IOException("Unknown instruction: " + line);
+			}
+			constant = null;
+			if (opcode == BinaryFormat.CONST_MUL || opcode == BinaryFormat.CONST_MUL_NEG) {
+				constant = new BigInteger(name.substring(BinaryFormat.NAMES[opcode].length()), 16);
+			}
+			pos = sp + 1;
+			if (BinaryFormat.isLabel(opcode)) {
+				numInputs = 0;
+				numOutputs = 1;
+				outputs[0] = readInt();
+			} else {
+				expect("in ");
+				numInputs = readInt();
+				inputs = readIds(inputs, numInputs);
+				expect(" out ");
+				numOutputs = readInt();
+				outputs = readIds(outputs, numOutputs);
+			}
+			comment = pos < line.length() ? line.substring(pos) : null;
+		}
+
+		private int[] readIds(int[] ids, int n) throws IOException {
+			if (ids.length < n) {
+				ids = new int[n * 2];
+			}
+			expect(" <");
+			for (int i = 0; i < n; i++) {
+				if (i > 0) {
+					expect(" ");
+				}
+				ids[i] = readInt();
+			}
+			expect(">");
+			return ids;
+		}
+
+		private int readInt() throws IOException {
+			int start = pos;
+			int v = 0;
+			while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+				v = v * 10 + (line.charAt(pos++) - '0');
+			}
+			if (pos == start) {
+				throw malformed();
+			}
+			return v;
+		}
+
+		private void expect(String s) throws IOException {
+			if (!line.startsWith(s, pos)) {
+				throw malformed();
+			}
+			pos += s.length();
+		}
+
+		private IOException malformed() {
+			return new IOException("Malformed line: " + line);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: java circuit.io.FormatConverter inputFile outputFile");
+			return;
+		}
+		byte[] magic = new byte[4];
+		FileInputStream in = new FileInputStream(args[0]);
+		int n = in.read(magic);
+		in.close();
+		String start = n > 0 ? new String(magic, 0, n, "ISO-8859-1") : "";
+		if (start.equals(new String(BinaryFormat.CIRCUIT_MAGIC, "ISO-8859-1"))) {
+			binaryToTextCircuit(args[0], args[1]);
+		} else if (start.equals(new String(BinaryFormat.INPUT_MAGIC, "ISO-8859-1"))) {
+			binaryToTextInput(args[0], args[1]);
+		} else if (start.startsWith("tota")) {
+			textToBinaryCircuit(args[0], args[1]);
+		} else {
+			textToBinaryInput(args[0], args[1]);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sequential reads from a memory-mapped file. Large files are mapped in
+ * windows, which are moved forward as the file is read.
+ */
+class MappedInput implements Closeable {
+
+	private static final long WINDOW_SIZE = 1 << 30;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long size;
+	private long windowStart;
+	private MappedByteBuffer buffer;
+
+	MappedInput(String fileName, byte[] magic) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		size = channel.size();
+		if (size < BinaryFormat.HEADER_SIZE) {
+			close();
+			throw new IOException("Not a binary jsnark file: " + fileName);
+		}
+		map(0);
+		byte[] m = new byte[4];
+		readBytes(m);
+		if (!Arrays.equals(m, magic)) {
+			close();
+			throw new IOException("Not a binary jsnark file: " + fileName);
+		}
+		if (readByte() != BinaryFormat.VERSION) {
+			close();
+			throw new IOException("Unsupported version: " + fileName);
+		}
+	}
+
+	private void map(long position) throws IOException {
+		windowStart = position;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+	}
+
+	boolean hasRemaining() {
+		return windowStart + buffer.position() < size;
+	}
+
+	int readByte() throws IOException {
+		if (!buffer.hasRemaining()) {
+			if (!hasRemaining()) {
+				throw new IOException("Unexpected end of file");
+			}
+			map(windowStart + buffer.position());
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	void readBytes(byte[] b) throws IOException {
+		if (buffer.remaining() >= b.length) {
+			buffer.get(b);
+		} else {
+			for (int i = 0; i < b.length; i++) {
+				b[i] = (byte) readByte();
+			}
+		}
+	}
+
+	int readVarint() throws IOException {
+		int b = readByte();
+		if (b < 0x80) {
+			return b;
+		}
+		int v = b & 0x7F;
+		for (int shift = 7;; shift += 7) {
+			b = readByte();
+			v |= (b & 0x7F) << shift;
+			if (b < 0x80) {
+				return v;
+			}
+			if (shift > 28) {
+				throw new IOException("Malformed varint");
+			}
+		}
+	}
+
+	long readLong() throws IOException {
+		long v = 0;
+		for (int i = 0; i < 8; i++) {
+			v = (v << 8) | readByte();
+		}
+		return v;
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		file.close();
+	}
+}
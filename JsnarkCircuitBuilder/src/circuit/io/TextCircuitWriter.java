@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.io;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import circuit.eval.Instruction;
+
+/**
+ * Writes a circuit in the text (.arith) format, one instruction at a time. As
+ * the total number of wires is only known at the end, the first line is
+ * written with a zero-padded placeholder (e.g. "total 0000012345"), which is
+ * filled when the writer is closed.
+ */
+public class TextCircuitWriter implements CircuitWriter {
+
+	private static final String TOTAL = "total ";
+	private static final int TOTAL_DIGITS = 10;
+
+	private FileOutputStream fileStream;
+	private Writer out;
+	private long numWires;
+
+	public TextCircuitWriter(String fileName) throws IOException {
+		this.fileStream = new FileOutputStream(fileName);
+		this.out = new BufferedWriter(new OutputStreamWriter(fileStream, StandardCharsets.UTF_8), 1 << 16);
+		out.write(getTotalLine(0) + System.lineSeparator());
+	}
+
+	private static String getTotalLine(long numWires) {
+		String digits = Long.toString(numWires);
+		StringBuilder sb = new StringBuilder(TOTAL);
+		for (int i = digits.length(); i < TOTAL_DIGITS; i++) {
+			sb.append('0');
+		}
+		return sb.append(digits).toString();
+	}
+
+	@Override
+	public void setNumWires(long numWires) {
+		if (Long.toString(numWires).length() > TOTAL_DIGITS) {
+			throw new IllegalArgumentException("Too many wires: " + numWires);
+		}
+		this.numWires = numWires;
+	}
+
+	@Override
+	public void writeInstruction(Instruction e) throws IOException {
+		if (e.doneWithinCircuit()) {
+			out.write(e + "\n");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.flush();
+		byte[] total = getTotalLine(numWires).getBytes(StandardCharsets.US_ASCII);
+		fileStream.getChannel().write(ByteBuffer.wrap(total), 0);
+		out.close();
+	}
+}
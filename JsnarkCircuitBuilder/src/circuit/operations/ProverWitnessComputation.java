@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.operations;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.structure.Wire;
+
+/**
+ * Wraps an instruction specified by the prover (see
+ * CircuitGenerator.specifyProverWitnessComputation()) together with the wires
+ * it reads and assigns. The wire ids are looked up when needed, so the wires
+ * may still be packed after the computation is specified.
+ */
+public class ProverWitnessComputation implements Instruction {
+
+	private Instruction instruction;
+	private Wire[] usedWires;
+	private Wire[] assignedWires;
+
+	public ProverWitnessComputation(Instruction instruction, Wire[] usedWires, Wire[] assignedWires) {
+		if (instruction == null || usedWires == null || assignedWires == null) {
+			throw new NullPointerException("A null instruction or wire array");
+		}
+		this.instruction = instruction;
+		this.usedWires = usedWires;
+		this.assignedWires = assignedWires;
+	}
+
+	@Override
+	public void evaluate(CircuitEvaluator evaluator) {
+		instruction.evaluate(evaluator);
+	}
+
+	@Override
+	public void emit(CircuitEvaluator evaluator) {
+		instruction.emit(evaluator);
+	}
+
+	@Override
+	public boolean doneWithinCircuit() {
+		return instruction.doneWithinCircuit();
+	}
+
+	@Override
+	public Wire[] getUsedWires() {
+		return usedWires;
+	}
+
+	@Override
+	public Wire[] getAssignedWires() {
+		return assignedWires;
+	}
+
+	public Instruction getInstruction() {
+		return instruction;
+	}
+}
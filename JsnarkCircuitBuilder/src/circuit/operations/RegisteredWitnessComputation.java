@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.operations;
+
+import java.math.BigInteger;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.structure.Wire;
+
+/**
+ * A prover witness computation given by the id of a WitnessComputation (see
+ * CircuitGenerator.specifyProverWitnessComputation(String, Wire[], Wire[],
+ * BigInteger...)).
+ */
+public class RegisteredWitnessComputation implements Instruction {
+
+	private String computationId;
+	private WitnessComputation computation;
+	private Wire[] usedWires;
+	private Wire[] assignedWires;
+	private BigInteger[] parameters;
+
+	public RegisteredWitnessComputation(String computationId, Wire[] usedWires, Wire[] assignedWires,
+			BigInteger... parameters) {
+		if (usedWires == null || assignedWires == null) {
+			throw new NullPointerException("A null wire array");
+		}
+		this.computationId = computationId;
+		this.computation = WitnessComputationRegistry.get(computationId);
+		this.usedWires = usedWires;
+		this.assignedWires = assignedWires;
+		this.parameters = parameters;
+	}
+
+	@Override
+	public void evaluate(CircuitEvaluator evaluator) {
+		computation.compute(evaluator, usedWires, assignedWires, parameters);
+	}
+
+	@Override
+	public Wire[] getUsedWires() {
+		return usedWires;
+	}
+
+	@Override
+	public Wire[] getAssignedWires() {
+		return assignedWires;
+	}
+
+	public String getComputationId() {
+		return computationId;
+	}
+
+	public BigInteger[] getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Returns the same computation on other wires.
+	 */
+	public RegisteredWitnessComputation copy(Wire[] usedWires, Wire[] assignedWires) {
+		return new RegisteredWitnessComputation(computationId, usedWires, assignedWires, parameters);
+	}
+}
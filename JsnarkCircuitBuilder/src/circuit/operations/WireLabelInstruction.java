@@ -17,6 +17,7 @@ public class WireLabelInstruction implements Instruction {
 	private LabelType type;
 	private Wire w;
 	private String desc;
+	private int descIndex = -1;
 
 	public WireLabelInstruction(LabelType type, Wire w, String... desc) {
 		this.type = type;
@@ -28,11 +29,40 @@ public class WireLabelInstruction implements Instruction {
 		}
 	}
 
+	/**
+	 * A label for the element of the given index in an array of wires. The
+	 * description is rendered from the description of the array only when
+	 * needed, e.g. "x 3" for the input array "x" (or "x[3]" for an output
+	 * array), so that no string is created per wire (see
+	 * Config.productionMode).
+	 */
+	public WireLabelInstruction(LabelType type, Wire w, String arrayDesc, int index) {
+		this.type = type;
+		this.w = w;
+		this.desc = arrayDesc;
+		this.descIndex = index;
+	}
+
 	public Wire getWire() {
 		return w;
 	}
 
+	public String getDesc() {
+		if (descIndex == -1) {
+			return desc;
+		}
+		switch (type) {
+		case output:
+			return desc + "[" + descIndex + "]";
+		case debug:
+			return desc + " - " + descIndex;
+		default:
+			return desc + " " + descIndex;
+		}
+	}
+
 	public String toString() {
+		String desc = getDesc();
 		return type + " " + w + (desc.length() == 0 ? "" : "\t\t\t # " + desc);
 	}
 
@@ -43,11 +73,26 @@ public class WireLabelInstruction implements Instruction {
 	@Override
 	public void emit(CircuitEvaluator evaluator) {
 		if (type == LabelType.output && Config.outputVerbose || type == LabelType.debug && Config.debugVerbose) {
+			String desc = getDesc();
 			System.out.println("\t[" + type + "] Value of Wire # " + w + (desc.length() > 0 ? " (" + desc + ")" : "") + " :: "
 					+ evaluator.getWireValue(w).toString(Config.hexOutputEnabled ? 16 : 10));
 		}
 	}
 
+	@Override
+	public Wire[] getUsedWires() {
+		if (type == LabelType.output || type == LabelType.debug) {
+			return new Wire[] { w };
+		}
+		return new Wire[0];
+	}
+
+	@Override
+	public Wire[] getAssignedWires() {
+		// input values are assigned before the evaluation
+		return new Wire[0];
+	}
+
 	public LabelType getType() {
 		return type;
 	}
@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.operations;
+
+import java.math.BigInteger;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.Wire;
+
+/**
+ * A prover witness computation that only depends on the wires it reads and
+ * assigns, and on constant parameters. Unlike the Instruction objects passed
+ * to CircuitGenerator.specifyProverWitnessComputation(Instruction), which
+ * usually capture the state of the gadget that created them, these are
+ * referred to by an id (see WitnessComputationRegistry), so that circuits
+ * using them can be stored in a CircuitCache.
+ */
+public interface WitnessComputation {
+
+	/**
+	 * Computes the values of the assigned wires from the values of the used
+	 * wires.
+	 */
+	public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires, BigInteger[] parameters);
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.operations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps ids to witness computations. A computation can be registered under any
+ * id, e.g. for lambdas. Otherwise, the id of a computation is the name of its
+ * class, which must be public and have a public constructor with no
+ * arguments, and is instantiated when first needed. This allows restoring the
+ * computations of a cached circuit before any gadget class is loaded.
+ */
+public final class WitnessComputationRegistry {
+
+	private static final ConcurrentHashMap<String, WitnessComputation> computations = new ConcurrentHashMap<String, WitnessComputation>();
+
+	private WitnessComputationRegistry() {
+	}
+
+	public static void register(String id, WitnessComputation computation) {
+		WitnessComputation previous = computations.putIfAbsent(id, computation);
+		if (previous != null && previous != computation) {
+			throw new IllegalArgumentException("Another witness computation is registered as " + id);
+		}
+	}
+
+	/**
+	 * Returns the computation of the given id, or throws an
+	 * IllegalArgumentException if it is unknown.
+	 */
+	public static WitnessComputation get(String id) {
+		WitnessComputation computation = computations.get(id);
+		if (computation == null) {
+			try {
+				Class<?> c = Class.forName(id);
+				if (!WitnessComputation.class.isAssignableFrom(c)) {
+					throw new IllegalArgumentException("Not a witness computation: " + id);
+				}
+				computation = (WitnessComputation) c.getDeclaredConstructor().newInstance();
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("The witness computation " + id
+						+ " does not have a constructor without parameters", e);
+			} catch (InvocationTargetException e) {
+				throw new IllegalArgumentException("Could not create the witness computation " + id, e.getCause());
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException("Unknown witness computation: " + id, e);
+			}
+			WitnessComputation previous = computations.putIfAbsent(id, computation);
+			if (previous != null) {
+				computation = previous;
+			}
+		}
+		return computation;
+	}
+}
@@ -14,6 +14,11 @@ public class AddBasicOp extends BasicOp {
 		super(ws, new Wire[] { output }, desc);
 	}
 
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new AddBasicOp(inputs, outputs[0], desc);
+	}
+
 	public String getOpcode(){
 		return "add";
 	}
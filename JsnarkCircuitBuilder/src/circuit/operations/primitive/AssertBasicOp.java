@@ -13,6 +13,11 @@ public class AssertBasicOp extends BasicOp {
 	public AssertBasicOp(Wire w1, Wire w2, Wire output, String...desc) {
 		super(new Wire[] { w1, w2 }, new Wire[] { output }, desc);
 	}
+
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new AssertBasicOp(inputs[0], inputs[1], outputs[0], desc);
+	}
 	
 	@Override
 	protected void compute(BigInteger[] assignment) {
@@ -35,6 +40,17 @@ public class AssertBasicOp extends BasicOp {
 		// do nothing
 	}
 	
+	@Override
+	public Wire[] getUsedWires() {
+		// the output of an assertion is checked, not assigned
+		return new Wire[] { inputs[0], inputs[1], outputs[0] };
+	}
+
+	@Override
+	public Wire[] getAssignedWires() {
+		return new Wire[0];
+	}
+
 	public String getOpcode(){
 		return "assert";
 	}
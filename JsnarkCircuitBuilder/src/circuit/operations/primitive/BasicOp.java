@@ -75,6 +75,16 @@ public abstract class BasicOp implements Instruction {
 		}
 	}
 
+	@Override
+	public Wire[] getUsedWires() {
+		return inputs;
+	}
+
+	@Override
+	public Wire[] getAssignedWires() {
+		return outputs;
+	}
+
 	public abstract String getOpcode();
 	public abstract int getNumMulGates();
 	
@@ -91,6 +101,19 @@ public abstract class BasicOp implements Instruction {
 		return outputs;
 	}
 
+	public String getDesc() {
+		return desc;
+	}
+
+	/**
+	 * Returns an operation of the same type on the given wires, e.g. to stamp
+	 * a recorded GadgetTemplate. Operations that cannot be copied throw an
+	 * UnsupportedOperationException.
+	 */
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		throw new UnsupportedOperationException("The operation cannot be copied: " + getOpcode());
+	}
+
 	public boolean doneWithinCircuit() {
 		return true;
 	}
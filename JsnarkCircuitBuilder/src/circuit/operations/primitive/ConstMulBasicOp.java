@@ -27,6 +27,12 @@ public class ConstMulBasicOp extends BasicOp {
 		}
 	}
 
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new ConstMulBasicOp(inputs[0], outputs[0], inSign ? constInteger.subtract(Config.FIELD_PRIME)
+				: constInteger, desc);
+	}
+
 	public String getOpcode(){
 		if (!inSign) {
 			return "const-mul-" + constInteger.toString(16);
@@ -35,6 +41,18 @@ public class ConstMulBasicOp extends BasicOp {
 		}
 	}
 	
+	public BigInteger getConstInteger() {
+		return constInteger;
+	}
+
+	/**
+	 * Returns true if the constant was specified as a negative number (written
+	 * as const-mul-neg-).
+	 */
+	public boolean isNegative() {
+		return inSign;
+	}
+
 	@Override
 	public void compute(BigInteger[] assignment) {
 		BigInteger result = assignment[inputs[0].getWireId()].multiply(constInteger);
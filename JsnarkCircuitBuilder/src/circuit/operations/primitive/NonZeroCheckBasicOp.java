@@ -13,6 +13,11 @@ public class NonZeroCheckBasicOp extends BasicOp {
 		super(new Wire[] { w }, new Wire[]{out1, out2}, desc);
 	}
 
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new NonZeroCheckBasicOp(inputs[0], outputs[0], outputs[1], desc);
+	}
+
 	public String getOpcode(){
 		return "zerop";
 	}
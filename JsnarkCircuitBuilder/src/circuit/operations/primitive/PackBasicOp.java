@@ -15,6 +15,11 @@ public class PackBasicOp extends BasicOp {
 		super(inBits, new Wire[] { out }, desc);
 	}
 
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new PackBasicOp(inputs, outputs[0], desc);
+	}
+
 	public String getOpcode(){
 		return "pack";
 	}
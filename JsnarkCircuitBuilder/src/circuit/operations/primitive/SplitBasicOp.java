@@ -14,6 +14,11 @@ public class SplitBasicOp extends BasicOp {
 		super(new Wire[] { w }, outs, desc);
 	}
 
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new SplitBasicOp(inputs[0], outputs, desc);
+	}
+
 	public String getOpcode(){
 		return "split";
 	}
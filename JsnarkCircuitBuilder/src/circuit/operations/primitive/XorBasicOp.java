@@ -14,6 +14,11 @@ public class XorBasicOp extends BasicOp {
 		super(new Wire[] { w1, w2 }, new Wire[] { output }, desc);
 	}
 
+	@Override
+	public BasicOp copy(Wire[] inputs, Wire[] outputs) {
+		return new XorBasicOp(inputs[0], inputs[1], outputs[0], desc);
+	}
+
 	public String getOpcode(){
 		return "xor";
 	}
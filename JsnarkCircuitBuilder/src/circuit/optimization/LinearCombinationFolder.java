@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.optimization;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.util.ArrayList;
+
+import circuit.config.Config;
+import circuit.eval.Instruction;
+import circuit.io.CircuitWriter;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * Folds the linear operations of a generated circuit before writing it.
+ * Every Wire.add() and Wire.mul(constant) call produces its own instruction
+ * and wire, so sums like the ones in SHA256Gadget become long chains of
+ * additions. This pass merges:
+ *
+ * 1) an addition into the addition that uses its output, e.g. add(add(a, b),
+ * c) becomes add(a, b, c).
+ *
+ * 2) a multiplication by a constant into the multiplication by a constant that
+ * uses its output, e.g. (x * c1) * c2 becomes x * (c1 * c2).
+ *
+ * An operation is only merged when its output is used by exactly one
+ * instruction of the circuit, so that no operation is repeated. The merged
+ * wires are no longer defined in the written circuit.
+ *
+ * The generator is not modified: the evaluation queue still has all the
+ * instructions, so the evaluator and the input file stay the same, and
+ * witness computations can still read the merged wires.
+ */
+public class LinearCombinationFolder {
+
+	private static final byte OTHER = 1;
+	private static final byte ADD = 2;
+	private static final byte CONST_MUL = 3;
+
+	private CircuitGenerator generator;
+	private ArrayList<Instruction> instructions;
+	private int numOriginalInstructions;
+	private int numFoldedInstructions;
+
+	public LinearCombinationFolder(CircuitGenerator generator) {
+		this.generator = generator;
+		int numWires = generator.getNumWires();
+
+		// the number of uses of each wire within the circuit, and the type
+		// of the instruction that used it last
+		int[] numUses = new int[numWires];
+		byte[] userTypes = new byte[numWires];
+		boolean canFold = true;
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (!e.doneWithinCircuit()) {
+				continue;
+			}
+			Wire[] used = e.getUsedWires();
+			if (used == null) {
+				System.err.println("Warning - The wires used by an instruction are unknown, the circuit is not folded: " + e);
+				canFold = false;
+				break;
+			}
+			byte type = getType(e);
+			for (Wire w : used) {
+				numUses[w.getWireId()]++;
+				userTypes[w.getWireId()] = type;
+			}
+		}
+
+		instructions = new ArrayList<Instruction>();
+		// the operations that are merged into the instruction using their
+		// output, indexed by their output wire
+		BasicOp[] pending = new BasicOp[numWires];
+		ArrayList<Wire> terms = new ArrayList<Wire>();
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (!e.doneWithinCircuit()) {
+				continue;
+			}
+			numOriginalInstructions++;
+			byte type = canFold ? getType(e) : OTHER;
+			if (type == ADD) {
+				AddBasicOp op = (AddBasicOp) e;
+				boolean changed = false;
+				terms.clear();
+				for (Wire w : op.getInputs()) {
+					BasicOp p = pending[w.getWireId()];
+					if (p != null) {
+						pending[w.getWireId()] = null;
+						for (Wire w2 : p.getInputs()) {
+							terms.add(w2);
+						}
+						changed = true;
+					} else {
+						terms.add(w);
+					}
+				}
+				if (changed) {
+					e = new AddBasicOp(terms.toArray(new Wire[terms.size()]), op.getOutputs()[0], op.getDesc());
+				}
+			} else if (type == CONST_MUL) {
+				ConstMulBasicOp op = (ConstMulBasicOp) e;
+				Wire in = op.getInputs()[0];
+				BasicOp p = pending[in.getWireId()];
+				if (p != null) {
+					pending[in.getWireId()] = null;
+					BigInteger constant = ((ConstMulBasicOp) p).getConstInteger().multiply(op.getConstInteger())
+							.mod(Config.FIELD_PRIME);
+					e = new ConstMulBasicOp(p.getInputs()[0], op.getOutputs()[0], constant, op.getDesc());
+				}
+			}
+			if (type == ADD || type == CONST_MUL) {
+				int outputId = ((BasicOp) e).getOutputs()[0].getWireId();
+				if (numUses[outputId] == 1 && userTypes[outputId] == type) {
+					pending[outputId] = (BasicOp) e;
+					numFoldedInstructions++;
+					continue;
+				}
+			}
+			instructions.add(e);
+		}
+
+		System.out.println("Linear combination folding for < " + generator.getName() + " >: " + numOriginalInstructions
+				+ " -> " + instructions.size() + " instructions, " + numFoldedInstructions + " intermediate wires removed");
+	}
+
+	private static byte getType(Instruction e) {
+		if (e instanceof AddBasicOp) {
+			return ADD;
+		} else if (e instanceof ConstMulBasicOp) {
+			return CONST_MUL;
+		} else {
+			return OTHER;
+		}
+	}
+
+	/**
+	 * Returns the instructions of the folded circuit, in order.
+	 */
+	public ArrayList<Instruction> getInstructions() {
+		return instructions;
+	}
+
+	public int getNumOriginalInstructions() {
+		return numOriginalInstructions;
+	}
+
+	public int getNumInstructions() {
+		return instructions.size();
+	}
+
+	/**
+	 * Returns the number of instructions that were merged into others. Each
+	 * of them removes one wire from the circuit.
+	 */
+	public int getNumFoldedInstructions() {
+		return numFoldedInstructions;
+	}
+
+	/**
+	 * Writes the folded circuit in the same format as
+	 * CircuitGenerator.writeCircuitFile(), to the same file. The wire ids are
+	 * not changed, so the input file written by the evaluator can be used
+	 * with it.
+	 */
+	public void writeCircuitFile() {
+		try {
+			PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(generator.getName() + ".arith")));
+			printWriter.println("total " + generator.getNumWires());
+			for (Instruction e : instructions) {
+				printWriter.print(e + "\n");
+			}
+			printWriter.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the folded circuit to the given writer (e.g. a
+	 * BinaryCircuitWriter), and closes it.
+	 */
+	public void writeCircuitFile(CircuitWriter writer) throws IOException {
+		try {
+			writer.setNumWires(generator.getNumWires());
+			for (Instruction e : instructions) {
+				writer.writeInstruction(e);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
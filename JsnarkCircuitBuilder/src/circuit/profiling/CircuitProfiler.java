@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.profiling;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.Gadget;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.structure.CircuitGenerator;
+
+/**
+ * Attributes the multiplication gates, wires and evaluation time of a circuit
+ * to the code that produced them. Each instruction is attributed to a path
+ * made of:
+ *
+ * 1) the circuit generator,
+ *
+ * 2) the gadgets whose constructors were running when the instruction was
+ * added (e.g. RSAEncryptionOAEPGadget, then SHA256Gadget), and the methods of
+ * the auxiliary classes (e.g. LongElement.mul),
+ *
+ * 3) the description of the instruction, if any. Digits are replaced by '#'
+ * so that descriptions like "bit 5" are grouped together.
+ *
+ * The path is found from the stack trace when the instruction is added,
+ * which makes generation much slower, so this is only meant for tuning
+ * circuits. See CircuitGenerator.enableProfiling().
+ */
+public class CircuitProfiler {
+
+	private static final String AUXILIARY_PACKAGE = "circuit.auxiliary.";
+
+	private CircuitGenerator generator;
+	private Node root;
+	private IdentityHashMap<Instruction, Node> nodes = new IdentityHashMap<Instruction, Node>();
+
+	// frame class name -> whether it is a Gadget subclass
+	private HashMap<String, Boolean> gadgetClasses = new HashMap<String, Boolean>();
+	private ArrayList<String> path = new ArrayList<String>();
+
+	public CircuitProfiler(CircuitGenerator generator) {
+		this.generator = generator;
+		this.root = new Node(getLabel(generator.getClass().getName()));
+	}
+
+	/**
+	 * Called by the generator for every new instruction.
+	 */
+	public void record(Instruction e) {
+		Node node = getNode(e);
+		nodes.put(e, node);
+		node.numInstructions++;
+		if (e instanceof BasicOp) {
+			node.numMulGates += ((BasicOp) e).getNumMulGates();
+			if (!(e instanceof AssertBasicOp)) {
+				node.numWires += ((BasicOp) e).getOutputs().length;
+			}
+		} else if (e instanceof WireLabelInstruction) {
+			LabelType type = ((WireLabelInstruction) e).getType();
+			if (type == LabelType.input || type == LabelType.nizkinput) {
+				node.numWires++;
+			}
+		}
+	}
+
+	private Node getNode(Instruction e) {
+		path.clear();
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		// from the outermost frame
+		for (int i = stack.length - 1; i >= 0; i--) {
+			String className = stack[i].getClassName();
+			String label = null;
+			if (stack[i].getMethodName().equals("<init>") && isGadgetClass(className)) {
+				label = getLabel(className);
+			} else if (className.startsWith(AUXILIARY_PACKAGE)) {
+				label = getLabel(className) + "." + stack[i].getMethodName();
+			}
+			// constructor chaining and recursion are shown once
+			if (label != null && (path.isEmpty() || !path.get(path.size() - 1).equals(label))) {
+				path.add(label);
+			}
+		}
+		String desc = null;
+		if (e instanceof BasicOp) {
+			desc = ((BasicOp) e).getDesc();
+		} else if (e instanceof WireLabelInstruction) {
+			desc = ((WireLabelInstruction) e).getDesc();
+		}
+		if (desc != null && !desc.isEmpty()) {
+			path.add("\"" + desc.replaceAll("[0-9]+", "#") + "\"");
+		}
+		Node node = root;
+		for (String label : path) {
+			node = node.getChild(label);
+		}
+		return node;
+	}
+
+	private boolean isGadgetClass(String className) {
+		Boolean isGadget = gadgetClasses.get(className);
+		if (isGadget == null) {
+			try {
+				isGadget = Gadget.class.isAssignableFrom(Class.forName(className, false, getClass().getClassLoader()));
+			} catch (ClassNotFoundException ex) {
+				isGadget = false;
+			}
+			gadgetClasses.put(className, isGadget);
+		}
+		return isGadget;
+	}
+
+	// the class name without the package
+	private static String getLabel(String className) {
+		return className.substring(className.lastIndexOf('.') + 1);
+	}
+
+	/**
+	 * Evaluates the circuit like CircuitEvaluator.evaluate(), while measuring
+	 * the evaluation time of each instruction.
+	 */
+	public void evaluate(CircuitEvaluator evaluator) {
+		System.out.println("Running Circuit Evaluator (profiling) for < " + generator.getName() + " >");
+		for (Instruction e : generator.getEvaluationQueue()) {
+			long t = System.nanoTime();
+			e.evaluate(evaluator);
+			e.emit(evaluator);
+			t = System.nanoTime() - t;
+			Node node = nodes.get(e);
+			if (node == null) {
+				node = root;
+			}
+			node.evaluationTime += t;
+		}
+		System.out.println("Circuit Evaluation Done for < " + generator.getName() + " >\n\n");
+	}
+
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the node of the given path, e.g. getNode("SHA256Gadget"), where
+	 * the generator is omitted, or null if no instruction was attributed to it.
+	 */
+	public Node getNode(String... labels) {
+		Node node = root;
+		for (String label : labels) {
+			node = node.children.get(label);
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Prints the profile as a tree. Each line shows the totals of a node,
+	 * including its children, which are sorted by the number of
+	 * multiplication gates.
+	 */
+	public void printReport() {
+		PrintWriter printWriter = new PrintWriter(System.out);
+		writeReport(printWriter);
+		printWriter.flush();
+	}
+
+	public void writeReport(PrintWriter printWriter) {
+		printWriter.println(String.format("%12s %12s %12s %12s  %s", "mul gates", "wires", "instructions",
+				"eval (ms)", "path"));
+		writeReport(printWriter, root, "");
+	}
+
+	private void writeReport(PrintWriter printWriter, Node node, String indent) {
+		printWriter.println(String.format("%12d %12d %12d %12.3f  %s%s", node.getNumMulGates(), node.getNumWires(),
+				node.getNumInstructions(), node.getEvaluationTime() / 1e6, indent, node.name));
+		for (Node child : node.getSortedChildren()) {
+			writeReport(printWriter, child, indent + "  ");
+		}
+	}
+
+	/**
+	 * Writes the profile as nested JSON objects. The "value" field is the
+	 * number of multiplication gates, so that the file can be viewed by
+	 * flame graph tools that accept this layout (e.g. d3-flame-graph).
+	 */
+	public void writeJson(String fileName) throws IOException {
+		PrintWriter printWriter = new PrintWriter(fileName);
+		try {
+			writeJson(printWriter, root);
+			printWriter.println();
+		} finally {
+			printWriter.close();
+		}
+	}
+
+	private void writeJson(PrintWriter printWriter, Node node) {
+		printWriter.print("{\"name\":\"" + node.name.replace("\\", "\\\\").replace("\"", "\\\"") + "\",\"value\":"
+				+ node.getNumMulGates() + ",\"wires\":" + node.getNumWires() + ",\"instructions\":"
+				+ node.getNumInstructions() + ",\"evaluationTimeNs\":" + node.getEvaluationTime() + ",\"children\":[");
+		boolean first = true;
+		for (Node child : node.getSortedChildren()) {
+			if (!first) {
+				printWriter.print(",");
+			}
+			writeJson(printWriter, child);
+			first = false;
+		}
+		printWriter.print("]}");
+	}
+
+	/**
+	 * Writes the multiplication gates of each node (excluding its children) in
+	 * the folded stack format used by flamegraph.pl, e.g.
+	 * "Generator;SHA256Gadget 25344".
+	 */
+	public void writeFoldedStacks(String fileName) throws IOException {
+		PrintWriter printWriter = new PrintWriter(fileName);
+		try {
+			writeFoldedStacks(printWriter, root, root.name);
+		} finally {
+			printWriter.close();
+		}
+	}
+
+	private void writeFoldedStacks(PrintWriter printWriter, Node node, String stack) {
+		if (node.numMulGates > 0) {
+			printWriter.println(stack + " " + node.numMulGates);
+		}
+		for (Node child : node.getSortedChildren()) {
+			writeFoldedStacks(printWriter, child, stack + ";" + child.name.replace(';', ',').replace(' ', '_'));
+		}
+	}
+
+	public static class Node {
+
+		private String name;
+		private LinkedHashMap<String, Node> children = new LinkedHashMap<String, Node>();
+
+		// excluding the children
+		private long numMulGates;
+		private long numWires;
+		private long numInstructions;
+		private long evaluationTime;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		private Node getChild(String name) {
+			Node child = children.get(name);
+			if (child == null) {
+				child = new Node(name);
+				children.put(name, child);
+			}
+			return child;
+		}
+
+		private ArrayList<Node> getSortedChildren() {
+			ArrayList<Node> list = new ArrayList<Node>(children.values());
+			Collections.sort(list, new Comparator<Node>() {
+				@Override
+				public int compare(Node n1, Node n2) {
+					return Long.compare(n2.getNumMulGates(), n1.getNumMulGates());
+				}
+			});
+			return list;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getNumMulGates() {
+			long n = numMulGates;
+			for (Node child : children.values()) {
+				n += child.getNumMulGates();
+			}
+			return n;
+		}
+
+		public long getNumWires() {
+			long n = numWires;
+			for (Node child : children.values()) {
+				n += child.getNumWires();
+			}
+			return n;
+		}
+
+		public long getNumInstructions() {
+			long n = numInstructions;
+			for (Node child : children.values()) {
+				n += child.getNumInstructions();
+			}
+			return n;
+		}
+
+		/**
+		 * Returns the evaluation time in nanoseconds, see
+		 * CircuitProfiler.evaluate().
+		 */
+		public long getEvaluationTime() {
+			long t = evaluationTime;
+			for (Node child : children.values()) {
+				t += child.getEvaluationTime();
+			}
+			return t;
+		}
+	}
+}
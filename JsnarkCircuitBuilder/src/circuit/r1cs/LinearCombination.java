@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+
+/**
+ * A linear combination of R1CS variables, as sorted variable indices with
+ * non-zero coefficients modulo the field prime. Immutable.
+ */
+final class LinearCombination {
+
+	static final LinearCombination EMPTY = new LinearCombination(new int[0], new BigInteger[0]);
+
+	final int[] variables;
+	final BigInteger[] coefficients;
+
+	private LinearCombination(int[] variables, BigInteger[] coefficients) {
+		this.variables = variables;
+		this.coefficients = coefficients;
+	}
+
+	static LinearCombination of(int variable) {
+		return new LinearCombination(new int[] { variable }, new BigInteger[] { BigInteger.ONE });
+	}
+
+	static LinearCombination of(int variable, BigInteger coefficient) {
+		coefficient = coefficient.mod(Config.FIELD_PRIME);
+		if (coefficient.signum() == 0) {
+			return EMPTY;
+		}
+		return new LinearCombination(new int[] { variable }, new BigInteger[] { coefficient });
+	}
+
+	// the variables must be sorted, and the coefficients non-zero
+	static LinearCombination of(int[] variables, BigInteger[] coefficients) {
+		return new LinearCombination(variables, coefficients);
+	}
+
+	int size() {
+		return variables.length;
+	}
+
+	LinearCombination scale(BigInteger c) {
+		c = c.mod(Config.FIELD_PRIME);
+		if (c.equals(BigInteger.ONE)) {
+			return this;
+		} else if (c.signum() == 0) {
+			return EMPTY;
+		}
+		BigInteger[] scaled = new BigInteger[coefficients.length];
+		for (int i = 0; i < scaled.length; i++) {
+			scaled[i] = coefficients[i].multiply(c).mod(Config.FIELD_PRIME);
+		}
+		return new LinearCombination(variables, scaled);
+	}
+
+	/**
+	 * Returns this + c * other, merging the sorted terms.
+	 */
+	LinearCombination add(LinearCombination other, BigInteger c) {
+		if (other.size() == 0) {
+			return this;
+		}
+		int[] vars = new int[variables.length + other.variables.length];
+		BigInteger[] coeffs = new BigInteger[vars.length];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < variables.length || j < other.variables.length) {
+			BigInteger coeff;
+			int var;
+			if (j == other.variables.length || i < variables.length && variables[i] < other.variables[j]) {
+				var = variables[i];
+				coeff = coefficients[i++];
+			} else if (i == variables.length || other.variables[j] < variables[i]) {
+				var = other.variables[j];
+				coeff = other.coefficients[j++].multiply(c).mod(Config.FIELD_PRIME);
+			} else {
+				var = variables[i];
+				coeff = coefficients[i++].add(other.coefficients[j++].multiply(c)).mod(Config.FIELD_PRIME);
+			}
+			if (coeff.signum() != 0) {
+				vars[n] = var;
+				coeffs[n++] = coeff;
+			}
+		}
+		if (n < vars.length) {
+			int[] trimmedVars = new int[n];
+			BigInteger[] trimmedCoeffs = new BigInteger[n];
+			System.arraycopy(vars, 0, trimmedVars, 0, n);
+			System.arraycopy(coeffs, 0, trimmedCoeffs, 0, n);
+			return new LinearCombination(trimmedVars, trimmedCoeffs);
+		}
+		return new LinearCombination(vars, coeffs);
+	}
+
+	LinearCombination add(LinearCombination other) {
+		return add(other, BigInteger.ONE);
+	}
+
+	BigInteger evaluate(BigInteger[] values) {
+		BigInteger sum = BigInteger.ZERO;
+		for (int i = 0; i < variables.length; i++) {
+			sum = sum.add(coefficients[i].multiply(values[variables[i]]));
+		}
+		return sum.mod(Config.FIELD_PRIME);
+	}
+}
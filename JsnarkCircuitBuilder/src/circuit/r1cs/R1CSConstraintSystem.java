@@ -0,0 +1,597 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.NonZeroCheckBasicOp;
+import circuit.operations.primitive.ORBasicOp;
+import circuit.operations.primitive.PackBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.operations.primitive.XorBasicOp;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+/**
+ * The rank-1 constraint system of a circuit: sparse matrices A, B and C
+ * (see SparseMatrix), such that an assignment z of the variables satisfies
+ * the system iff (A z) * (B z) = (C z) holds for every row. This allows
+ * sizing a constraint system, and checking a witness, without running the
+ * native prover.
+ *
+ * The circuit is lowered like the libsnark interface does it: add, const-mul
+ * and pack gates only produce linear combinations, and the other gates
+ * produce constraints (one for mul, xor, or and assert, two for zerop, and
+ * n + 1 for a split into n bits). Output wires that are not variables get a
+ * new variable and one more constraint.
+ *
+ * Variable 0 is the constant 1. It is followed by the public variables (the
+ * inputs, then the outputs), the prover witness inputs, and the internal
+ * variables.
+ *
+ * File format (all counts are varints, after a 16-byte header with the magic
+ * "JSNR", a version byte, three reserved bytes, and the number of constraints
+ * as a big-endian long):
+ *
+ * <pre>
+ * numVariables numPublicVariables numCoefficients
+ * coefficients     length bytes (unsigned big-endian), for each coefficient
+ * A, B, C          for each row: numEntries, then for each entry the column
+ *                  (as the difference from the previous column of the row)
+ *                  and the index of its coefficient
+ * </pre>
+ */
+public class R1CSConstraintSystem {
+
+	private static final byte[] MAGIC = { 'J', 'S', 'N', 'R' };
+	private static final int VERSION = 1;
+
+	// smaller systems are not worth the synchronization
+	private static final int PARALLEL_THRESHOLD = 1024;
+	private static final int GRAIN_SIZE = 256;
+
+	private static final byte PUBLIC_INPUT = 0;
+	private static final byte OUTPUT = 1;
+	private static final byte WITNESS = 2;
+	private static final byte INTERNAL = 3;
+
+	private int numVariables;
+	private int numPublicVariables;
+	private SparseMatrix a;
+	private SparseMatrix b;
+	private SparseMatrix c;
+
+	// used for computing the assignment from the values of the wires (only
+	// when lowered from a circuit). The variables are computed in the order
+	// they were created, and are either the value of a wire, or derived from
+	// the previous ones (e.g. the inverses used by the zerop gates).
+	private int[] creationOrder;
+	private int[] variableWires;
+	private LinearCombination[] derivedVariables;
+	private BitSet inverseVariables;
+
+	private R1CSConstraintSystem(int numVariables, int numPublicVariables, SparseMatrix a, SparseMatrix b,
+			SparseMatrix c) {
+		this.numVariables = numVariables;
+		this.numPublicVariables = numPublicVariables;
+		this.a = a;
+		this.b = b;
+		this.c = c;
+	}
+
+	/**
+	 * Lowers the circuit of the given generator.
+	 */
+	public R1CSConstraintSystem(CircuitGenerator generator) {
+		if (generator.isStreamingMode()) {
+			throw new IllegalStateException("The evaluation queue is not kept in the streaming mode");
+		}
+		new Lowering(generator).lower();
+	}
+
+	public int getNumVariables() {
+		return numVariables;
+	}
+
+	/**
+	 * Returns the number of public variables, including the constant
+	 * variable.
+	 */
+	public int getNumPublicVariables() {
+		return numPublicVariables;
+	}
+
+	public int getNumConstraints() {
+		return a.getNumRows();
+	}
+
+	public SparseMatrix getA() {
+		return a;
+	}
+
+	public SparseMatrix getB() {
+		return b;
+	}
+
+	public SparseMatrix getC() {
+		return c;
+	}
+
+	/**
+	 * Returns the assignment of all the variables after evaluating the
+	 * circuit, i.e. the witness of the constraint system.
+	 */
+	public BigInteger[] computeAssignment(CircuitEvaluator evaluator) {
+		if (creationOrder == null) {
+			throw new IllegalStateException("The constraint system was not lowered from a circuit");
+		}
+		BigInteger[] values = evaluator.getAssignment();
+		BigInteger[] assignment = new BigInteger[numVariables];
+		for (int v : creationOrder) {
+			BigInteger value;
+			if (variableWires[v] != -1) {
+				value = values[variableWires[v]];
+				if (value == null) {
+					throw new IllegalArgumentException("Wire#" + variableWires[v] + " is without value");
+				}
+				value = value.mod(Config.FIELD_PRIME);
+			} else {
+				value = derivedVariables[v].evaluate(assignment);
+				if (inverseVariables.get(v) && value.signum() != 0) {
+					value = value.modInverse(Config.FIELD_PRIME);
+				}
+			}
+			assignment[v] = value;
+		}
+		return assignment;
+	}
+
+	public boolean isSatisfied(BigInteger[] assignment) {
+		return findUnsatisfiedConstraint(assignment) == -1;
+	}
+
+	/**
+	 * Returns the index of the first constraint that the assignment does not
+	 * satisfy, or -1 if it satisfies all of them. The constraints are checked
+	 * in parallel on the common pool.
+	 */
+	public int findUnsatisfiedConstraint(BigInteger[] assignment) {
+		return findUnsatisfiedConstraint(assignment, ForkJoinPool.commonPool());
+	}
+
+	public int findUnsatisfiedConstraint(BigInteger[] assignment, ForkJoinPool pool) {
+		if (assignment.length != numVariables) {
+			throw new IllegalArgumentException("Expected " + numVariables + " values, got " + assignment.length);
+		}
+		if (!BigInteger.ONE.equals(assignment[0])) {
+			throw new IllegalArgumentException("The first variable must be the constant 1");
+		}
+		AtomicInteger first = new AtomicInteger(Integer.MAX_VALUE);
+		int numConstraints = getNumConstraints();
+		if (numConstraints < PARALLEL_THRESHOLD) {
+			check(assignment, 0, numConstraints, first);
+		} else {
+			pool.invoke(new CheckTask(assignment, 0, numConstraints, first));
+		}
+		return first.get() == Integer.MAX_VALUE ? -1 : first.get();
+	}
+
+	private void check(BigInteger[] assignment, int start, int end, AtomicInteger first) {
+		for (int i = start; i < end && i < first.get(); i++) {
+			BigInteger left = a.multiplyRow(i, assignment).multiply(b.multiplyRow(i, assignment))
+					.mod(Config.FIELD_PRIME);
+			if (!left.equals(c.multiplyRow(i, assignment))) {
+				int current;
+				while (i < (current = first.get()) && !first.compareAndSet(current, i)) {
+				}
+				return;
+			}
+		}
+	}
+
+	private class CheckTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private BigInteger[] assignment;
+		private int start;
+		private int end;
+		private AtomicInteger first;
+
+		CheckTask(BigInteger[] assignment, int start, int end, AtomicInteger first) {
+			this.assignment = assignment;
+			this.start = start;
+			this.end = end;
+			this.first = first;
+		}
+
+		@Override
+		protected void compute() {
+			if (start >= first.get()) {
+				return;
+			}
+			if (end - start > GRAIN_SIZE) {
+				int mid = (start + end) >>> 1;
+				invokeAll(new CheckTask(assignment, start, mid, first), new CheckTask(assignment, mid, end, first));
+				return;
+			}
+			check(assignment, start, end, first);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getNumConstraints() + " constraints, " + numVariables + " variables (" + numPublicVariables
+				+ " public), " + (a.getNumNonZeros() + b.getNumNonZeros() + c.getNumNonZeros()) + " non-zero entries";
+	}
+
+	public void write(String fileName) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName),
+				1 << 16))) {
+			byte[] header = new byte[8];
+			System.arraycopy(MAGIC, 0, header, 0, 4);
+			header[4] = (byte) VERSION;
+			out.write(header);
+			out.writeLong(getNumConstraints());
+
+			// the coefficient table of the matrices, without the unused entries
+			HashMap<BigInteger, Integer> coefficientIds = new HashMap<BigInteger, Integer>();
+			ArrayList<BigInteger> coefficients = new ArrayList<BigInteger>();
+			for (SparseMatrix m : new SparseMatrix[] { a, b, c }) {
+				for (int k = 0; k < m.getNumNonZeros(); k++) {
+					BigInteger coefficient = m.getCoefficient(k);
+					if (!coefficientIds.containsKey(coefficient)) {
+						coefficientIds.put(coefficient, coefficients.size());
+						coefficients.add(coefficient);
+					}
+				}
+			}
+			writeVarint(out, numVariables);
+			writeVarint(out, numPublicVariables);
+			writeVarint(out, coefficients.size());
+			for (BigInteger coefficient : coefficients) {
+				byte[] bytes = coefficient.toByteArray();
+				int offset = bytes[0] == 0 && bytes.length > 1 ? 1 : 0;
+				writeVarint(out, bytes.length - offset);
+				out.write(bytes, offset, bytes.length - offset);
+			}
+			for (SparseMatrix m : new SparseMatrix[] { a, b, c }) {
+				for (int i = 0; i < m.getNumRows(); i++) {
+					int start = m.getRowStart(i);
+					int end = m.getRowStart(i + 1);
+					writeVarint(out, end - start);
+					int previous = 0;
+					for (int k = start; k < end; k++) {
+						writeVarint(out, m.getColumn(k) - previous);
+						writeVarint(out, coefficientIds.get(m.getCoefficient(k)));
+						previous = m.getColumn(k);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a constraint system written by write(). Its assignment cannot be
+	 * computed from a circuit evaluation, but it can be checked.
+	 */
+	public static R1CSConstraintSystem read(String fileName) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName),
+				1 << 16))) {
+			byte[] header = new byte[8];
+			in.readFully(header);
+			if (!Arrays.equals(Arrays.copyOf(header, 4), MAGIC) || header[4] != VERSION) {
+				throw new IOException("Not an R1CS file: " + fileName);
+			}
+			long numConstraints = in.readLong();
+			int numVariables = readVarint(in);
+			int numPublicVariables = readVarint(in);
+			BigInteger[] coefficients = new BigInteger[readVarint(in)];
+			for (int i = 0; i < coefficients.length; i++) {
+				byte[] bytes = new byte[readVarint(in)];
+				in.readFully(bytes);
+				coefficients[i] = new BigInteger(1, bytes);
+			}
+			SparseMatrix[] matrices = new SparseMatrix[3];
+			int[] columns = new int[16];
+			int[] ids = new int[16];
+			for (int m = 0; m < 3; m++) {
+				SparseMatrix.Builder builder = new SparseMatrix.Builder();
+				for (long i = 0; i < numConstraints; i++) {
+					int length = readVarint(in);
+					if (length > columns.length) {
+						columns = new int[length];
+						ids = new int[length];
+					}
+					int previous = 0;
+					for (int k = 0; k < length; k++) {
+						columns[k] = previous + readVarint(in);
+						ids[k] = readVarint(in);
+						previous = columns[k];
+					}
+					builder.addRow(columns, ids, length);
+				}
+				matrices[m] = builder.build(coefficients);
+			}
+			return new R1CSConstraintSystem(numVariables, numPublicVariables, matrices[0], matrices[1],
+					matrices[2]);
+		}
+	}
+
+	private static void writeVarint(OutputStream out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	private static int readVarint(InputStream in) throws IOException {
+		int v = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException();
+			}
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+	}
+
+	// lowers the evaluation queue, with temporary variable indices that
+	// follow the creation order, and then sorts the variables by their kind
+	private class Lowering {
+
+		private CircuitGenerator generator;
+		private LinearCombination[] wireValues;
+
+		private int numTemporaryVariables;
+		private byte[] kinds = new byte[1024];
+		private int[] wires = new int[1024];
+		private HashMap<Integer, LinearCombination> derived = new HashMap<Integer, LinearCombination>();
+		private BitSet inverses = new BitSet();
+		private ArrayList<LinearCombination[]> constraints = new ArrayList<LinearCombination[]>();
+
+		Lowering(CircuitGenerator generator) {
+			this.generator = generator;
+			this.wireValues = new LinearCombination[generator.getNumWires()];
+		}
+
+		void lower() {
+			Wire oneWire = generator.getOneWire();
+			wireValues[oneWire.getWireId()] = LinearCombination.of(newVariable(oneWire.getWireId(), PUBLIC_INPUT));
+			ArrayList<Wire> outputs = new ArrayList<Wire>();
+			for (Instruction e : generator.getEvaluationQueue()) {
+				if (e instanceof WireLabelInstruction) {
+					WireLabelInstruction label = (WireLabelInstruction) e;
+					Wire w = label.getWire();
+					if (label.getType() == LabelType.input && w.getWireId() != oneWire.getWireId()) {
+						define(w, LinearCombination.of(newVariable(w.getWireId(), PUBLIC_INPUT)));
+					} else if (label.getType() == LabelType.nizkinput) {
+						define(w, LinearCombination.of(newVariable(w.getWireId(), WITNESS)));
+					} else if (label.getType() == LabelType.output) {
+						outputs.add(w);
+					}
+				} else if (e instanceof BasicOp) {
+					lower((BasicOp) e);
+				}
+			}
+
+			// the outputs must be public variables
+			BitSet publicOutputs = new BitSet();
+			for (Wire w : outputs) {
+				LinearCombination value = get(w);
+				int v = value.size() == 1 ? value.variables[0] : -1;
+				if (v != -1 && value.coefficients[0].equals(BigInteger.ONE) && kinds[v] == INTERNAL
+						&& !publicOutputs.get(v)) {
+					kinds[v] = OUTPUT;
+				} else {
+					v = newVariable(-1, OUTPUT);
+					derived.put(v, value);
+					addConstraint(value, LinearCombination.of(0), LinearCombination.of(v));
+				}
+				publicOutputs.set(v);
+			}
+			finish();
+		}
+
+		private void lower(BasicOp op) {
+			Wire[] in = op.getInputs();
+			Wire[] out = op.getOutputs();
+			if (op instanceof AddBasicOp) {
+				LinearCombination sum = LinearCombination.EMPTY;
+				for (Wire w : in) {
+					sum = sum.add(get(w));
+				}
+				define(out[0], sum);
+			} else if (op instanceof ConstMulBasicOp) {
+				define(out[0], get(in[0]).scale(((ConstMulBasicOp) op).getConstInteger()));
+			} else if (op instanceof PackBasicOp) {
+				LinearCombination sum = LinearCombination.EMPTY;
+				for (int i = 0; i < in.length; i++) {
+					sum = sum.add(get(in[i]), BigInteger.ONE.shiftLeft(i));
+				}
+				define(out[0], sum);
+			} else if (op instanceof MulBasicOp) {
+				LinearCombination result = defineVariable(out[0]);
+				addConstraint(get(in[0]), get(in[1]), result);
+			} else if (op instanceof XorBasicOp || op instanceof ORBasicOp) {
+				// a xor b = a + b - 2ab, a or b = a + b - ab
+				LinearCombination result = defineVariable(out[0]);
+				LinearCombination x = get(in[0]);
+				LinearCombination y = get(in[1]);
+				addConstraint(op instanceof XorBasicOp ? x.scale(BigInteger.valueOf(2)) : x, y,
+						x.add(y).add(result, BigInteger.ONE.negate()));
+			} else if (op instanceof AssertBasicOp) {
+				addConstraint(get(in[0]), get(in[1]), get(out[0]));
+			} else if (op instanceof SplitBasicOp) {
+				LinearCombination sum = LinearCombination.EMPTY;
+				for (int i = 0; i < out.length; i++) {
+					LinearCombination bit = defineVariable(out[i]);
+					addConstraint(bit, bit, bit);
+					sum = sum.add(bit, BigInteger.ONE.shiftLeft(i));
+				}
+				addConstraint(sum, LinearCombination.of(0), get(in[0]));
+			} else if (op instanceof NonZeroCheckBasicOp) {
+				// in * inverse = result, and in * (1 - result) = 0. The first
+				// output is not used by the circuit.
+				LinearCombination x = get(in[0]);
+				int inverse = newVariable(-1, INTERNAL);
+				derived.put(inverse, x);
+				inverses.set(inverse);
+				define(out[0], LinearCombination.of(inverse));
+				LinearCombination result = defineVariable(out[1]);
+				addConstraint(x, LinearCombination.of(inverse), result);
+				addConstraint(x, LinearCombination.of(0).add(result, BigInteger.ONE.negate()),
+						LinearCombination.EMPTY);
+			} else {
+				throw new IllegalArgumentException("Unsupported operation: " + op);
+			}
+		}
+
+		private int newVariable(int wireId, byte kind) {
+			if (numTemporaryVariables == kinds.length) {
+				kinds = Arrays.copyOf(kinds, kinds.length * 2);
+				wires = Arrays.copyOf(wires, wires.length * 2);
+			}
+			kinds[numTemporaryVariables] = kind;
+			wires[numTemporaryVariables] = wireId;
+			return numTemporaryVariables++;
+		}
+
+		private LinearCombination defineVariable(Wire w) {
+			LinearCombination value = LinearCombination.of(newVariable(w.getWireId(), INTERNAL));
+			define(w, value);
+			return value;
+		}
+
+		private void define(Wire w, LinearCombination value) {
+			wireValues[w.getWireId()] = value;
+		}
+
+		private LinearCombination get(Wire w) {
+			LinearCombination value = wireValues[w.getWireId()];
+			if (value == null) {
+				throw new IllegalStateException("Wire#" + w.getWireId() + " is used before being defined");
+			}
+			return value;
+		}
+
+		private void addConstraint(LinearCombination x, LinearCombination y, LinearCombination z) {
+			constraints.add(new LinearCombination[] { x, y, z });
+		}
+
+		// numbers the variables by kind (keeping their creation order within
+		// each kind), and builds the matrices
+		private void finish() {
+			int[] counts = new int[4];
+			for (int t = 0; t < numTemporaryVariables; t++) {
+				counts[kinds[t]]++;
+			}
+			int[] next = new int[4];
+			for (int k = 1; k < 4; k++) {
+				next[k] = next[k - 1] + counts[k - 1];
+			}
+			int[] newIndices = new int[numTemporaryVariables];
+			for (int t = 0; t < numTemporaryVariables; t++) {
+				newIndices[t] = next[kinds[t]]++;
+			}
+
+			numVariables = numTemporaryVariables;
+			numPublicVariables = counts[PUBLIC_INPUT] + counts[OUTPUT];
+			creationOrder = newIndices;
+			variableWires = new int[numVariables];
+			derivedVariables = new LinearCombination[numVariables];
+			inverseVariables = new BitSet(numVariables);
+			for (int t = 0; t < numTemporaryVariables; t++) {
+				int v = newIndices[t];
+				variableWires[v] = wires[t];
+				LinearCombination value = derived.get(t);
+				if (value != null) {
+					derivedVariables[v] = renumber(value, newIndices);
+					inverseVariables.set(v, inverses.get(t));
+				}
+			}
+
+			HashMap<BigInteger, Integer> coefficientIds = new HashMap<BigInteger, Integer>();
+			ArrayList<BigInteger> coefficients = new ArrayList<BigInteger>();
+			SparseMatrix.Builder[] builders = { new SparseMatrix.Builder(), new SparseMatrix.Builder(),
+					new SparseMatrix.Builder() };
+			int[] columns = new int[16];
+			int[] ids = new int[16];
+			for (LinearCombination[] constraint : constraints) {
+				for (int m = 0; m < 3; m++) {
+					LinearCombination row = renumber(constraint[m], newIndices);
+					int length = row.size();
+					if (length > columns.length) {
+						columns = new int[length];
+						ids = new int[length];
+					}
+					for (int k = 0; k < length; k++) {
+						columns[k] = row.variables[k];
+						Integer id = coefficientIds.get(row.coefficients[k]);
+						if (id == null) {
+							id = coefficients.size();
+							coefficientIds.put(row.coefficients[k], id);
+							coefficients.add(row.coefficients[k]);
+						}
+						ids[k] = id;
+					}
+					builders[m].addRow(columns, ids, length);
+				}
+			}
+			constraints = null;
+			BigInteger[] table = coefficients.toArray(new BigInteger[coefficients.size()]);
+			a = builders[0].build(table);
+			b = builders[1].build(table);
+			c = builders[2].build(table);
+		}
+
+		// the renumbered terms are sorted again
+		private LinearCombination renumber(LinearCombination value, int[] newIndices) {
+			int n = value.size();
+			long[] terms = new long[n];
+			for (int k = 0; k < n; k++) {
+				terms[k] = (long) newIndices[value.variables[k]] << 32 | k;
+			}
+			Arrays.sort(terms);
+			int[] variables = new int[n];
+			BigInteger[] coefficients = new BigInteger[n];
+			for (int k = 0; k < n; k++) {
+				variables[k] = (int) (terms[k] >>> 32);
+				coefficients[k] = value.coefficients[(int) terms[k]];
+			}
+			return LinearCombination.of(variables, coefficients);
+		}
+	}
+}
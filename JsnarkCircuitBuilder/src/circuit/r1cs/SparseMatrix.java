@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.r1cs;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import circuit.config.Config;
+
+/**
+ * A sparse matrix in the compressed sparse row (CSR) layout: the entries of
+ * row i are at the positions rowStart[i] .. rowStart[i + 1] - 1 of the
+ * columns and coefficientIds arrays, sorted by column. The coefficients are
+ * indices into a table that is shared by the matrices of a constraint system,
+ * as most coefficients are repeated (e.g. 1, -1 and the powers of two).
+ */
+public class SparseMatrix {
+
+	private int[] rowStart;
+	private int[] columns;
+	private int[] coefficientIds;
+	private BigInteger[] coefficients;
+
+	SparseMatrix(int[] rowStart, int[] columns, int[] coefficientIds, BigInteger[] coefficients) {
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.coefficientIds = coefficientIds;
+		this.coefficients = coefficients;
+	}
+
+	public int getNumRows() {
+		return rowStart.length - 1;
+	}
+
+	public int getNumNonZeros() {
+		return rowStart[rowStart.length - 1];
+	}
+
+	public int getRowStart(int row) {
+		return rowStart[row];
+	}
+
+	public int getColumn(int entry) {
+		return columns[entry];
+	}
+
+	public BigInteger getCoefficient(int entry) {
+		return coefficients[coefficientIds[entry]];
+	}
+
+	int getCoefficientId(int entry) {
+		return coefficientIds[entry];
+	}
+
+	/**
+	 * Returns the product of the given row with the given vector, modulo the
+	 * field prime.
+	 */
+	public BigInteger multiplyRow(int row, BigInteger[] vector) {
+		BigInteger sum = BigInteger.ZERO;
+		for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+			BigInteger c = coefficients[coefficientIds[k]];
+			BigInteger v = vector[columns[k]];
+			sum = sum.add(c.equals(BigInteger.ONE) ? v : c.multiply(v));
+		}
+		return sum.mod(Config.FIELD_PRIME);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SparseMatrix)) {
+			return false;
+		}
+		SparseMatrix m = (SparseMatrix) obj;
+		if (!Arrays.equals(rowStart, m.rowStart) || !Arrays.equals(columns, m.columns)) {
+			return false;
+		}
+		for (int k = 0; k < columns.length; k++) {
+			if (!getCoefficient(k).equals(m.getCoefficient(k))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(rowStart) * 31 + Arrays.hashCode(columns);
+	}
+
+	// accumulates the rows of a matrix
+	static class Builder {
+
+		private int numRows;
+		private int[] rowStart = new int[1024];
+		private int[] columns = new int[4096];
+		private int[] coefficientIds = new int[4096];
+		private int numEntries;
+
+		void addRow(int[] rowColumns, int[] rowCoefficientIds, int length) {
+			if (numEntries + length > columns.length) {
+				int capacity = Math.max(numEntries + length, columns.length * 2);
+				columns = Arrays.copyOf(columns, capacity);
+				coefficientIds = Arrays.copyOf(coefficientIds, capacity);
+			}
+			System.arraycopy(rowColumns, 0, columns, numEntries, length);
+			System.arraycopy(rowCoefficientIds, 0, coefficientIds, numEntries, length);
+			numEntries += length;
+			if (numRows + 2 > rowStart.length) {
+				rowStart = Arrays.copyOf(rowStart, rowStart.length * 2);
+			}
+			rowStart[++numRows] = numEntries;
+		}
+
+		SparseMatrix build(BigInteger[] coefficients) {
+			return new SparseMatrix(Arrays.copyOf(rowStart, numRows + 1), Arrays.copyOf(columns, numEntries),
+					Arrays.copyOf(coefficientIds, numEntries), coefficients);
+		}
+	}
+}
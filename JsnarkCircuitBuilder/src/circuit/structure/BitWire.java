@@ -19,15 +19,19 @@ public class BitWire extends Wire {
 		super(wireId);
 	}
 
+	public BitWire(int wireId, CircuitGenerator generator) {
+		super(wireId, generator);
+	}
+
 	public Wire mul(Wire w, String desc) {
 		if (w instanceof ConstantWire) {
 			return this.mul(((ConstantWire) w).getConstant(), desc);
 		} else {
 			Wire output;
 			if (w instanceof BitWire)
-				output = new VariableBitWire(generator.currentWireId++);
+				output = new VariableBitWire(generator.currentWireId++, generator);
 			else
-				output = new VariableWire(generator.currentWireId++);
+				output = new VariableWire(generator.currentWireId++, generator);
 			Instruction op = new MulBasicOp(this, w, output, desc);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 			if(cachedOutputs == null){
@@ -47,7 +51,7 @@ public class BitWire extends Wire {
 		} else if(b.equals(BigInteger.ONE)){
 			return this;
 		} else{
-			out = new LinearCombinationWire(generator.currentWireId++);
+			out = new LinearCombinationWire(generator.currentWireId++, generator);
 			Instruction op = new ConstMulBasicOp(this, out, b, desc);
 //			generator.addToEvaluationQueue(op);
 //			return out;			
@@ -67,7 +71,7 @@ public class BitWire extends Wire {
 //		Instruction op = new ConstMulBasicOp(this, neg, -1, desc);
 //		generator.addToEvaluationQueue(op);
 		Wire neg = this.mul(-1, desc);
-		Wire out = new LinearCombinationBitWire(generator.currentWireId++);
+		Wire out = new LinearCombinationBitWire(generator.currentWireId++, generator);
 		Instruction op = new AddBasicOp(new Wire[] { generator.oneWire, neg }, out, desc);
 //		generator.addToEvaluationQueue(op);
 		Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
@@ -86,7 +90,7 @@ public class BitWire extends Wire {
 		} else {
 			Wire out;
 			if (w instanceof BitWire) {
-				out = new VariableBitWire(generator.currentWireId++);
+				out = new VariableBitWire(generator.currentWireId++, generator);
 				Instruction op = new ORBasicOp(this, w, out, desc);
 				Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 				if(cachedOutputs == null){
@@ -109,7 +113,7 @@ public class BitWire extends Wire {
 		} else {
 			Wire out;
 			if (w instanceof BitWire) {
-				out = new VariableBitWire(generator.currentWireId++);
+				out = new VariableBitWire(generator.currentWireId++, generator);
 				Instruction op = new XorBasicOp(this, w, out, desc);
 				Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 				if(cachedOutputs == null){
@@ -126,7 +130,7 @@ public class BitWire extends Wire {
 	}
 	
 	public WireArray getBits(Wire w, int bitwidth, String...desc) {
-		return new WireArray( new Wire[]{this}).adjustLength(bitwidth);
+		return new WireArray( new Wire[]{this}, generator).adjustLength(bitwidth);
 	}
 	
 }
@@ -0,0 +1,739 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import circuit.auxiliary.LongElement;
+import circuit.config.Config;
+import circuit.eval.Instruction;
+import circuit.eval.NativeHint;
+import circuit.operations.RegisteredWitnessComputation;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.NonZeroCheckBasicOp;
+import circuit.operations.primitive.ORBasicOp;
+import circuit.operations.primitive.PackBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.operations.primitive.XorBasicOp;
+
+/**
+ * An on-disk cache of generated circuits (see
+ * CircuitGenerator.generateCircuit(CircuitCache)), so that a circuit is only
+ * built once for the same generator parameters. Restoring a circuit replays
+ * its instructions, and sets the Wire, Wire[], Wire[][] and LongElement
+ * fields of the generator, which are typically used by
+ * generateSampleInput().
+ *
+ * A circuit can be cached only if all of its prover witness computations are
+ * registered (see CircuitGenerator.specifyProverWitnessComputation(String,
+ * Wire[], Wire[], BigInteger...)). The cache does not detect changes in the
+ * gadget code, so the cache directory should be cleared when the gadgets
+ * change.
+ */
+public class CircuitCache {
+
+	private static final int MAGIC = 0x4a534e4b;
+	private static final int VERSION = 2;
+
+	private static final byte LABEL = 0;
+	private static final byte ADD = 1;
+	private static final byte MUL = 2;
+	private static final byte XOR = 3;
+	private static final byte OR = 4;
+	private static final byte CONST_MUL = 5;
+	private static final byte ASSERT = 6;
+	private static final byte SPLIT = 7;
+	private static final byte PACK = 8;
+	private static final byte NON_ZERO_CHECK = 9;
+	private static final byte COMPUTATION = 10;
+
+	private static final byte WIRE_FIELD = 0;
+	private static final byte WIRE_ARRAY_FIELD = 1;
+	private static final byte WIRE_MATRIX_FIELD = 2;
+	private static final byte LONG_ELEMENT_FIELD = 3;
+
+	private File directory;
+
+	public CircuitCache(String directory) {
+		this.directory = new File(directory);
+	}
+
+	/**
+	 * Returns the key of the circuit of the given generator, which consists of
+	 * its class, its circuit name, the field prime, the chunk bitwidth of
+	 * LongElement, and the values of the non-transient primitive, String,
+	 * BigInteger and enum fields (and arrays of these) that are declared by
+	 * the generator class. Must be called before generating the circuit, as
+	 * buildCircuit() usually changes some fields.
+	 *
+	 * @param extraParameters
+	 *            other settings that affect the circuit, e.g. static options
+	 *            of the gadgets
+	 */
+	public String getKey(CircuitGenerator generator, String... extraParameters) {
+		StringBuilder key = new StringBuilder();
+		key.append(generator.getClass().getName()).append('\n');
+		key.append(generator.getName()).append('\n');
+		key.append(Config.FIELD_PRIME).append('\n');
+		key.append(LongElement.CHUNK_BITWIDTH).append('\n');
+		for (Field f : getFields(generator.getClass())) {
+			Class<?> type = f.getType();
+			if (!isParameterType(type.isArray() ? type.getComponentType() : type)) {
+				continue;
+			}
+			Object value;
+			try {
+				value = f.get(generator);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+			key.append(f.getDeclaringClass().getName()).append('.').append(f.getName()).append('=');
+			if (value != null && type.isArray()) {
+				key.append(arrayToString(value));
+			} else {
+				key.append(value);
+			}
+			key.append('\n');
+		}
+		for (String p : extraParameters) {
+			key.append(p).append('\n');
+		}
+		return key.toString();
+	}
+
+	public File getFile(CircuitGenerator generator, String key) {
+		String name = generator.getClass().getSimpleName();
+		if (name.isEmpty()) {
+			name = "circuit";
+		}
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return new File(directory, name + "_" + String.format("%064x", new BigInteger(1, hash)) + ".cache");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Restores the circuit of the given key into the given generator, which
+	 * must not have generated a circuit before. Returns false if the circuit
+	 * is not in the cache, in which case the generator is not changed.
+	 */
+	public boolean load(final CircuitGenerator generator, String key) {
+		if (generator.getNumWires() != 0 || generator.isStreamingMode()) {
+			throw new IllegalStateException("A cached circuit can only be restored into a new generator");
+		}
+		File file = getFile(generator, key);
+		if (!file.exists()) {
+			return false;
+		}
+		final CachedCircuit circuit;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !readString(in).equals(key)) {
+				return false;
+			}
+			circuit = new CachedCircuit(generator, in);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Warning - Could not read the cached circuit " + file + ": " + e);
+			return false;
+		}
+		generator.runAsActiveGenerator(new Runnable() {
+			@Override
+			public void run() {
+				circuit.restore();
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Stores the circuit of the given generator under the given key. Returns
+	 * false if the circuit cannot be cached, i.e. if it has unregistered
+	 * prover witness computations, was generated in the streaming mode, or
+	 * if a field of the generator has a wire that was not packed.
+	 */
+	public boolean store(CircuitGenerator generator, String key) {
+		if (generator.isStreamingMode()) {
+			System.err.println("Warning - Circuits generated in the streaming mode cannot be cached");
+			return false;
+		}
+		for (Instruction e : generator.evaluationQueue) {
+			if (getTag(e) < 0 && !(e instanceof NativeHint)) {
+				System.err.println("Warning - The circuit cannot be cached, as it has an unregistered instruction: "
+						+ e);
+				return false;
+			}
+		}
+		for (Field f : getFields(generator.getClass())) {
+			byte kind = getFieldKind(f.getType());
+			if (kind >= 0 && hasUnpackedWire(getFieldValue(f, generator), kind)) {
+				System.err.println("Warning - The circuit cannot be cached, as the field " + f.getName()
+						+ " has a wire that was not packed");
+				return false;
+			}
+		}
+		File file = getFile(generator, key);
+		File tmp = null;
+		try {
+			Files.createDirectories(directory.toPath());
+			tmp = File.createTempFile(file.getName(), ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp),
+					1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, key);
+				writeCircuit(generator, out);
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		} catch (IOException e) {
+			System.err.println("Warning - Could not write the cached circuit " + file + ": " + e);
+			if (tmp != null) {
+				tmp.delete();
+			}
+			return false;
+		}
+	}
+
+	private void writeCircuit(CircuitGenerator generator, DataOutputStream out) throws IOException {
+		out.writeInt(generator.currentWireId);
+		out.writeInt(generator.oneWire.getWireId());
+		out.writeInt(generator.zeroWire.getWireId());
+		// native hints only speed up the evaluation, and are not cached
+		int numHints = 0;
+		for (Instruction e : generator.evaluationQueue) {
+			if (e instanceof NativeHint) {
+				numHints++;
+			}
+		}
+		out.writeInt(generator.evaluationQueue.size() - numHints);
+		// the parameter arrays of the computations, by content. An array is
+		// written at its first use only, e.g. the values of a lookup table
+		// that are shared by all the lookups into it.
+		HashMap<List<BigInteger>, Integer> parameterArrays = new HashMap<List<BigInteger>, Integer>();
+		for (Instruction e : generator.evaluationQueue) {
+			if (e instanceof NativeHint) {
+				continue;
+			}
+			byte tag = getTag(e);
+			out.writeByte(tag);
+			if (tag == LABEL) {
+				WireLabelInstruction label = (WireLabelInstruction) e;
+				out.writeByte(label.getType().ordinal());
+				out.writeInt(label.getWire().getWireId());
+				writeString(out, label.getDesc());
+			} else if (tag == COMPUTATION) {
+				RegisteredWitnessComputation computation = (RegisteredWitnessComputation) e;
+				writeString(out, computation.getComputationId());
+				writeWireIds(out, computation.getUsedWires());
+				writeWireIds(out, computation.getAssignedWires());
+				List<BigInteger> parameters = Arrays.asList(computation.getParameters());
+				Integer index = parameterArrays.get(parameters);
+				if (index != null) {
+					out.writeInt(index);
+				} else {
+					out.writeInt(parameterArrays.size());
+					parameterArrays.put(parameters, parameterArrays.size());
+					out.writeInt(parameters.size());
+					for (BigInteger p : parameters) {
+						writeBigInteger(out, p);
+					}
+				}
+			} else {
+				BasicOp op = (BasicOp) e;
+				writeWireIds(out, op.getInputs());
+				writeWireIds(out, op.getOutputs());
+				writeString(out, op.getDesc());
+				if (tag == CONST_MUL) {
+					ConstMulBasicOp constMul = (ConstMulBasicOp) op;
+					BigInteger constant = constMul.getConstInteger();
+					writeBigInteger(out, constMul.isNegative() ? constant.subtract(Config.FIELD_PRIME) : constant);
+				}
+			}
+		}
+
+		List<Field> wireFields = new ArrayList<Field>();
+		for (Field f : getFields(generator.getClass())) {
+			if (getFieldKind(f.getType()) >= 0) {
+				wireFields.add(f);
+			}
+		}
+		out.writeInt(wireFields.size());
+		for (Field f : wireFields) {
+			byte kind = getFieldKind(f.getType());
+			writeString(out, f.getDeclaringClass().getName());
+			writeString(out, f.getName());
+			out.writeByte(kind);
+			Object value = getFieldValue(f, generator);
+			if (kind == WIRE_FIELD) {
+				out.writeInt(getWireId((Wire) value));
+			} else if (kind == WIRE_ARRAY_FIELD) {
+				writeWireIds(out, (Wire[]) value);
+			} else if (kind == WIRE_MATRIX_FIELD) {
+				Wire[][] matrix = (Wire[][]) value;
+				out.writeInt(matrix == null ? -1 : matrix.length);
+				if (matrix != null) {
+					for (Wire[] array : matrix) {
+						writeWireIds(out, array);
+					}
+				}
+			} else {
+				LongElement element = (LongElement) value;
+				writeWireIds(out, element == null ? null : element.getArray());
+				if (element != null) {
+					for (int bitwidth : element.getCurrentBitwidth()) {
+						out.writeInt(bitwidth);
+					}
+				}
+			}
+		}
+	}
+
+	// the instructions and fields of a cached circuit, which are read
+	// completely before changing the generator
+	private static class CachedCircuit {
+
+		private CircuitGenerator generator;
+		private int numWires;
+		private Wire[] wires;
+		private Wire oneWire;
+		private Wire zeroWire;
+		private Instruction[] instructions;
+		private Field[] fields;
+		private int[][][] fieldWireIds;
+		private int[][] fieldBitwidths;
+		private Object[] fieldValues;
+		private List<BigInteger[]> parameterArrays = new ArrayList<BigInteger[]>();
+
+		private CachedCircuit(CircuitGenerator generator, DataInputStream in) throws IOException {
+			this.generator = generator;
+			numWires = in.readInt();
+			wires = new Wire[numWires];
+			int oneWireId = in.readInt();
+			oneWire = new ConstantWire(oneWireId, BigInteger.ONE, generator);
+			wires[oneWireId] = oneWire;
+			int zeroWireId = in.readInt();
+
+			instructions = new Instruction[in.readInt()];
+			for (int i = 0; i < instructions.length; i++) {
+				instructions[i] = readInstruction(in);
+			}
+			zeroWire = wires[zeroWireId];
+
+			fields = new Field[in.readInt()];
+			fieldWireIds = new int[fields.length][][];
+			fieldBitwidths = new int[fields.length][];
+			for (int i = 0; i < fields.length; i++) {
+				String className = readString(in);
+				String fieldName = readString(in);
+				byte kind = in.readByte();
+				try {
+					fields[i] = Class.forName(className).getDeclaredField(fieldName);
+				} catch (ReflectiveOperationException e) {
+					throw new IOException("Unknown field " + className + "." + fieldName, e);
+				}
+				if (getFieldKind(fields[i].getType()) != kind) {
+					throw new IOException("The type of the field " + className + "." + fieldName + " changed");
+				}
+				fields[i].setAccessible(true);
+				if (kind == WIRE_FIELD) {
+					fieldWireIds[i] = new int[][] { { in.readInt() } };
+				} else if (kind == WIRE_MATRIX_FIELD) {
+					int length = in.readInt();
+					if (length != -1) {
+						fieldWireIds[i] = new int[length][];
+						for (int j = 0; j < length; j++) {
+							fieldWireIds[i][j] = readWireIds(in);
+						}
+					}
+				} else {
+					int[] ids = readWireIds(in);
+					if (ids != null) {
+						fieldWireIds[i] = new int[][] { ids };
+						if (kind == LONG_ELEMENT_FIELD) {
+							fieldBitwidths[i] = new int[ids.length];
+							for (int j = 0; j < ids.length; j++) {
+								fieldBitwidths[i][j] = in.readInt();
+							}
+						}
+					}
+				}
+			}
+			fieldValues = new Object[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				fieldValues[i] = getFieldValue(i);
+			}
+		}
+
+		// builds the value of a field, except for LongElement fields, where
+		// only the array is built here, as LongElement needs the active
+		// generator. The wires are checked against the declared type of the
+		// field, so that the generator is not changed if they do not match.
+		private Object getFieldValue(int i) throws IOException {
+			if (fieldWireIds[i] == null) {
+				return null;
+			}
+			Class<?> type = fields[i].getType();
+			byte kind = getFieldKind(type);
+			if (kind == WIRE_FIELD) {
+				Wire w = getWire(fieldWireIds[i][0][0], false);
+				if (w != null && !type.isInstance(w)) {
+					throw new IOException("The wire of the field " + fields[i].getName() + " is not a "
+							+ type.getSimpleName());
+				}
+				return w;
+			} else if (kind == WIRE_ARRAY_FIELD) {
+				Class<?> componentType = type.getComponentType();
+				int[] ids = fieldWireIds[i][0];
+				Object array = Array.newInstance(componentType, ids.length);
+				for (int j = 0; j < ids.length; j++) {
+					Wire w = getWire(ids[j], false);
+					if (w != null && !componentType.isInstance(w)) {
+						throw new IOException("A wire of the field " + fields[i].getName() + " is not a "
+								+ componentType.getSimpleName());
+					}
+					Array.set(array, j, w);
+				}
+				return array;
+			} else if (kind == WIRE_MATRIX_FIELD) {
+				Wire[][] matrix = new Wire[fieldWireIds[i].length][];
+				for (int j = 0; j < matrix.length; j++) {
+					matrix[j] = getWires(fieldWireIds[i][j], false);
+				}
+				return matrix;
+			} else {
+				return getWires(fieldWireIds[i][0], false);
+			}
+		}
+
+		private Instruction readInstruction(DataInputStream in) throws IOException {
+			byte tag = in.readByte();
+			if (tag == LABEL) {
+				LabelType type = LabelType.values()[in.readByte()];
+				int id = in.readInt();
+				Wire w = wires[id];
+				if (w == null) {
+					w = wires[id] = new VariableWire(id, generator);
+				}
+				return new WireLabelInstruction(type, w, readString(in));
+			} else if (tag == COMPUTATION) {
+				String computationId = readString(in);
+				Wire[] usedWires = getWires(readWireIds(in), false);
+				Wire[] assignedWires = getWires(readWireIds(in), false);
+				int index = in.readInt();
+				BigInteger[] parameters;
+				if (index >= 0 && index < parameterArrays.size()) {
+					parameters = parameterArrays.get(index);
+				} else if (index == parameterArrays.size()) {
+					parameters = new BigInteger[in.readInt()];
+					for (int i = 0; i < parameters.length; i++) {
+						parameters[i] = readBigInteger(in);
+					}
+					parameterArrays.add(parameters);
+				} else {
+					throw new IOException("Invalid parameter array " + index);
+				}
+				return new RegisteredWitnessComputation(computationId, usedWires, assignedWires, parameters);
+			}
+			int[] inputIds = readWireIds(in);
+			int[] outputIds = readWireIds(in);
+			String desc = readString(in);
+			Wire[] inputs = getWires(inputIds, false);
+			switch (tag) {
+			case ADD:
+				return new AddBasicOp(inputs, getWires(outputIds, false)[0], desc);
+			case MUL:
+				return new MulBasicOp(inputs[0], inputs[1], getWires(outputIds, false)[0], desc);
+			case XOR:
+				return new XorBasicOp(inputs[0], inputs[1], getWires(outputIds, true)[0], desc);
+			case OR:
+				return new ORBasicOp(inputs[0], inputs[1], getWires(outputIds, true)[0], desc);
+			case CONST_MUL:
+				BigInteger constant = readBigInteger(in);
+				if (wires[outputIds[0]] == null && inputs[0] instanceof ConstantWire) {
+					BigInteger value = ((ConstantWire) inputs[0]).getConstant().multiply(constant)
+							.mod(Config.FIELD_PRIME);
+					wires[outputIds[0]] = new ConstantWire(outputIds[0], value, generator);
+				}
+				return new ConstMulBasicOp(inputs[0], getWires(outputIds, false)[0], constant, desc);
+			case ASSERT:
+				return new AssertBasicOp(inputs[0], inputs[1], getWires(outputIds, false)[0], desc);
+			case SPLIT:
+				return new SplitBasicOp(inputs[0], getWires(outputIds, true), desc);
+			case PACK:
+				return new PackBasicOp(inputs, getWires(outputIds, false)[0], desc);
+			case NON_ZERO_CHECK:
+				Wire[] outputs = getWires(outputIds, false);
+				return new NonZeroCheckBasicOp(inputs[0], outputs[0], outputs[1], desc);
+			default:
+				throw new IOException("Unknown instruction type " + tag);
+			}
+		}
+
+		private Wire[] getWires(int[] ids, boolean bits) {
+			if (ids == null) {
+				return null;
+			}
+			Wire[] result = new Wire[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				result[i] = getWire(ids[i], bits);
+			}
+			return result;
+		}
+
+		private Wire getWire(int id, boolean bit) {
+			if (id == -1) {
+				return null;
+			}
+			Wire w = wires[id];
+			if (w == null) {
+				w = wires[id] = bit ? new VariableBitWire(id, generator) : new VariableWire(id, generator);
+			}
+			return w;
+		}
+
+		private void restore() {
+			generator.currentWireId = numWires;
+			generator.oneWire = oneWire;
+			generator.zeroWire = zeroWire;
+			for (Wire w : wires) {
+				if (w instanceof ConstantWire && !generator.knownConstantWires.containsKey(((ConstantWire) w)
+						.getConstant())) {
+					generator.knownConstantWires.put(((ConstantWire) w).getConstant(), w);
+				}
+			}
+			for (Instruction e : instructions) {
+				generator.addToEvaluationQueue(e);
+				if (e instanceof WireLabelInstruction) {
+					WireLabelInstruction label = (WireLabelInstruction) e;
+					if (label.getType() == LabelType.input) {
+						generator.addWireRole(label.getWire(), WireRoleTable.INPUT);
+					} else if (label.getType() == LabelType.nizkinput) {
+						generator.addWireRole(label.getWire(), WireRoleTable.PROVER_WITNESS);
+					} else if (label.getType() == LabelType.output) {
+						generator.addWireRole(label.getWire(), WireRoleTable.OUTPUT);
+					}
+				}
+			}
+			for (int i = 0; i < fields.length; i++) {
+				Object value = fieldValues[i];
+				if (value != null && getFieldKind(fields[i].getType()) == LONG_ELEMENT_FIELD) {
+					value = new LongElement((Wire[]) value, fieldBitwidths[i]);
+				}
+				try {
+					fields[i].set(generator, value);
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	private static byte getTag(Instruction e) {
+		Class<?> c = e.getClass();
+		if (c == WireLabelInstruction.class) {
+			return LABEL;
+		} else if (c == RegisteredWitnessComputation.class) {
+			return COMPUTATION;
+		} else if (c == AddBasicOp.class) {
+			return ADD;
+		} else if (c == MulBasicOp.class) {
+			return MUL;
+		} else if (c == XorBasicOp.class) {
+			return XOR;
+		} else if (c == ORBasicOp.class) {
+			return OR;
+		} else if (c == ConstMulBasicOp.class) {
+			return CONST_MUL;
+		} else if (c == AssertBasicOp.class) {
+			return ASSERT;
+		} else if (c == SplitBasicOp.class) {
+			return SPLIT;
+		} else if (c == PackBasicOp.class) {
+			return PACK;
+		} else if (c == NonZeroCheckBasicOp.class) {
+			return NON_ZERO_CHECK;
+		}
+		return -1;
+	}
+
+	private static byte getFieldKind(Class<?> type) {
+		if (Wire.class.isAssignableFrom(type)) {
+			return WIRE_FIELD;
+		} else if (type.isArray() && Wire.class.isAssignableFrom(type.getComponentType())) {
+			return WIRE_ARRAY_FIELD;
+		} else if (type == Wire[][].class) {
+			return WIRE_MATRIX_FIELD;
+		} else if (type == LongElement.class) {
+			return LONG_ELEMENT_FIELD;
+		}
+		return -1;
+	}
+
+	private static boolean isParameterType(Class<?> type) {
+		return type.isPrimitive() || type == String.class || type == BigInteger.class || type.isEnum()
+				|| type == Integer.class || type == Long.class || type == Boolean.class;
+	}
+
+	// the non-static, non-transient fields declared by the subclasses of
+	// CircuitGenerator, in a fixed order
+	private static List<Field> getFields(Class<?> generatorClass) {
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> c = generatorClass; c != CircuitGenerator.class; c = c.getSuperclass()) {
+			Field[] declared = c.getDeclaredFields();
+			Arrays.sort(declared, new Comparator<Field>() {
+				@Override
+				public int compare(Field f1, Field f2) {
+					return f1.getName().compareTo(f2.getName());
+				}
+			});
+			for (Field f : declared) {
+				if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isTransient(f.getModifiers()) && !f.isSynthetic()) {
+					f.setAccessible(true);
+					fields.add(f);
+				}
+			}
+		}
+		return fields;
+	}
+
+	private static String arrayToString(Object array) {
+		if (array instanceof Object[]) {
+			return Arrays.deepToString((Object[]) array);
+		} else if (array instanceof int[]) {
+			return Arrays.toString((int[]) array);
+		} else if (array instanceof long[]) {
+			return Arrays.toString((long[]) array);
+		} else if (array instanceof byte[]) {
+			return Arrays.toString((byte[]) array);
+		} else if (array instanceof short[]) {
+			return Arrays.toString((short[]) array);
+		} else if (array instanceof char[]) {
+			return Arrays.toString((char[]) array);
+		} else if (array instanceof boolean[]) {
+			return Arrays.toString((boolean[]) array);
+		} else if (array instanceof float[]) {
+			return Arrays.toString((float[]) array);
+		} else {
+			return Arrays.toString((double[]) array);
+		}
+	}
+
+	private static Object getFieldValue(Field f, CircuitGenerator generator) {
+		try {
+			return f.get(generator);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// the wires that were not packed have a negative id, and cannot be
+	// restored
+	private static boolean hasUnpackedWire(Object value, byte kind) {
+		if (value == null) {
+			return false;
+		} else if (kind == WIRE_FIELD) {
+			return ((Wire) value).getWireId() < 0;
+		} else if (kind == WIRE_MATRIX_FIELD) {
+			for (Wire[] array : (Wire[][]) value) {
+				if (hasUnpackedWire(array, WIRE_ARRAY_FIELD)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		Wire[] array = kind == WIRE_ARRAY_FIELD ? (Wire[]) value : ((LongElement) value).getArray();
+		for (Wire w : array) {
+			if (w != null && w.getWireId() < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// null wires are stored as -1
+	private static int getWireId(Wire w) {
+		return w == null ? -1 : w.getWireId();
+	}
+
+	private static void writeWireIds(DataOutputStream out, Wire[] ws) throws IOException {
+		if (ws == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(ws.length);
+		for (Wire w : ws) {
+			out.writeInt(getWireId(w));
+		}
+	}
+
+	private static int[] readWireIds(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1) {
+			return null;
+		}
+		int[] ids = new int[length];
+		for (int i = 0; i < length; i++) {
+			ids[i] = in.readInt();
+		}
+		return ids;
+	}
+
+	private static void writeBigInteger(DataOutputStream out, BigInteger x) throws IOException {
+		byte[] bytes = x.toByteArray();
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static BigInteger readBigInteger(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new BigInteger(bytes);
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -6,76 +6,133 @@ package circuit.structure;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import util.Util;
 import circuit.auxiliary.LongElement;
 import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
 import circuit.eval.Instruction;
+import circuit.eval.NativeHint;
+import circuit.io.BinaryCircuitWriter;
+import circuit.io.CircuitWriter;
+import circuit.operations.ProverWitnessComputation;
+import circuit.operations.RegisteredWitnessComputation;
 import circuit.operations.WireLabelInstruction;
 import circuit.operations.WireLabelInstruction.LabelType;
 import circuit.operations.primitive.AssertBasicOp;
 import circuit.operations.primitive.BasicOp;
 import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.profiling.CircuitProfiler;
 
 public abstract class CircuitGenerator {
 
-	private static ConcurrentHashMap<Long, CircuitGenerator> activeCircuitGenerators = new ConcurrentHashMap<>();
-	private static CircuitGenerator instance;
+	// the generator of the circuit being built by the current thread, see
+	// runAsActiveGenerator()
+	private static final ThreadLocal<CircuitGenerator> activeCircuitGenerator = new ThreadLocal<CircuitGenerator>();
 
 	protected int currentWireId;
-	protected LinkedHashMap<Instruction, Instruction> evaluationQueue;
+	// the instructions in evaluation order. The repeated operations are
+	// detected by the operation table, see addToEvaluationQueue()
+	protected ArrayList<Instruction> evaluationQueue;
+	protected OperationTable operationTable;
+	// in the streaming mode, the operations kept in the operation table, in
+	// the order they were added
+	private ArrayDeque<BasicOp> dedupWindow;
+	private int dedupWindowSize;
 
 	protected Wire zeroWire;
 	protected Wire oneWire;
 
+	// wires should be added to these lists by addWireRole(), which also
+	// updates the role table
 	protected ArrayList<Wire> inWires;
 	protected ArrayList<Wire> outWires;
 	protected ArrayList<Wire> proverWitnessWires;
+	private WireRoleTable wireRoles;
 
 	protected String circuitName;
 
 	protected HashMap<BigInteger, Wire> knownConstantWires;
+	// a cache of knownConstantWires with primitive keys
+	private ConstantPool constantPool;
 
 	private int numOfConstraints;
 	private CircuitEvaluator circuitEvaluator;
 
+	// used in the streaming mode only
+	private CircuitWriter circuitWriter;
+	// used in the profiling mode only
+	private CircuitProfiler profiler;
+	// the last instruction added to the evaluation queue, see endNativeHint()
+	private Instruction lastInstruction;
+
 	public CircuitGenerator(String circuitName) {
 
 		this.circuitName = circuitName;
 
-		instance = this;
 		inWires = new ArrayList<Wire>();
 		outWires = new ArrayList<Wire>();
 		proverWitnessWires = new ArrayList<Wire>();
-		evaluationQueue = new LinkedHashMap<Instruction, Instruction>();
+		wireRoles = new WireRoleTable();
+		evaluationQueue = new ArrayList<Instruction>();
+		operationTable = new OperationTable();
 		knownConstantWires = new HashMap<BigInteger, Wire>();
+		constantPool = new ConstantPool();
 		currentWireId = 0;
 		numOfConstraints = 0;
+	}
 
-		if (Config.runningMultiGenerators) {
-			activeCircuitGenerators.put(Thread.currentThread().getId(), this);
+	/**
+	 * Returns the generator used by the wires, wire arrays and gadgets that
+	 * are created without specifying one. This is the generator whose
+	 * generateCircuit() (or runAsActiveGenerator()) is running on the current
+	 * thread, so that many generators can build circuits on different threads
+	 * at the same time.
+	 */
+	public static CircuitGenerator getActiveCircuitGenerator() {
+		CircuitGenerator currentGenerator = activeCircuitGenerator.get();
+		if (currentGenerator == null) {
+			throw new RuntimeException("The current thread does not have any active circuit generators");
 		}
+		return currentGenerator;
 	}
 
-	public static CircuitGenerator getActiveCircuitGenerator() {
-		if (!Config.runningMultiGenerators)
-			return instance;
-		else {
-
-			Long threadId = Thread.currentThread().getId();
-			CircuitGenerator currentGenerator = activeCircuitGenerators.get(threadId);
-			if (currentGenerator == null) {
-				throw new RuntimeException("The current thread does not have any active circuit generators");
+	/**
+	 * Runs the given task with this generator as the active generator of the
+	 * current thread (see getActiveCircuitGenerator()), e.g. for building
+	 * a part of the circuit outside buildCircuit(). The previous active
+	 * generator of the thread, if any, is restored at the end.
+	 */
+	public final void runAsActiveGenerator(Runnable task) {
+		CircuitGenerator previousGenerator = activeCircuitGenerator.get();
+		activeCircuitGenerator.set(this);
+		try {
+			task.run();
+		} finally {
+			if (previousGenerator == null) {
+				activeCircuitGenerator.remove();
 			} else {
-				return currentGenerator;
+				activeCircuitGenerator.set(previousGenerator);
 			}
 		}
 	}
@@ -86,12 +143,94 @@ public abstract class CircuitGenerator {
 		
 		System.out.println("Running Circuit Generator for < " + circuitName + " >");
 
-		initCircuitConstruction();
-		buildCircuit();
+		runAsActiveGenerator(new Runnable() {
+			@Override
+			public void run() {
+				initCircuitConstruction();
+				buildCircuit();
+			}
+		});
+		if (circuitWriter != null) {
+			try {
+				circuitWriter.setNumWires(currentWireId);
+				circuitWriter.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Error while writing the circuit", e);
+			}
+		}
 		
 		System.out.println("Circuit Generation Done for < " + circuitName + " >  \n \t Total Number of Constraints :  " + getNumOfConstraints() + "\n");
 	}
 
+	/**
+	 * Same as generateCircuit(), but restores the circuit from the given cache
+	 * if it was stored by a previous run with the same generator parameters
+	 * (see CircuitCache.getKey()). Otherwise, the circuit is generated and
+	 * stored in the cache, if possible.
+	 */
+	public final void generateCircuit(CircuitCache cache, String... extraParameters) {
+		String key = cache.getKey(this, extraParameters);
+		if (cache.load(this, key)) {
+			System.out.println("Circuit Restored from Cache for < " + circuitName + " >  \n \t Total Number of Constraints :  " + getNumOfConstraints() + "\n");
+			return;
+		}
+		generateCircuit();
+		cache.store(this, key);
+	}
+
+	/**
+	 * Enables the streaming mode, in which the instructions are written to
+	 * the circuit writer as soon as they are created, instead of being kept in
+	 * the evaluation queue until writeCircuitFile() is called. This allows
+	 * generating circuits that do not fit in memory. Must be called before
+	 * generateCircuit(), which closes the writer at the end.
+	 * 
+	 * Only the most recent dedupWindowSize operations are kept for detecting
+	 * repeated operations (see addToEvaluationQueue()). Repetitions of older
+	 * operations are written again, which is still a valid circuit, but may
+	 * be larger than the one produced normally.
+	 * 
+	 * As the instructions are not kept, the circuit cannot be evaluated in
+	 * this mode.
+	 * 
+	 * @param circuitWriter
+	 *            e.g. a TextCircuitWriter or a BinaryCircuitWriter
+	 * @param dedupWindowSize
+	 */
+	public void setStreamingMode(CircuitWriter circuitWriter, final int dedupWindowSize) {
+		if (currentWireId != 0) {
+			throw new IllegalStateException("The streaming mode must be enabled before generating the circuit");
+		}
+		this.circuitWriter = circuitWriter;
+		this.dedupWindowSize = dedupWindowSize;
+		dedupWindow = new ArrayDeque<BasicOp>();
+	}
+
+	/**
+	 * Enables the profiling mode, in which the multiplication gates, wires and
+	 * evaluation time are attributed to the gadgets that produced them (see
+	 * CircuitProfiler). This makes the generation much slower. Must be called
+	 * before generateCircuit().
+	 */
+	public CircuitProfiler enableProfiling() {
+		if (currentWireId != 0) {
+			throw new IllegalStateException("The profiling mode must be enabled before generating the circuit");
+		}
+		profiler = new CircuitProfiler(this);
+		return profiler;
+	}
+
+	/**
+	 * Returns the profiler, or null if the profiling mode is not enabled.
+	 */
+	public CircuitProfiler getProfiler() {
+		return profiler;
+	}
+
+	public boolean isStreamingMode() {
+		return circuitWriter != null;
+	}
+
 	public String getName() {
 		return circuitName;
 	}
@@ -99,10 +238,13 @@ public abstract class CircuitGenerator {
 	public abstract void generateSampleInput(CircuitEvaluator evaluator);
 
 	public Wire createInputWire(String... desc) {
-		Wire newInputWire = new VariableWire(currentWireId++);
-		addToEvaluationQueue(new WireLabelInstruction(LabelType.input, newInputWire, desc));
-		inWires.add(newInputWire);
-		return newInputWire;
+		return addInputWire(new WireLabelInstruction(LabelType.input, new VariableWire(currentWireId++, this), desc));
+	}
+
+	private Wire addInputWire(WireLabelInstruction label) {
+		addToEvaluationQueue(label);
+		addWireRole(label.getWire(), WireRoleTable.INPUT);
+		return label.getWire();
 	}
 
 	public Wire[] createInputWireArray(int n, String... desc) {
@@ -110,6 +252,9 @@ public abstract class CircuitGenerator {
 		for (int i = 0; i < n; i++) {
 			if (desc.length == 0) {
 				list[i] = createInputWire("");
+			} else if (Config.productionMode) {
+				list[i] = addInputWire(new WireLabelInstruction(LabelType.input,
+						new VariableWire(currentWireId++, this), desc[0], i));
 			} else {
 				list[i] = createInputWire(desc[0] + " " + i);
 			}
@@ -141,10 +286,14 @@ public abstract class CircuitGenerator {
 	
 	public Wire createProverWitnessWire(String... desc) {
 
-		Wire wire = new VariableWire(currentWireId++);
-		addToEvaluationQueue(new WireLabelInstruction(LabelType.nizkinput, wire, desc));
-		proverWitnessWires.add(wire);
-		return wire;
+		return addProverWitnessWire(new WireLabelInstruction(LabelType.nizkinput,
+				new VariableWire(currentWireId++, this), desc));
+	}
+
+	private Wire addProverWitnessWire(WireLabelInstruction label) {
+		addToEvaluationQueue(label);
+		addWireRole(label.getWire(), WireRoleTable.PROVER_WITNESS);
+		return label.getWire();
 	}
 
 	public Wire[] createProverWitnessWireArray(int n, String... desc) {
@@ -153,6 +302,9 @@ public abstract class CircuitGenerator {
 		for (int k = 0; k < n; k++) {
 			if (desc.length == 0) {
 				ws[k] = createProverWitnessWire("");
+			} else if (Config.productionMode) {
+				ws[k] = addProverWitnessWire(new WireLabelInstruction(LabelType.nizkinput,
+						new VariableWire(currentWireId++, this), desc[0], k));
 			} else {
 				ws[k] = createProverWitnessWire(desc[0] + " " + k);
 			}
@@ -173,24 +325,30 @@ public abstract class CircuitGenerator {
 	}
 
 	public Wire makeOutput(Wire wire, String... desc) {
+		return makeOutput(wire, Util.getDesc(desc), -1);
+	}
+
+	// descIndex is the index of the wire in an output array, or -1
+	private Wire makeOutput(Wire wire, String desc, int descIndex) {
 		Wire outputWire = wire;
-		if (!(wire instanceof VariableWire || wire instanceof VariableBitWire) || inWires.contains(wire)) {
+		if (!(wire instanceof VariableWire || wire instanceof VariableBitWire) || isInputWire(wire)) {
 			wire.packIfNeeded();
 			outputWire = makeVariable(wire, desc);
-		} else if (inWires.contains(wire) || proverWitnessWires.contains(wire)) {
+		} else if (isInputWire(wire) || isProverWitnessWire(wire)) {
 			outputWire = makeVariable(wire, desc);
 		} else {
 			wire.packIfNeeded();
 		}
 
-		outWires.add(outputWire);
-		addToEvaluationQueue(new WireLabelInstruction(LabelType.output, outputWire, desc));
+		addWireRole(outputWire, WireRoleTable.OUTPUT);
+		addToEvaluationQueue(descIndex == -1 ? new WireLabelInstruction(LabelType.output, outputWire, desc)
+				: new WireLabelInstruction(LabelType.output, outputWire, desc, descIndex));
 		return outputWire;
 
 	}
 
 	protected Wire makeVariable(Wire wire, String... desc) {
-		Wire outputWire = new VariableWire(currentWireId++);
+		Wire outputWire = new VariableWire(currentWireId++, this);
 		Instruction op = new MulBasicOp(wire, oneWire, outputWire, desc);
 		Wire[] cachedOutputs = addToEvaluationQueue(op);
 		if(cachedOutputs == null){
@@ -207,6 +365,8 @@ public abstract class CircuitGenerator {
 		for (int i = 0; i < wires.length; i++) {
 			if (desc.length == 0) {
 				outs[i] = makeOutput(wires[i], "");
+			} else if (Config.productionMode) {
+				outs[i] = makeOutput(wires[i], desc[0], i);
 			} else {
 				outs[i] = makeOutput(wires[i], desc[0] + "[" + i + "]");
 			}
@@ -222,17 +382,24 @@ public abstract class CircuitGenerator {
 	public void addDebugInstruction(Wire[] wires, String... desc) {
 		for (int i = 0; i < wires.length; i++) {
 			wires[i].packIfNeeded();
-			addToEvaluationQueue(
-					new WireLabelInstruction(LabelType.debug, wires[i], desc.length > 0 ? (desc[0] + " - " + i) : ""));
+			if (desc.length > 0 && Config.productionMode) {
+				addToEvaluationQueue(new WireLabelInstruction(LabelType.debug, wires[i], desc[0], i));
+			} else {
+				addToEvaluationQueue(
+						new WireLabelInstruction(LabelType.debug, wires[i], desc.length > 0 ? (desc[0] + " - " + i) : ""));
+			}
 		}
 	}
 
 	public void writeCircuitFile() {
+		if (circuitWriter != null) {
+			throw new IllegalStateException("In the streaming mode, the circuit is written while being generated");
+		}
 		try {
 			PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(getName() + ".arith")));
 
 			printWriter.println("total " + currentWireId);
-			for (Instruction e : evaluationQueue.keySet()) {
+			for (Instruction e : evaluationQueue) {
 				if (e.doneWithinCircuit()) {
 					printWriter.print(e + "\n");
 				}
@@ -243,9 +410,29 @@ public abstract class CircuitGenerator {
 		}
 	}
 
+	/**
+	 * Writes the circuit in the binary format (see circuit.io.BinaryFormat),
+	 * without the descriptions of the instructions.
+	 */
+	public void writeBinaryCircuitFile() {
+		if (circuitWriter != null) {
+			throw new IllegalStateException("In the streaming mode, the circuit is written while being generated");
+		}
+		try {
+			BinaryCircuitWriter writer = new BinaryCircuitWriter(getName() + ".arith.bin", false);
+			writer.setNumWires(currentWireId);
+			for (Instruction e : evaluationQueue) {
+				writer.writeInstruction(e);
+			}
+			writer.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	public void printCircuit() {
 
-		for (Instruction e : evaluationQueue.keySet()) {
+		for (Instruction e : evaluationQueue) {
 			if (e.doneWithinCircuit()) {
 				System.out.println(e);
 			}
@@ -253,15 +440,328 @@ public abstract class CircuitGenerator {
 
 	}
 
+	/**
+	 * Builds independent parts of the circuit in parallel, e.g. several
+	 * SHA256Gadget instances on different inputs. For each array of input
+	 * wires, the builder is called (with the common pool's threads) within a
+	 * separate generator, on wires that stand for the given input wires. The
+	 * resulting sub-circuits are then added to this generator in order,
+	 * with new wire ids. Operations that already exist in this circuit (e.g.
+	 * the constant wires) are not repeated.
+	 * 
+	 * The builder must only use the wires it receives (and the wires it
+	 * creates), and the prover witness computations must declare their wires
+	 * (see specifyProverWitnessComputation(Instruction, Wire[], Wire[])).
+	 * 
+	 * @return the output wires returned by the builder for each input array
+	 */
+	public Wire[][] buildInParallel(Wire[][] inputs, final Function<Wire[], Wire[]> builder) {
+		return buildInParallel(inputs, builder, ForkJoinPool.commonPool());
+	}
+
+	public Wire[][] buildInParallel(Wire[][] inputs, final Function<Wire[], Wire[]> builder, ExecutorService executor) {
+		int n = inputs.length;
+		final SubCircuitGenerator[] subGenerators = new SubCircuitGenerator[n];
+		final Wire[][] subInputs = new Wire[n][];
+		for (int i = 0; i < n; i++) {
+			subGenerators[i] = createSubCircuitGenerator(circuitName + "_" + i);
+			subInputs[i] = new Wire[inputs[i].length];
+			for (int j = 0; j < inputs[i].length; j++) {
+				inputs[i][j].packIfNeeded();
+				subInputs[i][j] = subGenerators[i].importWire(inputs[i][j]);
+			}
+		}
+		ArrayList<Future<Wire[]>> results = new ArrayList<Future<Wire[]>>();
+		for (int i = 0; i < n; i++) {
+			final int index = i;
+			results.add(executor.submit(new Callable<Wire[]>() {
+				@Override
+				public Wire[] call() {
+					final Wire[][] outputs = new Wire[1][];
+					subGenerators[index].runAsActiveGenerator(new Runnable() {
+						@Override
+						public void run() {
+							outputs[0] = builder.apply(subInputs[index]);
+							for (Wire w : outputs[0]) {
+								w.packIfNeeded();
+							}
+						}
+					});
+					return outputs[0];
+				}
+			}));
+		}
+		Wire[][] outputs = new Wire[n][];
+		for (int i = 0; i < n; i++) {
+			try {
+				outputs[i] = results.get(i).get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			mergeSubCircuit(subGenerators[i], outputs[i]);
+		}
+		return outputs;
+	}
+
+	// adds the instructions of a sub-circuit to this generator. The wires of
+	// the sub-circuit are moved to this generator.
+	private void mergeSubCircuit(SubCircuitGenerator subGenerator, Wire[] outputs) {
+		Instruction[] instructions = subGenerator.evaluationQueue
+				.toArray(new Instruction[subGenerator.evaluationQueue.size()]);
+		for (Instruction e : instructions) {
+			if (e.getUsedWires() == null || e.getAssignedWires() == null) {
+				throw new IllegalStateException("The wires used by an instruction of a sub-circuit are unknown: " + e);
+			}
+		}
+
+		// all the wire objects of the sub-circuit, grouped by their ids, as
+		// different objects may have the same id
+		IdentityHashMap<Wire, Integer> oldIds = new IdentityHashMap<Wire, Integer>();
+		for (Instruction e : instructions) {
+			collectWires(oldIds, e.getUsedWires());
+			collectWires(oldIds, e.getAssignedWires());
+			if (e instanceof BasicOp) {
+				collectWires(oldIds, ((BasicOp) e).getInputs());
+				collectWires(oldIds, ((BasicOp) e).getOutputs());
+			} else if (e instanceof WireLabelInstruction) {
+				collectWires(oldIds, ((WireLabelInstruction) e).getWire());
+			}
+		}
+		collectWires(oldIds, subGenerator.placeholders.toArray(new Wire[subGenerator.placeholders.size()]));
+		collectWires(oldIds, outputs);
+		ArrayList<ArrayList<Wire>> wiresById = new ArrayList<ArrayList<Wire>>(subGenerator.currentWireId);
+		for (int i = 0; i < subGenerator.currentWireId; i++) {
+			wiresById.add(null);
+		}
+		for (Map.Entry<Wire, Integer> entry : oldIds.entrySet()) {
+			ArrayList<Wire> list = wiresById.get(entry.getValue());
+			if (list == null) {
+				list = new ArrayList<Wire>(1);
+				wiresById.set(entry.getValue(), list);
+			}
+			list.add(entry.getKey());
+			entry.getKey().generator = this;
+		}
+
+		setWireIds(wiresById, subGenerator.oneWire.getWireId(), oneWire.getWireId());
+		for (int i = 0; i < subGenerator.placeholders.size(); i++) {
+			setWireIds(wiresById, oldIds.get(subGenerator.placeholders.get(i)),
+					subGenerator.parentWires.get(i).getWireId());
+		}
+		for (Instruction e : instructions) {
+			if (e instanceof WireLabelInstruction) {
+				WireLabelInstruction label = (WireLabelInstruction) e;
+				Wire w = label.getWire();
+				if (w == subGenerator.oneWire) {
+					continue;
+				}
+				if (label.getType() == LabelType.input || label.getType() == LabelType.nizkinput) {
+					setWireIds(wiresById, oldIds.get(w), currentWireId++);
+					addWireRole(w, label.getType() == LabelType.input ? WireRoleTable.INPUT
+							: WireRoleTable.PROVER_WITNESS);
+				} else if (label.getType() == LabelType.output) {
+					addWireRole(w, WireRoleTable.OUTPUT);
+				}
+				addToEvaluationQueue(e);
+			} else if (e instanceof BasicOp && !(e instanceof AssertBasicOp)) {
+				Wire[] opOutputs = ((BasicOp) e).getOutputs();
+				int[] opOutputIds = new int[opOutputs.length];
+				for (int i = 0; i < opOutputs.length; i++) {
+					opOutputIds[i] = oldIds.get(opOutputs[i]);
+					setWireIds(wiresById, opOutputIds[i], currentWireId++);
+				}
+				Wire[] cachedOutputs = addToEvaluationQueue(e);
+				if (cachedOutputs != null) {
+					currentWireId -= opOutputs.length;
+					for (int i = 0; i < opOutputs.length; i++) {
+						setWireIds(wiresById, opOutputIds[i], cachedOutputs[i].getWireId());
+					}
+				}
+			} else if (!(e instanceof NativeHint)) {
+				// the hints are dropped, as they refer to wire objects that
+				// are not renumbered
+				addToEvaluationQueue(e);
+			}
+		}
+	}
+
+	private static void setWireIds(ArrayList<ArrayList<Wire>> wiresById, int oldId, int newId) {
+		ArrayList<Wire> list = wiresById.get(oldId);
+		if (list != null) {
+			for (Wire w : list) {
+				w.wireId = newId;
+			}
+		}
+	}
+
+	/**
+	 * Removes the operations whose outputs do not reach any output wire,
+	 * assertion or prover witness computation (e.g. unused outputs of
+	 * checkNonZero(), or wires that are only printed by addDebugInstruction()),
+	 * and renumbers the remaining wires into a dense range. This makes both the
+	 * circuit file and the evaluator's assignment array smaller.
+	 * 
+	 * Splits are always kept, as they also restrict the bit length of their
+	 * input (see Wire.restrictBitLength()). The input and prover witness wires
+	 * are kept as well.
+	 * 
+	 * Must be called after generateCircuit(), and before creating evaluators.
+	 * The ids of the wires referenced by the remaining instructions and by the
+	 * generator are updated; wires that were removed get the id -1. Nothing
+	 * is done if some instruction does not declare the wires it reads (see
+	 * specifyProverWitnessComputation(Instruction, Wire[], Wire[])).
+	 */
+	public void eliminateDeadGates() {
+		if (circuitWriter != null) {
+			throw new IllegalStateException("The evaluation queue is not kept in the streaming mode");
+		}
+		Instruction[] instructions = evaluationQueue.toArray(new Instruction[evaluationQueue.size()]);
+		for (Instruction e : instructions) {
+			if (e.getUsedWires() == null || e.getAssignedWires() == null) {
+				System.err.println("Warning - The wires used by an instruction are unknown, no gates are eliminated: " + e);
+				return;
+			}
+		}
+
+		// backward pass: an operation is live if any of its outputs is used
+		// by a live instruction
+		BitSet liveWires = new BitSet(currentWireId);
+		boolean[] live = new boolean[instructions.length];
+		liveWires.set(oneWire.getWireId());
+		liveWires.set(zeroWire.getWireId());
+		for (int i = instructions.length - 1; i >= 0; i--) {
+			Instruction e = instructions[i];
+			if (e instanceof WireLabelInstruction && ((WireLabelInstruction) e).getType() == LabelType.debug) {
+				// decided after all the uses are known
+				continue;
+			}
+			if (e instanceof NativeHint) {
+				// dropped, as the hinted wires may not be reachable from the
+				// instructions, and would keep their old ids
+				continue;
+			}
+			if (e instanceof BasicOp && !(e instanceof AssertBasicOp) && !(e instanceof SplitBasicOp)) {
+				for (Wire w : ((BasicOp) e).getOutputs()) {
+					live[i] |= liveWires.get(w.getWireId());
+				}
+			} else {
+				live[i] = true;
+			}
+			if (live[i]) {
+				for (Wire w : e.getUsedWires()) {
+					liveWires.set(w.getWireId());
+				}
+			}
+		}
+
+		// the new ids follow the order in which the wires are defined
+		int[] newIds = new int[currentWireId];
+		Arrays.fill(newIds, -1);
+		int numWires = 0;
+		int numLive = 0;
+		for (int i = 0; i < instructions.length; i++) {
+			Instruction e = instructions[i];
+			if (e instanceof WireLabelInstruction) {
+				WireLabelInstruction label = (WireLabelInstruction) e;
+				if (label.getType() == LabelType.input || label.getType() == LabelType.nizkinput) {
+					newIds[label.getWire().getWireId()] = numWires++;
+				} else if (label.getType() == LabelType.debug) {
+					live[i] = liveWires.get(label.getWire().getWireId());
+				}
+			} else if (live[i] && e instanceof BasicOp && !(e instanceof AssertBasicOp)) {
+				for (Wire w : ((BasicOp) e).getOutputs()) {
+					newIds[w.getWireId()] = numWires++;
+				}
+			}
+			if (live[i]) {
+				numLive++;
+			}
+		}
+
+		// update all the wire objects that can be reached. Different objects
+		// may have the same id (e.g. after packing a wire), so the old ids are
+		// only read before any update.
+		IdentityHashMap<Wire, Integer> oldIds = new IdentityHashMap<Wire, Integer>();
+		for (Instruction e : instructions) {
+			collectWires(oldIds, e.getUsedWires());
+			collectWires(oldIds, e.getAssignedWires());
+			if (e instanceof BasicOp) {
+				collectWires(oldIds, ((BasicOp) e).getInputs());
+				collectWires(oldIds, ((BasicOp) e).getOutputs());
+			} else if (e instanceof WireLabelInstruction) {
+				collectWires(oldIds, ((WireLabelInstruction) e).getWire());
+			}
+		}
+		collectWires(oldIds, inWires.toArray(new Wire[inWires.size()]));
+		collectWires(oldIds, outWires.toArray(new Wire[outWires.size()]));
+		collectWires(oldIds, proverWitnessWires.toArray(new Wire[proverWitnessWires.size()]));
+		collectWires(oldIds, knownConstantWires.values().toArray(new Wire[knownConstantWires.size()]));
+		for (Map.Entry<Wire, Integer> entry : oldIds.entrySet()) {
+			entry.getKey().wireId = newIds[entry.getValue()];
+		}
+		wireRoles.rebuild(inWires, proverWitnessWires, outWires);
+		constantPool.clear();
+		Iterator<Wire> constants = knownConstantWires.values().iterator();
+		while (constants.hasNext()) {
+			if (constants.next().getWireId() == -1) {
+				constants.remove();
+			}
+		}
+
+		// the instructions are hashed by their wire ids, so the queue and the
+		// operation table are rebuilt
+		int numOriginalWires = currentWireId;
+		evaluationQueue = new ArrayList<Instruction>(numLive);
+		operationTable = new OperationTable();
+		numOfConstraints = 0;
+		currentWireId = numWires;
+		CircuitProfiler currentProfiler = profiler;
+		profiler = null;
+		for (int i = 0; i < instructions.length; i++) {
+			if (live[i]) {
+				addToEvaluationQueue(instructions[i]);
+			}
+		}
+		profiler = currentProfiler;
+		System.out.println("Dead gate elimination for < " + circuitName + " >: " + instructions.length + " -> "
+				+ numLive + " instructions, " + numOriginalWires + " -> " + numWires + " wires");
+	}
+
+	private static void collectWires(IdentityHashMap<Wire, Integer> oldIds, Wire... wires) {
+		for (Wire w : wires) {
+			if (w != null && w.getWireId() != -1 && !oldIds.containsKey(w)) {
+				oldIds.put(w, w.getWireId());
+			}
+		}
+	}
+
+	// a generator for a part of this circuit that is built separately, see
+	// buildInParallel() and GadgetTemplate
+	SubCircuitGenerator createSubCircuitGenerator(String name) {
+		SubCircuitGenerator subGenerator = new SubCircuitGenerator(name);
+		((CircuitGenerator) subGenerator).initCircuitConstruction();
+		return subGenerator;
+	}
+
 	private void initCircuitConstruction() {
-		oneWire = new ConstantWire(currentWireId++, BigInteger.ONE);
+		oneWire = new ConstantWire(currentWireId++, BigInteger.ONE, this);
 		knownConstantWires.put(BigInteger.ONE, oneWire);
 		addToEvaluationQueue(new WireLabelInstruction(LabelType.input, oneWire, "The one-input wire."));
-		inWires.add(oneWire);
+		addWireRole(oneWire, WireRoleTable.INPUT);
 		zeroWire = oneWire.mul(0);
 	}
 
 	public Wire createConstantWire(BigInteger x, String... desc) {
+		if (x.bitLength() < 64) {
+			return createConstantWire(x.longValue(), desc);
+		}
 		return oneWire.mul(x, desc);
 	}
 
@@ -274,7 +774,12 @@ public abstract class CircuitGenerator {
 	}
 
 	public Wire createConstantWire(long x, String... desc) {
-		return oneWire.mul(x, desc);
+		Wire w = constantPool.get(x);
+		if (w == null) {
+			w = oneWire.mul(ConstantPool.valueOf(x), desc);
+			constantPool.put(x, w);
+		}
+		return w;
 	}
 
 	public Wire[] createConstantWireArray(long[] a, String... desc) {
@@ -290,7 +795,32 @@ public abstract class CircuitGenerator {
 	}
 
 	public Wire createNegConstantWire(long x, String... desc) {
-		return oneWire.mul(-x, desc);
+		if (x == Long.MIN_VALUE) {
+			return oneWire.mul(BigInteger.valueOf(x).negate(), desc);
+		}
+		return createConstantWire(-x, desc);
+	}
+
+	/**
+	 * Starts the code of a gadget whose internal wires can be computed
+	 * natively by the given function, from the values of the given inputs
+	 * (see NativeHint). The wires are given to endNativeHint() at the end of
+	 * the gadget. The hints are not kept in the streaming mode.
+	 */
+	public NativeHint beginNativeHint(NativeHint.Function function, Wire... inputs) {
+		NativeHint hint = new NativeHint(function, inputs);
+		if (circuitWriter == null) {
+			addToEvaluationQueue(hint);
+		}
+		return hint;
+	}
+
+	/**
+	 * Ends the code of the gadget of the given hint, and sets the wires whose
+	 * values are computed by the function of the hint.
+	 */
+	public void endNativeHint(NativeHint hint, Wire... hintedWires) {
+		hint.close(hintedWires, lastInstruction == hint ? null : lastInstruction);
 	}
 
 	/**
@@ -303,6 +833,40 @@ public abstract class CircuitGenerator {
 		addToEvaluationQueue(instruction);
 	}
 
+	/**
+	 * Same as specifyProverWitnessComputation(Instruction), but also declares
+	 * the wires read and assigned by the instruction. This allows evaluators
+	 * to schedule the computation according to its dependencies only (see
+	 * ParallelCircuitEvaluator), instead of after all the previous
+	 * instructions.
+	 * 
+	 * @param instruction
+	 * @param usedWires
+	 *            all the wires whose values are read by the instruction
+	 * @param assignedWires
+	 *            all the wires assigned by the instruction
+	 */
+	public void specifyProverWitnessComputation(Instruction instruction, Wire[] usedWires, Wire[] assignedWires) {
+		addToEvaluationQueue(new ProverWitnessComputation(instruction, usedWires, assignedWires));
+	}
+
+	/**
+	 * Same as specifyProverWitnessComputation(Instruction, Wire[], Wire[]),
+	 * for a computation given by its id (see WitnessComputationRegistry).
+	 * Circuits whose prover witness computations are all specified this way
+	 * can be stored in a CircuitCache.
+	 * 
+	 * @param computationId
+	 * @param usedWires
+	 * @param assignedWires
+	 * @param parameters
+	 *            constants passed to the computation
+	 */
+	public void specifyProverWitnessComputation(String computationId, Wire[] usedWires, Wire[] assignedWires,
+			BigInteger... parameters) {
+		addToEvaluationQueue(new RegisteredWitnessComputation(computationId, usedWires, assignedWires, parameters));
+	}
+
 	public final Wire getZeroWire() {
 		return zeroWire;
 	}
@@ -311,7 +875,10 @@ public abstract class CircuitGenerator {
 		return oneWire;
 	}
 
-	public LinkedHashMap<Instruction, Instruction> getEvaluationQueue() {
+	public List<Instruction> getEvaluationQueue() {
+		if (circuitWriter != null) {
+			throw new IllegalStateException("The evaluation queue is not kept in the streaming mode");
+		}
 		return evaluationQueue;
 	}
 
@@ -320,27 +887,103 @@ public abstract class CircuitGenerator {
 	}
 
 	public Wire[] addToEvaluationQueue(Instruction e) {
-		if (evaluationQueue.containsKey(e)) {
-			if (e instanceof BasicOp) {
-				return ((BasicOp) evaluationQueue.get(e)).getOutputs();
-			}
-		}
 		if (e instanceof BasicOp) {
+			BasicOp existing = operationTable.putIfAbsent((BasicOp) e);
+			if (existing != null) {
+				return existing.getOutputs();
+			}
+			addToDedupWindow((BasicOp) e);
 			numOfConstraints += ((BasicOp) e).getNumMulGates();
 		}
-		evaluationQueue.put(e, e);
+		append(e);
 		return null;  // returning null means we have not seen this instruction before
 	}
 
+	// adds an operation that is known to be new (see GadgetTemplate). It is
+	// still added to the operation table, so that later repetitions of it are
+	// detected.
+	void addNewOperation(BasicOp op) {
+		if (operationTable.putIfAbsent(op) == null) {
+			addToDedupWindow(op);
+		}
+		numOfConstraints += op.getNumMulGates();
+		append(op);
+	}
+
+	private void append(Instruction e) {
+		if (profiler != null) {
+			profiler.record(e);
+		}
+		if (circuitWriter != null) {
+			try {
+				circuitWriter.writeInstruction(e);
+			} catch (IOException ex) {
+				throw new RuntimeException("Error while writing the circuit", ex);
+			}
+		} else {
+			evaluationQueue.add(e);
+		}
+		lastInstruction = e;
+	}
+
+	// in the streaming mode, only the most recent operations are kept in the
+	// operation table for detecting repetitions
+	private void addToDedupWindow(BasicOp op) {
+		if (dedupWindow == null) {
+			return;
+		}
+		dedupWindow.add(op);
+		if (dedupWindow.size() > dedupWindowSize) {
+			operationTable.remove(dedupWindow.poll());
+		}
+	}
+
 	public void printState(String message) {
 		System.out.println("\nGenerator State @ " + message);
 		System.out.println("\tCurrent Number of Multiplication Gates " + " :: " + numOfConstraints + "\n");
 	}
 
+	/**
+	 * Returns the table used for detecting repeated operations, e.g. for
+	 * checking its hit rate. In the streaming mode, it only contains the
+	 * operations of the dedup window.
+	 */
+	public OperationTable getOperationTable() {
+		return operationTable;
+	}
+
 	public int getNumOfConstraints() {
 		return numOfConstraints;
 	}
 
+	// adds the wire to the list of its role, and to the role table
+	void addWireRole(Wire w, byte role) {
+		if (role == WireRoleTable.INPUT) {
+			inWires.add(w);
+		} else if (role == WireRoleTable.PROVER_WITNESS) {
+			proverWitnessWires.add(w);
+		} else {
+			outWires.add(w);
+		}
+		wireRoles.add(w, role);
+	}
+
+	/**
+	 * Checks in constant time whether the wire is an input wire of this
+	 * circuit (including the one-input wire).
+	 */
+	public boolean isInputWire(Wire w) {
+		return w.generator == this && wireRoles.has(w, WireRoleTable.INPUT);
+	}
+
+	public boolean isProverWitnessWire(Wire w) {
+		return w.generator == this && wireRoles.has(w, WireRoleTable.PROVER_WITNESS);
+	}
+
+	public boolean isOutputWire(Wire w) {
+		return w.generator == this && wireRoles.has(w, WireRoleTable.OUTPUT);
+	}
+
 	public ArrayList<Wire> getInWires() {
 		return inWires;
 	}
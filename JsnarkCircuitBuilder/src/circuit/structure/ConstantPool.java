@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.math.BigInteger;
+
+/**
+ * Interns the constant wires of a generator by their value as a long, so that
+ * creating a constant that was seen before (e.g. the round constants and
+ * masks used by the hash and cipher gadgets) neither allocates nor hashes a
+ * BigInteger. Small values are kept in an array, and the other values in an
+ * open addressing table with primitive keys.
+ *
+ * This is only a cache in front of CircuitGenerator.knownConstantWires, which
+ * remains the authoritative map of the constants of a circuit.
+ */
+final class ConstantPool {
+
+	static final int SMALL_MIN = -256;
+	static final int SMALL_MAX = 4096;
+
+	// the BigInteger values of the small constants, shared by all generators
+	private static final BigInteger[] SMALL_VALUES = new BigInteger[SMALL_MAX - SMALL_MIN];
+
+	static {
+		for (int i = 0; i < SMALL_VALUES.length; i++) {
+			SMALL_VALUES[i] = BigInteger.valueOf(i + SMALL_MIN);
+		}
+	}
+
+	private Wire[] small;
+	private long[] keys;
+	private Wire[] values;
+	private int size;
+
+	ConstantPool() {
+		clear();
+	}
+
+	/**
+	 * Returns a BigInteger of the given value, without allocating for small
+	 * values.
+	 */
+	static BigInteger valueOf(long v) {
+		if (v >= SMALL_MIN && v < SMALL_MAX) {
+			return SMALL_VALUES[(int) v - SMALL_MIN];
+		}
+		return BigInteger.valueOf(v);
+	}
+
+	Wire get(long v) {
+		if (v >= SMALL_MIN && v < SMALL_MAX) {
+			return small[(int) v - SMALL_MIN];
+		}
+		int mask = keys.length - 1;
+		for (int i = hash(v) & mask;; i = (i + 1) & mask) {
+			if (values[i] == null) {
+				return null;
+			} else if (keys[i] == v) {
+				return values[i];
+			}
+		}
+	}
+
+	void put(long v, Wire w) {
+		if (v >= SMALL_MIN && v < SMALL_MAX) {
+			small[(int) v - SMALL_MIN] = w;
+			return;
+		}
+		if (2 * (size + 1) > keys.length) {
+			grow();
+		}
+		if (insert(keys, values, v, w)) {
+			size++;
+		}
+	}
+
+	void clear() {
+		small = new Wire[SMALL_MAX - SMALL_MIN];
+		keys = new long[64];
+		values = new Wire[64];
+		size = 0;
+	}
+
+	private void grow() {
+		long[] newKeys = new long[keys.length * 2];
+		Wire[] newValues = new Wire[values.length * 2];
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null) {
+				insert(newKeys, newValues, keys[i], values[i]);
+			}
+		}
+		keys = newKeys;
+		values = newValues;
+	}
+
+	// returns true if the key was not in the table
+	private static boolean insert(long[] keys, Wire[] values, long v, Wire w) {
+		int mask = keys.length - 1;
+		for (int i = hash(v) & mask;; i = (i + 1) & mask) {
+			if (values[i] == null) {
+				keys[i] = v;
+				values[i] = w;
+				return true;
+			} else if (keys[i] == v) {
+				values[i] = w;
+				return false;
+			}
+		}
+	}
+
+	private static int hash(long v) {
+		long h = v * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
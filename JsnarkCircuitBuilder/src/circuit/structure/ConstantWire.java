@@ -17,6 +17,11 @@ public class ConstantWire extends Wire {
 		super(wireId);
 		constant = value.mod(Config.FIELD_PRIME);
 	}
+
+	public ConstantWire(int wireId, BigInteger value, CircuitGenerator generator) {
+		super(wireId, generator);
+		constant = value.mod(Config.FIELD_PRIME);
+	}
 	
 	public BigInteger getConstant() {
 		return constant;
@@ -45,9 +50,9 @@ public class ConstantWire extends Wire {
 		if (out == null) {
 			
 			if(!sign){
-				out = new ConstantWire(generator.currentWireId++, newConstant);
+				out = new ConstantWire(generator.currentWireId++, newConstant, generator);
 			} else{
-				out = new ConstantWire(generator.currentWireId++, newConstant.subtract(Config.FIELD_PRIME));
+				out = new ConstantWire(generator.currentWireId++, newConstant.subtract(Config.FIELD_PRIME), generator);
 			}			
 			Instruction op = new ConstMulBasicOp(this, out,
 					b, desc);
@@ -140,7 +145,7 @@ public class ConstantWire extends Wire {
 			for (int i = 0; i < bitwidth; i++) {
 				bits[i] = constant.testBit(i) ? generator.oneWire : generator.zeroWire;
 			}
-			return new WireArray(bits);
+			return new WireArray(bits, generator);
 		}
 	}
 	
@@ -0,0 +1,583 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.function.Function;
+
+import circuit.auxiliary.LongElement;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.eval.NativeHint;
+import circuit.operations.ProverWitnessComputation;
+import circuit.operations.RegisteredWitnessComputation;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+
+/**
+ * Records the circuit built by a function of some input wires once, and adds
+ * copies of it for other inputs without calling the function again. This is
+ * meant for gadgets that are instantiated many times with the same
+ * parameters, e.g.
+ *
+ * <pre>
+ * GadgetTemplate sha2 = new GadgetTemplate(
+ * 		(in) -&gt; new SHA256Gadget(in, 8, 64, false, true).getOutputWires());
+ * for (int i = 0; i &lt; n; i++) {
+ * 	digests[i] = sha2.instantiate(messages[i]);
+ * }
+ * </pre>
+ *
+ * A copy has the same instructions as the recorded circuit, on new wire ids.
+ * As with the gadget itself, operations that already exist in the circuit
+ * (e.g. the constant wires) are not repeated.
+ *
+ * The circuit is recorded again for inputs of a different form, i.e. a
+ * different number of wires, different constants, bit wires, or wires whose
+ * bits are already known, since the gadget may build a different circuit for
+ * them. Otherwise, the function must build the same circuit for any input: it
+ * must only use the wires it receives, and must not depend on other state.
+ * Prover witness computations must declare their wires (see
+ * CircuitGenerator.specifyProverWitnessComputation(Instruction, Wire[],
+ * Wire[])). Computations given as Instruction objects must access the wire
+ * values through the getWireValue() and setWireValue() methods of the
+ * evaluator, as the copies run them on wires that are mapped to the wires of
+ * the copy.
+ *
+ * A template can be used by several generators and threads.
+ */
+public class GadgetTemplate {
+
+	private Function<Wire[], Wire[]> builder;
+
+	// the recorded circuits, by the form of their inputs
+	private HashMap<String, Recording> recordings = new HashMap<String, Recording>();
+
+	public GadgetTemplate(Function<Wire[], Wire[]> builder) {
+		this.builder = builder;
+	}
+
+	/**
+	 * Adds a copy of the recorded circuit for the given inputs to the active
+	 * circuit generator, recording it first if needed.
+	 *
+	 * @return the output wires of the copy
+	 */
+	public Wire[] instantiate(Wire... inputs) {
+		CircuitGenerator generator = CircuitGenerator.getActiveCircuitGenerator();
+		ArrayList<Wire> parentWires = new ArrayList<Wire>();
+		StringBuilder form = new StringBuilder();
+		for (Wire w : inputs) {
+			w.packIfNeeded();
+			collectInputs(w, parentWires, form);
+		}
+		Recording recording = getRecording(generator, inputs, form.toString());
+		return recording.stamp(generator, parentWires);
+	}
+
+	public synchronized int getNumRecordings() {
+		return recordings.size();
+	}
+
+	private synchronized Recording getRecording(CircuitGenerator generator, Wire[] inputs, String form) {
+		Recording recording = recordings.get(form);
+		if (recording == null) {
+			final SubCircuitGenerator subGenerator = generator.createSubCircuitGenerator(generator.getName() + "_template"
+					+ recordings.size());
+			final Wire[] subInputs = new Wire[inputs.length];
+			for (int i = 0; i < inputs.length; i++) {
+				subInputs[i] = subGenerator.importWire(inputs[i]);
+			}
+			final Wire[][] outputs = new Wire[1][];
+			subGenerator.runAsActiveGenerator(new Runnable() {
+				@Override
+				public void run() {
+					outputs[0] = builder.apply(subInputs);
+					for (Wire w : outputs[0]) {
+						w.packIfNeeded();
+					}
+				}
+			});
+			recording = new Recording(subGenerator, outputs[0]);
+			recordings.put(form, recording);
+		}
+		return recording;
+	}
+
+	// adds the wires that SubCircuitGenerator.importWire() replaces by
+	// placeholders, in the same order, and describes the form of the input
+	private static void collectInputs(Wire w, ArrayList<Wire> parentWires, StringBuilder form) {
+		if (w instanceof ConstantWire) {
+			form.append('c').append(((ConstantWire) w).getConstant()).append(',');
+			return;
+		}
+		if (w instanceof BitWire) {
+			form.append('b');
+		} else {
+			WireArray bits = w.getBitWires();
+			if (bits != null) {
+				form.append('k').append(bits.size()).append('(');
+				for (int i = 0; i < bits.size(); i++) {
+					collectInputs(bits.get(i), parentWires, form);
+				}
+				form.append(')');
+			} else {
+				form.append('v');
+			}
+		}
+		form.append(',');
+		parentWires.add(w);
+	}
+
+	private static class Recording {
+
+		// instruction types
+		private static final byte LABEL = 1;
+		private static final byte OPERATION = 2;
+		private static final byte ASSERTION = 3;
+		private static final byte COMPUTATION = 4;
+		private static final byte REGISTERED_COMPUTATION = 5;
+
+		// wire types
+		private static final byte CONSTANT = 1;
+		private static final byte VARIABLE_BIT = 2;
+		private static final byte LINEAR_COMBINATION_BIT = 3;
+		private static final byte VARIABLE = 4;
+		private static final byte LINEAR_COMBINATION = 5;
+		private static final byte OTHER = 6;
+
+		private SubCircuitGenerator subGenerator;
+		private int numWires;
+
+		// the recorded instructions, and the indices of the wires they read
+		// and assign in the wires array
+		private Instruction[] instructions;
+		private byte[] instructionTypes;
+		private int[][] inputRefs;
+		private int[][] outputRefs;
+
+		// all the wire objects of the recorded circuit
+		private Wire[] wires;
+		private byte[] wireTypes;
+		private int[][] bitRefs;
+
+		private int[] placeholderRefs;
+		private int oneWireRef;
+		private int[] resultRefs;
+
+		// the wire ids that the parent may refer to after a copy is added: the
+		// inputs, the results, and their bits. The operations that read any
+		// other wire of a copy cannot be repeated elsewhere, so they are added
+		// without looking them up in the operation table.
+		private boolean[] exposed;
+
+		private Recording(SubCircuitGenerator subGenerator, Wire[] outputs) {
+			this.subGenerator = subGenerator;
+			this.numWires = subGenerator.currentWireId;
+			Instruction[] queue = subGenerator.evaluationQueue.toArray(
+					new Instruction[subGenerator.evaluationQueue.size()]);
+
+			IdentityHashMap<Wire, Integer> refs = new IdentityHashMap<Wire, Integer>();
+			ArrayList<Wire> wireList = new ArrayList<Wire>();
+			oneWireRef = addWire(refs, wireList, subGenerator.oneWire);
+			placeholderRefs = new int[subGenerator.placeholders.size()];
+			for (int i = 0; i < placeholderRefs.length; i++) {
+				placeholderRefs[i] = addWire(refs, wireList, subGenerator.placeholders.get(i));
+			}
+			resultRefs = addWires(refs, wireList, outputs);
+
+			ArrayList<Instruction> instructionList = new ArrayList<Instruction>();
+			ArrayList<int[]> inputRefList = new ArrayList<int[]>();
+			ArrayList<int[]> outputRefList = new ArrayList<int[]>();
+			ArrayList<Byte> typeList = new ArrayList<Byte>();
+			for (Instruction e : queue) {
+				byte type;
+				Wire[] in;
+				Wire[] out;
+				if (e instanceof WireLabelInstruction) {
+					Wire w = ((WireLabelInstruction) e).getWire();
+					if (w == subGenerator.oneWire) {
+						continue;
+					}
+					type = LABEL;
+					in = new Wire[] { w };
+					out = new Wire[0];
+				} else if (e instanceof BasicOp) {
+					type = e instanceof AssertBasicOp ? ASSERTION : OPERATION;
+					in = ((BasicOp) e).getInputs();
+					out = ((BasicOp) e).getOutputs();
+				} else if (e instanceof RegisteredWitnessComputation) {
+					type = REGISTERED_COMPUTATION;
+					in = e.getUsedWires();
+					out = e.getAssignedWires();
+				} else if (e instanceof ProverWitnessComputation) {
+					type = COMPUTATION;
+					in = e.getUsedWires();
+					out = e.getAssignedWires();
+				} else if (e instanceof NativeHint) {
+					// the hints refer to the wires of the recording only
+					continue;
+				} else {
+					throw new IllegalStateException("The wires used by an instruction of a template are unknown: " + e);
+				}
+				instructionList.add(e);
+				typeList.add(type);
+				inputRefList.add(addWires(refs, wireList, in));
+				outputRefList.add(addWires(refs, wireList, out));
+			}
+			instructions = instructionList.toArray(new Instruction[instructionList.size()]);
+			instructionTypes = new byte[instructions.length];
+			for (int i = 0; i < instructions.length; i++) {
+				instructionTypes[i] = typeList.get(i);
+			}
+			inputRefs = inputRefList.toArray(new int[instructions.length][]);
+			outputRefs = outputRefList.toArray(new int[instructions.length][]);
+
+			// the bits of the wires are added last, as they may add other wires.
+			// Bit wires and constants are not given other bits.
+			ArrayList<int[]> bitRefList = new ArrayList<int[]>();
+			for (int i = 0; i < wireList.size(); i++) {
+				Wire w = wireList.get(i);
+				WireArray bits = w instanceof BitWire || w instanceof ConstantWire ? null : w.getBitWires();
+				bitRefList.add(bits == null ? null : addWires(refs, wireList, bits.asArray()));
+			}
+			bitRefs = bitRefList.toArray(new int[wireList.size()][]);
+			wires = wireList.toArray(new Wire[wireList.size()]);
+			wireTypes = new byte[wires.length];
+			for (int i = 0; i < wires.length; i++) {
+				wireTypes[i] = getWireType(wires[i]);
+			}
+
+			exposed = new boolean[numWires];
+			expose(oneWireRef);
+			for (int ref : placeholderRefs) {
+				expose(ref);
+			}
+			for (int ref : resultRefs) {
+				expose(ref);
+			}
+		}
+
+		private void expose(int ref) {
+			exposed[wires[ref].getWireId()] = true;
+			if (bitRefs[ref] != null) {
+				for (int bitRef : bitRefs[ref]) {
+					expose(bitRef);
+				}
+			}
+		}
+
+		private static int addWire(IdentityHashMap<Wire, Integer> refs, ArrayList<Wire> wireList, Wire w) {
+			Integer ref = refs.get(w);
+			if (ref == null) {
+				if (w.getWireId() == -1) {
+					throw new IllegalStateException("A wire of a template is not packed: " + w);
+				}
+				ref = wireList.size();
+				refs.put(w, ref);
+				wireList.add(w);
+			}
+			return ref;
+		}
+
+		private static int[] addWires(IdentityHashMap<Wire, Integer> refs, ArrayList<Wire> wireList, Wire[] ws) {
+			int[] r = new int[ws.length];
+			for (int i = 0; i < ws.length; i++) {
+				r[i] = addWire(refs, wireList, ws[i]);
+			}
+			return r;
+		}
+
+		private static byte getWireType(Wire w) {
+			Class<?> c = w.getClass();
+			if (c == ConstantWire.class) {
+				return CONSTANT;
+			} else if (c == VariableBitWire.class) {
+				return VARIABLE_BIT;
+			} else if (c == LinearCombinationBitWire.class) {
+				return LINEAR_COMBINATION_BIT;
+			} else if (c == VariableWire.class) {
+				return VARIABLE;
+			} else if (c == LinearCombinationWire.class) {
+				return LINEAR_COMBINATION;
+			} else {
+				return OTHER;
+			}
+		}
+
+		// adds a copy of the recorded circuit to the given generator
+		private Wire[] stamp(CircuitGenerator generator, ArrayList<Wire> parentWires) {
+			// the new ids of the recorded wire ids, and the wire objects of
+			// the copy
+			int[] ids = new int[numWires];
+			Arrays.fill(ids, -1);
+			Wire[] copies = new Wire[wires.length];
+			ids[wires[oneWireRef].getWireId()] = generator.oneWire.getWireId();
+			copies[oneWireRef] = generator.oneWire;
+			for (int i = 0; i < placeholderRefs.length; i++) {
+				ids[wires[placeholderRefs[i]].getWireId()] = parentWires.get(i).getWireId();
+				copies[placeholderRefs[i]] = parentWires.get(i);
+			}
+			// for the prover witness computations, filled at the end
+			Wire[] wiresById = null;
+
+			// the new wires of the copy that are not exposed. When different
+			// placeholders stand for the same wire, operations that are
+			// distinct in the recorded circuit may be repeated in the copy, so
+			// all the operations are looked up.
+			boolean[] internal = new boolean[numWires];
+			boolean lookupAll = false;
+			HashSet<Integer> parentIds = new HashSet<Integer>();
+			parentIds.add(generator.oneWire.getWireId());
+			for (Wire w : parentWires) {
+				lookupAll |= !parentIds.add(w.getWireId());
+			}
+
+			for (int i = 0; i < instructions.length; i++) {
+				Instruction e = instructions[i];
+				switch (instructionTypes[i]) {
+				case LABEL: {
+					WireLabelInstruction label = (WireLabelInstruction) e;
+					int ref = inputRefs[i][0];
+					if (label.getType() == LabelType.input || label.getType() == LabelType.nizkinput) {
+						ids[wires[ref].getWireId()] = generator.currentWireId++;
+					}
+					Wire w = getCopy(generator, ref, ids, copies);
+					if (label.getType() == LabelType.input) {
+						generator.addWireRole(w, WireRoleTable.INPUT);
+					} else if (label.getType() == LabelType.nizkinput) {
+						generator.addWireRole(w, WireRoleTable.PROVER_WITNESS);
+					} else if (label.getType() == LabelType.output) {
+						generator.addWireRole(w, WireRoleTable.OUTPUT);
+					}
+					generator.addToEvaluationQueue(new WireLabelInstruction(label.getType(), w, label.getDesc()));
+					break;
+				}
+				case OPERATION: {
+					int[] out = outputRefs[i];
+					BigInteger constant = null;
+					if (wireTypes[out[0]] == CONSTANT) {
+						// as in ConstantWire.mul()
+						constant = ((ConstantWire) wires[out[0]]).getConstant();
+						Wire known = generator.knownConstantWires.get(constant);
+						if (known != null) {
+							ids[wires[out[0]].getWireId()] = known.getWireId();
+							copies[out[0]] = known;
+							break;
+						}
+					}
+					for (int ref : out) {
+						int id = wires[ref].getWireId();
+						ids[id] = generator.currentWireId++;
+						internal[id] = !exposed[id];
+					}
+					Wire[] outputs = getCopies(generator, out, ids, copies);
+					BasicOp op = ((BasicOp) e).copy(getCopies(generator, inputRefs[i], ids, copies), outputs);
+					if (!lookupAll && readsInternalWire(i, internal)) {
+						generator.addNewOperation(op);
+						break;
+					}
+					Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
+					if (cachedOutputs != null) {
+						generator.currentWireId -= outputs.length;
+						for (int j = 0; j < outputs.length; j++) {
+							int id = wires[out[j]].getWireId();
+							ids[id] = cachedOutputs[j].getWireId();
+							internal[id] = false;
+							outputs[j].wireId = cachedOutputs[j].getWireId();
+						}
+					} else if (constant != null) {
+						generator.knownConstantWires.put(constant, outputs[0]);
+					}
+					break;
+				}
+				case ASSERTION: {
+					BasicOp op = ((BasicOp) e).copy(getCopies(generator, inputRefs[i], ids, copies), getCopies(
+							generator, outputRefs[i], ids, copies));
+					if (!lookupAll && readsInternalWire(i, internal)) {
+						generator.addNewOperation(op);
+					} else {
+						generator.addToEvaluationQueue(op);
+					}
+					break;
+				}
+				case COMPUTATION:
+					if (wiresById == null) {
+						wiresById = new Wire[numWires];
+					}
+					generator.addToEvaluationQueue(new ProverWitnessComputation(new CopiedComputation(
+							((ProverWitnessComputation) e).getInstruction(), subGenerator, wiresById), getCopies(generator,
+							inputRefs[i], ids, copies), getCopies(generator, outputRefs[i], ids, copies)));
+					break;
+				case REGISTERED_COMPUTATION:
+					generator.addToEvaluationQueue(((RegisteredWitnessComputation) e).copy(getCopies(generator,
+							inputRefs[i], ids, copies), getCopies(generator, outputRefs[i], ids, copies)));
+					break;
+				}
+			}
+
+			Wire[] results = getCopies(generator, resultRefs, ids, copies);
+			// the placeholders already have their bits
+			for (int i = 0; i < wires.length; i++) {
+				if (bitRefs[i] != null && copies[i] != null && copies[i].getBitWires() == null) {
+					copies[i].setBits(new WireArray(getCopies(generator, bitRefs[i], ids, copies), generator));
+				}
+			}
+			if (wiresById != null) {
+				for (int i = 0; i < wires.length; i++) {
+					int id = wires[i].getWireId();
+					if (wiresById[id] == null && ids[id] != -1) {
+						wiresById[id] = getCopy(generator, i, ids, copies);
+					}
+				}
+			}
+			return results;
+		}
+
+		private boolean readsInternalWire(int instruction, boolean[] internal) {
+			for (int ref : inputRefs[instruction]) {
+				if (internal[wires[ref].getWireId()]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private Wire[] getCopies(CircuitGenerator generator, int[] refs, int[] ids, Wire[] copies) {
+			Wire[] ws = new Wire[refs.length];
+			for (int i = 0; i < refs.length; i++) {
+				ws[i] = getCopy(generator, refs[i], ids, copies);
+			}
+			return ws;
+		}
+
+		private Wire getCopy(CircuitGenerator generator, int ref, int[] ids, Wire[] copies) {
+			Wire w = copies[ref];
+			if (w == null) {
+				int id = ids[wires[ref].getWireId()];
+				if (id == -1) {
+					throw new IllegalStateException("A wire of a template is used before being assigned: " + wires[ref]);
+				}
+				switch (wireTypes[ref]) {
+				case CONSTANT:
+					w = new ConstantWire(id, ((ConstantWire) wires[ref]).getConstant(), generator);
+					break;
+				case VARIABLE_BIT:
+					w = new VariableBitWire(id, generator);
+					break;
+				case LINEAR_COMBINATION_BIT:
+					w = new LinearCombinationBitWire(id, generator);
+					break;
+				case VARIABLE:
+					w = new VariableWire(id, generator);
+					break;
+				case LINEAR_COMBINATION:
+					w = new LinearCombinationWire(id, generator);
+					break;
+				default:
+					w = new Wire(id, generator);
+				}
+				copies[ref] = w;
+			}
+			return w;
+		}
+	}
+
+	// a prover witness computation of a template, run on the wires of a copy
+	private static class CopiedComputation implements Instruction {
+
+		private Instruction instruction;
+		private CircuitGenerator subGenerator;
+		private Wire[] wiresById;
+
+		private CopiedComputation(Instruction instruction, CircuitGenerator subGenerator, Wire[] wiresById) {
+			this.instruction = instruction;
+			this.subGenerator = subGenerator;
+			this.wiresById = wiresById;
+		}
+
+		@Override
+		public void evaluate(CircuitEvaluator evaluator) {
+			instruction.evaluate(new CopyEvaluator(evaluator, subGenerator, wiresById));
+		}
+
+		@Override
+		public void emit(CircuitEvaluator evaluator) {
+			instruction.emit(new CopyEvaluator(evaluator, subGenerator, wiresById));
+		}
+	}
+
+	// maps the wires of a template to the wires of a copy
+	private static class CopyEvaluator extends CircuitEvaluator {
+
+		private CircuitEvaluator evaluator;
+		private CircuitGenerator subGenerator;
+		private Wire[] wiresById;
+
+		private CopyEvaluator(CircuitEvaluator evaluator, CircuitGenerator subGenerator, Wire[] wiresById) {
+			super(evaluator.getCircuitGenerator(), null);
+			this.evaluator = evaluator;
+			this.subGenerator = subGenerator;
+			this.wiresById = wiresById;
+		}
+
+		private Wire map(Wire w) {
+			if (w.generator != subGenerator) {
+				return w;
+			}
+			Wire copy = wiresById[w.getWireId()];
+			if (copy == null) {
+				System.err.println("Error - The wire " + w + " is not declared by the prover witness computation");
+				throw new RuntimeException("Error During Evaluation");
+			}
+			return copy;
+		}
+
+		@Override
+		public void setWireValue(Wire w, BigInteger v) {
+			evaluator.setWireValue(map(w), v);
+		}
+
+		@Override
+		public BigInteger getWireValue(Wire w) {
+			BigInteger v = evaluator.getWireValue(map(w));
+			if (v == null) {
+				WireArray bits = w.getBitWiresIfExistAlready();
+				if (bits != null) {
+					BigInteger sum = BigInteger.ZERO;
+					for (int i = 0; i < bits.size(); i++) {
+						sum = sum.add(getWireValue(bits.get(i)).shiftLeft(i));
+					}
+					v = sum;
+				}
+			}
+			return v;
+		}
+
+		@Override
+		public BigInteger getWireValue(LongElement e, int bitwidthPerChunk) {
+			Wire[] array = e.getArray();
+			BigInteger sum = BigInteger.ZERO;
+			for (int i = 0; i < array.length; i++) {
+				BigInteger v = getWireValue(array[i]);
+				if (v != null) {
+					sum = sum.add(v.shiftLeft(bitwidthPerChunk * i));
+				}
+			}
+			return sum;
+		}
+
+		@Override
+		public BigInteger[] getAssignment() {
+			throw new UnsupportedOperationException("The prover witness computations of templates must use getWireValue()");
+		}
+	}
+}
@@ -8,9 +8,13 @@ public class LinearCombinationBitWire extends BitWire {
 	public LinearCombinationBitWire(int wireId) {
 		super(wireId);
 	}
+
+	public LinearCombinationBitWire(int wireId, CircuitGenerator generator) {
+		super(wireId, generator);
+	}
 	
 	public WireArray getBitWires() {
-		return new WireArray(new Wire[]{this});
+		return new WireArray(new Wire[]{this}, generator);
 	}
 
 }
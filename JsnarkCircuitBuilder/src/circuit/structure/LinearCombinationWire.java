@@ -10,10 +10,18 @@ public class LinearCombinationWire extends Wire {
 	public LinearCombinationWire(int wireId) {
 		super(wireId);
 	}
+
+	public LinearCombinationWire(int wireId, CircuitGenerator generator) {
+		super(wireId, generator);
+	}
 	
 	public LinearCombinationWire(WireArray bits) {
 		super(bits);
 	}
+
+	public LinearCombinationWire(WireArray bits, CircuitGenerator generator) {
+		super(bits, generator);
+	}
 	
 	WireArray getBitWires() {
 		return bitWires;
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.math.BigInteger;
+
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.operations.primitive.NonZeroCheckBasicOp;
+import circuit.operations.primitive.ORBasicOp;
+import circuit.operations.primitive.PackBasicOp;
+import circuit.operations.primitive.SplitBasicOp;
+import circuit.operations.primitive.XorBasicOp;
+
+/**
+ * A hash table for detecting repeated operations while generating a circuit
+ * (hash-consing). Each operation is keyed by a 64-bit structural hash computed
+ * from its opcode, the ids of its input wires (sorted when the operation is
+ * commutative), and its other arguments (e.g. the constant of a const-mul).
+ * The keys are kept in a primitive array with open addressing (linear
+ * probing), so that most lookups only compare longs, and equals() is only
+ * called when the full keys match.
+ *
+ * The structural key follows the equals() methods of the primitive operations:
+ * two equal operations always get the same key.
+ */
+public class OperationTable {
+
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private long[] keys;
+	private BasicOp[] ops;
+	private int mask;
+	private int shift;
+	private int size;
+
+	// statistics
+	private long numLookups;
+	private long numHits;
+	private long numProbes;
+	private long numKeyCollisions;
+	private int maxProbeLength;
+
+	public OperationTable() {
+		this(1 << 12);
+	}
+
+	public OperationTable(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+		keys = new long[capacity];
+		ops = new BasicOp[capacity];
+		mask = capacity - 1;
+		shift = Long.numberOfLeadingZeros(mask);
+	}
+
+	/**
+	 * Returns the operation that is equal to op if it has been added before,
+	 * or adds op to the table and returns null.
+	 */
+	public BasicOp putIfAbsent(BasicOp op) {
+		long key = getKey(op);
+		numLookups++;
+		int idx = getIndex(key);
+		int probeLength = 1;
+		while (ops[idx] != null) {
+			if (keys[idx] == key) {
+				if (ops[idx].equals(op)) {
+					numHits++;
+					recordProbes(probeLength);
+					return ops[idx];
+				}
+				numKeyCollisions++;
+			}
+			idx = (idx + 1) & mask;
+			probeLength++;
+		}
+		recordProbes(probeLength);
+		keys[idx] = key;
+		ops[idx] = op;
+		size++;
+		if (2 * size > keys.length) {
+			resize();
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the given operation (the same object) from the table, if it is
+	 * there. Used for bounding the table in the streaming mode.
+	 */
+	public void remove(BasicOp op) {
+		int idx = getIndex(getKey(op));
+		while (ops[idx] != op) {
+			if (ops[idx] == null) {
+				return;
+			}
+			idx = (idx + 1) & mask;
+		}
+		ops[idx] = null;
+		size--;
+		// move back the following entries of the probe sequence that would
+		// not be found anymore
+		int free = idx;
+		for (int i = (idx + 1) & mask; ops[i] != null; i = (i + 1) & mask) {
+			int home = getIndex(keys[i]);
+			boolean reachable = free < i ? home > free && home <= i : home > free || home <= i;
+			if (!reachable) {
+				keys[free] = keys[i];
+				ops[free] = ops[i];
+				ops[i] = null;
+				free = i;
+			}
+		}
+	}
+
+	// the high bits of the keys are better mixed
+	private int getIndex(long key) {
+		return (int) ((key * MULTIPLIER) >>> shift);
+	}
+
+	private void recordProbes(int probeLength) {
+		numProbes += probeLength;
+		if (probeLength > maxProbeLength) {
+			maxProbeLength = probeLength;
+		}
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		BasicOp[] oldOps = ops;
+		keys = new long[oldKeys.length * 2];
+		ops = new BasicOp[oldOps.length * 2];
+		mask = keys.length - 1;
+		shift = Long.numberOfLeadingZeros(mask);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldOps[i] != null) {
+				int idx = getIndex(oldKeys[i]);
+				while (ops[idx] != null) {
+					idx = (idx + 1) & mask;
+				}
+				keys[idx] = oldKeys[i];
+				ops[idx] = oldOps[i];
+			}
+		}
+	}
+
+	/**
+	 * Computes the structural key of an operation.
+	 */
+	static long getKey(BasicOp op) {
+		Wire[] inputs = op.getInputs();
+		long h;
+		if (op instanceof MulBasicOp || op instanceof XorBasicOp || op instanceof ORBasicOp
+				|| (op instanceof AddBasicOp && inputs.length == 2)) {
+			h = mix(getOpcodeId(op), Math.min(inputs[0].getWireId(), inputs[1].getWireId()));
+			h = mix(h, Math.max(inputs[0].getWireId(), inputs[1].getWireId()));
+		} else if (op instanceof AssertBasicOp) {
+			h = mix(getOpcodeId(op), Math.min(inputs[0].getWireId(), inputs[1].getWireId()));
+			h = mix(h, Math.max(inputs[0].getWireId(), inputs[1].getWireId()));
+			h = mix(h, op.getOutputs()[0].getWireId());
+		} else if (op instanceof ConstMulBasicOp) {
+			// BigInteger.hashCode() alone collides for powers of two
+			BigInteger constant = ((ConstMulBasicOp) op).getConstInteger();
+			h = mix(getOpcodeId(op), constant.longValue());
+			h = mix(h, constant.hashCode());
+			h = mix(h, inputs[0].getWireId());
+		} else if (op instanceof SplitBasicOp) {
+			h = mix(getOpcodeId(op), op.getOutputs().length);
+			h = mix(h, inputs[0].getWireId());
+		} else if (op instanceof AddBasicOp || op instanceof PackBasicOp || op instanceof NonZeroCheckBasicOp) {
+			h = mix(getOpcodeId(op), inputs.length);
+			for (Wire w : inputs) {
+				h = mix(h, w.getWireId());
+			}
+		} else {
+			// other operations: only rely on their hashCode()
+			h = mix(getOpcodeId(op), op.hashCode());
+		}
+		return h;
+	}
+
+	private static long mix(long h, long v) {
+		h = (h ^ v) * MULTIPLIER;
+		return h ^ (h >>> 31);
+	}
+
+	private static long getOpcodeId(BasicOp op) {
+		return op.getClass().getName().hashCode();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	public long getNumLookups() {
+		return numLookups;
+	}
+
+	public long getNumHits() {
+		return numHits;
+	}
+
+	public double getHitRate() {
+		return numLookups == 0 ? 0 : (double) numHits / numLookups;
+	}
+
+	/**
+	 * Returns the average number of slots visited per lookup.
+	 */
+	public double getAverageProbeLength() {
+		return numLookups == 0 ? 0 : (double) numProbes / numLookups;
+	}
+
+	public int getMaxProbeLength() {
+		return maxProbeLength;
+	}
+
+	/**
+	 * Returns the number of times two different operations had the same key.
+	 */
+	public long getNumKeyCollisions() {
+		return numKeyCollisions;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"Operation table: %d operations, %d lookups, hit rate %.2f%%, average probe length %.2f, max probe length %d, key collisions %d",
+				size, numLookups, 100 * getHitRate(), getAverageProbeLength(), maxProbeLength, numKeyCollisions);
+	}
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.util.ArrayList;
+
+import circuit.eval.CircuitEvaluator;
+
+/**
+ * A generator for a part of the circuit that is built separately, possibly on
+ * another thread, and then merged into its parent generator (see
+ * CircuitGenerator.buildInParallel()), or copied into it (see GadgetTemplate).
+ * Its input wires are placeholders for wires of the parent.
+ */
+class SubCircuitGenerator extends CircuitGenerator {
+
+	// the placeholder wires, and the parent wires they stand for
+	ArrayList<Wire> placeholders = new ArrayList<Wire>();
+	ArrayList<Wire> parentWires = new ArrayList<Wire>();
+
+	SubCircuitGenerator(String circuitName) {
+		super(circuitName);
+	}
+
+	/**
+	 * Returns a wire of this generator that stands for the given wire of the
+	 * parent. The bits of the parent wire, if known, are imported as well.
+	 */
+	Wire importWire(Wire parentWire) {
+		if (parentWire instanceof ConstantWire) {
+			return createConstantWire(((ConstantWire) parentWire).getConstant());
+		}
+		Wire w;
+		if (parentWire instanceof BitWire) {
+			w = new VariableBitWire(currentWireId++, this);
+		} else {
+			WireArray parentBits = parentWire.getBitWires();
+			if (parentBits != null) {
+				Wire[] bits = new Wire[parentBits.size()];
+				for (int i = 0; i < bits.length; i++) {
+					bits[i] = importWire(parentBits.get(i));
+				}
+				w = new VariableWire(new WireArray(bits, this), this);
+				w.wireId = currentWireId++;
+			} else {
+				w = new VariableWire(currentWireId++, this);
+			}
+		}
+		placeholders.add(w);
+		parentWires.add(parentWire);
+		return w;
+	}
+
+	@Override
+	protected void buildCircuit() {
+	}
+
+	@Override
+	public void generateSampleInput(CircuitEvaluator evaluator) {
+	}
+}
@@ -9,8 +9,12 @@ public class VariableBitWire extends BitWire {
 		super(wireId);
 	}
 
+	public VariableBitWire(int wireId, CircuitGenerator generator) {
+		super(wireId, generator);
+	}
+
 	public WireArray getBitWires() {
-		return new WireArray(new Wire[] { this });
+		return new WireArray(new Wire[] { this }, generator);
 	}
 
 }
@@ -10,11 +10,19 @@ public class VariableWire extends Wire {
 	public VariableWire(int wireId) {
 		super(wireId);
 	}
+
+	public VariableWire(int wireId, CircuitGenerator generator) {
+		super(wireId, generator);
+	}
 	
 	public VariableWire(WireArray bits) {
 		super(bits);
 	}
 
+	public VariableWire(WireArray bits, CircuitGenerator generator) {
+		super(bits, generator);
+	}
+
 
 	WireArray getBitWires() {
 		return bitWires;
@@ -21,7 +21,11 @@ public class Wire {
 	protected CircuitGenerator generator;
 
 	public Wire(int wireId) {
-		this.generator = CircuitGenerator.getActiveCircuitGenerator();
+		this(wireId, CircuitGenerator.getActiveCircuitGenerator());
+	}
+
+	public Wire(int wireId, CircuitGenerator generator) {
+		this.generator = generator;
 		if (wireId < 0) {
 			throw new IllegalArgumentException("wire id cannot be negative");
 		}
@@ -29,7 +33,11 @@ public class Wire {
 	}
 
 	protected Wire(WireArray bits) {
-		this.generator = CircuitGenerator.getActiveCircuitGenerator();
+		this(bits, CircuitGenerator.getActiveCircuitGenerator());
+	}
+
+	protected Wire(WireArray bits, CircuitGenerator generator) {
+		this.generator = generator;
 		setBits(bits);
 	}
 
@@ -58,7 +66,7 @@ public class Wire {
 			return this;
 		if (b.equals(BigInteger.ZERO))
 			return generator.zeroWire;
-		Wire out = new LinearCombinationWire(generator.currentWireId++);
+		Wire out = new LinearCombinationWire(generator.currentWireId++, generator);
 		Instruction op = new ConstMulBasicOp(this, out, b, desc);
 //		generator.addToEvaluationQueue(op);
 		Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
@@ -72,11 +80,11 @@ public class Wire {
 	}
 
 	public Wire mul(long l, String... desc) {
-		return mul(new BigInteger(l + ""), desc);
+		return mul(ConstantPool.valueOf(l), desc);
 	}
 
 	public Wire mul(long base, int exp, String... desc) {
-		BigInteger b = new BigInteger(base + "");
+		BigInteger b = ConstantPool.valueOf(base);
 		b = b.pow(exp);
 		return mul(b, desc);
 	}
@@ -87,7 +95,7 @@ public class Wire {
 		} else {
 			packIfNeeded(desc);
 			w.packIfNeeded(desc);
-			Wire output = new VariableWire(generator.currentWireId++);
+			Wire output = new VariableWire(generator.currentWireId++, generator);
 			Instruction op = new MulBasicOp(this, w, output, desc);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 			if(cachedOutputs == null){
@@ -103,7 +111,7 @@ public class Wire {
 	public Wire add(Wire w, String... desc) {
 		packIfNeeded(desc);
 		w.packIfNeeded(desc);
-		return new WireArray(new Wire[] { this, w }).sumAllElements(desc);
+		return new WireArray(new Wire[] { this, w }, generator).sumAllElements(desc);
 	}
 
 	public Wire add(long v, String... desc) {
@@ -137,8 +145,8 @@ public class Wire {
 		 * this wire is not currently used for anything - It's for compatibility
 		 * with earlier experimental versions when the target was Pinocchio
 		 **/
-		Wire out1 = new Wire(generator.currentWireId++);
-		Wire out2 = new VariableBitWire(generator.currentWireId++);
+		Wire out1 = new Wire(generator.currentWireId++, generator);
+		Wire out2 = new VariableBitWire(generator.currentWireId++, generator);
 		Instruction op = new NonZeroCheckBasicOp(this, out1, out2, desc);
 		Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 		if(cachedOutputs == null){
@@ -163,7 +171,7 @@ public class Wire {
 		} else {
 			packIfNeeded(desc); // just a precaution .. should not be really
 								// needed
-			Wire out = new VariableWire(generator.currentWireId++);
+			Wire out = new VariableWire(generator.currentWireId++, generator);
 			Instruction op = new ORBasicOp(this, w, out, desc);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 			if(cachedOutputs == null){
@@ -183,7 +191,7 @@ public class Wire {
 		} else {
 			packIfNeeded(desc); // just a precaution .. should not be really
 								// needed
-			Wire out = new VariableWire(generator.currentWireId++);
+			Wire out = new VariableWire(generator.currentWireId++, generator);
 			Instruction op = new XorBasicOp(this, w, out, desc);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 			if(cachedOutputs == null){
@@ -228,18 +236,18 @@ public class Wire {
 	protected WireArray forceSplit(int bitwidth, String... desc) {
 		Wire[] ws = new VariableBitWire[bitwidth];
 		for (int i = 0; i < bitwidth; i++) {
-			ws[i] = new VariableBitWire(generator.currentWireId++);
+			ws[i] = new VariableBitWire(generator.currentWireId++, generator);
 		}
 		Instruction op = new SplitBasicOp(this, ws, desc);
 		Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 		
 		if(cachedOutputs == null){
-			WireArray bitWires = new WireArray(ws);
+			WireArray bitWires = new WireArray(ws, generator);
 			return bitWires;
 		}
 		else{
 			generator.currentWireId-=bitwidth;
-			return new WireArray(cachedOutputs).adjustLength(bitwidth);
+			return new WireArray(cachedOutputs, generator).adjustLength(bitwidth);
 		}		
 
 
@@ -265,7 +273,7 @@ public class Wire {
 		WireArray result = bits1.xorWireArray(bits2, numBits, desc);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -285,7 +293,7 @@ public class Wire {
 		WireArray result = bits1.andWireArray(bits2, numBits, desc);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -305,7 +313,7 @@ public class Wire {
 		WireArray result = bits1.orWireArray(bits2, numBits, desc);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -416,10 +424,10 @@ public class Wire {
 			else
 				rotatedBits[i] = bits.get(i - s);
 		}
-		WireArray result = new WireArray(rotatedBits);
+		WireArray result = new WireArray(rotatedBits, generator);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -434,10 +442,10 @@ public class Wire {
 			else
 				rotatedBits[i] = bits.get(i + s);
 		}
-		WireArray result = new WireArray(rotatedBits);
+		WireArray result = new WireArray(rotatedBits, generator);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -452,10 +460,10 @@ public class Wire {
 			else
 				shiftedBits[i] = bits.get(i - s);
 		}
-		WireArray result = new WireArray(shiftedBits);
+		WireArray result = new WireArray(shiftedBits, generator);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -470,10 +478,10 @@ public class Wire {
 			else
 				shiftedBits[i] = bits.get(i + s);
 		}
-		WireArray result = new WireArray(shiftedBits);
+		WireArray result = new WireArray(shiftedBits, generator);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -485,7 +493,7 @@ public class Wire {
 		for (int i = 0; i < resultBits.length; i++) {
 			resultBits[i] = bits[i].invAsBit(desc);
 		}
-		return new LinearCombinationWire(new WireArray(resultBits));
+		return new LinearCombinationWire(new WireArray(resultBits, generator), generator);
 	}
 
 	public Wire trimBits(int currentNumOfBits, int desiredNumofBits, String... desc) {
@@ -493,7 +501,7 @@ public class Wire {
 		WireArray result = bitWires.adjustLength(desiredNumofBits);
 		BigInteger v = result.checkIfConstantBits(desc);
 		if (v == null) {
-			return new LinearCombinationWire(result);
+			return new LinearCombinationWire(result, generator);
 		} else {
 			return generator.createConstantWire(v);
 		}
@@ -57,7 +57,7 @@ public class WireArray {
 		for (int i = 0; i < out.length; i++) {
 			out[i] = ws1[i].mul(ws2[i], desc);
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}
 	
 	
@@ -76,7 +76,7 @@ public class WireArray {
 		if (allConstant) {
 			output = generator.createConstantWire(sum, desc);
 		} else {
-			output = new LinearCombinationWire(generator.currentWireId++);
+			output = new LinearCombinationWire(generator.currentWireId++, generator);
 			Instruction op = new AddBasicOp(array, output, desc);
 //			generator.addToEvaluationQueue(op);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
@@ -99,7 +99,7 @@ public class WireArray {
 		for (int i = 0; i < out.length; i++) {
 			out[i] = ws1[i].add(ws2[i], desc);
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}
 	
 	public WireArray xorWireArray(WireArray v, int desiredLength, String...desc) {
@@ -109,7 +109,7 @@ public class WireArray {
 		for (int i = 0; i < out.length; i++) {
 			out[i] = ws1[i].xor(ws2[i], desc);
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}
 	
 	public WireArray xorWireArray(WireArray v, String...desc) {
@@ -123,7 +123,7 @@ public class WireArray {
 		for (int i = 0; i < out.length; i++) {
 			out[i] = ws1[i].xor(ws2[i], desc);
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}
 	
 	public WireArray andWireArray(WireArray v, int desiredLength, String...desc) {
@@ -133,7 +133,7 @@ public class WireArray {
 		for (int i = 0; i < out.length; i++) {
 			out[i] = ws1[i].mul(ws2[i], desc);
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}
 	
 	public WireArray orWireArray(WireArray v, int desiredLength, String...desc) {
@@ -143,7 +143,7 @@ public class WireArray {
 		for (int i = 0; i < out.length; i++) {
 			out[i] = ws1[i].or(ws2[i], desc);
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}
 	
 	
@@ -158,7 +158,7 @@ public class WireArray {
 				out[i] = generator.oneWire;
 			}
 		}
-		return new WireArray(out);
+		return new WireArray(out, generator);
 	}	
 	
 	
@@ -187,7 +187,7 @@ public class WireArray {
 				newWs[i] = generator.zeroWire;
 			}
 		}
-		return new WireArray(newWs);
+		return new WireArray(newWs, generator);
 	}
 	
 	
@@ -252,8 +252,8 @@ public class WireArray {
 			}
 		}
 		if(!allConstant){
-			Wire out = new LinearCombinationWire(generator.currentWireId++);
-			out.setBits(new WireArray(bits));
+			Wire out = new LinearCombinationWire(generator.currentWireId++, generator);
+			out.setBits(new WireArray(bits, generator));
 			Instruction op = new PackBasicOp(bits, out, desc);
 			Wire[] cachedOutputs = generator.addToEvaluationQueue(op);
 			if(cachedOutputs == null){
@@ -279,7 +279,7 @@ public class WireArray {
 			else
 				rotatedBits[i] = bits[i - s];
 		}
-		return new WireArray(rotatedBits);
+		return new WireArray(rotatedBits, generator);
 	}
 	
 	public WireArray rotateRight(int numBits, int s, String...desc) {
@@ -291,7 +291,7 @@ public class WireArray {
 			else
 				rotatedBits[i] = bits[i + s];
 		}
-		return new WireArray(rotatedBits);
+		return new WireArray(rotatedBits, generator);
 	}
 	
 	
@@ -305,7 +305,7 @@ public class WireArray {
 			else
 				shiftedBits[i] = bits[i - s];
 		}
-		return new WireArray(shiftedBits);
+		return new WireArray(shiftedBits, generator);
 	}
 	
 	public WireArray shiftRight(int numBits, int s, String...desc) {
@@ -317,7 +317,7 @@ public class WireArray {
 			else
 				shiftedBits[i] = bits[i + s];
 		}
-		return new WireArray(shiftedBits);
+		return new WireArray(shiftedBits, generator);
 	}
 		
 	public Wire[] packBitsIntoWords(int wordBitwidth, String...desc){
@@ -325,7 +325,7 @@ public class WireArray {
 		Wire[] padded = adjustLength( array, wordBitwidth*numWords);
 		Wire[] result = new Wire[numWords];
 		for(int i = 0; i < numWords; i++){
-			result[i] = new WireArray(Arrays.copyOfRange(padded, i*wordBitwidth, (i+1)*wordBitwidth)).packAsBits();
+			result[i] = new WireArray(Arrays.copyOfRange(padded, i*wordBitwidth, (i+1)*wordBitwidth), generator).packAsBits();
 		}
 		return result;
 	}
@@ -352,7 +352,7 @@ public class WireArray {
 				bits[idx++] = tmp[j];
 			}
 		}
-		return new WireArray(bits);
+		return new WireArray(bits, generator);
 	}
 	
 }
@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.structure;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The roles of the wires of a generator (input, prover witness, output), kept
+ * as bit flags in a primitive array indexed by the wire id. This allows
+ * checking the role of a wire in constant time, e.g. in makeOutput(), instead
+ * of searching the wire lists of the generator, which made marking many
+ * outputs quadratic.
+ */
+final class WireRoleTable {
+
+	static final byte INPUT = 1;
+	static final byte PROVER_WITNESS = 2;
+	static final byte OUTPUT = 4;
+
+	private byte[] roles = new byte[64];
+
+	void add(Wire w, byte role) {
+		int id = w.getWireId();
+		if (id >= roles.length) {
+			roles = Arrays.copyOf(roles, Math.max(id + 1, roles.length * 2));
+		}
+		roles[id] |= role;
+	}
+
+	boolean has(Wire w, byte role) {
+		int id = w.getWireId();
+		return id >= 0 && id < roles.length && (roles[id] & role) != 0;
+	}
+
+	// used after the wires are renumbered
+	void rebuild(List<Wire> inWires, List<Wire> proverWitnessWires, List<Wire> outWires) {
+		Arrays.fill(roles, (byte) 0);
+		for (Wire w : inWires) {
+			add(w, INPUT);
+		}
+		for (Wire w : proverWitnessWires) {
+			add(w, PROVER_WITNESS);
+		}
+		for (Wire w : outWires) {
+			if (w.getWireId() != -1) {
+				add(w, OUTPUT);
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.io.BinaryCircuitReader;
+import circuit.io.BinaryInputReader;
+import circuit.io.FormatConverter;
+import circuit.structure.CircuitGenerator;
+
+public class BinaryFormatTest extends TestCase {
+
+	@Test
+	public void testConversion() throws IOException {
+
+		String name = "binary_format";
+		CircuitGenerator generator = new EvaluatorTest.SampleGenerator(name);
+		generator.generateCircuit();
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		String[] files = { name + ".arith", name + ".in", name + ".arith.bin", name + ".in.bin", name + ".1",
+				name + ".2", name + ".3", name + ".4" };
+		try {
+			generator.writeCircuitFile();
+			generator.writeBinaryCircuitFile();
+			evaluator.writeInputFile();
+			evaluator.writeBinaryInputFile();
+
+			// text -> binary -> text reproduces the same files
+			FormatConverter.textToBinaryCircuit(name + ".arith", name + ".1");
+			FormatConverter.binaryToTextCircuit(name + ".1", name + ".2");
+			assertSameContent(name + ".arith", name + ".2");
+			FormatConverter.textToBinaryInput(name + ".in", name + ".3");
+			FormatConverter.binaryToTextInput(name + ".3", name + ".4");
+			assertSameContent(name + ".in", name + ".4");
+			assertSameContent(name + ".in.bin", name + ".3");
+			assertTrue(new File(name + ".arith.bin").length() < new File(name + ".arith").length() / 2);
+
+			// the binary file written by the generator has the same
+			// instructions, without the comments
+			BinaryCircuitReader reader1 = new BinaryCircuitReader(name + ".arith.bin");
+			BinaryCircuitReader reader2 = new BinaryCircuitReader(name + ".1");
+			assertEquals(generator.getNumWires(), reader1.getNumWires());
+			assertEquals(generator.getNumWires(), reader2.getNumWires());
+			int count = 0;
+			while (reader1.next()) {
+				assertTrue(reader2.next());
+				assertNull(reader1.getComment());
+				String line = reader2.toString();
+				if (reader2.getComment() != null) {
+					line = line.substring(0, line.length() - reader2.getComment().length());
+				}
+				assertEquals(line, reader1.toString());
+				count++;
+			}
+			assertFalse(reader2.next());
+			assertTrue(count > 1000);
+			reader1.close();
+			reader2.close();
+
+			BinaryInputReader inputReader = new BinaryInputReader(name + ".in.bin");
+			assertEquals(32, inputReader.getElementSize());
+			assertEquals(generator.getInWires().size() + generator.getProverWitnessWires().size(),
+					inputReader.getCount());
+			while (inputReader.next()) {
+				assertEquals(evaluator.getAssignment()[inputReader.getWireId()], inputReader.getValue());
+			}
+			inputReader.close();
+		} finally {
+			for (String file : files) {
+				new File(file).delete();
+			}
+		}
+	}
+
+	private static void assertSameContent(String file1, String file2) throws IOException {
+		assertTrue(Arrays.equals(Files.readAllBytes(Paths.get(file1)), Files.readAllBytes(Paths.get(file2))));
+	}
+}
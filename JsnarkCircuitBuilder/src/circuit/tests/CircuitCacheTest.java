@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.auxiliary.LongElement;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.structure.CircuitCache;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.LinearCombinationWire;
+import circuit.structure.VariableBitWire;
+import circuit.structure.VariableWire;
+import circuit.structure.Wire;
+import examples.gadgets.math.FieldDivisionGadget;
+import examples.gadgets.math.LongIntegerModGadget;
+import examples.gadgets.math.ModGadget;
+
+public class CircuitCacheTest extends TestCase {
+
+	@Test
+	public void testRestoreCircuit() throws IOException {
+		File directory = Files.createTempDirectory("jsnark_cache").toFile();
+		try {
+			CircuitCache cache = new CircuitCache(directory.getPath());
+
+			CachedGenerator generated = new CachedGenerator("cached_circuit", 256);
+			String key = cache.getKey(generated);
+			generated.generateCircuit(cache);
+			assertTrue(generated.built);
+			assertTrue(cache.getFile(generated, key).exists());
+
+			CachedGenerator restored = new CachedGenerator("cached_circuit", 256);
+			restored.generateCircuit(cache);
+			assertFalse(restored.built);
+
+			assertEquals(generated.getNumWires(), restored.getNumWires());
+			assertEquals(generated.getNumOfConstraints(), restored.getNumOfConstraints());
+			assertEquals(toStrings(generated), toStrings(restored));
+			assertEquals(generated.getInWires().size(), restored.getInWires().size());
+			assertEquals(generated.getProverWitnessWires().size(), restored.getProverWitnessWires().size());
+			assertEquals(evaluate(generated), evaluate(restored));
+
+			// other parameters give another circuit
+			CachedGenerator other = new CachedGenerator("cached_circuit", 192);
+			assertFalse(cache.getKey(other).equals(key));
+			other.generateCircuit(cache);
+			assertTrue(other.built);
+		} finally {
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testUnregisteredComputation() throws IOException {
+		File directory = Files.createTempDirectory("jsnark_cache").toFile();
+		try {
+			CircuitCache cache = new CircuitCache(directory.getPath());
+			CircuitGenerator generator = new CircuitGenerator("uncached_circuit") {
+
+				@Override
+				protected void buildCircuit() {
+					final Wire in = createInputWire();
+					final Wire witness = createProverWitnessWire();
+					specifyProverWitnessComputation(new Instruction() {
+						@Override
+						public void evaluate(CircuitEvaluator evaluator) {
+							evaluator.setWireValue(witness, evaluator.getWireValue(in).add(BigInteger.ONE));
+						}
+					});
+					makeOutput(witness.mul(in));
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+				}
+			};
+			String key = cache.getKey(generator);
+			generator.generateCircuit(cache);
+			assertFalse(cache.getFile(generator, key).exists());
+		} finally {
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testFieldTypes() throws IOException {
+		File directory = Files.createTempDirectory("jsnark_cache").toFile();
+		try {
+			CircuitCache cache = new CircuitCache(directory.getPath());
+
+			// fields declared with subclasses of Wire
+			TypedGenerator generated = new TypedGenerator("typed_circuit", false);
+			String key = cache.getKey(generated);
+			generated.generateCircuit(cache);
+			assertTrue(generated.built);
+			assertTrue(cache.getFile(generated, key).exists());
+
+			TypedGenerator restored = new TypedGenerator("typed_circuit", false);
+			restored.generateCircuit(cache);
+			assertFalse(restored.built);
+			assertEquals(VariableBitWire[].class, restored.bits.getClass());
+			assertEquals(generated.bits.length, restored.bits.length);
+			assertEquals(generated.bits[3].getWireId(), restored.bits[3].getWireId());
+			assertEquals(generated.input.getWireId(), restored.input.getWireId());
+
+			// the restored wire is not a LinearCombinationWire, so the circuit
+			// is built again, from an unchanged generator
+			TypedGenerator mismatched = new TypedGenerator("mismatched_circuit", true);
+			key = cache.getKey(mismatched);
+			mismatched.generateCircuit(cache);
+			assertTrue(cache.getFile(mismatched, key).exists());
+			TypedGenerator rebuilt = new TypedGenerator("mismatched_circuit", true);
+			rebuilt.generateCircuit(cache);
+			assertTrue(rebuilt.built);
+			assertEquals(mismatched.getNumWires(), rebuilt.getNumWires());
+			assertEquals(toStrings(mismatched), toStrings(rebuilt));
+		} finally {
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testUnpackedWire() throws IOException {
+		File directory = Files.createTempDirectory("jsnark_cache").toFile();
+		try {
+			CircuitCache cache = new CircuitCache(directory.getPath());
+			UnpackedGenerator generator = new UnpackedGenerator();
+			String key = cache.getKey(generator);
+			generator.generateCircuit(cache);
+			assertEquals(-1, generator.unpacked.getWireId());
+			assertFalse(cache.getFile(generator, key).exists());
+		} finally {
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	private static class TypedGenerator extends CircuitGenerator {
+
+		private boolean withSum;
+		private transient boolean built;
+		private VariableWire input;
+		private VariableBitWire[] bits;
+		private LinearCombinationWire sum;
+
+		public TypedGenerator(String circuitName, boolean withSum) {
+			super(circuitName);
+			this.withSum = withSum;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			built = true;
+			input = (VariableWire) createInputWire();
+			Wire[] split = input.getBitWires(8).asArray();
+			bits = new VariableBitWire[split.length];
+			for (int i = 0; i < split.length; i++) {
+				bits[i] = (VariableBitWire) split[i];
+			}
+			if (withSum) {
+				sum = (LinearCombinationWire) input.add(bits[0]);
+				makeOutput(sum);
+			}
+			makeOutput(bits[3]);
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			evaluator.setWireValue(input, 77);
+		}
+	}
+
+	private static class UnpackedGenerator extends CircuitGenerator {
+
+		private Wire input;
+		private Wire unpacked;
+
+		public UnpackedGenerator() {
+			super("unpacked_circuit");
+		}
+
+		@Override
+		protected void buildCircuit() {
+			input = createInputWire();
+			unpacked = new LinearCombinationWire(input.getBitWires(8));
+			makeOutput(input.mul(2));
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			evaluator.setWireValue(input, 77);
+		}
+	}
+
+	// uses several gadgets with prover witness computations
+	private static class CachedGenerator extends CircuitGenerator {
+
+		private int bitwidth;
+		private transient boolean built;
+		private Wire[] inputs;
+		private LongElement a;
+		private LongElement b;
+
+		public CachedGenerator(String circuitName, int bitwidth) {
+			super(circuitName);
+			this.bitwidth = bitwidth;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			built = true;
+			inputs = createInputWireArray(2);
+			a = createLongElementInput(2 * bitwidth);
+			b = createLongElementProverWitness(bitwidth);
+			makeOutputArray(new ModGadget(inputs[0], inputs[1], 32).getOutputWires());
+			makeOutputArray(new FieldDivisionGadget(inputs[0], inputs[1]).getOutputWires());
+			new LongIntegerModGadget(a, b, true).getRemainder().makeOutput();
+			a.mul(b).makeOutput();
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			evaluator.setWireValue(inputs[0], 1000003);
+			evaluator.setWireValue(inputs[1], 977);
+			evaluator.setWireValue(a, BigInteger.ONE.shiftLeft(2 * bitwidth - 3).add(BigInteger.valueOf(12345)),
+					LongElement.CHUNK_BITWIDTH);
+			evaluator.setWireValue(b, BigInteger.ONE.shiftLeft(bitwidth - 2).add(BigInteger.valueOf(77)),
+					LongElement.CHUNK_BITWIDTH);
+		}
+	}
+
+	private static List<String> toStrings(CircuitGenerator generator) {
+		List<String> instructions = new ArrayList<String>();
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (e.doneWithinCircuit()) {
+				instructions.add(e.toString());
+			}
+		}
+		return instructions;
+	}
+
+	private static List<BigInteger> evaluate(CircuitGenerator generator) {
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+		List<BigInteger> values = new ArrayList<BigInteger>();
+		for (Wire w : generator.getOutWires()) {
+			values.add(evaluator.getWireValue(w));
+		}
+		return values;
+	}
+}
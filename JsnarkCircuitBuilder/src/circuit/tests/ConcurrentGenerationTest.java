@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.eval.NativeHint;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+
+public class ConcurrentGenerationTest extends TestCase {
+
+	@Test
+	public void testConcurrentGenerators() throws Exception {
+
+		CircuitGenerator reference = new EvaluatorTest.SampleGenerator("concurrent");
+		reference.generateCircuit();
+		List<BigInteger> expected = evaluate(reference);
+
+		// generators created on one thread, and built on other threads
+		int n = 8;
+		final List<CircuitGenerator> generators = new ArrayList<CircuitGenerator>();
+		for (int i = 0; i < n; i++) {
+			generators.add(new EvaluatorTest.SampleGenerator("concurrent" + i));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<BigInteger>>> results = new ArrayList<Future<List<BigInteger>>>();
+			for (final CircuitGenerator generator : generators) {
+				results.add(executor.submit(() -> {
+					generator.generateCircuit();
+					return evaluate(generator);
+				}));
+			}
+			for (int i = 0; i < n; i++) {
+				assertEquals(expected, results.get(i).get());
+				assertEquals(reference.getNumWires(), generators.get(i).getNumWires());
+				assertEquals(reference.getNumOfConstraints(), generators.get(i).getNumOfConstraints());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// no generator is left active on the current thread
+		try {
+			CircuitGenerator.getActiveCircuitGenerator();
+			fail("An exception was expected");
+		} catch (RuntimeException e) {
+		}
+	}
+
+	@Test
+	public void testBuildInParallel() {
+
+		CircuitGenerator sequential = new HashGenerator("hashes_sequential", false);
+		sequential.generateCircuit();
+		CircuitGenerator parallel = new HashGenerator("hashes_parallel", true);
+		parallel.generateCircuit();
+
+		assertEquals(sequential.getNumWires(), parallel.getNumWires());
+		assertEquals(sequential.getNumOfConstraints(), parallel.getNumOfConstraints());
+		// the native hints are dropped when merging
+		assertEquals(getNumInstructions(sequential), getNumInstructions(parallel));
+		assertEquals(evaluate(sequential), evaluate(parallel));
+	}
+
+	@Test
+	public void testWireOutsideGeneration() {
+
+		final Wire[] input = new Wire[1];
+		CircuitGenerator generator = new CircuitGenerator("outside_generation") {
+			@Override
+			protected void buildCircuit() {
+				input[0] = createInputWire();
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+
+		// the wires created by a wire use its generator, which does not have
+		// to be active on the current thread
+		int numWires = generator.getNumWires();
+		Wire out = input[0].checkNonZero();
+		assertEquals(numWires + 2, generator.getNumWires());
+		assertEquals(numWires + 1, out.getWireId());
+	}
+
+	// computes the SHA-256 digests of several messages, and their sum
+	private static class HashGenerator extends CircuitGenerator {
+
+		private static final int NUM_MESSAGES = 6;
+		private static final int MESSAGE_LENGTH = 20;
+
+		private boolean parallel;
+		private Wire[][] messages;
+
+		public HashGenerator(String circuitName, boolean parallel) {
+			super(circuitName);
+			this.parallel = parallel;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			messages = new Wire[NUM_MESSAGES][];
+			for (int i = 0; i < NUM_MESSAGES; i++) {
+				messages[i] = createInputWireArray(MESSAGE_LENGTH);
+			}
+			Function<Wire[], Wire[]> builder = (message) -> new SHA256Gadget(message, 8, MESSAGE_LENGTH, false,
+					true).getOutputWires();
+			Wire[][] digests;
+			if (parallel) {
+				digests = buildInParallel(messages, builder);
+			} else {
+				digests = new Wire[NUM_MESSAGES][];
+				for (int i = 0; i < NUM_MESSAGES; i++) {
+					digests[i] = builder.apply(messages[i]);
+				}
+			}
+			Wire sum = getZeroWire();
+			for (Wire[] digest : digests) {
+				makeOutputArray(digest);
+				sum = sum.add(digest[0]);
+			}
+			makeOutput(sum);
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			for (int i = 0; i < NUM_MESSAGES; i++) {
+				for (int j = 0; j < MESSAGE_LENGTH; j++) {
+					evaluator.setWireValue(messages[i][j], (i * 31 + j * 7) % 256);
+				}
+			}
+		}
+	}
+
+	private static int getNumInstructions(CircuitGenerator generator) {
+		int n = 0;
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (!(e instanceof NativeHint)) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private static List<BigInteger> evaluate(CircuitGenerator generator) {
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+		List<BigInteger> values = new ArrayList<BigInteger>();
+		for (Wire w : generator.getOutWires()) {
+			values.add(evaluator.getWireValue(w));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.ConstantWire;
+import circuit.structure.Wire;
+
+public class ConstantPoolTest extends TestCase {
+
+	@Test
+	public void testConstantInterning() {
+		final long[] values = { 0, 1, -1, 3, 4095, 4096, -257, 0x5a827999L, 0xca62c1d6L, Long.MAX_VALUE,
+				Long.MIN_VALUE };
+
+		CircuitGenerator generator = new CircuitGenerator("constant_pool") {
+
+			Wire x;
+			Wire[] results;
+
+			@Override
+			protected void buildCircuit() {
+				x = createInputWire();
+				for (long v : values) {
+					Wire c = createConstantWire(v);
+					assertSame(c, createConstantWire(v));
+					assertSame(c, createConstantWire(BigInteger.valueOf(v)));
+					assertSame(c, createNegConstantWire(BigInteger.valueOf(v).negate()));
+					assertEquals(BigInteger.valueOf(v).mod(Config.FIELD_PRIME), ((ConstantWire) c).getConstant());
+				}
+				// equal values modulo the prime share a wire
+				assertSame(createConstantWire(-1), createConstantWire(Config.FIELD_PRIME.subtract(BigInteger.ONE)));
+				assertSame(getZeroWire(), createConstantWire(0));
+				assertSame(getOneWire(), createConstantWire(1));
+
+				int numWires = getNumWires();
+				for (int i = 0; i < 1000; i++) {
+					createConstantWire(i * 7919L);
+				}
+				assertEquals(numWires + 999, getNumWires());
+				for (int i = 0; i < 1000; i++) {
+					createConstantWire(i * 7919L);
+				}
+				assertEquals(numWires + 999, getNumWires());
+
+				results = new Wire[values.length];
+				for (int i = 0; i < values.length; i++) {
+					results[i] = x.mul(values[i]).add(values[i]);
+				}
+				makeOutputArray(results);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(x, 5);
+			}
+		};
+		generator.generateCircuit();
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		for (int i = 0; i < values.length; i++) {
+			BigInteger expected = BigInteger.valueOf(values[i]).multiply(BigInteger.valueOf(6))
+					.mod(Config.FIELD_PRIME);
+			assertEquals(expected, evaluator.getWireValue(generator.getOutWires().get(i)));
+		}
+
+		// the pool does not keep the removed constants
+		generator.eliminateDeadGates();
+		generator.runAsActiveGenerator(new Runnable() {
+			@Override
+			public void run() {
+				Wire c = generator.createConstantWire(7919L * 500);
+				assertTrue(c.getWireId() != -1);
+				assertSame(c, generator.createConstantWire(7919L * 500));
+			}
+		});
+	}
+}
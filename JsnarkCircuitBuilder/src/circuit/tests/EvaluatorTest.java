@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import util.Util;
+import circuit.config.Config;
+import circuit.eval.BatchCircuitEvaluator;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.CompiledCircuit;
+import circuit.eval.Instruction;
+import circuit.eval.LevelizedCircuit;
+import circuit.eval.MappedValueStore;
+import circuit.eval.MontgomeryField;
+import circuit.eval.PackedCircuitEvaluator;
+import circuit.eval.ParallelCircuitEvaluator;
+import circuit.eval.StoredCircuitEvaluator;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.VariableWire;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.FieldDivisionGadget;
+
+public class EvaluatorTest extends TestCase {
+
+	@Test
+	public void testMontgomeryArithmetic() {
+
+		int n = 1000;
+		BigInteger[] a = Util.randomBigIntegerArray(n, Config.FIELD_PRIME);
+		BigInteger[] b = Util.randomBigIntegerArray(n, Config.FIELD_PRIME);
+		a[0] = BigInteger.ZERO;
+		b[1] = Config.FIELD_PRIME.subtract(BigInteger.ONE);
+		long[] limbs = new long[3 * MontgomeryField.LIMBS];
+		for (int i = 0; i < n; i++) {
+			MontgomeryField.toMontgomery(a[i], limbs, 0);
+			MontgomeryField.toMontgomery(b[i], limbs, 4);
+			assertEquals(a[i], MontgomeryField.fromMontgomery(limbs, 0));
+
+			MontgomeryField.mul(limbs, 8, limbs, 0, limbs, 4);
+			assertEquals(a[i].multiply(b[i]).mod(Config.FIELD_PRIME), MontgomeryField.fromMontgomery(limbs, 8));
+			MontgomeryField.add(limbs, 8, limbs, 0, limbs, 4);
+			assertEquals(a[i].add(b[i]).mod(Config.FIELD_PRIME), MontgomeryField.fromMontgomery(limbs, 8));
+			MontgomeryField.sub(limbs, 8, limbs, 0, limbs, 4);
+			assertEquals(a[i].subtract(b[i]).mod(Config.FIELD_PRIME), MontgomeryField.fromMontgomery(limbs, 8));
+		}
+	}
+
+	@Test
+	public void testPackedEvaluator() {
+
+		CircuitGenerator generator = new SampleGenerator("packed_eval");
+		generator.generateCircuit();
+
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		CircuitEvaluator packedEvaluator = new PackedCircuitEvaluator(generator);
+		generator.generateSampleInput(packedEvaluator);
+		packedEvaluator.evaluate();
+
+		assertSameAssignment(evaluator, packedEvaluator);
+	}
+
+	@Test
+	public void testCompiledCircuit() {
+
+		CircuitGenerator generator = new SampleGenerator("compiled_eval");
+		generator.generateCircuit();
+
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		// the same compiled circuit is used by all the evaluators below
+		CompiledCircuit compiledCircuit = new CompiledCircuit(generator);
+		for (int i = 0; i < 2; i++) {
+			CircuitEvaluator tapeEvaluator = new CircuitEvaluator(generator);
+			generator.generateSampleInput(tapeEvaluator);
+			tapeEvaluator.evaluate(compiledCircuit);
+			assertSameAssignment(evaluator, tapeEvaluator);
+
+			CircuitEvaluator packedEvaluator = new PackedCircuitEvaluator(generator);
+			generator.generateSampleInput(packedEvaluator);
+			packedEvaluator.evaluate(compiledCircuit);
+			assertSameAssignment(evaluator, packedEvaluator);
+		}
+	}
+
+	@Test
+	public void testCompiledCircuitFailures() {
+
+		CircuitGenerator generator = new CircuitGenerator("compiled_failures") {
+
+			private Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(3);
+				addAssertion(inputs[0], inputs[1], inputs[2]);
+				makeOutput(inputs[0].getBitWires(8).packAsBits());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputs[0], 300);
+				evaluator.setWireValue(inputs[1], 2);
+				evaluator.setWireValue(inputs[2], 600);
+			}
+		};
+		generator.generateCircuit();
+		CompiledCircuit compiledCircuit = new CompiledCircuit(generator);
+
+		// the value of the first input does not fit in 8 bits
+		CircuitEvaluator[] evaluators = { new CircuitEvaluator(generator), new PackedCircuitEvaluator(generator) };
+		for (CircuitEvaluator evaluator : evaluators) {
+			generator.generateSampleInput(evaluator);
+			try {
+				evaluator.evaluate(compiledCircuit);
+				fail("An exception was expected");
+			} catch (RuntimeException e) {
+				assertEquals("Error During Evaluation", e.getMessage());
+			}
+		}
+
+		// an input is missing
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		evaluator.setWireValue(generator.getInWires().get(1), 2);
+		try {
+			evaluator.evaluate(compiledCircuit);
+			fail("An exception was expected");
+		} catch (RuntimeException e) {
+			assertEquals("Error During Evaluation", e.getMessage());
+		}
+
+		// a prover witness is missing, which the packed evaluator would
+		// otherwise read as zero
+		generator = new CircuitGenerator("missing_witness") {
+
+			private Wire input;
+
+			@Override
+			protected void buildCircuit() {
+				input = createInputWire();
+				Wire witness = createProverWitnessWire();
+				addAssertion(witness, witness, input);
+				makeOutput(witness.add(1));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(input, 0);
+			}
+		};
+		generator.generateCircuit();
+		compiledCircuit = new CompiledCircuit(generator);
+		evaluators = new CircuitEvaluator[] { new CircuitEvaluator(generator), new PackedCircuitEvaluator(generator) };
+		for (CircuitEvaluator e : evaluators) {
+			generator.generateSampleInput(e);
+			try {
+				e.evaluate(compiledCircuit);
+				fail("An exception was expected");
+			} catch (RuntimeException ex) {
+				assertEquals("Error During Evaluation", ex.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testParallelEvaluator() {
+
+		CircuitGenerator generator = new SampleGenerator("parallel_eval");
+		generator.generateCircuit();
+
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		LevelizedCircuit levelizedCircuit = new LevelizedCircuit(generator);
+		assertEquals(0, levelizedCircuit.getNumBarriers());
+		CircuitEvaluator parallelEvaluator = new ParallelCircuitEvaluator(generator);
+		generator.generateSampleInput(parallelEvaluator);
+		parallelEvaluator.evaluate();
+		assertSameAssignment(evaluator, parallelEvaluator);
+
+		// a wide circuit, with a witness computation that does not declare
+		// its wires
+		final int n = 500;
+		generator = new CircuitGenerator("parallel_eval_wide") {
+
+			private Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(2);
+				final Wire sum = createProverWitnessWire();
+				specifyProverWitnessComputation(new Instruction() {
+					@Override
+					public void evaluate(CircuitEvaluator evaluator) {
+						evaluator.setWireValue(sum,
+								evaluator.getWireValue(inputs[0]).add(evaluator.getWireValue(inputs[1])));
+					}
+				});
+				addEqualityAssertion(sum, inputs[0].add(inputs[1]));
+				Wire result = sum;
+				for (int i = 0; i < n; i++) {
+					Wire x = inputs[0].mul(i + 2).add(sum);
+					result = result.add(new FieldDivisionGadget(x, inputs[1]).getOutputWires()[0]);
+				}
+				makeOutput(result);
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputs[0], 123);
+				evaluator.setWireValue(inputs[1], 456);
+			}
+		};
+		generator.generateCircuit();
+		evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		levelizedCircuit = new LevelizedCircuit(generator);
+		assertEquals(1, levelizedCircuit.getNumBarriers());
+		assertTrue(levelizedCircuit.getMaxLevelSize() >= n);
+		for (int i = 0; i < 2; i++) {
+			ParallelCircuitEvaluator wideEvaluator = new ParallelCircuitEvaluator(generator);
+			generator.generateSampleInput(wideEvaluator);
+			wideEvaluator.evaluate(levelizedCircuit);
+			assertSameAssignment(evaluator, wideEvaluator);
+		}
+
+		// a witness computation that does not declare its wires assigns wires
+		// that are not labeled, which feed a wide layer
+		generator = new CircuitGenerator("parallel_eval_barrier") {
+
+			private Wire input;
+
+			@Override
+			protected void buildCircuit() {
+				input = createInputWire();
+				final Wire[] values = new Wire[n];
+				for (int i = 0; i < n; i++) {
+					values[i] = new VariableWire(currentWireId++, this);
+				}
+				specifyProverWitnessComputation(new Instruction() {
+					@Override
+					public void evaluate(CircuitEvaluator evaluator) {
+						for (int i = 0; i < n; i++) {
+							evaluator.setWireValue(values[i], evaluator.getWireValue(input).add(BigInteger.valueOf(i)));
+						}
+					}
+				});
+				Wire[] products = new Wire[n];
+				for (int i = 0; i < n; i++) {
+					products[i] = values[i].mul(input);
+				}
+				makeOutput(new WireArray(products).sumAllElements());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(input, 789);
+			}
+		};
+		generator.generateCircuit();
+		evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		levelizedCircuit = new LevelizedCircuit(generator);
+		assertEquals(1, levelizedCircuit.getNumBarriers());
+		assertTrue(levelizedCircuit.getMaxLevelSize() >= n);
+		ParallelCircuitEvaluator barrierEvaluator = new ParallelCircuitEvaluator(generator);
+		generator.generateSampleInput(barrierEvaluator);
+		barrierEvaluator.evaluate(levelizedCircuit);
+		assertSameAssignment(evaluator, barrierEvaluator);
+	}
+
+	@Test
+	public void testBatchEvaluator() {
+
+		final SampleGenerator generator = new SampleGenerator("batch_eval");
+		generator.generateCircuit();
+
+		int n = 5;
+		final ArrayList<Consumer<CircuitEvaluator>> inputs = new ArrayList<Consumer<CircuitEvaluator>>();
+		final ArrayList<CircuitEvaluator> expected = new ArrayList<CircuitEvaluator>();
+		for (int i = 0; i < n; i++) {
+			final long[] values = { 12345678 + 1000 * i, 98765 - i, 4321 * i, 0xfedcbaL << i };
+			inputs.add(evaluator -> generator.setInputs(evaluator, values));
+			CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+			generator.setInputs(evaluator, values);
+			evaluator.evaluate();
+			expected.add(evaluator);
+		}
+
+		// more inputs than the batch size: evaluated in batches of two
+		BatchCircuitEvaluator batchEvaluator = new BatchCircuitEvaluator(generator, 2);
+		CircuitEvaluator[] witnesses = batchEvaluator.evaluate(inputs);
+		assertEquals(n, witnesses.length);
+		assertEquals(1, batchEvaluator.getLastBatchSize());
+		for (int i = 0; i < n; i++) {
+			assertSameAssignment(expected.get(i), witnesses[i]);
+		}
+
+		// in batches of two, reusing the storage
+		final int[] count = { 0 };
+		batchEvaluator.evaluate(inputs.iterator(), witness -> {
+			assertSameAssignment(expected.get(count[0]++), witness);
+		});
+		assertEquals(n, count[0]);
+		assertEquals(1, batchEvaluator.getLastBatchSize());
+		assertEquals(2 * n, batchEvaluator.getNumWitnesses());
+		assertTrue(batchEvaluator.getThroughput() > 0);
+	}
+
+	@Test
+	public void testBitSlicedBatchEvaluator() {
+
+		final SampleGenerator generator = new SampleGenerator("bit_sliced_eval");
+		generator.generateCircuit();
+
+		// more than 64 lanes, with a partial last group
+		int n = 70;
+		final ArrayList<Consumer<CircuitEvaluator>> inputs = new ArrayList<Consumer<CircuitEvaluator>>();
+		for (int i = 0; i < n; i++) {
+			final long[] values = { 12345678 + 1000 * i, 98765 - i, 4321 * i, 0xfedcbaL << (i % 40) };
+			inputs.add(evaluator -> generator.setInputs(evaluator, values));
+		}
+
+		BatchCircuitEvaluator batchEvaluator = new BatchCircuitEvaluator(generator, n);
+		CircuitEvaluator[] expected = batchEvaluator.evaluate(inputs);
+		batchEvaluator.setBitSliced(true);
+		assertTrue(batchEvaluator.getNumBitSlicedRecords() > 0);
+		CircuitEvaluator[] witnesses = batchEvaluator.evaluate(inputs);
+		for (int i = 0; i < n; i++) {
+			assertSameAssignment(expected[i], witnesses[i]);
+		}
+	}
+
+	@Test
+	public void testWitnessOnlyEvaluation() {
+
+		SampleGenerator generator = new SampleGenerator("witness_only_eval");
+		generator.generateCircuit();
+		CircuitEvaluator expected = new CircuitEvaluator(generator);
+		generator.generateSampleInput(expected);
+		expected.evaluate();
+
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		evaluator.setWitnessOnly(true);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+		assertTrue(evaluator.getNumReleasedValues() > generator.getNumWires() / 2);
+		assertTrue(evaluator.getMaxLiveValues() < generator.getNumWires() / 2);
+
+		// the values needed for the input file are kept
+		int numKept = 0;
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (e instanceof WireLabelInstruction && ((WireLabelInstruction) e).getType() != LabelType.debug) {
+				Wire w = ((WireLabelInstruction) e).getWire();
+				assertEquals(expected.getWireValue(w), evaluator.getWireValue(w));
+				numKept++;
+			}
+		}
+		assertTrue(numKept > 0);
+	}
+
+	@Test
+	public void testIncrementalEvaluation() {
+		SampleGenerator generator = new SampleGenerator("incremental_test");
+		generator.generateCircuit();
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		// only one input changes, so the hash of the message is not evaluated
+		// again
+		generator.setInputs(evaluator, 12345678, 98765, 4321, 0xabcdefL);
+		evaluator.reevaluate(generator.inputs[3]);
+		CircuitEvaluator expected = new CircuitEvaluator(generator);
+		generator.setInputs(expected, 12345678, 98765, 4321, 0xabcdefL);
+		expected.evaluate();
+		assertSameAssignment(expected, evaluator);
+		int numReevaluated = evaluator.getNumReevaluatedInstructions();
+		assertTrue(numReevaluated > 0);
+		assertTrue(numReevaluated < generator.getEvaluationQueue().size() / 2);
+
+		evaluator.reevaluate();
+		assertEquals(0, evaluator.getNumReevaluatedInstructions());
+	}
+
+	@Test
+	public void testMappedValueStore() throws Exception {
+		SampleGenerator generator = new SampleGenerator("mapped_store_test");
+		generator.generateCircuit();
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		// small pages, so that the pages are evicted and mapped again
+		File file = File.createTempFile("mapped_store_test", ".bin");
+		file.deleteOnExit();
+		MappedValueStore store = new MappedValueStore(file, generator.getNumWires(), 1024, 4);
+		try {
+			StoredCircuitEvaluator storedEvaluator = new StoredCircuitEvaluator(generator, store);
+			generator.generateSampleInput(storedEvaluator);
+			storedEvaluator.evaluate();
+			assertSameAssignment(evaluator, storedEvaluator);
+			assertTrue(store.getNumPageLoads() > 4);
+
+			BigInteger max = Config.FIELD_PRIME.subtract(BigInteger.ONE);
+			store.set(0, max);
+			assertEquals(max, store.get(0));
+			store.set(0, BigInteger.ZERO);
+			assertEquals(BigInteger.ZERO, store.get(0));
+			store.set(0, null);
+			assertNull(store.get(0));
+		} finally {
+			store.close();
+			file.delete();
+		}
+	}
+
+	static void assertSameAssignment(CircuitEvaluator expected, CircuitEvaluator actual) {
+		BigInteger[] expectedValues = expected.getAssignment();
+		BigInteger[] actualValues = actual.getAssignment();
+		assertEquals(expectedValues.length, actualValues.length);
+		for (int i = 0; i < expectedValues.length; i++) {
+			assertEquals(expectedValues[i].mod(Config.FIELD_PRIME), actualValues[i]);
+		}
+	}
+
+	/**
+	 * A circuit that uses all the primitive operations, in addition to an
+	 * external witness computation.
+	 */
+	static class SampleGenerator extends CircuitGenerator {
+
+		private static final String INPUT_STR = "abc";
+
+		private Wire[] inputs;
+		private Wire[] message;
+
+		public SampleGenerator(String circuitName) {
+			super(circuitName);
+		}
+
+		@Override
+		protected void buildCircuit() {
+			inputs = createInputWireArray(4);
+			message = createInputWireArray(INPUT_STR.length());
+
+			Wire a = inputs[0].mul(inputs[1]).add(inputs[2].mul(-7));
+			Wire b = a.xorBitwise(inputs[3], 64).orBitwise(inputs[2], 64);
+			Wire c = b.rotateLeft(64, 5).add(inputs[3].isEqualTo(inputs[2]));
+			Wire d = new FieldDivisionGadget(c, inputs[1]).getOutputWires()[0];
+			Wire e = c.isLessThan(inputs[0], 64).mul(d).sub(inputs[3].invBits(32));
+			makeOutput(e, "e");
+			makeOutput(a.checkNonZero(), "a != 0");
+			makeOutputArray(new SHA256Gadget(message, 8, INPUT_STR.length(), false, true).getOutputWires(),
+					"digest");
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			setInputs(evaluator, 12345678, 98765, 4321, 0xfedcbaL);
+		}
+
+		void setInputs(CircuitEvaluator evaluator, long... values) {
+			for (int i = 0; i < inputs.length; i++) {
+				evaluator.setWireValue(inputs[i], values[i]);
+			}
+			for (int i = 0; i < INPUT_STR.length(); i++) {
+				evaluator.setWireValue(message[i], INPUT_STR.charAt(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.eval.NativeHint;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.GadgetTemplate;
+import circuit.structure.Wire;
+import examples.gadgets.hash.SHA256Gadget;
+import examples.gadgets.math.ModGadget;
+
+public class GadgetTemplateTest extends TestCase {
+
+	@Test
+	public void testTemplateInstances() {
+
+		TemplateGenerator direct = new TemplateGenerator("gadgets_direct", false);
+		direct.generateCircuit();
+		TemplateGenerator stamped = new TemplateGenerator("gadgets_stamped", true);
+		stamped.generateCircuit();
+
+		// one recording for the hashes, and one for the modulus gadgets
+		assertEquals(1, stamped.sha2Template.getNumRecordings());
+		assertEquals(1, stamped.modTemplate.getNumRecordings());
+
+		assertEquals(direct.getNumWires(), stamped.getNumWires());
+		assertEquals(direct.getNumOfConstraints(), stamped.getNumOfConstraints());
+		// the native hints are not kept by the templates
+		assertEquals(getNumInstructions(direct), getNumInstructions(stamped));
+		assertEquals(evaluate(direct), evaluate(stamped));
+
+		ArrayList<Instruction> instructions = new ArrayList<Instruction>();
+		for (Instruction e : stamped.getEvaluationQueue()) {
+			if (e.doneWithinCircuit()) {
+				instructions.add(e);
+			}
+		}
+		OptimizationTest.checkWellFormed(instructions, stamped.getNumWires());
+	}
+
+	// hashes several messages, and reduces pairs of input wires modulo each
+	// other (which uses a prover witness computation)
+	private static class TemplateGenerator extends CircuitGenerator {
+
+		private static final int NUM_INSTANCES = 5;
+		private static final int MESSAGE_LENGTH = 20;
+
+		private boolean useTemplates;
+		private GadgetTemplate sha2Template;
+		private GadgetTemplate modTemplate;
+		private Wire[][] messages;
+		private Wire[][] pairs;
+
+		public TemplateGenerator(String circuitName, boolean useTemplates) {
+			super(circuitName);
+			this.useTemplates = useTemplates;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			sha2Template = new GadgetTemplate((in) -> new SHA256Gadget(in, 8, MESSAGE_LENGTH, false, true)
+					.getOutputWires());
+			modTemplate = new GadgetTemplate((in) -> new ModGadget(in[0], in[1], 32).getOutputWires());
+			messages = new Wire[NUM_INSTANCES][];
+			pairs = new Wire[NUM_INSTANCES][];
+			for (int i = 0; i < NUM_INSTANCES; i++) {
+				messages[i] = createInputWireArray(MESSAGE_LENGTH);
+				pairs[i] = createInputWireArray(2);
+			}
+			for (int i = 0; i < NUM_INSTANCES; i++) {
+				Wire[] digest;
+				Wire[] remainder;
+				if (useTemplates) {
+					digest = sha2Template.instantiate(messages[i]);
+					remainder = modTemplate.instantiate(pairs[i]);
+				} else {
+					digest = new SHA256Gadget(messages[i], 8, MESSAGE_LENGTH, false, true).getOutputWires();
+					remainder = new ModGadget(pairs[i][0], pairs[i][1], 32).getOutputWires();
+				}
+				makeOutputArray(digest);
+				makeOutput(remainder[0].add(digest[0]));
+			}
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			for (int i = 0; i < NUM_INSTANCES; i++) {
+				for (int j = 0; j < MESSAGE_LENGTH; j++) {
+					evaluator.setWireValue(messages[i][j], (i * 17 + j * 5) % 256);
+				}
+				evaluator.setWireValue(pairs[i][0], 1000003L * (i + 1));
+				evaluator.setWireValue(pairs[i][1], 977 + i);
+			}
+		}
+	}
+
+	private static int getNumInstructions(CircuitGenerator generator) {
+		int n = 0;
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (!(e instanceof NativeHint)) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private static List<BigInteger> evaluate(CircuitGenerator generator) {
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+		List<BigInteger> values = new ArrayList<BigInteger>();
+		for (Wire w : generator.getOutWires()) {
+			values.add(evaluator.getWireValue(w));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.CircuitEvaluator.NativeHintMode;
+import circuit.eval.NativeHint;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.blockciphers.ChaskeyLTS128CipherGadget;
+import examples.gadgets.blockciphers.Speck128CipherGadget;
+import examples.gadgets.hash.SHA256Gadget;
+
+public class NativeHintTest extends TestCase {
+
+	@Test
+	public void testGadgetHints() {
+		final Random random = new Random(1);
+
+		CircuitGenerator generator = new CircuitGenerator("native_hints") {
+
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(102);
+				Wire[] key = { inputs[100], inputs[101] };
+				makeOutputArray(new Speck128CipherGadget(new Wire[] { inputs[0], inputs[1] },
+						Speck128CipherGadget.expandKey(key)).getOutputWires());
+				Wire[] words = new Wire[4];
+				for (int i = 0; i < 4; i++) {
+					words[i] = inputs[2 + i].getBitWires(64).packAsBits(32);
+				}
+				makeOutputArray(new ChaskeyLTS128CipherGadget(words, words).getOutputWires());
+				// two blocks, with a constant padding
+				Wire[] bytes = new Wire[90];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = inputs[10 + i].getBitWires(64).packAsBits(8);
+				}
+				makeOutputArray(new SHA256Gadget(bytes, 8, bytes.length, false, true).getOutputWires());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (Wire w : inputs) {
+					evaluator.setWireValue(w, new BigInteger(64, random));
+				}
+			}
+		};
+		generator.generateCircuit();
+
+		BigInteger[][] outputs = new BigInteger[3][];
+		NativeHintMode[] modes = NativeHintMode.values();
+		for (int m = 0; m < modes.length; m++) {
+			random.setSeed(2);
+			CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+			evaluator.setNativeHintMode(modes[m]);
+			generator.generateSampleInput(evaluator);
+			evaluator.evaluate();
+			if (modes[m] == NativeHintMode.USE) {
+				assertTrue(evaluator.getNumSkippedInstructions() > generator.getEvaluationQueue().size() / 3);
+			} else {
+				assertEquals(0, evaluator.getNumSkippedInstructions());
+			}
+			outputs[m] = new BigInteger[generator.getOutWires().size()];
+			for (int i = 0; i < outputs[m].length; i++) {
+				outputs[m][i] = evaluator.getWireValue(generator.getOutWires().get(i));
+			}
+		}
+		for (int m = 1; m < modes.length; m++) {
+			for (int i = 0; i < outputs[0].length; i++) {
+				assertEquals(outputs[0][i], outputs[m][i]);
+			}
+		}
+	}
+
+	@Test
+	public void testWrongHint() {
+		CircuitGenerator generator = new CircuitGenerator("wrong_native_hint") {
+
+			Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(2);
+				NativeHint hint = beginNativeHint(new NativeHint.Function() {
+
+					@Override
+					public long[] compute(long[] values) {
+						return new long[] { values[0] | values[1] };
+					}
+				}, inputs);
+				Wire result = inputs[0].xorBitwise(inputs[1], 16);
+				endNativeHint(hint, result);
+				makeOutput(result.add(1));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				evaluator.setWireValue(inputs[0], 0x0ff0);
+				evaluator.setWireValue(inputs[1], 0x3c3c);
+			}
+		};
+		generator.generateCircuit();
+
+		// the wrong values are used as they are, but detected when verifying
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+		assertEquals(BigInteger.valueOf(0x3ffc + 1), evaluator.getWireValue(generator.getOutWires().get(0)));
+
+		evaluator = new CircuitEvaluator(generator);
+		evaluator.setNativeHintMode(NativeHintMode.VERIFY);
+		generator.generateSampleInput(evaluator);
+		try {
+			evaluator.evaluate();
+			fail("The wrong hint was not detected");
+		} catch (RuntimeException e) {
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.MulBasicOp;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.OperationTable;
+import circuit.structure.VariableWire;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+public class OperationTableTest extends TestCase {
+
+	@Test
+	public void testRepeatedOperations() {
+
+		CircuitGenerator generator = new CircuitGenerator("operation_table") {
+
+			@Override
+			protected void buildCircuit() {
+				Wire a = createInputWire();
+				Wire b = createInputWire();
+				Wire c = createInputWire();
+
+				// commutative operations are found in both orders
+				assertSame(a.mul(b), b.mul(a));
+				assertSame(a.add(b), b.add(a));
+				// a linear combination of more than two wires is ordered
+				Wire s1 = new WireArray(new Wire[] { a, b, c }).sumAllElements();
+				Wire s2 = new WireArray(new Wire[] { a, b, c }).sumAllElements();
+				Wire s3 = new WireArray(new Wire[] { c, b, a }).sumAllElements();
+				assertSame(s1, s2);
+				assertNotSame(s1, s3);
+
+				// constants with the same BigInteger.hashCode() are not merged
+				Wire m1 = a.mul(new BigInteger("1f", 16));
+				Wire m2 = a.mul(new BigInteger("100000000", 16));
+				assertNotSame(m1, m2);
+				assertSame(m1, a.mul(new BigInteger("1f", 16)));
+
+				makeOutput(a.mul(b).add(s3).add(m2));
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		generator.generateCircuit();
+
+		OperationTable table = generator.getOperationTable();
+		assertTrue(table.getNumHits() >= 4);
+		assertEquals(table.getNumLookups() - table.getNumHits(), table.size());
+		assertEquals(0, table.getNumKeyCollisions());
+		assertTrue(table.getMaxProbeLength() >= 1);
+	}
+
+	@Test
+	public void testRemove() {
+		CircuitGenerator generator = new CircuitGenerator("operation_table_remove") {
+
+			@Override
+			protected void buildCircuit() {
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+			}
+		};
+		// a small table, so that the probe sequences overlap
+		OperationTable table = new OperationTable(16);
+		int n = 500;
+		BasicOp[] ops = new BasicOp[n];
+		for (int i = 0; i < n; i++) {
+			ops[i] = new MulBasicOp(new VariableWire(i % 7, generator), new VariableWire(i, generator), new VariableWire(n + i, generator));
+			assertNull(table.putIfAbsent(ops[i]));
+		}
+		for (int i = 0; i < n; i += 2) {
+			table.remove(ops[i]);
+		}
+		assertEquals(n / 2, table.size());
+		for (int i = 1; i < n; i += 2) {
+			BasicOp copy = new MulBasicOp(new VariableWire(i, generator), new VariableWire(i % 7, generator), new VariableWire(2 * n + i, generator));
+			assertSame(ops[i], table.putIfAbsent(copy));
+		}
+		for (int i = 0; i < n; i += 2) {
+			assertNull(table.putIfAbsent(ops[i]));
+		}
+		assertEquals(n, table.size());
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.WireLabelInstruction;
+import circuit.operations.WireLabelInstruction.LabelType;
+import circuit.operations.primitive.AddBasicOp;
+import circuit.operations.primitive.AssertBasicOp;
+import circuit.operations.primitive.BasicOp;
+import circuit.operations.primitive.ConstMulBasicOp;
+import circuit.optimization.LinearCombinationFolder;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class OptimizationTest extends TestCase {
+
+	@Test
+	public void testLinearCombinationFolding() {
+
+		CircuitGenerator generator = new EvaluatorTest.SampleGenerator("folding");
+		generator.generateCircuit();
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		LinearCombinationFolder folder = new LinearCombinationFolder(generator);
+		assertTrue(folder.getNumFoldedInstructions() > 0);
+		assertEquals(folder.getNumOriginalInstructions(),
+				folder.getNumInstructions() + folder.getNumFoldedInstructions());
+
+		List<Instruction> instructions = folder.getInstructions();
+		checkWellFormed(instructions, generator.getNumWires());
+
+		// the folded operations are consistent with the original assignment
+		BigInteger[] assignment = evaluator.getAssignment();
+		for (Instruction e : instructions) {
+			if (e instanceof AddBasicOp) {
+				BasicOp op = (BasicOp) e;
+				BigInteger sum = BigInteger.ZERO;
+				for (Wire w : op.getInputs()) {
+					sum = sum.add(assignment[w.getWireId()]);
+				}
+				assertEquals(assignment[op.getOutputs()[0].getWireId()], sum.mod(Config.FIELD_PRIME));
+			} else if (e instanceof ConstMulBasicOp) {
+				ConstMulBasicOp op = (ConstMulBasicOp) e;
+				BigInteger product = assignment[op.getInputs()[0].getWireId()].multiply(op.getConstInteger());
+				assertEquals(assignment[op.getOutputs()[0].getWireId()], product.mod(Config.FIELD_PRIME));
+			}
+		}
+	}
+
+	@Test
+	public void testDeadGateElimination() {
+
+		CircuitGenerator generator1 = new EvaluatorTest.SampleGenerator("dead_gates");
+		generator1.generateCircuit();
+		CircuitEvaluator evaluator1 = new CircuitEvaluator(generator1);
+		generator1.generateSampleInput(evaluator1);
+		evaluator1.evaluate();
+
+		CircuitGenerator generator2 = new EvaluatorTest.SampleGenerator("dead_gates");
+		generator2.generateCircuit();
+		generator2.eliminateDeadGates();
+		assertTrue(generator2.getNumWires() < generator1.getNumWires());
+		assertTrue(generator2.getEvaluationQueue().size() < generator1.getEvaluationQueue().size());
+		assertEquals(generator1.getInWires().size(), generator2.getInWires().size());
+		assertEquals(generator1.getNumOfConstraints(), generator2.getNumOfConstraints());
+
+		// the wire ids are dense
+		ArrayList<Instruction> instructions = new ArrayList<Instruction>();
+		for (Instruction e : generator2.getEvaluationQueue()) {
+			if (e.doneWithinCircuit()) {
+				instructions.add(e);
+			}
+		}
+		BitSet defined = checkWellFormed(instructions, generator2.getNumWires());
+		assertEquals(generator2.getNumWires(), defined.cardinality());
+
+		// same outputs
+		CircuitEvaluator evaluator2 = new CircuitEvaluator(generator2);
+		generator2.generateSampleInput(evaluator2);
+		evaluator2.evaluate();
+		assertEquals(generator1.getOutWires().size(), generator2.getOutWires().size());
+		for (int i = 0; i < generator1.getOutWires().size(); i++) {
+			assertEquals(evaluator1.getWireValue(generator1.getOutWires().get(i)),
+					evaluator2.getWireValue(generator2.getOutWires().get(i)));
+		}
+	}
+
+	// checks that each wire is defined once, before being used
+	static BitSet checkWellFormed(List<Instruction> instructions, int numWires) {
+		BitSet defined = new BitSet(numWires);
+		for (Instruction e : instructions) {
+			assertTrue(e.doneWithinCircuit());
+			for (Wire w : e.getUsedWires()) {
+				assertTrue(defined.get(w.getWireId()));
+			}
+			Wire[] outputs = null;
+			if (e instanceof WireLabelInstruction) {
+				LabelType type = ((WireLabelInstruction) e).getType();
+				if (type == LabelType.input || type == LabelType.nizkinput) {
+					outputs = new Wire[] { ((WireLabelInstruction) e).getWire() };
+				}
+			} else if (!(e instanceof AssertBasicOp)) {
+				outputs = ((BasicOp) e).getOutputs();
+			}
+			if (outputs != null) {
+				for (Wire w : outputs) {
+					assertTrue(w.getWireId() < numWires);
+					assertFalse(defined.get(w.getWireId()));
+					defined.set(w.getWireId());
+				}
+			}
+		}
+		return defined;
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.WireLabelInstruction;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class ProductionModeTest extends TestCase {
+
+	@Test
+	public void testLazyDescriptions() {
+		boolean productionMode = Config.productionMode;
+		try {
+			Config.productionMode = false;
+			ArrayGenerator normal = new ArrayGenerator("arrays_normal");
+			normal.generateCircuit();
+			Config.productionMode = true;
+			ArrayGenerator production = new ArrayGenerator("arrays_production");
+			production.generateCircuit();
+
+			assertEquals(normal.getNumWires(), production.getNumWires());
+			assertEquals(normal.getNumOfConstraints(), production.getNumOfConstraints());
+			assertEquals(getLabels(normal), getLabels(production));
+			assertTrue(getLabels(production).contains("input 4\t\t\t # x 2"));
+			assertTrue(getLabels(production).contains("nizkinput 6\t\t\t # w 1"));
+			assertEquals(evaluate(normal), evaluate(production));
+		} finally {
+			Config.productionMode = productionMode;
+		}
+	}
+
+	private static class ArrayGenerator extends CircuitGenerator {
+
+		private Wire[] x;
+		private Wire[] w;
+
+		public ArrayGenerator(String circuitName) {
+			super(circuitName);
+		}
+
+		@Override
+		protected void buildCircuit() {
+			x = createInputWireArray(3, "x");
+			w = createProverWitnessWireArray(2, "w");
+			Wire[] products = new Wire[3];
+			for (int i = 0; i < 3; i++) {
+				products[i] = x[i].mul(w[i % 2]);
+			}
+			addDebugInstruction(products, "products");
+			makeOutputArray(products, "y");
+			// the input wires need additional gates to become outputs
+			makeOutputArray(x, "x_out");
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			for (int i = 0; i < 3; i++) {
+				evaluator.setWireValue(x[i], i + 2);
+			}
+			evaluator.setWireValue(w[0], 7);
+			evaluator.setWireValue(w[1], 11);
+		}
+	}
+
+	private static List<String> getLabels(CircuitGenerator generator) {
+		List<String> labels = new ArrayList<String>();
+		for (Instruction e : generator.getEvaluationQueue()) {
+			if (e instanceof WireLabelInstruction) {
+				labels.add(e.toString());
+			}
+		}
+		return labels;
+	}
+
+	private static List<BigInteger> evaluate(CircuitGenerator generator) {
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+		List<BigInteger> values = new ArrayList<BigInteger>();
+		for (Wire w : generator.getOutWires()) {
+			values.add(evaluator.getWireValue(w));
+		}
+		return values;
+	}
+}
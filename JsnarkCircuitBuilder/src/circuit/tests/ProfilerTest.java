@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.profiling.CircuitProfiler;
+import circuit.profiling.CircuitProfiler.Node;
+import circuit.structure.CircuitGenerator;
+
+public class ProfilerTest extends TestCase {
+
+	@Test
+	public void testProfiler() throws IOException {
+
+		CircuitGenerator generator = new EvaluatorTest.SampleGenerator("profiler");
+		CircuitProfiler profiler = generator.enableProfiling();
+		generator.generateCircuit();
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		profiler.evaluate(evaluator);
+
+		Node root = profiler.getRoot();
+		assertEquals("SampleGenerator", root.getName().substring(root.getName().lastIndexOf('$') + 1));
+		assertEquals(generator.getNumOfConstraints(), root.getNumMulGates());
+		assertEquals(generator.getNumWires(), root.getNumWires());
+		assertEquals(generator.getEvaluationQueue().size(), root.getNumInstructions());
+		assertTrue(root.getEvaluationTime() > 0);
+
+		Node sha = profiler.getNode("SHA256Gadget");
+		Node division = profiler.getNode("FieldDivisionGadget");
+		assertTrue(sha.getNumMulGates() > 20000);
+		assertTrue(sha.getNumMulGates() < root.getNumMulGates());
+		assertEquals(1, division.getNumMulGates());
+
+		String[] files = { "profiler.json", "profiler.folded" };
+		try {
+			profiler.writeJson(files[0]);
+			profiler.writeFoldedStacks(files[1]);
+			String json = new String(Files.readAllBytes(Paths.get(files[0])));
+			assertTrue(json.startsWith("{\"name\":\""));
+			assertTrue(json.contains("\"name\":\"SHA256Gadget\",\"value\":" + sha.getNumMulGates()));
+			long total = 0;
+			List<String> lines = Files.readAllLines(Paths.get(files[1]));
+			for (String line : lines) {
+				total += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+			}
+			assertEquals(root.getNumMulGates(), total);
+		} finally {
+			for (String file : files) {
+				new File(file).delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.r1cs.R1CSConstraintSystem;
+import circuit.structure.CircuitGenerator;
+
+public class R1CSTest extends TestCase {
+
+	@Test
+	public void testLoweringAndCheck() throws IOException {
+
+		CircuitGenerator generator = new EvaluatorTest.SampleGenerator("r1cs");
+		generator.generateCircuit();
+		CircuitEvaluator evaluator = new CircuitEvaluator(generator);
+		generator.generateSampleInput(evaluator);
+		evaluator.evaluate();
+
+		R1CSConstraintSystem r1cs = new R1CSConstraintSystem(generator);
+		// at most one more constraint per output that is not a variable
+		assertTrue(r1cs.getNumConstraints() >= generator.getNumOfConstraints());
+		assertTrue(r1cs.getNumConstraints() <= generator.getNumOfConstraints() + generator.getOutWires().size());
+		assertEquals(generator.getInWires().size() + generator.getOutWires().size(), r1cs.getNumPublicVariables());
+
+		BigInteger[] assignment = r1cs.computeAssignment(evaluator);
+		assertEquals(-1, r1cs.findUnsatisfiedConstraint(assignment));
+
+		// changing any internal variable breaks a constraint
+		for (int v : new int[] { r1cs.getNumPublicVariables(), r1cs.getNumVariables() / 2,
+				r1cs.getNumVariables() - 1 }) {
+			BigInteger[] wrong = assignment.clone();
+			wrong[v] = wrong[v].add(BigInteger.ONE).mod(Config.FIELD_PRIME);
+			assertFalse(r1cs.isSatisfied(wrong));
+		}
+
+		// a wrong output
+		BigInteger[] wrong = assignment.clone();
+		wrong[r1cs.getNumPublicVariables() - 1] = BigInteger.ZERO;
+		assertFalse(r1cs.isSatisfied(wrong));
+
+		File file = File.createTempFile("r1cs", ".bin");
+		try {
+			r1cs.write(file.getPath());
+			R1CSConstraintSystem read = R1CSConstraintSystem.read(file.getPath());
+			assertEquals(r1cs.getNumVariables(), read.getNumVariables());
+			assertEquals(r1cs.getNumPublicVariables(), read.getNumPublicVariables());
+			assertEquals(r1cs.getA(), read.getA());
+			assertEquals(r1cs.getB(), read.getB());
+			assertEquals(r1cs.getC(), read.getC());
+			assertTrue(read.isSatisfied(assignment));
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.io.BinaryCircuitWriter;
+import circuit.io.FormatConverter;
+import circuit.io.TextCircuitWriter;
+import circuit.structure.CircuitGenerator;
+
+public class StreamingGenerationTest extends TestCase {
+
+	@Test
+	public void testStreamingMode() throws IOException {
+
+		String name = "streaming";
+		String[] files = { name + ".arith", name + ".arith.bin", name + "_text.arith", name + "_bin.arith.bin",
+				name + "_small.arith", name + "_small.arith.bin" };
+		try {
+			CircuitGenerator generator = new EvaluatorTest.SampleGenerator(name);
+			generator.generateCircuit();
+			generator.writeCircuitFile();
+			generator.writeBinaryCircuitFile();
+
+			// a window that covers the whole circuit produces the same files
+			CircuitGenerator textGenerator = new EvaluatorTest.SampleGenerator(name);
+			textGenerator.setStreamingMode(new TextCircuitWriter(name + "_text.arith"), 1 << 20);
+			textGenerator.generateCircuit();
+			assertEquals(generator.getNumWires(), textGenerator.getNumWires());
+			assertEquals(generator.getNumOfConstraints(), textGenerator.getNumOfConstraints());
+			List<String> expected = Files.readAllLines(Paths.get(name + ".arith"));
+			List<String> actual = Files.readAllLines(Paths.get(name + "_text.arith"));
+			assertEquals(String.format("total %010d", generator.getNumWires()), actual.get(0));
+			assertEquals(expected.subList(1, expected.size()), actual.subList(1, actual.size()));
+
+			CircuitGenerator binaryGenerator = new EvaluatorTest.SampleGenerator(name);
+			binaryGenerator.setStreamingMode(new BinaryCircuitWriter(name + "_bin.arith.bin", false), 1 << 20);
+			binaryGenerator.generateCircuit();
+			assertTrue(Arrays.equals(Files.readAllBytes(Paths.get(name + ".arith.bin")),
+					Files.readAllBytes(Paths.get(name + "_bin.arith.bin"))));
+
+			// a small window misses some repetitions, but the circuit is still
+			// well-formed
+			CircuitGenerator smallGenerator = new EvaluatorTest.SampleGenerator(name);
+			smallGenerator.setStreamingMode(new TextCircuitWriter(name + "_small.arith"), 16);
+			smallGenerator.generateCircuit();
+			assertTrue(smallGenerator.getNumOfConstraints() >= generator.getNumOfConstraints());
+			FormatConverter.textToBinaryCircuit(name + "_small.arith", name + "_small.arith.bin");
+
+			try {
+				smallGenerator.writeCircuitFile();
+				fail("An exception was expected");
+			} catch (IllegalStateException e) {
+			}
+		} finally {
+			for (String file : files) {
+				new File(file).delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package circuit.tests;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+
+public class WireRoleTest extends TestCase {
+
+	@Test
+	public void testWireRoles() {
+		RoleGenerator generator = new RoleGenerator("wire_roles", 100000);
+		generator.generateCircuit();
+
+		assertTrue(generator.isInputWire(generator.getOneWire()));
+		for (Wire w : generator.inputs) {
+			assertTrue(generator.isInputWire(w));
+			assertFalse(generator.isProverWitnessWire(w));
+			assertFalse(generator.isOutputWire(w));
+		}
+		assertTrue(generator.isProverWitnessWire(generator.witness));
+		assertFalse(generator.isInputWire(generator.witness));
+
+		// input and prover witness wires are copied into new wires before
+		// being outputs, while other variable wires are used directly
+		Wire[] outputs = generator.outputs;
+		for (int i = 0; i < generator.inputs.length; i++) {
+			assertTrue(generator.isOutputWire(outputs[i]));
+			assertFalse(outputs[i].getWireId() == generator.inputs[i].getWireId());
+		}
+		Wire witnessOutput = outputs[generator.inputs.length];
+		assertFalse(witnessOutput.getWireId() == generator.witness.getWireId());
+		Wire productOutput = outputs[generator.inputs.length + 1];
+		assertEquals(generator.product.getWireId(), productOutput.getWireId());
+		assertFalse(generator.isOutputWire(generator.witness));
+
+		// wires of other generators have no roles here
+		RoleGenerator other = new RoleGenerator("wire_roles_other", 1);
+		other.generateCircuit();
+		assertEquals(generator.inputs[0].getWireId(), other.inputs[0].getWireId());
+		assertFalse(generator.isInputWire(other.inputs[0]));
+
+		// the roles follow the new ids after removing gates
+		generator.eliminateDeadGates();
+		for (Wire w : generator.getInWires()) {
+			assertTrue(generator.isInputWire(w));
+		}
+		for (Wire w : generator.getOutWires()) {
+			assertTrue(generator.isOutputWire(w));
+		}
+		assertTrue(generator.isProverWitnessWire(generator.witness));
+	}
+
+	// makes a wide array of inputs outputs, which used to take quadratic time
+	private static class RoleGenerator extends CircuitGenerator {
+
+		private int numInputs;
+		private Wire[] inputs;
+		private Wire witness;
+		private Wire product;
+		private Wire[] outputs;
+
+		public RoleGenerator(String circuitName, int numInputs) {
+			super(circuitName);
+			this.numInputs = numInputs;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			inputs = createInputWireArray(numInputs);
+			witness = createProverWitnessWire();
+			product = inputs[0].mul(witness);
+			Wire[] wires = new Wire[numInputs + 2];
+			System.arraycopy(inputs, 0, wires, 0, numInputs);
+			wires[numInputs] = witness;
+			wires[numInputs + 1] = product;
+			outputs = makeOutputArray(wires);
+			// a dead gate
+			inputs[0].add(witness);
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+		}
+	}
+}
@@ -4,9 +4,12 @@
 
 package examples.gadgets.blockciphers;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 
+import circuit.eval.CircuitEvaluator;
 import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 import circuit.structure.WireArray;
@@ -14,6 +17,8 @@ import examples.gadgets.blockciphers.sbox.AESSBoxComputeGadget;
 import examples.gadgets.blockciphers.sbox.AESSBoxGadgetOptimized1;
 import examples.gadgets.blockciphers.sbox.AESSBoxGadgetOptimized2;
 import examples.gadgets.blockciphers.sbox.AESSBoxNaiveLookupGadget;
+import examples.gadgets.lookup.LookupTable;
+import examples.gadgets.lookup.TableLookupGadget;
 
 /**
  * Implements an AES 128-bit block cipher. The gadget applies an improved
@@ -25,7 +30,7 @@ public class AES128CipherGadget extends Gadget {
 
 	//
 	public enum SBoxOption {
-		LINEAR_SCAN, COMPUTE, OPTIMIZED1, OPTIMIZED2
+		LINEAR_SCAN, COMPUTE, OPTIMIZED1, OPTIMIZED2, LOOKUP_TABLE
 	}
 
 	public static SBoxOption sBoxOption = SBoxOption.OPTIMIZED2;
@@ -282,9 +287,29 @@ public class AES128CipherGadget extends Gadget {
 		case OPTIMIZED2:
 			g = new AESSBoxGadgetOptimized2(wire);
 			break;
+		case LOOKUP_TABLE:
+			g = new TableLookupGadget(SBoxTableHolder.TABLE, wire);
+			break;
 		}
 
 		return g.getOutputWires()[0];
 	}
 
+
+	// the S-box as a generic lookup table, created when first used
+	private static class SBoxTableHolder {
+		static final LookupTable TABLE = new LookupTable(SBox, 8);
+	}
+
+	// looks up the S-box value of a byte, see the sbox package
+	public static class SBoxComputation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			BigInteger value = evaluator.getWireValue(usedWires[0]);
+			evaluator.setWireValue(assignedWires[0],
+					BigInteger.valueOf(SBox[value.intValue()]));
+		}
+	}
 }
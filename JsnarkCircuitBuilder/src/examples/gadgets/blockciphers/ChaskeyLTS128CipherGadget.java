@@ -4,6 +4,7 @@
 
 package examples.gadgets.blockciphers;
 
+import circuit.eval.NativeHint;
 import circuit.operations.Gadget;
 import circuit.structure.Wire;
 
@@ -35,9 +36,17 @@ public class ChaskeyLTS128CipherGadget extends Gadget {
 
 	protected void buildCircuit() {
 
+		Wire[] hintInputs = new Wire[8];
+		System.arraycopy(plaintext, 0, hintInputs, 0, 4);
+		System.arraycopy(key, 0, hintInputs, 4, 4);
+		NativeHint hint = generator.beginNativeHint(new NativeRounds(), hintInputs);
+		Wire[] hintedWires = new Wire[72];
+		int h = 0;
+
 		Wire[] v = new Wire[4];
 		for (int i = 0; i < 4; i++) {
 			v[i] = (plaintext[i].xorBitwise(key[i], 32));
+			hintedWires[h++] = v[i];
 		}
 
 		for (int i = 0; i < 16; i++) {
@@ -45,27 +54,73 @@ public class ChaskeyLTS128CipherGadget extends Gadget {
 			v[0] = v[0].add(v[1]);
 			v[0] = v[0].trimBits(33, 32);
 			v[1] = v[1].rotateLeft(32, 5).xorBitwise(v[0], 32);
+			hintedWires[h++] = v[1];
 			v[0] = v[0].rotateLeft(32, 16);
 
 			v[2] = v[2].add(v[3]).trimBits(33, 32);
 			v[3] = v[3].rotateLeft(32, 8).xorBitwise(v[2], 32);
+			hintedWires[h++] = v[3];
 
 			v[0] = v[0].add(v[3]).trimBits(33, 32);
 			v[3] = v[3].rotateLeft(32, 13).xorBitwise(v[0], 32);
+			hintedWires[h++] = v[3];
 
 			v[2] = v[2].add(v[1]).trimBits(33, 32);
 			;
 			v[1] = v[1].rotateLeft(32, 7).xorBitwise(v[2], 32);
+			hintedWires[h++] = v[1];
 			v[2] = v[2].rotateLeft(32, 16);
 
 		}
 
 		for (int i = 0; i < 4; i++) {
 			v[i] = v[i].xorBitwise(key[i], 32);
+			hintedWires[h++] = v[i];
 		}
+		generator.endNativeHint(hint, hintedWires);
 		ciphertext = v;
 	}
 
+	// computes the results of the xor operations, from the plaintext and the
+	// key
+	private static class NativeRounds implements NativeHint.Function {
+
+		@Override
+		public long[] compute(long[] inputs) {
+			long[] values = new long[72];
+			int h = 0;
+			int[] v = new int[4];
+			for (int i = 0; i < 4; i++) {
+				v[i] = (int) (inputs[i] ^ inputs[4 + i]);
+				values[h++] = v[i] & 0xffffffffL;
+			}
+			for (int i = 0; i < 16; i++) {
+				v[0] += v[1];
+				v[1] = Integer.rotateLeft(v[1], 5) ^ v[0];
+				values[h++] = v[1] & 0xffffffffL;
+				v[0] = Integer.rotateLeft(v[0], 16);
+
+				v[2] += v[3];
+				v[3] = Integer.rotateLeft(v[3], 8) ^ v[2];
+				values[h++] = v[3] & 0xffffffffL;
+
+				v[0] += v[3];
+				v[3] = Integer.rotateLeft(v[3], 13) ^ v[0];
+				values[h++] = v[3] & 0xffffffffL;
+
+				v[2] += v[1];
+				v[1] = Integer.rotateLeft(v[1], 7) ^ v[2];
+				values[h++] = v[1] & 0xffffffffL;
+				v[2] = Integer.rotateLeft(v[2], 16);
+			}
+			for (int i = 0; i < 4; i++) {
+				v[i] ^= (int) inputs[4 + i];
+				values[h++] = v[i] & 0xffffffffL;
+			}
+			return values;
+		}
+	}
+
 	@Override
 	public Wire[] getOutputWires() {
 		return ciphertext;
@@ -4,6 +4,7 @@
 
 package examples.gadgets.blockciphers;
 
+import circuit.eval.NativeHint;
 import circuit.operations.Gadget;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
@@ -42,6 +43,13 @@ public class Speck128CipherGadget extends Gadget {
 
 	protected void buildCircuit() {
 
+		Wire[] hintInputs = new Wire[34];
+		hintInputs[0] = plaintext[0];
+		hintInputs[1] = plaintext[1];
+		System.arraycopy(expandedKey, 0, hintInputs, 2, 32);
+		NativeHint hint = generator.beginNativeHint(new NativeRounds(), hintInputs);
+		Wire[] hintedWires = new Wire[64];
+
 		Wire x, y;
 		x = plaintext[1];
 		y = plaintext[0];
@@ -51,11 +59,33 @@ public class Speck128CipherGadget extends Gadget {
 			x = x.trimBits(65, 64);
 			x = x.xorBitwise(expandedKey[i], 64);
 			y = y.rotateLeft(64, 3).xorBitwise(x, 64);
+			hintedWires[2 * i] = x;
+			hintedWires[2 * i + 1] = y;
 		}
+		generator.endNativeHint(hint, hintedWires);
 		ciphertext[1] = x;
 		ciphertext[0] = y;
 	}
 
+	// computes x and y after every round, from the plaintext and the expanded
+	// key
+	private static class NativeRounds implements NativeHint.Function {
+
+		@Override
+		public long[] compute(long[] inputs) {
+			long[] values = new long[64];
+			long x = inputs[1];
+			long y = inputs[0];
+			for (int i = 0; i <= 31; i++) {
+				x = (Long.rotateRight(x, 8) + y) ^ inputs[2 + i];
+				y = Long.rotateLeft(y, 3) ^ x;
+				values[2 * i] = x;
+				values[2 * i + 1] = y;
+			}
+			return values;
+		}
+	}
+
 	/**
 	 * 
 	 * @param key
@@ -65,6 +95,7 @@ public class Speck128CipherGadget extends Gadget {
 	public static Wire[] expandKey(Wire[] key) {
 		CircuitGenerator generator = CircuitGenerator
 				.getActiveCircuitGenerator();
+		NativeHint hint = generator.beginNativeHint(new NativeKeyExpansion(), key);
 		Wire[] k = new Wire[32];
 		Wire[] l = new Wire[32];
 		k[0] = key[0];
@@ -75,9 +106,33 @@ public class Speck128CipherGadget extends Gadget {
 			l[i + 1] = l[i + 1].xorBitwise(generator.createConstantWire(i), 64);
 			k[i + 1] = k[i].rotateLeft(64, 3).xorBitwise(l[i + 1], 64);
 		}
+		Wire[] hintedWires = new Wire[62];
+		for (int i = 1; i < 32; i++) {
+			hintedWires[2 * i - 2] = l[i];
+			hintedWires[2 * i - 1] = k[i];
+		}
+		generator.endNativeHint(hint, hintedWires);
 		return k;
 	}
 
+	// computes l[i] and k[i] for i = 1 .. 31, from the key
+	private static class NativeKeyExpansion implements NativeHint.Function {
+
+		@Override
+		public long[] compute(long[] inputs) {
+			long[] values = new long[62];
+			long k = inputs[0];
+			long l = inputs[1];
+			for (int i = 0; i <= 32 - 2; i++) {
+				l = (k + Long.rotateLeft(l, 56)) ^ i;
+				k = Long.rotateLeft(k, 3) ^ l;
+				values[2 * i] = l;
+				values[2 * i + 1] = k;
+			}
+			return values;
+		}
+	}
+
 	@Override
 	public Wire[] getOutputWires() {
 		return ciphertext;
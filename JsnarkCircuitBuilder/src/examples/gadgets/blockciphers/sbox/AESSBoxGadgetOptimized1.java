@@ -8,13 +8,13 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.stream.IntStream;
 
 import circuit.config.Config;
-import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
 import circuit.structure.Wire;
 import examples.gadgets.blockciphers.AES128CipherGadget;
+import examples.gadgets.blockciphers.sbox.util.CoefficientCache;
 import examples.gadgets.blockciphers.sbox.util.LinearSystemSolver;
 
 /**
@@ -35,11 +35,6 @@ public class AESSBoxGadgetOptimized1 extends Gadget {
 
 	static ArrayList<BigInteger[]> allCoeffSet;
 
-	static {
-		// preprocessing
-		solveLinearSystems();
-	}
-
 	private final Wire input;
 	private Wire output;
 
@@ -49,64 +44,81 @@ public class AESSBoxGadgetOptimized1 extends Gadget {
 		buildCircuit();
 	}
 
-	public static void solveLinearSystems() {
-		allCoeffSet = new ArrayList<BigInteger[]>();
-		ArrayList<Integer> list = new ArrayList<Integer>();
+	/**
+	 * Computes the coefficient sets, or loads them from the CoefficientCache.
+	 * On a cache miss, the linear systems of the groups are solved in
+	 * parallel.
+	 */
+	public static synchronized void solveLinearSystems() {
+		String key = CoefficientCache.getKey(AESSBoxGadgetOptimized1.class.getSimpleName(), SBox);
+		ArrayList<BigInteger[]> cached = CoefficientCache.load(key);
+		if (cached != null) {
+			allCoeffSet = cached;
+			return;
+		}
+
+		final ArrayList<Integer> list = new ArrayList<Integer>();
 		for (int i = 0; i <= 255; i++) {
 			list.add(256 * i + SBox[i]);
 		}
+		final BigInteger[][] solutions = new BigInteger[16][];
+		IntStream.rangeClosed(0, 15).parallel().forEach(i -> solutions[i] = solveLinearSystem(list, i));
 
-		for (int i = 0; i <= 15; i++) {
-			HashSet<Integer> memberValueSet = new HashSet<>();
-			BigInteger[][] mat = new BigInteger[16][17];
-
-			// used for sanity checks
-			BigInteger[] polyCoeffs = new BigInteger[] { BigInteger.ONE };
-
-			for (int k = 0; k < mat.length; k++) {
-				int value = list.get(k + i * 16);
-				memberValueSet.add(value);
-				BigInteger p = BigInteger.valueOf(value);
-				mat[k][0] = BigInteger.ONE;
-				for (int j = 1; j <= 16; j++) {
-					mat[k][j] = p.multiply(mat[k][j - 1]).mod(
-							Config.FIELD_PRIME);
-				}
-				// negate the last element, just to make things consistent with
-				// the paper notations
-				mat[k][16] = Config.FIELD_PRIME.subtract(mat[k][16]);
-				
-
-				// used for a sanity check (verifying that the output solution
-				// is equivalent to coefficients of polynomial that has roots at
-				// memberValueSet. see note above)
-				polyCoeffs = polyMul(polyCoeffs, new BigInteger[] {
-						Config.FIELD_PRIME.subtract(p), BigInteger.ONE });
-			}
+		ArrayList<BigInteger[]> coeffSets = new ArrayList<BigInteger[]>(Arrays.asList(solutions));
+		CoefficientCache.store(key, coeffSets);
+		allCoeffSet = coeffSets;
+	}
 
-			new LinearSystemSolver(mat).solveInPlace();
-
-			// Note that this is just a sanity check here. It should be always
-			// the case that the prover cannot cheat using this method,
-			// because this method is equivalent to finding a polynomial with
-			// \sqrt{n} roots. No other point will satisfy this property.
-			// However, when we do further optimizations in
-			// AESBoxGadgetOptimized2.java, this check becomes
-			// necessary, and other trials could be needed.
-			if (checkIfProverCanCheat(mat, memberValueSet)) {
-				throw new RuntimeException("The prover can cheat.");
+	// solves the linear system of the i-th group of 16 values in the list
+	private static BigInteger[] solveLinearSystem(ArrayList<Integer> list, int i) {
+		HashSet<Integer> memberValueSet = new HashSet<>();
+		BigInteger[][] mat = new BigInteger[16][17];
+
+		// used for sanity checks
+		BigInteger[] polyCoeffs = new BigInteger[] { BigInteger.ONE };
+
+		for (int k = 0; k < mat.length; k++) {
+			int value = list.get(k + i * 16);
+			memberValueSet.add(value);
+			BigInteger p = BigInteger.valueOf(value);
+			mat[k][0] = BigInteger.ONE;
+			for (int j = 1; j <= 16; j++) {
+				mat[k][j] = p.multiply(mat[k][j - 1]).mod(
+						Config.FIELD_PRIME);
 			}
+			// negate the last element, just to make things consistent with
+			// the paper notations
+			mat[k][16] = Config.FIELD_PRIME.subtract(mat[k][16]);
+			
+
+			// used for a sanity check (verifying that the output solution
+			// is equivalent to coefficients of polynomial that has roots at
+			// memberValueSet. see note above)
+			polyCoeffs = polyMul(polyCoeffs, new BigInteger[] {
+					Config.FIELD_PRIME.subtract(p), BigInteger.ONE });
+		}
 
-			BigInteger[] coeffs = new BigInteger[16];
-			for (int ii = 0; ii < 16; ii++) {
-				coeffs[ii] = mat[ii][16];
-				if (!coeffs[ii].equals(polyCoeffs[ii])) {
-					throw new RuntimeException("Inconsistency found.");
-				}
-			}
-			allCoeffSet.add(coeffs);
+		new LinearSystemSolver(mat).solveInPlace();
+
+		// Note that this is just a sanity check here. It should be always
+		// the case that the prover cannot cheat using this method,
+		// because this method is equivalent to finding a polynomial with
+		// \sqrt{n} roots. No other point will satisfy this property.
+		// However, when we do further optimizations in
+		// AESBoxGadgetOptimized2.java, this check becomes
+		// necessary, and other trials could be needed.
+		if (checkIfProverCanCheat(mat, memberValueSet)) {
+			throw new RuntimeException("The prover can cheat.");
 		}
 
+		BigInteger[] coeffs = new BigInteger[16];
+		for (int ii = 0; ii < 16; ii++) {
+			coeffs[ii] = mat[ii][16];
+			if (!coeffs[ii].equals(polyCoeffs[ii])) {
+				throw new RuntimeException("Inconsistency found.");
+			}
+		}
+		return coeffs;
 	}
 
 	// method for sanity checks during preprocessing
@@ -165,20 +177,21 @@ public class AESSBoxGadgetOptimized1 extends Gadget {
 		}
 	}
 
+	// the preprocessing is done when the gadget is first used, rather than in
+	// a static initializer, as it solves the linear systems in parallel
+	private static synchronized void preprocess() {
+		if (allCoeffSet == null) {
+			solveLinearSystems();
+		}
+	}
+
 	protected void buildCircuit() {
 
+		preprocess();
 		output = generator.createProverWitnessWire();
 		input.restrictBitLength(8);
-		generator.specifyProverWitnessComputation(new Instruction() {
-
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-				// TODO Auto-generated method stub
-				BigInteger value = evaluator.getWireValue(input);
-				evaluator.setWireValue(output,
-						BigInteger.valueOf(SBox[value.intValue()]));
-			}
-		});
+		generator.specifyProverWitnessComputation(AES128CipherGadget.SBoxComputation.class.getName(),
+				new Wire[] { input }, new Wire[] { output });
 
 		output.restrictBitLength(8);
 		Wire[] vars = new Wire[16];
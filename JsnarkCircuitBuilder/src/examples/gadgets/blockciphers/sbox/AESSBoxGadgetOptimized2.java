@@ -9,13 +9,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 import circuit.config.Config;
-import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
 import circuit.structure.Wire;
 import examples.gadgets.blockciphers.AES128CipherGadget;
+import examples.gadgets.blockciphers.sbox.util.CoefficientCache;
 import examples.gadgets.blockciphers.sbox.util.LinearSystemSolver;
 
 /**
@@ -58,11 +58,6 @@ public class AESSBoxGadgetOptimized2 extends Gadget {
 			bitCount = x;
 	}
 
-	static {
-		// preprocessing
-		solveLinearSystems();
-	}
-
 	private final Wire input;
 	private Wire output;
 
@@ -72,17 +67,27 @@ public class AESSBoxGadgetOptimized2 extends Gadget {
 		buildCircuit();
 	}
 
-	public static void solveLinearSystems() {
+	/**
+	 * Computes the coefficient sets for the current bitCount, or loads them
+	 * from the CoefficientCache. On a cache miss, the linear systems of the
+	 * groups of each attempt are solved in parallel.
+	 */
+	public static synchronized void solveLinearSystems() {
+
+		String key = CoefficientCache.getKey(AESSBoxGadgetOptimized2.class.getSimpleName(), SBox, bitCount);
+		ArrayList<BigInteger[]> cached = CoefficientCache.load(key);
+		if (cached != null) {
+			AESSBoxGadgetOptimized2.allCoeffSet = cached;
+			return;
+		}
 
 		long seed = 1;
-		ArrayList<BigInteger[]> allCoeffSet = new ArrayList<BigInteger[]>();
 		ArrayList<Integer> list = new ArrayList<Integer>();
 		for (int i = 0; i <= 255; i++) {
 			list.add(256 * i + SBox[i]);
 		}
-		boolean done = false;
 		int trialCounter = 0;
-		loop1: while (!done) {
+		while (true) {
 			trialCounter++;
 			if (trialCounter == 100) {
 				throw new RuntimeException(
@@ -93,67 +98,83 @@ public class AESSBoxGadgetOptimized2 extends Gadget {
 							+ trialCounter);
 			seed++;
 			Collections.shuffle(list, new Random(seed));
-			allCoeffSet.clear();
-
-			for (int i = 0; i <= 15; i++) {
-				BigInteger[][] mat = new BigInteger[16][17];
-				HashSet<Integer> memberValueSet = new HashSet<>();
-
-				for (int k = 0; k < mat.length; k++) {
-					int memberValue = list.get(k + i * 16);
-					memberValueSet.add(memberValue);
-					mat[k][16] = BigInteger.ONE;
-
-					// now extract the values that correspond to memberValue
-					// the method getVariableValues takes the bitCount settings
-					// into account
-					BigInteger[] variableValues = getVariableValues(memberValue);
-					for (int j = 0; j <= 15; j++) {
-						mat[k][j] = variableValues[j];
-					}
+
+			final ArrayList<Integer> members = new ArrayList<Integer>(list);
+			final BigInteger[][] solutions = new BigInteger[16][];
+			IntStream.rangeClosed(0, 15).parallel().forEach(i -> solutions[i] = solveLinearSystem(members, i));
+
+			ArrayList<BigInteger[]> allCoeffSet = new ArrayList<BigInteger[]>();
+			for (BigInteger[] coeffs : solutions) {
+				if (coeffs == null) {
+					allCoeffSet = null;
+					break;
 				}
+				allCoeffSet.add(coeffs);
+			}
+			if (allCoeffSet != null) {
+				CoefficientCache.store(key, allCoeffSet);
+				AESSBoxGadgetOptimized2.allCoeffSet = allCoeffSet;
+				System.out.println("Solution found!");
+				return;
+			}
+		}
+	}
 
-				new LinearSystemSolver(mat).solveInPlace();
+	// solves the linear system of the i-th group of 16 values in the list.
+	// Returns null if the prover can cheat using the solution.
+	private static BigInteger[] solveLinearSystem(ArrayList<Integer> list, int i) {
+		BigInteger[][] mat = new BigInteger[16][17];
+		HashSet<Integer> memberValueSet = new HashSet<>();
+
+		for (int k = 0; k < mat.length; k++) {
+			int memberValue = list.get(k + i * 16);
+			memberValueSet.add(memberValue);
+			mat[k][16] = BigInteger.ONE;
+
+			// now extract the values that correspond to memberValue
+			// the method getVariableValues takes the bitCount settings
+			// into account
+			BigInteger[] variableValues = getVariableValues(memberValue);
+			for (int j = 0; j <= 15; j++) {
+				mat[k][j] = variableValues[j];
+			}
+		}
 
-				if (checkIfProverCanCheat(mat, memberValueSet)) {
-					System.out.println("Invalid solution");
-					for (int ii = 0; ii < 16; ii++) {
-						if (mat[ii][16].equals(BigInteger.ZERO)) {
-							System.out
-									.println("Possibly invalid due to having zero coefficient(s)");
-							break;
-						}
-					}
+		new LinearSystemSolver(mat).solveInPlace();
 
-					continue loop1;
+		if (checkIfProverCanCheat(mat, memberValueSet)) {
+			System.out.println("Invalid solution");
+			for (int ii = 0; ii < 16; ii++) {
+				if (mat[ii][16].equals(BigInteger.ZERO)) {
+					System.out
+							.println("Possibly invalid due to having zero coefficient(s)");
+					break;
 				}
+			}
+			return null;
+		}
 
-				BigInteger[] coeffs = new BigInteger[16];
-				for (int ii = 0; ii < 16; ii++) {
-					coeffs[ii] = mat[ii][16];
-				}
-				allCoeffSet.add(coeffs);
+		BigInteger[] coeffs = new BigInteger[16];
+		for (int ii = 0; ii < 16; ii++) {
+			coeffs[ii] = mat[ii][16];
+		}
+		return coeffs;
+	}
 
-			}
-			done = true;
-			AESSBoxGadgetOptimized2.allCoeffSet = allCoeffSet;
-			System.out.println("Solution found!");
+	// the preprocessing is done when the gadget is first used, rather than in
+	// a static initializer, as it solves the linear systems in parallel
+	private static synchronized void preprocess() {
+		if (allCoeffSet == null) {
+			solveLinearSystems();
 		}
 	}
 
 	protected void buildCircuit() {
 
+		preprocess();
 		output = generator.createProverWitnessWire();
-		generator.specifyProverWitnessComputation(new Instruction() {
-
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-				// TODO Auto-generated method stub
-				BigInteger value = evaluator.getWireValue(input);
-				evaluator.setWireValue(output,
-						BigInteger.valueOf(SBox[value.intValue()]));
-			}
-		});
+		generator.specifyProverWitnessComputation(AES128CipherGadget.SBoxComputation.class.getName(),
+				new Wire[] { input }, new Wire[] { output });
 
 		// Although we are getting the bits below anyway (which implicitly
 		// restricts the bitwidth), it's a safer practice to call
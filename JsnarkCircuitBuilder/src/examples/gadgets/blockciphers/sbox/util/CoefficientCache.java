@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package examples.gadgets.blockciphers.sbox.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import circuit.config.Config;
+
+/**
+ * Keeps the coefficient sets computed by the preprocessing of the S-box
+ * gadgets (see AESSBoxGadgetOptimized1 and AESSBoxGadgetOptimized2), so that
+ * the linear systems are solved once per key, instead of at every start of
+ * the JVM. The sets are kept in memory, and in the directory given by
+ * PRECOMPUTATION_CACHE_DIR in config.properties (if set).
+ *
+ * The key covers the field prime, the S-box and the parameters of the
+ * gadget. VERSION must be incremented when the preprocessing of a gadget
+ * changes.
+ */
+public final class CoefficientCache {
+
+	private static final int MAGIC = 0x4a53424f;
+	public static final int VERSION = 1;
+
+	private static final ConcurrentHashMap<String, ArrayList<BigInteger[]>> memory = new ConcurrentHashMap<String, ArrayList<BigInteger[]>>();
+
+	private CoefficientCache() {
+	}
+
+	public static String getKey(String gadgetName, int[] sBox, int... parameters) {
+		StringBuilder key = new StringBuilder();
+		key.append(gadgetName).append('\n');
+		key.append(VERSION).append('\n');
+		key.append(Config.FIELD_PRIME).append('\n');
+		for (int v : sBox) {
+			key.append(Integer.toHexString(v)).append(',');
+		}
+		key.append('\n');
+		for (int p : parameters) {
+			key.append(p).append('\n');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the coefficient sets of the given key, or null if they are not
+	 * in the cache. The returned list must not be modified.
+	 */
+	public static ArrayList<BigInteger[]> load(String key) {
+		ArrayList<BigInteger[]> coeffSets = memory.get(key);
+		if (coeffSets != null) {
+			return coeffSets;
+		}
+		File file = getFile(key);
+		if (file == null || !file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+				return null;
+			}
+			int numSets = in.readInt();
+			coeffSets = new ArrayList<BigInteger[]>(numSets);
+			for (int i = 0; i < numSets; i++) {
+				BigInteger[] coeffs = new BigInteger[in.readInt()];
+				for (int j = 0; j < coeffs.length; j++) {
+					byte[] bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+					coeffs[j] = new BigInteger(bytes);
+				}
+				coeffSets.add(coeffs);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Warning - Could not read the precomputed coefficients " + file + ": " + e);
+			return null;
+		}
+		memory.put(key, coeffSets);
+		return coeffSets;
+	}
+
+	public static void store(String key, ArrayList<BigInteger[]> coeffSets) {
+		memory.put(key, coeffSets);
+		File file = getFile(key);
+		if (file == null) {
+			return;
+		}
+		File tmp = null;
+		try {
+			File directory = file.getParentFile();
+			Files.createDirectories(directory.toPath());
+			tmp = File.createTempFile(file.getName(), ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				out.writeInt(coeffSets.size());
+				for (BigInteger[] coeffs : coeffSets) {
+					out.writeInt(coeffs.length);
+					for (BigInteger c : coeffs) {
+						byte[] bytes = c.toByteArray();
+						out.writeInt(bytes.length);
+						out.write(bytes);
+					}
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			System.err.println("Warning - Could not write the precomputed coefficients " + file + ": " + e);
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Removes the coefficient sets of the given key from the memory, so that
+	 * the next load() reads them from the disk.
+	 */
+	public static void evict(String key) {
+		memory.remove(key);
+	}
+
+	private static File getFile(String key) {
+		if (Config.precomputationCacheDir == null) {
+			return null;
+		}
+		String name = key.substring(0, key.indexOf('\n'));
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return new File(Config.precomputationCacheDir, name + "_" + String.format("%064x", new BigInteger(1, hash))
+					+ ".coeffs");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
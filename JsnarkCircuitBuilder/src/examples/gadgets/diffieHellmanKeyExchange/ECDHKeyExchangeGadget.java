@@ -10,8 +10,8 @@ import org.bouncycastle.pqc.math.linearalgebra.IntegerFunctions;
 
 import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
 import circuit.structure.ConstantWire;
 import circuit.structure.Wire;
 import examples.gadgets.math.FieldDivisionGadget;
@@ -201,12 +201,8 @@ public class ECDHKeyExchangeGadget extends Gadget {
 			basePoint.y = generator.createConstantWire(computeYCoordinate(x));
 		} else {
 			basePoint.y = generator.createProverWitnessWire();
-			generator.specifyProverWitnessComputation(new Instruction() {
-				public void evaluate(CircuitEvaluator evaluator) {
-					BigInteger x = evaluator.getWireValue(basePoint.x);
-					evaluator.setWireValue(basePoint.y, computeYCoordinate(x));
-				}
-			});
+			generator.specifyProverWitnessComputation(YCoordinateComputation.class.getName(),
+					new Wire[] { basePoint.x }, new Wire[] { basePoint.y });
 			assertValidPointOnEC(basePoint.x, basePoint.y);
 		}
 
@@ -215,12 +211,8 @@ public class ECDHKeyExchangeGadget extends Gadget {
 			hPoint.y = generator.createConstantWire(computeYCoordinate(x));
 		} else {
 			hPoint.y = generator.createProverWitnessWire();
-			generator.specifyProverWitnessComputation(new Instruction() {
-				public void evaluate(CircuitEvaluator evaluator) {
-					BigInteger x = evaluator.getWireValue(hPoint.x);
-					evaluator.setWireValue(hPoint.y, computeYCoordinate(x));
-				}
-			});
+			generator.specifyProverWitnessComputation(YCoordinateComputation.class.getName(),
+					new Wire[] { hPoint.x }, new Wire[] { hPoint.y });
 			assertValidPointOnEC(hPoint.x, hPoint.y);
 		}
 	}
@@ -342,4 +334,15 @@ public class ECDHKeyExchangeGadget extends Gadget {
 	public Wire getSharedSecret() {
 		return sharedSecret;
 	}
+
+	// computes the y coordinate of a point from its x coordinate
+	public static class YCoordinateComputation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			BigInteger x = evaluator.getWireValue(usedWires[0]);
+			evaluator.setWireValue(assignedWires[0], computeYCoordinate(x));
+		}
+	}
 }
@@ -6,6 +6,7 @@ package examples.gadgets.hash;
 import java.util.Arrays;
 
 import util.Util;
+import circuit.eval.NativeHint;
 import circuit.operations.Gadget;
 import circuit.structure.Wire;
 import circuit.structure.WireArray;
@@ -66,6 +67,19 @@ public class SHA256Gadget extends Gadget {
 		// pad if needed
 		prepare();
 
+		Wire[][] messageWords = new Wire[numBlocks][16];
+		Wire[] hintInputs = new Wire[numBlocks * 16];
+		for (int blockNum = 0; blockNum < numBlocks; blockNum++) {
+			for (int i = 0; i < 16; i++) {
+				messageWords[blockNum][i] = new WireArray(Util.reverseBytes(Arrays.copyOfRange(preparedInputBits,
+						blockNum * 512 + i * 32, blockNum * 512 + (i + 1) * 32))).packAsBits(32);
+				hintInputs[blockNum * 16 + i] = messageWords[blockNum][i];
+			}
+		}
+		NativeHint hint = generator.beginNativeHint(new NativeCompression(), hintInputs);
+		Wire[] hintedWires = new Wire[numBlocks * NUM_HINTED_WIRES_PER_BLOCK];
+		int hinted = 0;
+
 		Wire[] outDigest = new Wire[8];
 		Wire[] hWires = new Wire[H.length];
 		for (int i = 0; i < H.length; i++) {
@@ -74,15 +88,11 @@ public class SHA256Gadget extends Gadget {
 
 		for (int blockNum = 0; blockNum < numBlocks; blockNum++) {
 
-			Wire[][] wsSplitted = new Wire[64][];
 			Wire[] w = new Wire[64];
 
 			for (int i = 0; i < 64; i++) {
 				if (i < 16) {
-					wsSplitted[i] = Util.reverseBytes(Arrays.copyOfRange(preparedInputBits, blockNum * 512 + i * 32,
-							blockNum * 512 + (i + 1) * 32));
-
-					w[i] = new WireArray(wsSplitted[i]).packAsBits(32);
+					w[i] = messageWords[blockNum][i];
 				} else {
 					Wire t1 = w[i - 15].rotateRight(32, 7);
 					Wire t2 = w[i - 15].rotateRight(32, 18);
@@ -98,6 +108,10 @@ public class SHA256Gadget extends Gadget {
 
 					w[i] = w[i - 16].add(w[i - 7]);
 					w[i] = w[i].add(s0).add(s1);
+					hintedWires[hinted++] = s0;
+					hintedWires[hinted++] = s1;
+					// hinting the sum before trimming covers its split as well
+					hintedWires[hinted++] = w[i];
 					w[i] = w[i].trimBits(34, 32);
 				}
 			}
@@ -145,25 +159,36 @@ public class SHA256Gadget extends Gadget {
 				g = f;
 				f = e;
 				e = temp1.add(d);
+				hintedWires[hinted++] = s1;
+				hintedWires[hinted++] = ch;
+				hintedWires[hinted++] = s0;
+				hintedWires[hinted++] = maj;
+				hintedWires[hinted++] = e;
 				e = e.trimBits(35, 32);
 
 				d = c;
 				c = b;
 				b = a;
 				a = temp2.add(temp1);
+				hintedWires[hinted++] = a;
 				a = a.trimBits(35, 32);
 
 			}
 
-			hWires[0] = hWires[0].add(a).trimBits(33, 32);
-			hWires[1] = hWires[1].add(b).trimBits(33, 32);
-			hWires[2] = hWires[2].add(c).trimBits(33, 32);
-			hWires[3] = hWires[3].add(d).trimBits(33, 32);
-			hWires[4] = hWires[4].add(e).trimBits(33, 32);
-			hWires[5] = hWires[5].add(f).trimBits(33, 32);
-			hWires[6] = hWires[6].add(g).trimBits(33, 32);
-			hWires[7] = hWires[7].add(h).trimBits(33, 32);
+			hWires[0] = hWires[0].add(a);
+			hWires[1] = hWires[1].add(b);
+			hWires[2] = hWires[2].add(c);
+			hWires[3] = hWires[3].add(d);
+			hWires[4] = hWires[4].add(e);
+			hWires[5] = hWires[5].add(f);
+			hWires[6] = hWires[6].add(g);
+			hWires[7] = hWires[7].add(h);
+			for (int i = 0; i < 8; i++) {
+				hintedWires[hinted++] = hWires[i];
+				hWires[i] = hWires[i].trimBits(33, 32);
+			}
 		}
+		generator.endNativeHint(hint, hintedWires);
 
 		outDigest[0] = hWires[0];
 		outDigest[1] = hWires[1];
@@ -217,6 +242,81 @@ public class SHA256Gadget extends Gadget {
 		return new WireArray(result).packAsBits();
 	}
 
+	private static final int NUM_HINTED_WIRES_PER_BLOCK = 48 * 3 + 64 * 6 + 8;
+
+	// computes the hinted wires of all the blocks, in the order of
+	// buildCircuit(), from the message words. The sums are given before
+	// trimming.
+	private static class NativeCompression implements NativeHint.Function {
+
+		@Override
+		public long[] compute(long[] inputs) {
+			int numBlocks = inputs.length / 16;
+			long[] values = new long[numBlocks * NUM_HINTED_WIRES_PER_BLOCK];
+			int hinted = 0;
+			int[] hs = new int[8];
+			for (int i = 0; i < 8; i++) {
+				hs[i] = (int) H[i];
+			}
+			for (int blockNum = 0; blockNum < numBlocks; blockNum++) {
+				int[] w = new int[64];
+				for (int i = 0; i < 64; i++) {
+					if (i < 16) {
+						w[i] = (int) inputs[blockNum * 16 + i];
+					} else {
+						int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18)
+								^ (w[i - 15] >>> 3);
+						int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19)
+								^ (w[i - 2] >>> 10);
+						long sum = unsigned(w[i - 16]) + unsigned(w[i - 7]) + unsigned(s0) + unsigned(s1);
+						values[hinted++] = unsigned(s0);
+						values[hinted++] = unsigned(s1);
+						values[hinted++] = sum;
+						w[i] = (int) sum;
+					}
+				}
+
+				int a = hs[0], b = hs[1], c = hs[2], d = hs[3], e = hs[4], f = hs[5], g = hs[6], h = hs[7];
+				for (int i = 0; i < 64; i++) {
+					int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+					int ch = (e & f) ^ (~e & g);
+					int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+					int maj = (a & b) ^ (a & c) ^ (b & c);
+					long temp1 = unsigned(w[i]) + K[i] + unsigned(s1) + unsigned(h) + unsigned(ch);
+					long temp2 = unsigned(maj) + unsigned(s0);
+					long eSum = temp1 + unsigned(d);
+					long aSum = temp2 + temp1;
+					values[hinted++] = unsigned(s1);
+					values[hinted++] = unsigned(ch);
+					values[hinted++] = unsigned(s0);
+					values[hinted++] = unsigned(maj);
+					values[hinted++] = eSum;
+					values[hinted++] = aSum;
+					h = g;
+					g = f;
+					f = e;
+					e = (int) eSum;
+					d = c;
+					c = b;
+					b = a;
+					a = (int) aSum;
+				}
+
+				int[] state = { a, b, c, d, e, f, g, h };
+				for (int i = 0; i < 8; i++) {
+					long sum = unsigned(hs[i]) + unsigned(state[i]);
+					values[hinted++] = sum;
+					hs[i] = (int) sum;
+				}
+			}
+			return values;
+		}
+
+		private static long unsigned(int v) {
+			return v & 0xffffffffL;
+		}
+	}
+
 	private void prepare() {
 
 		numBlocks = (int) Math.ceil(totalLengthInBytes * 1.0 / 64);
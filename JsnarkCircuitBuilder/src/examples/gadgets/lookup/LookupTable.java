@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+
+package examples.gadgets.lookup;
+
+import java.math.BigInteger;
+
+import circuit.config.Config;
+
+/**
+ * A constant table of values, addressed by the indices 0 .. size - 1, to be
+ * accessed in a circuit using the TableLookupGadget.
+ *
+ * This generalizes the read-only memory access from xjsnark (see
+ * AESSBoxGadgetOptimized1). Each (index, value) pair is encoded as the field
+ * element index * 2^bitwidth + value, and the encodings are split into about
+ * sqrt(size) groups. For every group, the table keeps the coefficients of the
+ * monic polynomial whose roots are the encodings in the group, so that a pair
+ * is in the table iff the product of the group polynomials evaluated at its
+ * encoding is zero. The polynomials are computed once per table and used by
+ * all the lookups into it, each of them costing about 2 * sqrt(size)
+ * constraints instead of the size of the table for a linear scan.
+ */
+public class LookupTable {
+
+	private final BigInteger[] values;
+	private final int bitwidth;
+	private final int indexBitwidth;
+
+	// the coefficients of the group polynomials, without the leading one.
+	// computed when first needed.
+	private volatile BigInteger[][] polynomials;
+
+	/**
+	 * @param values
+	 *            the values of the table, which must be less than 2^bitwidth
+	 * @param bitwidth
+	 *            the bitwidth of the values
+	 */
+	public LookupTable(BigInteger[] values, int bitwidth) {
+		if (values.length == 0) {
+			throw new IllegalArgumentException("Empty lookup table");
+		}
+		if (bitwidth < 1) {
+			throw new IllegalArgumentException("Invalid bitwidth: " + bitwidth);
+		}
+		this.values = values.clone();
+		this.bitwidth = bitwidth;
+		this.indexBitwidth = Math.max(1, BigInteger.valueOf(values.length - 1).bitLength());
+		if (indexBitwidth + bitwidth >= Config.LOG2_FIELD_PRIME) {
+			throw new IllegalArgumentException("The table entries do not fit in a field element");
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].signum() < 0 || values[i].bitLength() > bitwidth) {
+				throw new IllegalArgumentException("The value at " + i + " does not fit in " + bitwidth + " bits");
+			}
+		}
+	}
+
+	public LookupTable(int[] values, int bitwidth) {
+		this(toBigIntegers(values), bitwidth);
+	}
+
+	/**
+	 * Returns the table of the values 0 .. size - 1. Looking up a wire in this
+	 * table checks that it is less than size.
+	 */
+	public static LookupTable range(int size) {
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = i;
+		}
+		return new LookupTable(values, Math.max(1, BigInteger.valueOf(size - 1).bitLength()));
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public int getBitwidth() {
+		return bitwidth;
+	}
+
+	/**
+	 * Returns the number of bits of the indices.
+	 */
+	public int getIndexBitwidth() {
+		return indexBitwidth;
+	}
+
+	public BigInteger getValue(int index) {
+		return values[index];
+	}
+
+	// shared by the witness computations of the lookups, which must not
+	// modify it
+	BigInteger[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns the encoding of an entry, index * 2^bitwidth + value.
+	 */
+	public BigInteger encode(int index) {
+		return BigInteger.valueOf(index).shiftLeft(bitwidth).add(values[index]);
+	}
+
+	/**
+	 * Returns the coefficients of the group polynomials, see the class
+	 * description. The coefficient of x^j of group i is at [i][j], and the
+	 * leading coefficient (one) is omitted.
+	 */
+	public BigInteger[][] getPolynomials() {
+		BigInteger[][] result = polynomials;
+		if (result == null) {
+			synchronized (this) {
+				result = polynomials;
+				if (result == null) {
+					result = computePolynomials();
+					polynomials = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private BigInteger[][] computePolynomials() {
+		int groupSize = (int) Math.ceil(Math.sqrt(values.length));
+		int numGroups = (values.length + groupSize - 1) / groupSize;
+		BigInteger[][] result = new BigInteger[numGroups][];
+		for (int g = 0; g < numGroups; g++) {
+			int start = g * groupSize;
+			int end = Math.min(values.length, start + groupSize);
+			// multiply (x - root) for all the roots, starting from 1
+			BigInteger[] poly = new BigInteger[end - start + 1];
+			poly[0] = BigInteger.ONE;
+			int degree = 0;
+			for (int i = start; i < end; i++) {
+				BigInteger negRoot = Config.FIELD_PRIME.subtract(encode(i));
+				degree++;
+				poly[degree] = poly[degree - 1];
+				for (int j = degree - 1; j > 0; j--) {
+					poly[j] = poly[j - 1].add(poly[j].multiply(negRoot)).mod(Config.FIELD_PRIME);
+				}
+				poly[0] = poly[0].multiply(negRoot).mod(Config.FIELD_PRIME);
+			}
+			BigInteger[] coeffs = new BigInteger[degree];
+			System.arraycopy(poly, 0, coeffs, 0, degree);
+			result[g] = coeffs;
+		}
+		return result;
+	}
+
+	private static BigInteger[] toBigIntegers(int[] values) {
+		BigInteger[] result = new BigInteger[values.length];
+		for (int i = 0; i < values.length; i++) {
+			result[i] = BigInteger.valueOf(values[i]);
+		}
+		return result;
+	}
+}
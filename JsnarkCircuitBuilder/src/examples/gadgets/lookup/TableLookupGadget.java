@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+
+package examples.gadgets.lookup;
+
+import java.math.BigInteger;
+
+import circuit.eval.CircuitEvaluator;
+import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
+import circuit.structure.Wire;
+import circuit.structure.WireArray;
+
+/**
+ * Looks up the values of a constant LookupTable at the given indices. The
+ * outputs are prover witnesses that are checked against the polynomials of
+ * the table (see LookupTable), so a lookup costs about 2 * sqrt(table size)
+ * constraints, in addition to restricting the bitwidths of the index and the
+ * output. An index outside the table makes the circuit unsatisfiable.
+ *
+ * The polynomials are computed once per table, so the same LookupTable
+ * object should be used for all the accesses to a table. The witness
+ * computations of the lookups share the values array of the table, which a
+ * CircuitCache stores only once.
+ */
+public class TableLookupGadget extends Gadget {
+
+	private final LookupTable table;
+	private final Wire[] indices;
+	private Wire[] outputs;
+
+	public TableLookupGadget(LookupTable table, Wire index, String... desc) {
+		this(table, new Wire[] { index }, desc);
+	}
+
+	public TableLookupGadget(LookupTable table, Wire[] indices, String... desc) {
+		super(desc);
+		this.table = table;
+		this.indices = indices;
+		buildCircuit();
+	}
+
+	protected void buildCircuit() {
+		BigInteger[][] polynomials = table.getPolynomials();
+		int maxDegree = 0;
+		for (BigInteger[] coeffs : polynomials) {
+			maxDegree = Math.max(maxDegree, coeffs.length);
+		}
+
+		outputs = new Wire[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			Wire index = indices[i];
+			Wire output = generator.createProverWitnessWire();
+			generator.specifyProverWitnessComputation(LookupComputation.class.getName(), new Wire[] { index },
+					new Wire[] { output }, table.getValues());
+			index.restrictBitLength(table.getIndexBitwidth());
+			output.restrictBitLength(table.getBitwidth());
+
+			Wire p = index.mul(BigInteger.ONE.shiftLeft(table.getBitwidth())).add(output);
+			Wire[] powers = new Wire[maxDegree + 1];
+			powers[0] = generator.getOneWire();
+			for (int j = 1; j <= maxDegree; j++) {
+				powers[j] = powers[j - 1].mul(p);
+			}
+
+			Wire product = generator.getOneWire();
+			for (BigInteger[] coeffs : polynomials) {
+				Wire[] terms = new Wire[coeffs.length + 1];
+				for (int j = 0; j < coeffs.length; j++) {
+					terms[j] = powers[j].mul(coeffs[j]);
+				}
+				terms[coeffs.length] = powers[coeffs.length];
+				product = product.mul(new WireArray(terms, generator).sumAllElements());
+			}
+			generator.addZeroAssertion(product);
+			outputs[i] = output;
+		}
+	}
+
+	@Override
+	public Wire[] getOutputWires() {
+		return outputs;
+	}
+
+	// assigns the value of the table at the index, or zero for an index
+	// outside the table. The parameters are the values of the table.
+	public static class LookupComputation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			BigInteger index = evaluator.getWireValue(usedWires[0]);
+			if (index.compareTo(BigInteger.valueOf(parameters.length)) < 0) {
+				evaluator.setWireValue(assignedWires[0], parameters[index.intValue()]);
+			} else {
+				evaluator.setWireValue(assignedWires[0], BigInteger.ZERO);
+			}
+		}
+	}
+}
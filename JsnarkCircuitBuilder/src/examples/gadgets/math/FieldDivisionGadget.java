@@ -7,8 +7,8 @@ import java.math.BigInteger;
 
 import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
 import circuit.structure.ConstantWire;
 import circuit.structure.Wire;
 
@@ -43,18 +43,7 @@ public class FieldDivisionGadget extends Gadget {
 		// This is an example of computing a value outside the circuit and
 		// verifying constraints about it in the circuit. See notes below.
 
-		generator.specifyProverWitnessComputation(new Instruction() {
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-				BigInteger aValue = evaluator.getWireValue(a);
-				BigInteger bValue = evaluator.getWireValue(b);
-				BigInteger cValue = aValue.multiply(
-						bValue.modInverse(Config.FIELD_PRIME)).mod(
-						Config.FIELD_PRIME);
-				evaluator.setWireValue(c, cValue);
-			}
-
-		});
+		generator.specifyProverWitnessComputation(Computation.class.getName(), new Wire[] { a, b }, new Wire[] { c });
 		
 		// to handle the case where a or b can be both zero, see below
 		generator.addAssertion(b, c, a,
@@ -67,11 +56,14 @@ public class FieldDivisionGadget extends Gadget {
 		 * possible to swap them, as in the evaluation sequence, the assertion
 		 * must happen after the value is assigned.
 		 * 
-		 * 2) The instruction defined above relies on the values of wires (a)
-		 * and (b) during runtime. This means that if any point later in the
-		 * program, the references a, and b referred to other wires, these wires
-		 * are going to be used instead in this instruction. Therefore, it will
-		 * be safer to use final references in cases like that to reduce the
+		 * 2) The computation is given by the name of its class (see
+		 * WitnessComputationRegistry), and receives the wires declared below,
+		 * so that the circuit can be stored in a CircuitCache. An anonymous
+		 * Instruction can be passed instead, but it relies on the values of the
+		 * references a, b and c during runtime. This means that if any point
+		 * later in the program, these references referred to other wires, these
+		 * wires are going to be used instead in this instruction. Therefore, it
+		 * will be safer to use final references in that case to reduce the
 		 * possibility of errors.
 		 * 
 		 * 3) The above constraint does not check if a and b are both zeros. In that
@@ -80,6 +72,13 @@ public class FieldDivisionGadget extends Gadget {
 		 * 
 		 * This can be done by proving that b has an inverse, that satisfies 
 		 * b*(invB) = 1;
+		 * 
+		 * 4) The two arrays passed after the computation declare the wires it
+		 * reads (a, b) and assigns (c). They must cover all the wires accessed
+		 * by the computation, as some evaluators rely on them to schedule it.
+		 * If they are omitted (which is only possible with an Instruction), the
+		 * instruction is evaluated after everything that precedes it in the
+		 * evaluation sequence.
 		 */
 	}
 
@@ -88,4 +87,19 @@ public class FieldDivisionGadget extends Gadget {
 		return new Wire[] { c };
 	}
 
+	// computes c = a / b in the field
+	public static class Computation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			BigInteger aValue = evaluator.getWireValue(usedWires[0]);
+			BigInteger bValue = evaluator.getWireValue(usedWires[1]);
+			BigInteger cValue = aValue.multiply(
+					bValue.modInverse(Config.FIELD_PRIME)).mod(
+					Config.FIELD_PRIME);
+			evaluator.setWireValue(assignedWires[0], cValue);
+		}
+	}
+
 }
@@ -9,8 +9,8 @@ import java.util.Arrays;
 import util.Util;
 import circuit.auxiliary.LongElement;
 import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
 import circuit.structure.Wire;
 
 /**
@@ -101,22 +101,9 @@ public class LongIntegerModGadget extends Gadget {
 		// q = generator.createProverWitnessWire("division result");
 		//
 		//
-		generator.specifyProverWitnessComputation(new Instruction() {
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-				BigInteger aValue = evaluator.getWireValue(a,
-						LongElement.CHUNK_BITWIDTH);
-				BigInteger bValue = evaluator.getWireValue(b,
-						LongElement.CHUNK_BITWIDTH);
-				BigInteger rValue = aValue.mod(bValue);
-				BigInteger qValue = aValue.divide(bValue);
-
-				evaluator.setWireValue(r.getArray(),
-						Util.split(rValue, LongElement.CHUNK_BITWIDTH));
-				evaluator.setWireValue(q.getArray(),
-						Util.split(qValue, LongElement.CHUNK_BITWIDTH));
-			}
-		});
+		generator.specifyProverWitnessComputation(Computation.class.getName(), Util.concat(a.getArray(), b.getArray()),
+				Util.concat(r.getArray(), q.getArray()), BigInteger.valueOf(a.getArray().length),
+				BigInteger.valueOf(r.getArray().length), BigInteger.valueOf(LongElement.CHUNK_BITWIDTH));
 
 		r.restrictBitwidth();
 		q.restrictBitwidth();
@@ -137,6 +124,40 @@ public class LongIntegerModGadget extends Gadget {
 		return r.getArray();
 	}
 
+	// computes r = a % b and q = a / b on long elements. The parameters are
+	// the number of chunks of a and r, and the chunk bitwidth.
+	public static class Computation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			int aLength = parameters[0].intValue();
+			int rLength = parameters[1].intValue();
+			int chunkBitwidth = parameters[2].intValue();
+			BigInteger aValue = combine(evaluator, usedWires, 0, aLength, chunkBitwidth);
+			BigInteger bValue = combine(evaluator, usedWires, aLength, usedWires.length, chunkBitwidth);
+			BigInteger rValue = aValue.mod(bValue);
+			BigInteger qValue = aValue.divide(bValue);
+
+			evaluator.setWireValue(Arrays.copyOfRange(assignedWires, 0, rLength),
+					Util.split(rValue, chunkBitwidth));
+			evaluator.setWireValue(Arrays.copyOfRange(assignedWires, rLength, assignedWires.length),
+					Util.split(qValue, chunkBitwidth));
+		}
+
+		// as in CircuitEvaluator.getWireValue(LongElement, int)
+		private static BigInteger combine(CircuitEvaluator evaluator, Wire[] wires, int from, int to, int chunkBitwidth) {
+			BigInteger sum = BigInteger.ZERO;
+			for (int i = from; i < to; i++) {
+				BigInteger v = evaluator.getWireValue(wires[i]);
+				if (v != null) {
+					sum = sum.add(v.shiftLeft(chunkBitwidth * (i - from)));
+				}
+			}
+			return sum;
+		}
+	}
+
 	public LongElement getRemainder() {
 		return r;
 	}
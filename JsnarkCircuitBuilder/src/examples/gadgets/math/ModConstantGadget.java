@@ -6,8 +6,8 @@ package examples.gadgets.math;
 import java.math.BigInteger;
 
 import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
 import circuit.structure.Wire;
 
 /**
@@ -47,17 +47,7 @@ public class ModConstantGadget extends Gadget {
 		q = generator.createProverWitnessWire("division result");
 
 		// notes about how to use this code block can be found in FieldDivisionGadget
-		generator.specifyProverWitnessComputation(new Instruction() {
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-				BigInteger aValue = evaluator.getWireValue(a);
-				BigInteger rValue = aValue.mod(b);
-				evaluator.setWireValue(r, rValue);
-				BigInteger qValue = aValue.divide(b);
-				evaluator.setWireValue(q, qValue);
-			}
-
-		});
+		generator.specifyProverWitnessComputation(Computation.class.getName(), new Wire[] { a }, new Wire[] { r, q }, b);
 		
 		int bBitwidth = b.bitLength();
 		r.restrictBitLength(bBitwidth);
@@ -71,4 +61,18 @@ public class ModConstantGadget extends Gadget {
 		return new Wire[] { r };
 	}
 
+	// computes r = a % b and q = a / b, where b is the parameter
+	public static class Computation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			BigInteger aValue = evaluator.getWireValue(usedWires[0]);
+			BigInteger rValue = aValue.mod(parameters[0]);
+			evaluator.setWireValue(assignedWires[0], rValue);
+			BigInteger qValue = aValue.divide(parameters[0]);
+			evaluator.setWireValue(assignedWires[1], qValue);
+		}
+	}
+
 }
@@ -6,8 +6,8 @@ package examples.gadgets.math;
 import java.math.BigInteger;
 
 import circuit.eval.CircuitEvaluator;
-import circuit.eval.Instruction;
 import circuit.operations.Gadget;
+import circuit.operations.WitnessComputation;
 import circuit.structure.Wire;
 
 /**
@@ -43,18 +43,7 @@ public class ModGadget extends Gadget {
 
 		
 		// notes about how to use this code block can be found in FieldDivisionGadget
-		generator.specifyProverWitnessComputation(new Instruction() {
-			@Override
-			public void evaluate(CircuitEvaluator evaluator) {
-				BigInteger aValue = evaluator.getWireValue(a);
-				BigInteger bValue = evaluator.getWireValue(b);
-				BigInteger rValue = aValue.mod(bValue);
-				evaluator.setWireValue(r, rValue);
-				BigInteger qValue = aValue.divide(bValue);
-				evaluator.setWireValue(q, qValue);
-			}
-
-		});
+		generator.specifyProverWitnessComputation(Computation.class.getName(), new Wire[] { a, b }, new Wire[] { r, q });
 		
 		r.restrictBitLength(bitwidth);
 		q.restrictBitLength(bitwidth);
@@ -67,4 +56,19 @@ public class ModGadget extends Gadget {
 		return new Wire[] { r };
 	}
 
+	// computes r = a % b and q = a / b
+	public static class Computation implements WitnessComputation {
+
+		@Override
+		public void compute(CircuitEvaluator evaluator, Wire[] usedWires, Wire[] assignedWires,
+				BigInteger[] parameters) {
+			BigInteger aValue = evaluator.getWireValue(usedWires[0]);
+			BigInteger bValue = evaluator.getWireValue(usedWires[1]);
+			BigInteger rValue = aValue.mod(bValue);
+			evaluator.setWireValue(assignedWires[0], rValue);
+			BigInteger qValue = aValue.divide(bValue);
+			evaluator.setWireValue(assignedWires[1], qValue);
+		}
+	}
+
 }
@@ -3,7 +3,10 @@
  *******************************************************************************/
 package examples.tests.blockciphers;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -11,11 +14,13 @@ import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import circuit.config.Config;
 import circuit.eval.CircuitEvaluator;
 import circuit.structure.CircuitGenerator;
 import circuit.structure.Wire;
 import examples.gadgets.blockciphers.AES128CipherGadget;
 import examples.gadgets.blockciphers.sbox.AESSBoxGadgetOptimized2;
+import examples.gadgets.blockciphers.sbox.util.CoefficientCache;
 
 
 public class AES128_Test extends TestCase {
@@ -374,6 +379,42 @@ public class AES128_Test extends TestCase {
 		}
 	}
 
+	@Test
+	public void testPrecomputationCache() throws IOException {
 
-	
+		// the coefficients are solved once, and then read from the cache
+		String previousDir = Config.precomputationCacheDir;
+		File directory = Files.createTempDirectory("jsnark_precomputed").toFile();
+		Config.precomputationCacheDir = directory.getPath();
+		String key = CoefficientCache.getKey(AESSBoxGadgetOptimized2.class.getSimpleName(), AES128CipherGadget.SBox,
+				12);
+		try {
+			CoefficientCache.evict(key);
+			AESSBoxGadgetOptimized2.setBitCount(12);
+			AESSBoxGadgetOptimized2.solveLinearSystems();
+			ArrayList<BigInteger[]> coeffSets = CoefficientCache.load(key);
+			assertNotNull(coeffSets);
+			assertEquals(16, coeffSets.size());
+			assertEquals(1, directory.listFiles().length);
+
+			CoefficientCache.evict(key);
+			ArrayList<BigInteger[]> stored = CoefficientCache.load(key);
+			assertNotSame(coeffSets, stored);
+			for (int i = 0; i < coeffSets.size(); i++) {
+				assertTrue(Arrays.equals(coeffSets.get(i), stored.get(i)));
+			}
+		} finally {
+			Config.precomputationCacheDir = previousDir;
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+
+		// other settings have other keys
+		assertFalse(key.equals(CoefficientCache.getKey(AESSBoxGadgetOptimized2.class.getSimpleName(),
+				AES128CipherGadget.SBox, 15)));
+		AESSBoxGadgetOptimized2.setBitCount(15);
+		AESSBoxGadgetOptimized2.solveLinearSystems();
+	}
 }
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Author: Ahmed Kosba <akosba@cs.umd.edu>
+ *******************************************************************************/
+package examples.tests.lookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import circuit.config.Config;
+import circuit.eval.CircuitEvaluator;
+import circuit.eval.Instruction;
+import circuit.operations.RegisteredWitnessComputation;
+import circuit.structure.CircuitCache;
+import circuit.structure.CircuitGenerator;
+import circuit.structure.Wire;
+import examples.gadgets.lookup.LookupTable;
+import examples.gadgets.lookup.TableLookupGadget;
+
+public class TableLookup_Test extends TestCase {
+
+	// the PRESENT cipher S-box
+	private static final int[] SBOX4 = { 0xc, 0x5, 0x6, 0xb, 0x9, 0x0, 0xa, 0xd, 0x3, 0xe, 0xf, 0x8, 0x4, 0x7,
+			0x1, 0x2 };
+
+	@Test
+	public void testPolynomials() {
+		// only the entries of the table are roots of the group polynomials
+		LookupTable table = new LookupTable(SBOX4, 4);
+		for (int index = 0; index < 16; index++) {
+			for (int value = 0; value < 16; value++) {
+				BigInteger x = BigInteger.valueOf(index * 16 + value);
+				BigInteger product = BigInteger.ONE;
+				for (BigInteger[] coeffs : table.getPolynomials()) {
+					BigInteger y = BigInteger.ONE;
+					for (int j = coeffs.length - 1; j >= 0; j--) {
+						y = y.multiply(x).add(coeffs[j]).mod(Config.FIELD_PRIME);
+					}
+					product = product.multiply(y).mod(Config.FIELD_PRIME);
+				}
+				assertEquals(SBOX4[index] == value, product.signum() == 0);
+			}
+		}
+	}
+
+	@Test
+	public void testLookups() {
+		final Random random = new Random(1);
+		final BigInteger[] values = new BigInteger[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new BigInteger(20, random);
+		}
+		final LookupTable table = new LookupTable(values, 20);
+		final LookupTable sbox = new LookupTable(SBOX4, 4);
+		final int[] indices = new int[50];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = random.nextInt(values.length);
+		}
+
+		CircuitGenerator generator = new CircuitGenerator("Table_Lookup") {
+
+			private Wire[] inputs;
+
+			@Override
+			protected void buildCircuit() {
+				inputs = createInputWireArray(indices.length);
+				makeOutputArray(new TableLookupGadget(table, inputs).getOutputWires());
+				Wire[] nibbles = new Wire[indices.length];
+				for (int i = 0; i < indices.length; i++) {
+					nibbles[i] = inputs[i].getBitWires(10).packAsBits(4);
+				}
+				makeOutputArray(new TableLookupGadget(sbox, nibbles).getOutputWires());
+			}
+
+			@Override
+			public void generateSampleInput(CircuitEvaluator evaluator) {
+				for (int i = 0; i < indices.length; i++) {
+					evaluator.setWireValue(inputs[i], indices[i]);
+				}
+			}
+		};
+		generator.generateCircuit();
+		// much less than a linear scan over the table
+		assertTrue(generator.getNumOfConstraints() < indices.length * 150);
+		generator.evalCircuit();
+		CircuitEvaluator evaluator = generator.getCircuitEvaluator();
+		for (int i = 0; i < indices.length; i++) {
+			assertEquals(values[indices[i]], evaluator.getWireValue(generator.getOutWires().get(i)));
+			assertEquals(BigInteger.valueOf(SBOX4[indices[i] & 0xf]),
+					evaluator.getWireValue(generator.getOutWires().get(indices.length + i)));
+		}
+	}
+
+	@Test
+	public void testRangeTable() {
+		final LookupTable range = LookupTable.range(100);
+		for (final int v : new int[] { 0, 99, 100, 127 }) {
+			CircuitGenerator generator = new CircuitGenerator("Range_Lookup") {
+
+				private Wire input;
+
+				@Override
+				protected void buildCircuit() {
+					input = createInputWire();
+					makeOutput(new TableLookupGadget(range, input).getOutputWires()[0]);
+				}
+
+				@Override
+				public void generateSampleInput(CircuitEvaluator evaluator) {
+					evaluator.setWireValue(input, v);
+				}
+			};
+			generator.generateCircuit();
+			try {
+				generator.evalCircuit();
+				assertTrue(v < 100);
+				assertEquals(BigInteger.valueOf(v),
+						generator.getCircuitEvaluator().getWireValue(generator.getOutWires().get(0)));
+			} catch (RuntimeException e) {
+				assertTrue(v >= 100);
+			}
+		}
+	}
+
+	@Test
+	public void testCachedLookups() throws IOException {
+		File directory = Files.createTempDirectory("jsnark_cache").toFile();
+		try {
+			CircuitCache cache = new CircuitCache(directory.getPath());
+			CachedLookupGenerator generated = new CachedLookupGenerator(20);
+			generated.generateCircuit(cache);
+			CachedLookupGenerator restored = new CachedLookupGenerator(20);
+			restored.generateCircuit(cache);
+			assertEquals(generated.getNumWires(), restored.getNumWires());
+
+			// the values of the table are stored once, and shared by the
+			// restored lookups
+			BigInteger[] parameters = null;
+			int numLookups = 0;
+			for (Instruction e : restored.getEvaluationQueue()) {
+				if (e instanceof RegisteredWitnessComputation) {
+					BigInteger[] p = ((RegisteredWitnessComputation) e).getParameters();
+					if (parameters == null) {
+						parameters = p;
+					}
+					assertSame(parameters, p);
+					numLookups++;
+				}
+			}
+			assertEquals(20, numLookups);
+			assertEquals(SBOX4.length, parameters.length);
+
+			restored.evalCircuit();
+			for (int i = 0; i < 20; i++) {
+				assertEquals(BigInteger.valueOf(SBOX4[i % 16]),
+						restored.getCircuitEvaluator().getWireValue(restored.getOutWires().get(i)));
+			}
+		} finally {
+			for (File f : directory.listFiles()) {
+				f.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	private static class CachedLookupGenerator extends CircuitGenerator {
+
+		private int numLookups;
+		private Wire[] inputs;
+
+		public CachedLookupGenerator(int numLookups) {
+			super("Cached_Lookup");
+			this.numLookups = numLookups;
+		}
+
+		@Override
+		protected void buildCircuit() {
+			inputs = createInputWireArray(numLookups);
+			makeOutputArray(new TableLookupGadget(new LookupTable(SBOX4, 4), inputs).getOutputWires());
+		}
+
+		@Override
+		public void generateSampleInput(CircuitEvaluator evaluator) {
+			for (int i = 0; i < numLookups; i++) {
+				evaluator.setWireValue(inputs[i], i % 16);
+			}
+		}
+	}
+}